@@ -1,42 +1,69 @@
 package com.routeforge.api.config;
 
+import com.routeforge.common.util.RedisKeys;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import redis.clients.jedis.JedisPool;
-import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.ConnectionPoolConfig;
+import redis.clients.jedis.DefaultJedisClientConfig;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.JedisClientConfig;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.UnifiedJedis;
 
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+@Slf4j
 @Configuration
 @RequiredArgsConstructor
 public class RedisConfig {
     
     private final RedisProperties redisProperties;
     
-    @Bean
-    public JedisPool jedisPool() {
-        JedisPoolConfig poolConfig = new JedisPoolConfig();
+    /**
+     * JedisPooled on a single node, JedisCluster (one pool per node, slot-routed) in cluster mode
+     */
+    @Bean(destroyMethod = "close")
+    public UnifiedJedis redisClient() {
+        ConnectionPoolConfig poolConfig = new ConnectionPoolConfig();
         poolConfig.setMaxTotal(20);
         poolConfig.setMaxIdle(10);
         poolConfig.setMinIdle(5);
         poolConfig.setTestOnBorrow(true);
         
+        DefaultJedisClientConfig.Builder clientConfig = DefaultJedisClientConfig.builder()
+            .connectionTimeoutMillis(redisProperties.getTimeoutMs())
+            .socketTimeoutMillis(redisProperties.getTimeoutMs());
         if (redisProperties.getPassword() != null && !redisProperties.getPassword().isEmpty()) {
-            return new JedisPool(
-                poolConfig,
-                redisProperties.getHost(),
-                redisProperties.getPort(),
-                redisProperties.getTimeoutMs(),
-                redisProperties.getPassword()
-            );
-        } else {
-            return new JedisPool(
-                poolConfig,
-                redisProperties.getHost(),
-                redisProperties.getPort(),
-                redisProperties.getTimeoutMs()
-            );
+            clientConfig.password(redisProperties.getPassword());
+        }
+        JedisClientConfig config = clientConfig.build();
+        
+        if (redisProperties.getMode() == RedisProperties.Mode.CLUSTER) {
+            Set<HostAndPort> nodes = parseNodes(redisProperties.getClusterNodes());
+            log.info("Connecting to Redis Cluster via {}", nodes);
+            return new JedisCluster(nodes, config, redisProperties.getClusterMaxAttempts(), poolConfig);
         }
+        return new JedisPooled(poolConfig, new HostAndPort(redisProperties.getHost(), redisProperties.getPort()), config);
+    }
+    
+    @Bean
+    public RedisKeys redisKeys() {
+        return redisProperties.getMode() == RedisProperties.Mode.CLUSTER
+            ? RedisKeys.cluster()
+            : RedisKeys.standalone();
+    }
+    
+    static Set<HostAndPort> parseNodes(String nodes) {
+        return Arrays.stream(nodes.split(","))
+            .map(String::trim)
+            .filter(node -> !node.isEmpty())
+            .map(HostAndPort::from)
+            .collect(Collectors.toSet());
     }
 }
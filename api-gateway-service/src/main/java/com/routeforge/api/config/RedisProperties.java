@@ -11,5 +11,23 @@ public class RedisProperties {
     private String host = "localhost";
     private int port = 6379;
     private String password;
+    private Mode mode = Mode.STANDALONE;
+    /** Seed nodes for cluster mode, host:port comma-separated */
+    private String clusterNodes = "localhost:7000";
+    /** Attempts per command across MOVED/ASK redirects and node failures (cluster mode) */
+    private int clusterMaxAttempts = 5;
     private int timeoutMs = 3000;
+    private int vehicleFreshnessSec = 300;
+    /** pubsub, stream or both (same values as the processing service); both reads the stream */
+    private String updateFanout = "both";
+    private String updatesStreamKey = "stream:route-updates";
+    private int streamBlockMs = 1000;
+    private int streamReadCount = 500;
+    
+    /**
+     * Single Redis node, or Redis Cluster with hash-tagged keys
+     */
+    public enum Mode {
+        STANDALONE, CLUSTER
+    }
 }
@@ -1,7 +1,9 @@
 package com.routeforge.api.controller;
 
 import com.routeforge.api.dto.EtaPrediction;
+import com.routeforge.api.dto.HistoryStats;
 import com.routeforge.api.service.EtaCalculationService;
+import com.routeforge.api.service.HistoryStatsService;
 import com.routeforge.api.service.VehicleService;
 import com.routeforge.common.dto.ErrorResponse;
 import com.routeforge.common.dto.VehicleResponse;
@@ -17,6 +19,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Map;
 import java.util.List;
@@ -33,6 +36,7 @@ public class VehicleController {
     
     private final VehicleService vehicleService;
     private final EtaCalculationService etaCalculationService;
+    private final HistoryStatsService historyStatsService;
     
     @Operation(summary = "Get vehicles by route", description = "Retrieve all active vehicles for a specific route")
     @ApiResponses(value = {
@@ -57,6 +61,41 @@ public class VehicleController {
         return ResponseEntity.ok(vehicles);
     }
     
+    @Operation(
+        summary = "Search nearby vehicles",
+        description = "Find live vehicles within a radius or a box around a point, nearest first. " +
+                      "Pass radiusM for a radius search, or widthM and heightM for a box search."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Successful operation"),
+        @ApiResponse(responseCode = "400", description = "Invalid search parameters",
+                     content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+        @ApiResponse(responseCode = "429", description = "Rate limit exceeded")
+    })
+    @GetMapping("/vehicles/nearby")
+    public ResponseEntity<List<VehicleResponse>> getNearbyVehicles(
+            @Parameter(description = "Latitude of the search centre", required = true)
+            @RequestParam double lat,
+            @Parameter(description = "Longitude of the search centre", required = true)
+            @RequestParam double lon,
+            @Parameter(description = "Search radius in meters")
+            @RequestParam(required = false) Double radiusM,
+            @Parameter(description = "Box width in meters (east-west)")
+            @RequestParam(required = false) Double widthM,
+            @Parameter(description = "Box height in meters (north-south)")
+            @RequestParam(required = false) Double heightM,
+            @Parameter(description = "Only return vehicles on this route")
+            @RequestParam(required = false) String routeId,
+            @Parameter(description = "Maximum number of vehicles (1-500)")
+            @RequestParam(defaultValue = "100") int limit) {
+        
+        log.debug("GET /api/vehicles/nearby?lat={}&lon={}&radiusM={}&widthM={}&heightM={}&routeId={}",
+            lat, lon, radiusM, widthM, heightM, routeId);
+        
+        return ResponseEntity.ok(
+            vehicleService.findNearbyVehicles(lat, lon, radiusM, widthM, heightM, routeId, limit));
+    }
+    
     @Operation(summary = "Get vehicle by ID", description = "Retrieve current position of a specific vehicle")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Successful operation"),
@@ -104,6 +143,62 @@ public class VehicleController {
         return ResponseEntity.ok(predictions);
     }
     
+    @Operation(
+        summary = "Get route statistics over time",
+        description = "Position count, average/max speed, average delay and distance travelled per step, " +
+                      "read from the coarsest history aggregate (1h, 15m or 1m) that fits the range and step."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Successful operation"),
+        @ApiResponse(responseCode = "400", description = "Invalid range or step",
+                     content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+        @ApiResponse(responseCode = "429", description = "Rate limit exceeded")
+    })
+    @GetMapping("/routes/{routeId}/stats")
+    public ResponseEntity<HistoryStats> getRouteStats(
+            @PathVariable String routeId,
+            @Parameter(description = "Range start (ISO-8601 instant)", required = true)
+            @RequestParam Instant from,
+            @Parameter(description = "Range end, exclusive (ISO-8601 instant)", required = true)
+            @RequestParam Instant to,
+            @Parameter(description = "Step in seconds (multiple of 60); defaults to the resolution used")
+            @RequestParam(required = false) Long stepSeconds) {
+        
+        log.debug("GET /api/routes/{}/stats?from={}&to={}&stepSeconds={}", routeId, from, to, stepSeconds);
+        
+        return ResponseEntity.ok(historyStatsService.getRouteStats(routeId, from, to, toStep(stepSeconds)));
+    }
+    
+    @Operation(
+        summary = "Get vehicle statistics over time",
+        description = "Position count, average/max speed, average delay and distance travelled per step, " +
+                      "read from the coarsest history aggregate (1h, 15m or 1m) that fits the range and step."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Successful operation"),
+        @ApiResponse(responseCode = "400", description = "Invalid range or step",
+                     content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+        @ApiResponse(responseCode = "429", description = "Rate limit exceeded")
+    })
+    @GetMapping("/vehicles/{vehicleId}/stats")
+    public ResponseEntity<HistoryStats> getVehicleStats(
+            @PathVariable String vehicleId,
+            @Parameter(description = "Range start (ISO-8601 instant)", required = true)
+            @RequestParam Instant from,
+            @Parameter(description = "Range end, exclusive (ISO-8601 instant)", required = true)
+            @RequestParam Instant to,
+            @Parameter(description = "Step in seconds (multiple of 60); defaults to the resolution used")
+            @RequestParam(required = false) Long stepSeconds) {
+        
+        log.debug("GET /api/vehicles/{}/stats?from={}&to={}&stepSeconds={}", vehicleId, from, to, stepSeconds);
+        
+        return ResponseEntity.ok(historyStatsService.getVehicleStats(vehicleId, from, to, toStep(stepSeconds)));
+    }
+    
+    private static Duration toStep(Long stepSeconds) {
+        return stepSeconds == null ? null : Duration.ofSeconds(stepSeconds);
+    }
+    
     @Operation(summary = "Health check", description = "API health status")
     @GetMapping("/health")
     public ResponseEntity<Map<String, Object>> health() {
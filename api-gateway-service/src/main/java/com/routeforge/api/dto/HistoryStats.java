@@ -0,0 +1,64 @@
+package com.routeforge.api.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Position statistics of a route or vehicle over a time range, in fixed steps
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HistoryStats {
+    
+    @JsonProperty("id")
+    private String id;
+    
+    @JsonProperty("from")
+    private Instant from;
+    
+    @JsonProperty("to")
+    private Instant to;
+    
+    @JsonProperty("stepSeconds")
+    private Long stepSeconds;
+    
+    /** Aggregate resolution the buckets were computed from */
+    @JsonProperty("resolutionSeconds")
+    private Integer resolutionSeconds;
+    
+    @JsonProperty("buckets")
+    private List<Bucket> buckets;
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Bucket {
+        
+        @JsonProperty("start")
+        private Instant start;
+        
+        @JsonProperty("sampleCount")
+        private Long sampleCount;
+        
+        @JsonProperty("avgSpeedKph")
+        private Double avgSpeedKph;
+        
+        @JsonProperty("maxSpeedKph")
+        private Double maxSpeedKph;
+        
+        @JsonProperty("avgDelaySec")
+        private Double avgDelaySec;
+        
+        @JsonProperty("distanceM")
+        private Double distanceM;
+    }
+}
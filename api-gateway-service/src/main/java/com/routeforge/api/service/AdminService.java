@@ -2,6 +2,7 @@ package com.routeforge.api.service;
 
 import com.routeforge.api.config.KafkaAdminConfig;
 import com.routeforge.api.sse.SseEmitterManager;
+import com.routeforge.common.util.RedisKeys;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.admin.AdminClient;
@@ -10,16 +11,16 @@ import org.apache.kafka.clients.admin.OffsetSpec;
 import org.apache.kafka.clients.admin.TopicDescription;
 import org.apache.kafka.common.TopicPartition;
 import org.springframework.stereotype.Service;
-import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
-import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.UnifiedJedis;
 import redis.clients.jedis.resps.ScanResult;
+import redis.clients.jedis.util.JedisCommandIterationBase;
 
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -30,7 +31,8 @@ import java.util.concurrent.TimeUnit;
 @RequiredArgsConstructor
 public class AdminService {
     
-    private final JedisPool jedisPool;
+    private final UnifiedJedis redisClient;
+    private final RedisKeys keys;
     private final SseEmitterManager sseEmitterManager;
     private final AdminClient kafkaAdminClient;
     private final KafkaAdminConfig kafkaAdminConfig;
@@ -45,12 +47,15 @@ public class AdminService {
     public int clearAllCache() {
         int totalDeleted = 0;
         
-        try (Jedis jedis = jedisPool.getResource()) {
+        try {
             // Delete vehicle keys (veh:*)
-            totalDeleted += deleteKeysByPattern(jedis, "veh:*");
+            totalDeleted += deleteKeysByPattern("veh:*");
             
             // Delete route keys (route:*:vehicles)
-            totalDeleted += deleteKeysByPattern(jedis, "route:*:vehicles");
+            totalDeleted += deleteKeysByPattern(keys.routeVehiclesPattern());
+            
+            // Delete GEO indexes (geo:vehicles, geo:route:*:vehicles and their bookkeeping)
+            totalDeleted += deleteKeysByPattern("geo:*");
             
             log.info("Cleared {} cache keys from Redis", totalDeleted);
             
@@ -67,27 +72,38 @@ public class AdminService {
      */
     public int clearRouteCache(String routeId) {
         int totalDeleted = 0;
-        try (Jedis jedis = jedisPool.getResource()) {
-            String routeKey = "route:" + routeId + ":vehicles";
+        try {
+            String routeKey = keys.routeVehicles(routeId);
     
             // Fetch all vehicle IDs first
-            List<String> vehicleIds = jedis.zrange(routeKey, 0, -1);
+            List<String> vehicleIds = redisClient.zrange(routeKey, 0, -1);
     
             // Delete the route set itself if it exists
-            if (jedis.exists(routeKey)) {
-                jedis.del(routeKey);
+            if (redisClient.exists(routeKey)) {
+                redisClient.del(routeKey);
                 totalDeleted++;
             }
     
             // Now delete each vehicle key associated with that route
             for (String vehicleId : vehicleIds) {
-                String vehicleKey = "veh:" + vehicleId;
-                if (jedis.exists(vehicleKey)) {
-                    jedis.del(vehicleKey);
+                String vehicleKey = keys.vehicle(vehicleId);
+                if (redisClient.exists(vehicleKey)) {
+                    redisClient.del(vehicleKey);
                     totalDeleted++;
                 }
             }
     
+            // Drop the route's GEO index and its vehicles from the global one
+            if (redisClient.del(keys.routeGeo(routeId)) > 0) {
+                totalDeleted++;
+            }
+            if (!vehicleIds.isEmpty()) {
+                String[] members = vehicleIds.toArray(new String[0]);
+                redisClient.zrem(keys.geoVehicles(), members);
+                redisClient.zrem(keys.geoSeen(), members);
+                redisClient.hdel(keys.geoRoute(), members);
+            }
+    
             log.info("Cleared {} cache keys for route: {}", totalDeleted, routeId);
         } catch (Exception e) {
             log.error("Failed to clear cache for route: {}", routeId, e);
@@ -231,12 +247,14 @@ public class AdminService {
     public Map<String, Object> getSystemStats() {
         Map<String, Object> stats = new HashMap<>();
         
-        try (Jedis jedis = jedisPool.getResource()) {
+        try {
             // Redis stats
             Map<String, Object> redisStats = new HashMap<>();
-            redisStats.put("vehicleKeys", countKeysByPattern(jedis, "veh:*"));
-            redisStats.put("routeKeys", countKeysByPattern(jedis, "route:*:vehicles"));
-            redisStats.put("totalKeys", jedis.dbSize());
+            redisStats.put("vehicleKeys", countKeysByPattern("veh:*"));
+            redisStats.put("routeKeys", countKeysByPattern(keys.routeVehiclesPattern()));
+            redisStats.put("routeSetSizes", routeSetSizes());
+            // DBSIZE is per node; in cluster mode count keys across all masters instead
+            redisStats.put("totalKeys", keys.isHashTagged() ? countKeysByPattern("*") : redisClient.dbSize());
             stats.put("redis", redisStats);
             
             // SSE stats
@@ -257,37 +275,49 @@ public class AdminService {
     
     /**
      * Delete keys matching a pattern using SCAN (safe for production)
+     * In cluster mode the scan walks every master in turn.
      */
-    private int deleteKeysByPattern(Jedis jedis, String pattern) {
+    private int deleteKeysByPattern(String pattern) {
         int deleted = 0;
-        String cursor = "0";
-        ScanParams scanParams = new ScanParams().match(pattern).count(100);
+        JedisCommandIterationBase<ScanResult<String>, String> scan = redisClient.scanIteration(100, pattern);
         
-        do {
-            ScanResult<String> scanResult = jedis.scan(cursor, scanParams);
-            for (String key : scanResult.getResult()) {
-                jedis.del(key);
+        while (!scan.isIterationCompleted()) {
+            for (String key : scan.nextBatch().getResult()) {
+                redisClient.del(key);
                 deleted++;
             }
-            cursor = scanResult.getCursor();
-        } while (!"0".equals(cursor));
+        }
         
         return deleted;
     }
     
+    /**
+     * Member count of every route:{routeId}:vehicles set, keyed by routeId
+     */
+    private Map<String, Long> routeSetSizes() {
+        Map<String, Long> sizes = new TreeMap<>();
+        JedisCommandIterationBase<ScanResult<String>, String> scan =
+            redisClient.scanIteration(100, keys.routeVehiclesPattern());
+        
+        while (!scan.isIterationCompleted()) {
+            for (String key : scan.nextBatch().getResult()) {
+                sizes.put(keys.routeIdOf(key), redisClient.zcard(key));
+            }
+        }
+        
+        return sizes;
+    }
+    
     /**
      * Count keys matching a pattern using SCAN
      */
-    private long countKeysByPattern(Jedis jedis, String pattern) {
+    private long countKeysByPattern(String pattern) {
         long count = 0;
-        String cursor = "0";
-        ScanParams scanParams = new ScanParams().match(pattern).count(100);
+        JedisCommandIterationBase<ScanResult<String>, String> scan = redisClient.scanIteration(100, pattern);
         
-        do {
-            ScanResult<String> scanResult = jedis.scan(cursor, scanParams);
-            count += scanResult.getResult().size();
-            cursor = scanResult.getCursor();
-        } while (!"0".equals(cursor));
+        while (!scan.isIterationCompleted()) {
+            count += scan.nextBatch().getResult().size();
+        }
         
         return count;
     }
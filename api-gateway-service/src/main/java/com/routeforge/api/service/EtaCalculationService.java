@@ -2,6 +2,7 @@ package com.routeforge.api.service;
 
 import com.routeforge.api.dto.EtaPrediction;
 import com.routeforge.common.dto.VehicleResponse;
+import com.routeforge.common.util.GeoUtils;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
@@ -16,7 +17,7 @@ import java.util.Map;
 
 /**
  * ETA calculation service using historical data and current positions
- * Implements simple moving average for segment speed prediction
+ * Historical speed comes from the per-route speed rollups, not raw history rows
  */
 @Slf4j
 @Service
@@ -102,10 +103,10 @@ public class EtaCalculationService {
             String routeId) {
         
         // Calculate distance from current position to stop
-        double distanceKm = calculateHaversineDistance(
+        double distanceKm = GeoUtils.distanceMeters(
             vehicle.getLat(), vehicle.getLon(),
             stopLat, stopLon
-        );
+        ) / 1000.0;
         
         // Get historical average speed for this route segment
         Double avgSpeedKph = getHistoricalAverageSpeed(routeId);
@@ -147,18 +148,16 @@ public class EtaCalculationService {
     }
     
     /**
-     * Get historical average speed for a route from last hour of data
+     * Get historical average speed for a route from the last hour of speed rollups
+     * (count-weighted mean of the per-minute windows written by processing-service)
      */
     private Double getHistoricalAverageSpeed(String routeId) {
         try {
-            // Fixed: Use INTERVAL multiplication for proper parameterization
             String sql = """
-                SELECT AVG(speed_kph) as avg_speed
-                FROM vehicle_positions_history
+                SELECT SUM(mean_kph * sample_count) / NULLIF(SUM(sample_count), 0) as avg_speed
+                FROM route_speed_rollups
                 WHERE route_id = ?
-                  AND speed_kph IS NOT NULL
-                  AND speed_kph > 0
-                  AND recorded_at > NOW() - INTERVAL '1 minute' * ?
+                  AND window_start > NOW() - INTERVAL '1 minute' * ?
                 """;
             
             Double avgSpeed = jdbcTemplate.queryForObject(
@@ -178,17 +177,15 @@ public class EtaCalculationService {
     }
     
     /**
-     * Get count of historical samples for confidence calculation
+     * Get count of historical speed samples behind the rollups, for confidence calculation
      */
     private int getHistoricalSampleCount(String routeId) {
         try {
-            // Fixed: Use INTERVAL multiplication for proper parameterization
             String sql = """
-                SELECT COUNT(*) 
-                FROM vehicle_positions_history
+                SELECT COALESCE(SUM(sample_count), 0)
+                FROM route_speed_rollups
                 WHERE route_id = ?
-                  AND speed_kph IS NOT NULL
-                  AND recorded_at > NOW() - INTERVAL '1 minute' * ?
+                  AND window_start > NOW() - INTERVAL '1 minute' * ?
                 """;
             
             Integer count = jdbcTemplate.queryForObject(
@@ -233,22 +230,4 @@ public class EtaCalculationService {
         
         return Math.min(1.0, sampleConfidence + speedBoost);
     }
-    
-    /**
-     * Calculate Haversine distance between two points in kilometers
-     */
-    private double calculateHaversineDistance(double lat1, double lon1, double lat2, double lon2) {
-        final double R = 6371.0; // Earth radius in kilometers
-        
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLon = Math.toRadians(lon2 - lon1);
-        
-        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
-                   Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
-                   Math.sin(dLon / 2) * Math.sin(dLon / 2);
-        
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        
-        return R * c;
-    }
 }
@@ -0,0 +1,115 @@
+package com.routeforge.api.service;
+
+import com.routeforge.api.dto.HistoryStats;
+import com.routeforge.common.util.AggregateResolution;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Time-range statistics for routes and vehicles from the history aggregates
+ * Each query reads the coarsest resolution (1 hour, 15 minutes, 1 minute) whose buckets
+ * tile the requested range and step exactly, so a day in hourly steps reads 24 rows
+ * instead of 1,440 minute rows or the raw positions. Ranges not on minute boundaries are
+ * widened to whole minutes.
+ */
+@Slf4j
+@Service
+public class HistoryStatsService {
+    
+    static final int MAX_BUCKETS = 2000;
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<AggregateResolution, Counter> queriesByResolution = new EnumMap<>(AggregateResolution.class);
+    
+    public HistoryStatsService(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        for (AggregateResolution resolution : AggregateResolution.values()) {
+            queriesByResolution.put(resolution, Counter.builder("routeforge.api.history.stats.queries")
+                .description("History statistics queries by the aggregate resolution they were served from")
+                .tag("resolution", resolution.seconds() + "s")
+                .register(meterRegistry));
+        }
+    }
+    
+    public HistoryStats getRouteStats(String routeId, Instant from, Instant to, Duration step) {
+        return query("route_history_aggregates", "route_id", routeId, from, to, step);
+    }
+    
+    public HistoryStats getVehicleStats(String vehicleId, Instant from, Instant to, Duration step) {
+        return query("vehicle_history_aggregates", "vehicle_id", vehicleId, from, to, step);
+    }
+    
+    /**
+     * @param step bucket size of the result; null returns the chosen resolution's own buckets
+     */
+    private HistoryStats query(String table, String keyColumn, String id, Instant from, Instant to, Duration step) {
+        long minuteMs = AggregateResolution.MINUTE.millis();
+        long fromMs = AggregateResolution.MINUTE.bucketStart(from.toEpochMilli());
+        long toMs = -Math.floorDiv(-to.toEpochMilli(), minuteMs) * minuteMs;
+        if (toMs <= fromMs) {
+            throw new IllegalArgumentException("'from' must be before 'to'");
+        }
+        if (step != null && (step.toMillis() < minuteMs || step.toMillis() % minuteMs != 0)) {
+            throw new IllegalArgumentException("'step' must be a whole number of minutes");
+        }
+        
+        AggregateResolution resolution = AggregateResolution.coarsestFor(
+            fromMs, toMs, step != null ? step.toMillis() : toMs - fromMs);
+        long stepMs = step != null ? step.toMillis() : resolution.millis();
+        long bucketCount = -Math.floorDiv(-(toMs - fromMs), stepMs);
+        if (bucketCount > MAX_BUCKETS) {
+            throw new IllegalArgumentException(
+                "Range has " + bucketCount + " steps (max " + MAX_BUCKETS + "); use a larger 'step'");
+        }
+        queriesByResolution.get(resolution).increment();
+        log.debug("Stats for {} {} over [{}, {}) in {}s steps from {}s aggregates",
+            keyColumn, id, Instant.ofEpochMilli(fromMs), Instant.ofEpochMilli(toMs), stepMs / 1000, resolution.seconds());
+        
+        String sql = """
+            SELECT date_bin(make_interval(secs => ?), bucket_start, ?) AS step_start,
+                   SUM(sample_count) AS sample_count,
+                   SUM(speed_sum_kph) / NULLIF(SUM(speed_samples), 0) AS avg_speed_kph,
+                   MAX(max_speed_kph) AS max_speed_kph,
+                   SUM(delay_sum_sec)::DOUBLE PRECISION / NULLIF(SUM(delay_samples), 0) AS avg_delay_sec,
+                   SUM(distance_m) AS distance_m
+            FROM %s
+            WHERE %s = ?
+              AND resolution_seconds = ?
+              AND bucket_start >= ?
+              AND bucket_start < ?
+            GROUP BY step_start
+            ORDER BY step_start
+            """.formatted(table, keyColumn);
+        
+        Timestamp origin = new Timestamp(fromMs);
+        List<HistoryStats.Bucket> buckets = jdbcTemplate.query(sql,
+            (rs, rowNum) -> HistoryStats.Bucket.builder()
+                .start(rs.getTimestamp("step_start").toInstant())
+                .sampleCount(rs.getLong("sample_count"))
+                .avgSpeedKph(rs.getObject("avg_speed_kph", Double.class))
+                .maxSpeedKph(rs.getObject("max_speed_kph", Double.class))
+                .avgDelaySec(rs.getObject("avg_delay_sec", Double.class))
+                .distanceM(rs.getDouble("distance_m"))
+                .build(),
+            stepMs / 1000, origin, id, resolution.seconds(), origin, new Timestamp(toMs));
+        
+        return HistoryStats.builder()
+            .id(id)
+            .from(Instant.ofEpochMilli(fromMs))
+            .to(Instant.ofEpochMilli(toMs))
+            .stepSeconds(stepMs / 1000)
+            .resolutionSeconds(resolution.seconds())
+            .buckets(buckets)
+            .build();
+    }
+}
@@ -2,11 +2,16 @@ package com.routeforge.api.service;
 
 import com.routeforge.api.config.RedisProperties;
 import com.routeforge.common.dto.VehicleResponse;
+import com.routeforge.common.util.RedisKeys;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.AbstractPipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.args.GeoUnit;
+import redis.clients.jedis.params.GeoSearchParam;
+import redis.clients.jedis.resps.GeoRadiusResponse;
 
 import java.time.Instant;
 import java.util.*;
@@ -20,15 +25,19 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class VehicleService {
     
-    private final JedisPool jedisPool;
+    private static final int MAX_NEARBY_LIMIT = 500;
+    private static final double MAX_SEARCH_DISTANCE_M = 50_000;
+    
+    private final UnifiedJedis redisClient;
+    private final RedisKeys keys;
+    private final RedisProperties redisProperties;
     
     /**
      * Get vehicle position by vehicleId from Redis
      */
     public Optional<VehicleResponse> getVehicleById(String vehicleId) {
-        try (Jedis jedis = jedisPool.getResource()) {
-            String key = "veh:" + vehicleId;
-            Map<String, String> fields = jedis.hgetAll(key);
+        try {
+            Map<String, String> fields = redisClient.hgetAll(keys.vehicle(vehicleId));
             
             if (fields.isEmpty()) {
                 log.debug("Vehicle not found in cache: {}", vehicleId);
@@ -45,23 +54,23 @@ public class VehicleService {
     
     /**
      * Get all vehicles for a route from Redis
+     * Only members seen within the freshness window are read, so vehicles that left
+     * service are skipped without touching their (expired) hashes.
      */
     public List<VehicleResponse> getVehiclesByRoute(String routeId) {
-        try (Jedis jedis = jedisPool.getResource()) {
-            String routeKey = "route:" + routeId + ":vehicles";
+        try {
+            String routeKey = keys.routeVehicles(routeId);
+            long freshSince = System.currentTimeMillis() - redisProperties.getVehicleFreshnessSec() * 1000L;
             
-            // Get vehicle IDs from sorted set (most recent first)
-            List<String> vehicleIds = jedis.zrevrange(routeKey, 0, -1);
+            // Get fresh vehicle IDs from sorted set (most recent first)
+            List<String> vehicleIds = redisClient.zrevrangeByScore(routeKey, Double.POSITIVE_INFINITY, freshSince);
             
             if (vehicleIds.isEmpty()) {
                 log.debug("No vehicles found for route: {}", routeId);
                 return List.of();
             }
             
-            List<VehicleResponse> vehicles = new ArrayList<>();
-            for (String vehicleId : vehicleIds) {
-                getVehicleById(vehicleId).ifPresent(vehicles::add);
-            }
+            List<VehicleResponse> vehicles = fetchVehicles(vehicleIds);
             
             log.debug("Found {} vehicles for route: {}", vehicles.size(), routeId);
             return vehicles;
@@ -72,6 +81,84 @@ public class VehicleService {
         }
     }
     
+    /**
+     * Find live vehicles near a point, nearest first
+     * Searches a radius when radiusM is given, otherwise a widthM x heightM box centred on the point.
+     * Reads geo:vehicles, or geo:route:{routeId}:vehicles when a route is given.
+     */
+    public List<VehicleResponse> findNearbyVehicles(
+            double lat, double lon, Double radiusM, Double widthM, Double heightM,
+            String routeId, int limit) {
+        GeoSearchParam search = buildGeoSearch(lat, lon, radiusM, widthM, heightM, limit);
+        String geoKey = routeId != null ? keys.routeGeo(routeId) : keys.geoVehicles();
+        
+        try {
+            List<String> vehicleIds = redisClient.geosearch(geoKey, search).stream()
+                .map(GeoRadiusResponse::getMemberByString)
+                .collect(Collectors.toList());
+            
+            List<VehicleResponse> vehicles = fetchVehicles(vehicleIds);
+            log.debug("Found {} vehicles near ({}, {})", vehicles.size(), lat, lon);
+            return vehicles;
+            
+        } catch (Exception e) {
+            log.error("Failed to search vehicles near ({}, {})", lat, lon, e);
+            return List.of();
+        }
+    }
+    
+    private GeoSearchParam buildGeoSearch(
+            double lat, double lon, Double radiusM, Double widthM, Double heightM, int limit) {
+        if (lat < -90 || lat > 90 || lon < -180 || lon > 180) {
+            throw new IllegalArgumentException("Invalid coordinates: lat=" + lat + ", lon=" + lon);
+        }
+        if (limit <= 0 || limit > MAX_NEARBY_LIMIT) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_NEARBY_LIMIT);
+        }
+        
+        GeoSearchParam search = GeoSearchParam.geoSearchParam().fromLonLat(lon, lat);
+        if (radiusM != null) {
+            if (radiusM <= 0 || radiusM > MAX_SEARCH_DISTANCE_M) {
+                throw new IllegalArgumentException("radiusM must be between 0 and " + MAX_SEARCH_DISTANCE_M);
+            }
+            search.byRadius(radiusM, GeoUnit.M);
+        } else if (widthM != null && heightM != null) {
+            if (widthM <= 0 || heightM <= 0 || widthM > MAX_SEARCH_DISTANCE_M || heightM > MAX_SEARCH_DISTANCE_M) {
+                throw new IllegalArgumentException("widthM and heightM must be between 0 and " + MAX_SEARCH_DISTANCE_M);
+            }
+            search.byBox(widthM, heightM, GeoUnit.M);
+        } else {
+            throw new IllegalArgumentException("Either radiusM or both widthM and heightM are required");
+        }
+        return search.asc().count(limit);
+    }
+    
+    /**
+     * Load vehicle hashes in one round trip, skipping members whose hash has expired
+     * In cluster mode the pipeline is split by slot owner, one round trip per node in parallel.
+     */
+    private List<VehicleResponse> fetchVehicles(List<String> vehicleIds) {
+        if (vehicleIds.isEmpty()) {
+            return List.of();
+        }
+        
+        List<Response<Map<String, String>>> responses = new ArrayList<>(vehicleIds.size());
+        try (AbstractPipeline pipeline = redisClient.pipelined()) {
+            for (String vehicleId : vehicleIds) {
+                responses.add(pipeline.hgetAll(keys.vehicle(vehicleId)));
+            }
+        }
+        
+        List<VehicleResponse> vehicles = new ArrayList<>(vehicleIds.size());
+        for (Response<Map<String, String>> response : responses) {
+            Map<String, String> fields = response.get();
+            if (!fields.isEmpty()) {
+                vehicles.add(mapToVehicleResponse(fields));
+            }
+        }
+        return vehicles;
+    }
+    
     private VehicleResponse mapToVehicleResponse(Map<String, String> fields) {
     String latStr = fields.get("lat");
     String lonStr = fields.get("lon");
@@ -0,0 +1,192 @@
+package com.routeforge.api.sse;
+
+import com.routeforge.api.config.RedisProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.StreamEntryID;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.params.XReadParams;
+import redis.clients.jedis.resps.StreamEntry;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redis Streams subscriber that reads route update notifications and fans them out to SSE clients
+ * Reads the capped updates stream with blocking XREAD from the last delivered entry ID, so a
+ * reconnect or pause resumes where it left off. If the reader fell so far behind that MAXLEN
+ * trimmed entries it had not read yet, those updates are lost: the gap is counted and logged,
+ * and subscribed routes are resynced from the current vehicle snapshot in the cache.
+ * Every gateway instance reads the whole stream (fan-out), so no consumer group is used.
+ * Active for update-fanout stream and both: when the processing service writes both, the stream is preferred.
+ */
+@Slf4j
+@Service
+@ConditionalOnExpression("!'${routeforge.redis.update-fanout:both}'.equalsIgnoreCase('pubsub')")
+public class RedisStreamSubscriberService {
+    
+    private static final long RECONNECT_BACKOFF_MS = 1000;
+    
+    private final UnifiedJedis redisClient;
+    private final RouteUpdateDispatcher dispatcher;
+    private final RedisProperties redisProperties;
+    private final Counter entriesRead;
+    private final Counter readErrors;
+    private final Counter gaps;
+    
+    private ExecutorService executorService;
+    private volatile boolean running;
+    private volatile StreamEntryID lastId;
+    
+    public RedisStreamSubscriberService(
+            UnifiedJedis redisClient,
+            RouteUpdateDispatcher dispatcher,
+            RedisProperties redisProperties,
+            MeterRegistry meterRegistry) {
+        this.redisClient = redisClient;
+        this.dispatcher = dispatcher;
+        this.redisProperties = redisProperties;
+        this.entriesRead = Counter.builder("routeforge.sse.stream.entries")
+            .description("Route update entries read from the Redis stream")
+            .register(meterRegistry);
+        this.readErrors = Counter.builder("routeforge.sse.stream.errors")
+            .description("Redis stream read failures (followed by a resume from the last entry)")
+            .register(meterRegistry);
+        this.gaps = Counter.builder("routeforge.sse.stream.gaps")
+            .description("Times unread stream entries were trimmed away, followed by a snapshot resync")
+            .register(meterRegistry);
+    }
+    
+    @PostConstruct
+    public void start() {
+        running = true;
+        executorService = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "redis-stream-subscriber");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executorService.submit(this::readLoop);
+    }
+    
+    private void readLoop() {
+        String streamKey = redisProperties.getUpdatesStreamKey();
+        log.info("Starting Redis stream subscriber for {}", streamKey);
+        
+        while (running) {
+            try {
+                if (lastId == null) {
+                    lastId = currentLastId(streamKey);
+                    log.info("Reading {} after entry {}", streamKey, lastId);
+                }
+                
+                XReadParams params = XReadParams.xReadParams()
+                    .block(redisProperties.getStreamBlockMs())
+                    .count(redisProperties.getStreamReadCount());
+                
+                // Trimming can only overtake a reader that is behind: after a failure or a full batch
+                boolean behind = true;
+                while (running) {
+                    if (behind) {
+                        lastId = resyncIfTrimmed(streamKey, lastId);
+                    }
+                    
+                    List<Map.Entry<String, List<StreamEntry>>> result =
+                        redisClient.xread(params, Map.of(streamKey, lastId));
+                    if (result == null) {
+                        behind = false;
+                        continue; // block timed out
+                    }
+                    
+                    int read = 0;
+                    for (Map.Entry<String, List<StreamEntry>> stream : result) {
+                        for (StreamEntry entry : stream.getValue()) {
+                            String payload = entry.getFields().get("payload");
+                            if (payload != null) {
+                                dispatcher.dispatch(streamKey + "/" + entry.getID(), payload);
+                            }
+                            lastId = entry.getID();
+                            entriesRead.increment();
+                            read++;
+                        }
+                    }
+                    behind = read >= redisProperties.getStreamReadCount();
+                }
+                
+            } catch (Exception e) {
+                if (!running) {
+                    break;
+                }
+                readErrors.increment();
+                log.error("Redis stream read failed, resuming after {} in {} ms", lastId, RECONNECT_BACKOFF_MS, e);
+                sleepQuietly(RECONNECT_BACKOFF_MS);
+            }
+        }
+        
+        log.info("Redis stream subscriber stopped at entry {}", lastId);
+    }
+    
+    /**
+     * Resync subscribed routes if the last delivered entry has been trimmed from the stream
+     * MAXLEN trims from the oldest end, so while the last delivered entry is still there nothing
+     * after it is missing. Once it is gone, newer entries may have been trimmed unread: every
+     * subscribed route gets the cached snapshot, and reading continues after the entry that was
+     * newest before the snapshot was taken.
+     * @return entry ID to read after: lastId, or the newest entry after a resync
+     */
+    StreamEntryID resyncIfTrimmed(String streamKey, StreamEntryID lastId) {
+        if (lastId.equals(new StreamEntryID())) {
+            return lastId;
+        }
+        List<StreamEntry> oldest = redisClient.xrange(streamKey, "-", "+", 1);
+        if (oldest.isEmpty() || oldest.get(0).getID().compareTo(lastId) <= 0) {
+            return lastId;
+        }
+        
+        StreamEntryID resumeAfter = currentLastId(streamKey);
+        gaps.increment();
+        log.warn("Stream {} was trimmed past entry {} (oldest is now {}), resyncing routes and resuming after {}",
+            streamKey, lastId, oldest.get(0).getID(), resumeAfter);
+        dispatcher.resyncSubscribedRoutes();
+        return resumeAfter;
+    }
+    
+    /**
+     * ID of the newest entry, so a fresh instance only sees updates from now on
+     */
+    private StreamEntryID currentLastId(String streamKey) {
+        List<StreamEntry> newest = redisClient.xrevrange(streamKey, "+", "-", 1);
+        return newest.isEmpty() ? new StreamEntryID() : newest.get(0).getID();
+    }
+    
+    private void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+    
+    @PreDestroy
+    public void stop() {
+        log.info("Stopping Redis stream subscriber");
+        running = false;
+        
+        if (executorService != null) {
+            executorService.shutdown();
+            try {
+                executorService.awaitTermination(redisProperties.getStreamBlockMs() * 2L, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -1,35 +1,31 @@
 package com.routeforge.api.sse;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.routeforge.api.service.VehicleService;
-import com.routeforge.common.dto.VehicleResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
-import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.UnifiedJedis;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
-import java.util.Map;
-import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 /**
  * Redis Pub/Sub subscriber that receives vehicle update notifications
  * and fans them out to SSE clients
+ * Active only when routeforge.redis.update-fanout=pubsub (both prefers the stream);
+ * updates sent while disconnected are lost.
  */
 @Slf4j
 @Service
+@ConditionalOnProperty(prefix = "routeforge.redis", name = "update-fanout", havingValue = "pubsub")
 @RequiredArgsConstructor
 public class RedisSubscriberService {
     
-    private final JedisPool jedisPool;
-    private final ObjectMapper objectMapper;
-    private final SseEmitterManager emitterManager;
-    private final VehicleService vehicleService;
+    private final UnifiedJedis redisClient;
+    private final RouteUpdateDispatcher dispatcher;
     
     private ExecutorService executorService;
     private JedisPubSub subscriber;
@@ -49,7 +45,7 @@ public class RedisSubscriberService {
         subscriber = new JedisPubSub() {
             @Override
             public void onPMessage(String pattern, String channel, String message) {
-                handleUpdateNotification(channel, message);
+                dispatcher.dispatch(channel, message);
             }
             
             @Override
@@ -65,50 +61,16 @@ public class RedisSubscriberService {
         
         // Subscribe in background thread
         executorService.submit(() -> {
-            try (Jedis jedis = jedisPool.getResource()) {
+            try {
                 log.info("Starting Redis Pub/Sub subscriber for route:*:updates");
-                // Pattern subscribe to all route update channels
-                jedis.psubscribe(subscriber, "route:*:updates");
+                // Pattern subscribe to all route update channels (in a cluster, any node sees every PUBLISH)
+                redisClient.psubscribe(subscriber, "route:*:updates");
             } catch (Exception e) {
                 log.error("Redis Pub/Sub subscriber error", e);
             }
         });
     }
     
-    /**
-     * Handle incoming update notification
-     */
-    private void handleUpdateNotification(String channel, String message) {
-        try {
-            // Parse notification: {routeId, vehicleId, updatedAt}
-            @SuppressWarnings("unchecked")
-            Map<String, Object> notification = objectMapper.readValue(message, Map.class);
-            
-            String routeId = (String) notification.get("routeId");
-            String vehicleId = (String) notification.get("vehicleId");
-            
-            if (routeId == null || vehicleId == null) {
-                log.warn("Invalid notification received: {}", message);
-                return;
-            }
-            
-            log.debug("Received update notification for route: {}, vehicle: {}", routeId, vehicleId);
-            
-            // Fetch fresh vehicle data from Redis
-            Optional<VehicleResponse> vehicleData = vehicleService.getVehicleById(vehicleId);
-            
-            if (vehicleData.isPresent()) {
-                // Fan out to all SSE subscribers of this route
-                emitterManager.sendToRoute(routeId, vehicleData.get());
-            } else {
-                log.warn("Vehicle data not found in cache for vehicle: {}", vehicleId);
-            }
-            
-        } catch (Exception e) {
-            log.error("Failed to handle update notification from channel: {}", channel, e);
-        }
-    }
-    
     /**
      * Stop subscriber on shutdown
      */
@@ -0,0 +1,101 @@
+package com.routeforge.api.sse;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.routeforge.api.service.VehicleService;
+import com.routeforge.common.dto.RouteUpdateNotification;
+import com.routeforge.common.dto.VehicleResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Decodes route update notifications and fans them out to SSE clients
+ * Shared by the Pub/Sub and Streams subscribers.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RouteUpdateDispatcher {
+    
+    private final ObjectMapper objectMapper;
+    private final SseEmitterManager emitterManager;
+    private final VehicleService vehicleService;
+    
+    /**
+     * Handle incoming update notification
+     * Current publishers send {@link RouteUpdateNotification} with the vehicle states;
+     * the legacy {routeId, vehicleId, updatedAt} format is still accepted and read back from Redis.
+     */
+    public void dispatch(String source, String message) {
+        try {
+            JsonNode notification = objectMapper.readTree(message);
+            
+            if (notification.has("vehicles")) {
+                handleRouteUpdate(objectMapper.treeToValue(notification, RouteUpdateNotification.class));
+            } else {
+                handleLegacyNotification(notification, message);
+            }
+            
+        } catch (Exception e) {
+            log.error("Failed to handle update notification from: {}", source, e);
+        }
+    }
+    
+    /**
+     * Send every subscribed route the current state of its vehicles from the cache
+     * Used when updates were lost in transit, so clients catch up instead of keeping stale positions.
+     * @return number of routes resynced
+     */
+    public int resyncSubscribedRoutes() {
+        int routes = 0;
+        for (String routeId : emitterManager.getActiveRouteIds()) {
+            List<VehicleResponse> vehicles = vehicleService.getVehiclesByRoute(routeId);
+            for (VehicleResponse vehicle : vehicles) {
+                emitterManager.sendToRoute(routeId, vehicle);
+            }
+            routes++;
+        }
+        log.info("Resynced {} subscribed routes from the vehicle cache", routes);
+        return routes;
+    }
+    
+    private void handleRouteUpdate(RouteUpdateNotification notification) {
+        String routeId = notification.getRouteId();
+        if (routeId == null || notification.getVehicles() == null) {
+            log.warn("Invalid route update received for route: {}", routeId);
+            return;
+        }
+        
+        log.debug("Received update for route: {} with {} vehicles", routeId, notification.getVehicles().size());
+        
+        // Fan out to all SSE subscribers of this route
+        for (VehicleResponse vehicle : notification.getVehicles()) {
+            emitterManager.sendToRoute(routeId, vehicle);
+        }
+    }
+    
+    private void handleLegacyNotification(JsonNode notification, String message) {
+        String routeId = notification.path("routeId").asText(null);
+        String vehicleId = notification.path("vehicleId").asText(null);
+        
+        if (routeId == null || vehicleId == null) {
+            log.warn("Invalid notification received: {}", message);
+            return;
+        }
+        
+        log.debug("Received update notification for route: {}, vehicle: {}", routeId, vehicleId);
+        
+        // Fetch fresh vehicle data from Redis
+        Optional<VehicleResponse> vehicleData = vehicleService.getVehicleById(vehicleId);
+        
+        if (vehicleData.isPresent()) {
+            emitterManager.sendToRoute(routeId, vehicleData.get());
+        } else {
+            log.warn("Vehicle data not found in cache for vehicle: {}", vehicleId);
+        }
+    }
+}
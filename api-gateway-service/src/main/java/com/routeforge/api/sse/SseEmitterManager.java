@@ -171,6 +171,13 @@ public class SseEmitterManager {
             .sum();
     }
     
+    /**
+     * IDs of routes with active subscriptions
+     */
+    public Set<String> getActiveRouteIds() {
+        return Set.copyOf(routeEmitters.keySet());
+    }
+    
     /**
      * Get number of routes with active subscriptions
      */
@@ -15,8 +15,7 @@ import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 import org.testcontainers.utility.DockerImageName;
-import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.UnifiedJedis;
 
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -47,7 +46,7 @@ class AdminEndpointIntegrationTest {
     private MockMvc mockMvc;
     
     @Autowired
-    private JedisPool jedisPool;
+    private UnifiedJedis jedis;
     
     @DynamicPropertySource
     static void configureProperties(DynamicPropertyRegistry registry) {
@@ -65,13 +64,11 @@ class AdminEndpointIntegrationTest {
     @BeforeEach
     void setUp() {
         // Populate Redis with test data
-        try (Jedis jedis = jedisPool.getResource()) {
-            jedis.flushAll();
-            jedis.set("veh:1001", "{\"vehicleId\":\"1001\"}");
-            jedis.set("veh:1002", "{\"vehicleId\":\"1002\"}");
-            jedis.zadd("route:R1:vehicles", System.currentTimeMillis(), "1001");
-            jedis.zadd("route:R1:vehicles", System.currentTimeMillis(), "1002");
-        }
+        jedis.flushAll();
+        jedis.set("veh:1001", "{\"vehicleId\":\"1001\"}");
+        jedis.set("veh:1002", "{\"vehicleId\":\"1002\"}");
+        jedis.zadd("route:R1:vehicles", System.currentTimeMillis(), "1001");
+        jedis.zadd("route:R1:vehicles", System.currentTimeMillis(), "1002");
     }
     
     @Test
@@ -85,10 +82,8 @@ class AdminEndpointIntegrationTest {
             .andExpect(jsonPath("$.message").value("Cache cleared successfully"));
         
         // Verify keys are deleted
-        try (Jedis jedis = jedisPool.getResource()) {
-            assert jedis.keys("veh:*").isEmpty();
-            assert jedis.keys("route:*").isEmpty();
-        }
+        assert jedis.keys("veh:*").isEmpty();
+        assert jedis.keys("route:*").isEmpty();
     }
     
     @Test
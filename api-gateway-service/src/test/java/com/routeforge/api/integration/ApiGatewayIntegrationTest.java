@@ -16,8 +16,7 @@ import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 import org.testcontainers.utility.DockerImageName;
-import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.UnifiedJedis;
 
 import java.util.HashMap;
 import java.util.List;
@@ -61,7 +60,7 @@ class ApiGatewayIntegrationTest {
     private TestRestTemplate restTemplate;
     
     @Autowired
-    private JedisPool jedisPool;
+    private UnifiedJedis jedis;
     
     @Test
     void testHealthEndpoint() {
@@ -96,17 +95,15 @@ class ApiGatewayIntegrationTest {
     void testGetVehicleById_Found() {
         // Given: Vehicle data in Redis
         String vehicleId = "TEST_VEHICLE_001";
-        try (Jedis jedis = jedisPool.getResource()) {
-            Map<String, String> vehicleData = new HashMap<>();
-            vehicleData.put("vehicleId", vehicleId);
-            vehicleData.put("routeId", "1");
-            vehicleData.put("lat", "40.7128");
-            vehicleData.put("lon", "-74.0060");
-            vehicleData.put("speedKph", "25.5");
-            vehicleData.put("tsEpochMs", String.valueOf(System.currentTimeMillis()));
-            
-            jedis.hset("veh:" + vehicleId, vehicleData);
-        }
+        Map<String, String> vehicleData = new HashMap<>();
+        vehicleData.put("vehicleId", vehicleId);
+        vehicleData.put("routeId", "1");
+        vehicleData.put("lat", "40.7128");
+        vehicleData.put("lon", "-74.0060");
+        vehicleData.put("speedKph", "25.5");
+        vehicleData.put("tsEpochMs", String.valueOf(System.currentTimeMillis()));
+        
+        jedis.hset("veh:" + vehicleId, vehicleData);
         
         // When
         ResponseEntity<VehicleResponse> response = restTemplate.getForEntity(
@@ -141,30 +138,28 @@ class ApiGatewayIntegrationTest {
         // Given: Multiple vehicles for route
         String routeId = "TEST_ROUTE_1";
         
-        try (Jedis jedis = jedisPool.getResource()) {
-            // Add vehicles to route sorted set
-            jedis.zadd("route:" + routeId + ":vehicles", 
-                System.currentTimeMillis(), "TEST_V1");
-            jedis.zadd("route:" + routeId + ":vehicles", 
-                System.currentTimeMillis() + 1000, "TEST_V2");
-            
-            // Add vehicle data
-            Map<String, String> v1 = new HashMap<>();
-            v1.put("vehicleId", "TEST_V1");
-            v1.put("routeId", routeId);
-            v1.put("lat", "40.7128");
-            v1.put("lon", "-74.0060");
-            v1.put("tsEpochMs", String.valueOf(System.currentTimeMillis()));
-            jedis.hset("veh:TEST_V1", v1);
-            
-            Map<String, String> v2 = new HashMap<>();
-            v2.put("vehicleId", "TEST_V2");
-            v2.put("routeId", routeId);
-            v2.put("lat", "40.7589");
-            v2.put("lon", "-73.9851");
-            v2.put("tsEpochMs", String.valueOf(System.currentTimeMillis()));
-            jedis.hset("veh:TEST_V2", v2);
-        }
+        // Add vehicles to route sorted set
+        jedis.zadd("route:" + routeId + ":vehicles", 
+            System.currentTimeMillis(), "TEST_V1");
+        jedis.zadd("route:" + routeId + ":vehicles", 
+            System.currentTimeMillis() + 1000, "TEST_V2");
+        
+        // Add vehicle data
+        Map<String, String> v1 = new HashMap<>();
+        v1.put("vehicleId", "TEST_V1");
+        v1.put("routeId", routeId);
+        v1.put("lat", "40.7128");
+        v1.put("lon", "-74.0060");
+        v1.put("tsEpochMs", String.valueOf(System.currentTimeMillis()));
+        jedis.hset("veh:TEST_V1", v1);
+        
+        Map<String, String> v2 = new HashMap<>();
+        v2.put("vehicleId", "TEST_V2");
+        v2.put("routeId", routeId);
+        v2.put("lat", "40.7589");
+        v2.put("lon", "-73.9851");
+        v2.put("tsEpochMs", String.valueOf(System.currentTimeMillis()));
+        jedis.hset("veh:TEST_V2", v2);
         
         // When
         ResponseEntity<List<VehicleResponse>> response = restTemplate.exchange(
@@ -17,8 +17,7 @@ import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 import org.testcontainers.utility.DockerImageName;
-import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.UnifiedJedis;
 
 import java.util.List;
 import java.util.Map;
@@ -55,7 +54,7 @@ class SseStreamingIntegrationTest {
     private VehicleService vehicleService;
     
     @Autowired
-    private JedisPool jedisPool;
+    private UnifiedJedis jedis;
     
     private MockMvc mockMvc;
     
@@ -76,9 +75,7 @@ class SseStreamingIntegrationTest {
         mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
         
         // Clear Redis
-        try (Jedis jedis = jedisPool.getResource()) {
-            jedis.flushAll();
-        }
+        jedis.flushAll();
     }
     
     @Test
@@ -120,10 +117,8 @@ class SseStreamingIntegrationTest {
     @Test
     void sseStream_shouldReceiveVehicleUpdates() throws Exception {
         // Pre-populate Redis with vehicle data
-        try (Jedis jedis = jedisPool.getResource()) {
-            jedis.zadd("route:R1:vehicles", System.currentTimeMillis(), "V1001");
-            jedis.set("veh:V1001", "{\"vehicleId\":\"V1001\",\"lat\":40.7128,\"lon\":-74.0060}");
-        }
+        jedis.zadd("route:R1:vehicles", System.currentTimeMillis(), "V1001");
+        jedis.set("veh:V1001", "{\"vehicleId\":\"V1001\",\"lat\":40.7128,\"lon\":-74.0060}");
         
         mockMvc.perform(get("/api/stream/routes/R1"))
             .andExpect(request().asyncStarted())
@@ -133,30 +128,28 @@ class SseStreamingIntegrationTest {
     @Test
     void getVehiclesByRoute_shouldReturnCachedData() throws Exception {
         // Populate Redis
-        try (Jedis jedis = jedisPool.getResource()) {
-            long now = System.currentTimeMillis();
-            jedis.zadd("route:R1:vehicles", now, "V1001");
-            jedis.zadd("route:R1:vehicles", now, "V1002");
-            
-            // Store vehicle data as Redis hashes (not JSON strings)
-            Map<String, String> vehicle1 = Map.of(
-                "vehicleId", "V1001",
-                "routeId", "R1", 
-                "lat", "40.7128",
-                "lon", "-74.0060",
-                "tsEpochMs", String.valueOf(now)
-            );
-            Map<String, String> vehicle2 = Map.of(
-                "vehicleId", "V1002",
-                "routeId", "R1",
-                "lat", "40.7580", 
-                "lon", "-73.9855",
-                "tsEpochMs", String.valueOf(now)
-            );
-            
-            jedis.hset("veh:V1001", vehicle1);
-            jedis.hset("veh:V1002", vehicle2);
-        }
+        long now = System.currentTimeMillis();
+        jedis.zadd("route:R1:vehicles", now, "V1001");
+        jedis.zadd("route:R1:vehicles", now, "V1002");
+        
+        // Store vehicle data as Redis hashes (not JSON strings)
+        Map<String, String> vehicle1 = Map.of(
+            "vehicleId", "V1001",
+            "routeId", "R1", 
+            "lat", "40.7128",
+            "lon", "-74.0060",
+            "tsEpochMs", String.valueOf(now)
+        );
+        Map<String, String> vehicle2 = Map.of(
+            "vehicleId", "V1002",
+            "routeId", "R1",
+            "lat", "40.7580", 
+            "lon", "-73.9855",
+            "tsEpochMs", String.valueOf(now)
+        );
+        
+        jedis.hset("veh:V1001", vehicle1);
+        jedis.hset("veh:V1002", vehicle2);
         
         mockMvc.perform(get("/api/routes/R1/vehicles"))
             .andExpect(status().isOk())
@@ -1,11 +1,14 @@
 package com.routeforge.api.service;
 
+import com.routeforge.api.config.RedisProperties;
 import com.routeforge.common.dto.VehicleResponse;
-import org.junit.jupiter.api.AfterEach;
+import com.routeforge.common.util.RedisKeys;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
+import org.mockito.ArgumentCaptor;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.UnifiedJedis;
 
 import java.util.HashMap;
 import java.util.List;
@@ -17,24 +20,13 @@ import static org.mockito.Mockito.*;
 
 class VehicleServiceTest {
     
-    private JedisPool jedisPool;
-    private Jedis jedis;
+    private UnifiedJedis jedis;
     private VehicleService vehicleService;
     
     @BeforeEach
     void setUp() {
-        jedisPool = mock(JedisPool.class);
-        jedis = mock(Jedis.class);
-        when(jedisPool.getResource()).thenReturn(jedis);
-        
-        vehicleService = new VehicleService(jedisPool);
-    }
-    
-    @AfterEach
-    void tearDown() {
-        if (jedis != null) {
-            jedis.close();
-        }
+        jedis = mock(UnifiedJedis.class);
+        vehicleService = new VehicleService(jedis, RedisKeys.standalone(), new RedisProperties());
     }
     
     @Test
@@ -84,7 +76,7 @@ class VehicleServiceTest {
         String routeId = "1";
         List<String> vehicleIds = List.of("VEHICLE_123", "VEHICLE_124");
         
-        when(jedis.zrevrange("route:" + routeId + ":vehicles", 0, -1))
+        when(jedis.zrevrangeByScore(eq("route:" + routeId + ":vehicles"), eq(Double.POSITIVE_INFINITY), anyDouble()))
             .thenReturn(vehicleIds);
         
         // Mock vehicle data for each vehicle
@@ -102,23 +94,57 @@ class VehicleServiceTest {
         vehicle2.put("lon", "-73.9851");
         vehicle2.put("tsEpochMs", "1704067201000");
         
-        when(jedis.hgetAll("veh:VEHICLE_123")).thenReturn(vehicle1);
-        when(jedis.hgetAll("veh:VEHICLE_124")).thenReturn(vehicle2);
+        // Hashes are loaded with one pipelined round trip
+        Pipeline pipeline = mock(Pipeline.class);
+        when(jedis.pipelined()).thenReturn(pipeline);
+        Response<Map<String, String>> response1 = hashResponse(vehicle1);
+        Response<Map<String, String>> response2 = hashResponse(vehicle2);
+        when(pipeline.hgetAll("veh:VEHICLE_123")).thenReturn(response1);
+        when(pipeline.hgetAll("veh:VEHICLE_124")).thenReturn(response2);
         
         // When
         List<VehicleResponse> results = vehicleService.getVehiclesByRoute(routeId);
         
         // Then
+        verify(pipeline).close();
+        verify(jedis, never()).hgetAll(anyString());
         assertEquals(2, results.size());
         assertTrue(results.stream().anyMatch(v -> v.getVehicleId().equals("VEHICLE_123")));
         assertTrue(results.stream().anyMatch(v -> v.getVehicleId().equals("VEHICLE_124")));
     }
     
+    @Test
+    void testGetVehiclesByRoute_ClusterKeysAreHashTagged() {
+        // Given
+        vehicleService = new VehicleService(jedis, RedisKeys.cluster(), new RedisProperties());
+        when(jedis.zrevrangeByScore(eq("route:{1}:vehicles"), eq(Double.POSITIVE_INFINITY), anyDouble()))
+            .thenReturn(List.of("VEHICLE_123"));
+        
+        Map<String, String> vehicle = new HashMap<>();
+        vehicle.put("vehicleId", "VEHICLE_123");
+        vehicle.put("routeId", "1");
+        vehicle.put("lat", "40.7128");
+        vehicle.put("lon", "-74.0060");
+        vehicle.put("tsEpochMs", "1704067200000");
+        
+        Pipeline pipeline = mock(Pipeline.class);
+        when(jedis.pipelined()).thenReturn(pipeline);
+        Response<Map<String, String>> response = hashResponse(vehicle);
+        when(pipeline.hgetAll("veh:{VEHICLE_123}")).thenReturn(response);
+        
+        // When
+        List<VehicleResponse> results = vehicleService.getVehiclesByRoute("1");
+        
+        // Then
+        assertEquals(1, results.size());
+        assertEquals("VEHICLE_123", results.get(0).getVehicleId());
+    }
+    
     @Test
     void testGetVehiclesByRoute_NoVehicles() {
         // Given
         String routeId = "EMPTY_ROUTE";
-        when(jedis.zrevrange("route:" + routeId + ":vehicles", 0, -1))
+        when(jedis.zrevrangeByScore(eq("route:" + routeId + ":vehicles"), eq(Double.POSITIVE_INFINITY), anyDouble()))
             .thenReturn(List.of());
         
         // When
@@ -127,4 +153,29 @@ class VehicleServiceTest {
         // Then
         assertTrue(results.isEmpty());
     }
+    
+    @Test
+    void testGetVehiclesByRoute_OnlyReadsFreshMembers() {
+        // Given
+        String routeId = "1";
+        when(jedis.zrevrangeByScore(anyString(), anyDouble(), anyDouble())).thenReturn(List.of());
+        long before = System.currentTimeMillis();
+        
+        // When
+        vehicleService.getVehiclesByRoute(routeId);
+        
+        // Then: lower bound is now minus the freshness window (default 300s)
+        ArgumentCaptor<Double> minScore = ArgumentCaptor.forClass(Double.class);
+        verify(jedis).zrevrangeByScore(eq("route:1:vehicles"), eq(Double.POSITIVE_INFINITY), minScore.capture());
+        assertTrue(minScore.getValue() >= before - 300_000);
+        assertTrue(minScore.getValue() <= System.currentTimeMillis() - 300_000);
+        verify(jedis, never()).zrevrange(anyString(), anyLong(), anyLong());
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static Response<Map<String, String>> hashResponse(Map<String, String> fields) {
+        Response<Map<String, String>> response = mock(Response.class);
+        when(response.get()).thenReturn(fields);
+        return response;
+    }
 }
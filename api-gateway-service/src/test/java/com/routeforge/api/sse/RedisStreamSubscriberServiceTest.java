@@ -0,0 +1,72 @@
+package com.routeforge.api.sse;
+
+import com.routeforge.api.config.RedisProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import redis.clients.jedis.StreamEntryID;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.resps.StreamEntry;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class RedisStreamSubscriberServiceTest {
+    
+    private static final String STREAM = "stream:route-updates";
+    
+    private UnifiedJedis redis;
+    private RouteUpdateDispatcher dispatcher;
+    private SimpleMeterRegistry meterRegistry;
+    private RedisStreamSubscriberService subscriber;
+    
+    @BeforeEach
+    void setUp() {
+        redis = mock(UnifiedJedis.class);
+        dispatcher = mock(RouteUpdateDispatcher.class);
+        meterRegistry = new SimpleMeterRegistry();
+        subscriber = new RedisStreamSubscriberService(redis, dispatcher, new RedisProperties(), meterRegistry);
+    }
+    
+    @Test
+    void resyncIfTrimmed_shouldKeepReadingWhileTheLastEntryIsStillThere() {
+        when(redis.xrange(STREAM, "-", "+", 1)).thenReturn(List.of(entry("100-0")));
+        
+        StreamEntryID resumeAfter = subscriber.resyncIfTrimmed(STREAM, new StreamEntryID("150-3"));
+        
+        assertThat(resumeAfter).isEqualTo(new StreamEntryID("150-3"));
+        verifyNoInteractions(dispatcher);
+        assertThat(gaps()).isZero();
+    }
+    
+    @Test
+    void resyncIfTrimmed_shouldResyncRoutesAndSkipAheadWhenUnreadEntriesWereTrimmed() {
+        when(redis.xrange(STREAM, "-", "+", 1)).thenReturn(List.of(entry("200-0")));
+        when(redis.xrevrange(STREAM, "+", "-", 1)).thenReturn(List.of(entry("900-1")));
+        
+        StreamEntryID resumeAfter = subscriber.resyncIfTrimmed(STREAM, new StreamEntryID("150-3"));
+        
+        assertThat(resumeAfter).isEqualTo(new StreamEntryID("900-1"));
+        verify(dispatcher).resyncSubscribedRoutes();
+        assertThat(gaps()).isEqualTo(1.0);
+    }
+    
+    @Test
+    void resyncIfTrimmed_shouldNotReportAGapBeforeAnythingWasRead() {
+        StreamEntryID resumeAfter = subscriber.resyncIfTrimmed(STREAM, new StreamEntryID());
+        
+        assertThat(resumeAfter).isEqualTo(new StreamEntryID());
+        verifyNoInteractions(redis, dispatcher);
+    }
+    
+    private double gaps() {
+        return meterRegistry.counter("routeforge.sse.stream.gaps").count();
+    }
+    
+    private static StreamEntry entry(String id) {
+        return new StreamEntry(new StreamEntryID(id), Map.of("payload", "{}"));
+    }
+}
@@ -0,0 +1,67 @@
+package com.routeforge.api.sse;
+
+import com.routeforge.api.config.RedisProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import redis.clients.jedis.UnifiedJedis;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Exactly one update subscriber must be wired for every routeforge.redis.update-fanout value
+ */
+class UpdateFanoutWiringTest {
+    
+    private final ApplicationContextRunner runner = new ApplicationContextRunner()
+        .withBean(UnifiedJedis.class, UpdateFanoutWiringTest::redisClient)
+        .withBean(RouteUpdateDispatcher.class, () -> mock(RouteUpdateDispatcher.class))
+        .withBean(MeterRegistry.class, SimpleMeterRegistry::new)
+        .withBean(RedisProperties.class, RedisProperties::new)
+        .withUserConfiguration(RedisStreamSubscriberService.class, RedisSubscriberService.class);
+    
+    @Test
+    void defaultFanout_shouldReadTheStream() {
+        runner.run(context -> {
+            assertThat(context).hasSingleBean(RedisStreamSubscriberService.class);
+            assertThat(context).doesNotHaveBean(RedisSubscriberService.class);
+        });
+    }
+    
+    @Test
+    void bothFanout_shouldPreferTheStream() {
+        runner.withPropertyValues("routeforge.redis.update-fanout=both").run(context -> {
+            assertThat(context).hasSingleBean(RedisStreamSubscriberService.class);
+            assertThat(context).doesNotHaveBean(RedisSubscriberService.class);
+        });
+    }
+    
+    @Test
+    void streamFanout_shouldReadTheStream() {
+        runner.withPropertyValues("routeforge.redis.update-fanout=STREAM").run(context -> {
+            assertThat(context).hasSingleBean(RedisStreamSubscriberService.class);
+            assertThat(context).doesNotHaveBean(RedisSubscriberService.class);
+        });
+    }
+    
+    @Test
+    void pubsubFanout_shouldSubscribeToChannels() {
+        runner.withPropertyValues("routeforge.redis.update-fanout=pubsub").run(context -> {
+            assertThat(context).hasSingleBean(RedisSubscriberService.class);
+            assertThat(context).doesNotHaveBean(RedisStreamSubscriberService.class);
+        });
+    }
+    
+    private static UnifiedJedis redisClient() {
+        UnifiedJedis redis = mock(UnifiedJedis.class);
+        // Behave like a blocking XREAD that times out, so the reader thread does not spin
+        when(redis.xread(any(), anyMap())).thenAnswer(invocation -> {
+            Thread.sleep(10);
+            return null;
+        });
+        return redis;
+    }
+}
@@ -0,0 +1,78 @@
+package com.routeforge.processing.consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.routeforge.common.dto.VehiclePositionEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding a batch of vehicle positions: Spring's databind JsonDeserializer (configured as
+ * the consumer used to be) vs the streaming {@link VehiclePositionEventDeserializer}
+ * Run with the gc profiler (default in build.gradle) to compare gc.alloc.rate.norm per batch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EventDeserializerBenchmark {
+    
+    private static final int BATCH_SIZE = 500;
+    private static final String TOPIC = "vehicle_positions";
+    
+    private byte[][] payloads;
+    private JsonDeserializer<VehiclePositionEvent> databind;
+    private VehiclePositionEventDeserializer streaming;
+    
+    @Setup
+    public void setUp() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        payloads = new byte[BATCH_SIZE][];
+        long ts = 1_704_067_200_000L;
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            VehiclePositionEvent event = VehiclePositionEvent.builder()
+                .eventId(ts + i + "-V" + (i % 200))
+                .vehicleId("V" + (i % 200))
+                .routeId("R" + (i % 12))
+                .lat(40.7 + i * 1e-4)
+                .lon(-74.0 + i * 1e-4)
+                .speedKph(i % 3 == 0 ? null : 20.0 + i % 40)
+                .headingDeg(i % 3 == 0 ? null : (double) (i * 7 % 360))
+                .tsEpochMs(ts + i * 1000L)
+                .stopId(i % 4 == 0 ? "S" + (i % 50) : null)
+                .delaySec(i % 5 == 0 ? null : i % 300 - 60)
+                .agencyId("MTA")
+                .build();
+            payloads[i] = objectMapper.writeValueAsBytes(event);
+        }
+        
+        databind = new JsonDeserializer<>();
+        databind.configure(Map.of(
+            JsonDeserializer.TRUSTED_PACKAGES, "com.routeforge.common.dto",
+            JsonDeserializer.VALUE_DEFAULT_TYPE, VehiclePositionEvent.class.getName()), false);
+        streaming = new VehiclePositionEventDeserializer(new SimpleMeterRegistry().counter("unknown"));
+    }
+    
+    @Benchmark
+    public void databindJsonDeserializer(Blackhole blackhole) {
+        for (byte[] payload : payloads) {
+            blackhole.consume(databind.deserialize(TOPIC, payload));
+        }
+    }
+    
+    @Benchmark
+    public void streamingDeserializer(Blackhole blackhole) {
+        for (byte[] payload : payloads) {
+            blackhole.consume(streaming.deserialize(TOPIC, payload));
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.routeforge.processing.archive;
+
+/**
+ * Filter for archive scans
+ * @param vehicleId Only this vehicle (null = all vehicles)
+ * @param fromEpochMs Inclusive lower bound of tsEpochMs
+ * @param toEpochMs Exclusive upper bound of tsEpochMs
+ * @param limit Maximum rows returned
+ */
+public record ArchiveQuery(String vehicleId, long fromEpochMs, long toEpochMs, int limit) {
+    
+    public ArchiveQuery {
+        if (toEpochMs <= fromEpochMs) {
+            throw new IllegalArgumentException("toEpochMs must be after fromEpochMs");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+    }
+    
+    boolean overlaps(long minTs, long maxTs) {
+        return maxTs >= fromEpochMs && minTs < toEpochMs;
+    }
+    
+    boolean mayContainVehicle(String minVehicleId, String maxVehicleId) {
+        return vehicleId == null
+            || (vehicleId.compareTo(minVehicleId) >= 0 && vehicleId.compareTo(maxVehicleId) <= 0);
+    }
+    
+    boolean matches(String rowVehicleId, long tsEpochMs) {
+        return tsEpochMs >= fromEpochMs && tsEpochMs < toEpochMs
+            && (vehicleId == null || vehicleId.equals(rowVehicleId));
+    }
+}
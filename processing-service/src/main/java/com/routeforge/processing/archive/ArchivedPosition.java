@@ -0,0 +1,25 @@
+package com.routeforge.processing.archive;
+
+/**
+ * One history row as stored in an archive segment
+ * lat/lon are kept as 1e-6 degree fixed point (~0.1 m), speed and heading to 0.1.
+ * recordedAtEpochUs is the row's recorded_at wall-clock value, read as UTC, in microseconds. Segments
+ * written before format 2 have no id, eventId, derived flags or recordedAt (0 / null / false).
+ */
+public record ArchivedPosition(
+    String vehicleId,
+    String routeId,
+    long tsEpochMs,
+    double lat,
+    double lon,
+    Double speedKph,
+    Double headingDeg,
+    String stopId,
+    Integer delaySec,
+    long id,
+    String eventId,
+    boolean speedDerived,
+    boolean headingDerived,
+    long recordedAtEpochUs
+) {
+}
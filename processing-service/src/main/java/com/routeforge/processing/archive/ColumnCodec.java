@@ -0,0 +1,91 @@
+package com.routeforge.processing.archive;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Varint / zigzag primitives and per-column Deflate framing of the segment format
+ */
+final class ColumnCodec {
+    
+    static final double COORD_SCALE = 1_000_000.0;
+    static final double DECIMAL_SCALE = 10.0;
+    
+    private ColumnCodec() {
+    }
+    
+    static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+    
+    static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Truncated varint");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+    
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+    
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+    
+    /**
+     * Nullable decimal as zigzag(fixed point) + 1, with 0 meaning null
+     */
+    static long encodeNullable(Double value) {
+        return value == null ? 0 : zigzag(Math.round(value * DECIMAL_SCALE)) + 1;
+    }
+    
+    static Double decodeNullable(long encoded) {
+        return encoded == 0 ? null : unzigzag(encoded - 1) / DECIMAL_SCALE;
+    }
+    
+    /**
+     * Write a column chunk: int compressed length followed by the deflated bytes
+     */
+    static void writeChunk(DataOutputStream out, ByteArrayOutputStream column) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(column.size() / 4 + 16);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(compressed, deflater)) {
+            column.writeTo(deflate);
+        } finally {
+            deflater.end();
+        }
+        out.writeInt(compressed.size());
+        compressed.writeTo(out);
+    }
+    
+    /**
+     * Open the next column chunk of a row group for reading
+     */
+    static InputStream readChunk(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        byte[] compressed = new byte[length];
+        in.readFully(compressed);
+        return new InflaterInputStream(new ByteArrayInputStream(compressed));
+    }
+}
@@ -0,0 +1,34 @@
+package com.routeforge.processing.archive;
+
+import java.util.List;
+
+/**
+ * Index at the end of a segment file: one entry per row group with its min/max
+ * vehicleId and tsEpochMs, used to skip row groups without reading them
+ * @param version format version from the file magic (1 or 2)
+ */
+public record SegmentFooter(int version, List<RowGroup> rowGroups) {
+    
+    public long rowCount() {
+        return rowGroups.stream().mapToLong(RowGroup::rowCount).sum();
+    }
+    
+    public long minTsEpochMs() {
+        return rowGroups.stream().mapToLong(RowGroup::minTsEpochMs).min().orElse(Long.MAX_VALUE);
+    }
+    
+    public long maxTsEpochMs() {
+        return rowGroups.stream().mapToLong(RowGroup::maxTsEpochMs).max().orElse(Long.MIN_VALUE);
+    }
+    
+    public record RowGroup(
+        long offset,
+        int length,
+        int rowCount,
+        String minVehicleId,
+        String maxVehicleId,
+        long minTsEpochMs,
+        long maxTsEpochMs
+    ) {
+    }
+}
@@ -0,0 +1,228 @@
+package com.routeforge.processing.archive;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads segment files written by {@link SegmentWriter}
+ * Row groups outside the query's vehicle/time range are skipped via the footer index;
+ * inside a group the vehicleId and tsEpochMs columns are decoded first and the remaining
+ * columns only if some row matches.
+ */
+public final class SegmentReader {
+    
+    private SegmentReader() {
+    }
+    
+    public static SegmentFooter readFooter(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return readFooter(channel, file);
+        }
+    }
+    
+    /**
+     * Stream matching rows to {@code sink}, stopping once {@code query.limit()} rows were emitted
+     * @return scan statistics
+     */
+    public static ScanStats scan(Path file, ArchiveQuery query, Consumer<ArchivedPosition> sink) throws IOException {
+        return scan(file, query, query.limit(), sink);
+    }
+    
+    /**
+     * @param maxRows Rows still wanted by the caller (across several segments)
+     */
+    public static ScanStats scan(Path file, ArchiveQuery query, int maxRows, Consumer<ArchivedPosition> sink)
+            throws IOException {
+        int groupsRead = 0;
+        int groupsSkipped = 0;
+        int emitted = 0;
+        
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            SegmentFooter footer = readFooter(channel, file);
+            
+            for (SegmentFooter.RowGroup group : footer.rowGroups()) {
+                if (emitted >= maxRows) {
+                    break;
+                }
+                if (!query.overlaps(group.minTsEpochMs(), group.maxTsEpochMs())
+                        || !query.mayContainVehicle(group.minVehicleId(), group.maxVehicleId())) {
+                    groupsSkipped++;
+                    continue;
+                }
+                
+                groupsRead++;
+                ByteBuffer bytes = ByteBuffer.allocate(group.length());
+                readFully(channel, bytes, group.offset());
+                emitted += scanGroup(bytes.array(), group.rowCount(), footer.version(), query, maxRows - emitted, sink);
+            }
+        }
+        return new ScanStats(groupsRead, groupsSkipped, emitted);
+    }
+    
+    private static int scanGroup(byte[] bytes, int rowCount, int version, ArchiveQuery query, int maxRows,
+                                 Consumer<ArchivedPosition> sink) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        
+        String[] vehicles = readDictionaryColumn(in, rowCount);
+        long[] timestamps = readDeltaColumn(in, rowCount);
+        
+        boolean[] matches = new boolean[rowCount];
+        int matchCount = 0;
+        for (int i = 0; i < rowCount; i++) {
+            matches[i] = query.matches(vehicles[i], timestamps[i]);
+            if (matches[i]) {
+                matchCount++;
+            }
+        }
+        if (matchCount == 0) {
+            return 0;
+        }
+        
+        String[] routes = readDictionaryColumn(in, rowCount);
+        long[] lats = readDeltaColumn(in, rowCount);
+        long[] lons = readDeltaColumn(in, rowCount);
+        long[] speeds = readVarLongColumn(in, rowCount);
+        long[] headings = readVarLongColumn(in, rowCount);
+        String[] stops = readDictionaryColumn(in, rowCount);
+        long[] delays = readVarLongColumn(in, rowCount);
+        long[] ids = version >= 2 ? readDeltaColumn(in, rowCount) : new long[rowCount];
+        String[] eventIds = version >= 2 ? readStringColumn(in, rowCount) : new String[rowCount];
+        long[] recordedAt = version >= 2 ? readDeltaColumn(in, rowCount) : new long[rowCount];
+        long[] flags = version >= 2 ? readVarLongColumn(in, rowCount) : new long[rowCount];
+        
+        int emitted = 0;
+        for (int i = 0; i < rowCount && emitted < maxRows; i++) {
+            if (!matches[i]) {
+                continue;
+            }
+            sink.accept(new ArchivedPosition(
+                vehicles[i],
+                routes[i],
+                timestamps[i],
+                lats[i] / ColumnCodec.COORD_SCALE,
+                lons[i] / ColumnCodec.COORD_SCALE,
+                ColumnCodec.decodeNullable(speeds[i]),
+                ColumnCodec.decodeNullable(headings[i]),
+                stops[i],
+                delays[i] == 0 ? null : (int) ColumnCodec.unzigzag(delays[i] - 1),
+                ids[i],
+                eventIds[i],
+                (flags[i] & SegmentWriter.FLAG_SPEED_DERIVED) != 0,
+                (flags[i] & SegmentWriter.FLAG_HEADING_DERIVED) != 0,
+                recordedAt[i]));
+            emitted++;
+        }
+        return emitted;
+    }
+    
+    private static SegmentFooter readFooter(FileChannel channel, Path file) throws IOException {
+        byte[] magic = SegmentWriter.MAGIC;
+        long size = channel.size();
+        if (size < 2L * magic.length + Integer.BYTES) {
+            throw new IOException("Not a segment file: " + file);
+        }
+        
+        ByteBuffer tail = ByteBuffer.allocate(Integer.BYTES + magic.length);
+        readFully(channel, tail, size - tail.capacity());
+        int footerLength = tail.getInt(0);
+        byte[] tailMagic = Arrays.copyOfRange(tail.array(), Integer.BYTES, tail.capacity());
+        int version;
+        if (Arrays.equals(magic, tailMagic)) {
+            version = 2;
+        } else if (Arrays.equals(SegmentWriter.MAGIC_V1, tailMagic)) {
+            version = 1;
+        } else {
+            throw new IOException("Segment file is truncated or corrupt: " + file);
+        }
+        
+        ByteBuffer footerBytes = ByteBuffer.allocate(footerLength);
+        readFully(channel, footerBytes, size - tail.capacity() - footerLength);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(footerBytes.array()));
+        
+        int groupCount = in.readInt();
+        List<SegmentFooter.RowGroup> groups = new ArrayList<>(groupCount);
+        for (int i = 0; i < groupCount; i++) {
+            groups.add(new SegmentFooter.RowGroup(
+                in.readLong(), in.readInt(), in.readInt(),
+                in.readUTF(), in.readUTF(),
+                in.readLong(), in.readLong()));
+        }
+        return new SegmentFooter(version, groups);
+    }
+    
+    private static String[] readDictionaryColumn(DataInputStream in, int rowCount) throws IOException {
+        try (InputStream column = ColumnCodec.readChunk(in)) {
+            int dictionarySize = (int) ColumnCodec.readVarLong(column);
+            String[] dictionary = new String[dictionarySize];
+            for (int i = 0; i < dictionarySize; i++) {
+                int length = (int) ColumnCodec.readVarLong(column);
+                dictionary[i] = new String(column.readNBytes(length), StandardCharsets.UTF_8);
+            }
+            String[] values = new String[rowCount];
+            for (int i = 0; i < rowCount; i++) {
+                int index = (int) ColumnCodec.readVarLong(column);
+                values[i] = index == 0 ? null : dictionary[index - 1];
+            }
+            return values;
+        }
+    }
+    
+    private static String[] readStringColumn(DataInputStream in, int rowCount) throws IOException {
+        try (InputStream column = ColumnCodec.readChunk(in)) {
+            String[] values = new String[rowCount];
+            for (int i = 0; i < rowCount; i++) {
+                int length = (int) ColumnCodec.readVarLong(column);
+                values[i] = length == 0 ? null : new String(column.readNBytes(length - 1), StandardCharsets.UTF_8);
+            }
+            return values;
+        }
+    }
+    
+    private static long[] readDeltaColumn(DataInputStream in, int rowCount) throws IOException {
+        try (InputStream column = ColumnCodec.readChunk(in)) {
+            long[] values = new long[rowCount];
+            long previous = 0;
+            for (int i = 0; i < rowCount; i++) {
+                previous += ColumnCodec.unzigzag(ColumnCodec.readVarLong(column));
+                values[i] = previous;
+            }
+            return values;
+        }
+    }
+    
+    private static long[] readVarLongColumn(DataInputStream in, int rowCount) throws IOException {
+        try (InputStream column = ColumnCodec.readChunk(in)) {
+            long[] values = new long[rowCount];
+            for (int i = 0; i < rowCount; i++) {
+                values[i] = ColumnCodec.readVarLong(column);
+            }
+            return values;
+        }
+    }
+    
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of segment file");
+            }
+        }
+    }
+    
+    /**
+     * Rows emitted and row groups read or skipped by one segment scan
+     */
+    public record ScanStats(int rowGroupsRead, int rowGroupsSkipped, int rowsEmitted) {
+    }
+}
@@ -0,0 +1,209 @@
+package com.routeforge.processing.archive;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes history rows into a compressed columnar segment file
+ *
+ * Layout: magic, row groups, footer, footer length, magic. Each row group stores its columns
+ * one after another, each Deflate-compressed on its own:
+ * vehicleId and routeId / stopId as per-group dictionaries, tsEpochMs and fixed-point lat/lon
+ * as zigzag varint deltas from the previous row, speed / heading / delay as nullable varints.
+ * Format 2 appends id and recordedAt as deltas, eventId as plain strings and the derived
+ * speed/heading flags as a bit set, so a segment holds every column of the history row.
+ * Rows should be appended sorted by (vehicleId, tsEpochMs) so deltas stay small and the
+ * per-group vehicle ranges are narrow enough to prune on.
+ */
+public class SegmentWriter implements Closeable {
+    
+    static final byte[] MAGIC = "RFSEG002".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] MAGIC_V1 = "RFSEG001".getBytes(StandardCharsets.US_ASCII);
+    static final int FLAG_SPEED_DERIVED = 1;
+    static final int FLAG_HEADING_DERIVED = 2;
+    
+    private final DataOutputStream out;
+    private final int rowGroupSize;
+    private final List<ArchivedPosition> buffer = new ArrayList<>();
+    private final List<SegmentFooter.RowGroup> rowGroups = new ArrayList<>();
+    private long position;
+    private boolean closed;
+    
+    public SegmentWriter(Path file, int rowGroupSize) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+        this.rowGroupSize = rowGroupSize;
+        out.write(MAGIC);
+        position = MAGIC.length;
+    }
+    
+    public void append(ArchivedPosition row) throws IOException {
+        buffer.add(row);
+        if (buffer.size() >= rowGroupSize) {
+            flushRowGroup();
+        }
+    }
+    
+    public long rowCount() {
+        return rowGroups.stream().mapToLong(SegmentFooter.RowGroup::rowCount).sum() + buffer.size();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flushRowGroup();
+            writeFooter();
+        } finally {
+            out.close();
+        }
+    }
+    
+    private void flushRowGroup() throws IOException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        
+        ByteArrayOutputStream group = new ByteArrayOutputStream();
+        DataOutputStream groupOut = new DataOutputStream(group);
+        
+        String minVehicle = buffer.get(0).vehicleId();
+        String maxVehicle = minVehicle;
+        long minTs = Long.MAX_VALUE;
+        long maxTs = Long.MIN_VALUE;
+        for (ArchivedPosition row : buffer) {
+            if (row.vehicleId().compareTo(minVehicle) < 0) {
+                minVehicle = row.vehicleId();
+            }
+            if (row.vehicleId().compareTo(maxVehicle) > 0) {
+                maxVehicle = row.vehicleId();
+            }
+            minTs = Math.min(minTs, row.tsEpochMs());
+            maxTs = Math.max(maxTs, row.tsEpochMs());
+        }
+        
+        // Pruning columns first, so a reader can reject rows before touching the rest
+        writeDictionaryColumn(groupOut, buffer.stream().map(ArchivedPosition::vehicleId).toList());
+        writeDeltaColumn(groupOut, buffer.stream().mapToLong(ArchivedPosition::tsEpochMs).toArray());
+        writeDictionaryColumn(groupOut, buffer.stream().map(ArchivedPosition::routeId).toList());
+        writeDeltaColumn(groupOut, buffer.stream().mapToLong(row -> fixedPoint(row.lat())).toArray());
+        writeDeltaColumn(groupOut, buffer.stream().mapToLong(row -> fixedPoint(row.lon())).toArray());
+        writeNullableColumn(groupOut, buffer.stream().mapToLong(row -> ColumnCodec.encodeNullable(row.speedKph())).toArray());
+        writeNullableColumn(groupOut, buffer.stream().mapToLong(row -> ColumnCodec.encodeNullable(row.headingDeg())).toArray());
+        writeDictionaryColumn(groupOut, buffer.stream().map(ArchivedPosition::stopId).toList());
+        writeNullableColumn(groupOut, buffer.stream()
+            .mapToLong(row -> row.delaySec() == null ? 0 : ColumnCodec.zigzag(row.delaySec()) + 1).toArray());
+        writeDeltaColumn(groupOut, buffer.stream().mapToLong(ArchivedPosition::id).toArray());
+        writeStringColumn(groupOut, buffer.stream().map(ArchivedPosition::eventId).toList());
+        writeDeltaColumn(groupOut, buffer.stream().mapToLong(ArchivedPosition::recordedAtEpochUs).toArray());
+        writeNullableColumn(groupOut, buffer.stream().mapToLong(SegmentWriter::flags).toArray());
+        groupOut.flush();
+        
+        group.writeTo(out);
+        rowGroups.add(new SegmentFooter.RowGroup(position, group.size(), buffer.size(),
+            minVehicle, maxVehicle, minTs, maxTs));
+        position += group.size();
+        buffer.clear();
+    }
+    
+    private void writeFooter() throws IOException {
+        ByteArrayOutputStream footer = new ByteArrayOutputStream();
+        DataOutputStream footerOut = new DataOutputStream(footer);
+        footerOut.writeInt(rowGroups.size());
+        for (SegmentFooter.RowGroup group : rowGroups) {
+            footerOut.writeLong(group.offset());
+            footerOut.writeInt(group.length());
+            footerOut.writeInt(group.rowCount());
+            footerOut.writeUTF(group.minVehicleId());
+            footerOut.writeUTF(group.maxVehicleId());
+            footerOut.writeLong(group.minTsEpochMs());
+            footerOut.writeLong(group.maxTsEpochMs());
+        }
+        footerOut.flush();
+        
+        footer.writeTo(out);
+        out.writeInt(footer.size());
+        out.write(MAGIC);
+    }
+    
+    /**
+     * Per-group dictionary, then one varint per row: dictionary index + 1, or 0 for null
+     */
+    private static void writeDictionaryColumn(DataOutputStream groupOut, List<String> values) throws IOException {
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> entries = new ArrayList<>();
+        for (String value : values) {
+            if (value != null && !dictionary.containsKey(value)) {
+                dictionary.put(value, entries.size());
+                entries.add(value);
+            }
+        }
+        
+        ByteArrayOutputStream column = new ByteArrayOutputStream();
+        ColumnCodec.writeVarLong(column, entries.size());
+        for (String entry : entries) {
+            byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+            ColumnCodec.writeVarLong(column, bytes.length);
+            column.write(bytes);
+        }
+        for (String value : values) {
+            ColumnCodec.writeVarLong(column, value == null ? 0 : dictionary.get(value) + 1);
+        }
+        ColumnCodec.writeChunk(groupOut, column);
+    }
+    
+    /**
+     * Mostly unique strings (event IDs): length + 1 and bytes per row, 0 for null
+     */
+    private static void writeStringColumn(DataOutputStream groupOut, List<String> values) throws IOException {
+        ByteArrayOutputStream column = new ByteArrayOutputStream();
+        for (String value : values) {
+            if (value == null) {
+                ColumnCodec.writeVarLong(column, 0);
+                continue;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            ColumnCodec.writeVarLong(column, bytes.length + 1L);
+            column.write(bytes);
+        }
+        ColumnCodec.writeChunk(groupOut, column);
+    }
+    
+    private static void writeDeltaColumn(DataOutputStream groupOut, long[] values) throws IOException {
+        ByteArrayOutputStream column = new ByteArrayOutputStream();
+        long previous = 0;
+        for (long value : values) {
+            ColumnCodec.writeVarLong(column, ColumnCodec.zigzag(value - previous));
+            previous = value;
+        }
+        ColumnCodec.writeChunk(groupOut, column);
+    }
+    
+    private static void writeNullableColumn(DataOutputStream groupOut, long[] encoded) throws IOException {
+        ByteArrayOutputStream column = new ByteArrayOutputStream();
+        for (long value : encoded) {
+            ColumnCodec.writeVarLong(column, value);
+        }
+        ColumnCodec.writeChunk(groupOut, column);
+    }
+    
+    private static long flags(ArchivedPosition row) {
+        return (row.speedDerived() ? FLAG_SPEED_DERIVED : 0) | (row.headingDerived() ? FLAG_HEADING_DERIVED : 0);
+    }
+    
+    private static long fixedPoint(double degrees) {
+        return Math.round(degrees * ColumnCodec.COORD_SCALE);
+    }
+}
@@ -0,0 +1,27 @@
+package com.routeforge.processing.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "routeforge.processing.adaptive-batch")
+public class AdaptiveBatchProperties {
+    
+    private boolean enabled = false;
+    private int minBatchSize = 50;
+    private int maxBatchSize = 1000;
+    private int increaseStep = 100;
+    private double decreaseFactor = 0.5;
+    private long lagHighWatermark = 5000;
+    private long lagLowWatermark = 500;
+    /** Shrink when batch latency exceeds this fraction of routeforge.processing.batch-timeout-ms */
+    private double latencyRiskRatio = 0.8;
+    private int recordBytesEstimate = 300;
+    private int minFetchWaitMs = 50;
+    private int maxFetchWaitMs = 500;
+    private long controlIntervalMs = 10000;
+    private long cooldownMs = 60000;
+    private long drainTimeoutMs = 10000;
+}
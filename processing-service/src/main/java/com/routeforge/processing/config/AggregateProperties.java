@@ -0,0 +1,33 @@
+package com.routeforge.processing.config;
+
+import com.routeforge.common.util.AggregateResolution;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "routeforge.processing.aggregates")
+public class AggregateProperties {
+    
+    private boolean enabled = true;
+    /** A 1-minute bucket is flushed once its end is this far behind the wall clock */
+    private long allowedLatenessMs = 30000;
+    private long flushIntervalMs = 15000;
+    /** How often the 15-minute and 1-hour buckets with new 1-minute rows are recomputed */
+    private long refreshIntervalMs = 60000;
+    /** Consecutive positions further apart than this don't count towards distance travelled */
+    private long maxDistanceGapMs = 300000;
+    private int maxTrackedVehicles = 100000;
+    private int minuteRetentionDays = 7;
+    private int quarterHourRetentionDays = 35;
+    private int hourRetentionDays = 400;
+    
+    public int retentionDays(AggregateResolution resolution) {
+        return switch (resolution) {
+            case MINUTE -> minuteRetentionDays;
+            case QUARTER_HOUR -> quarterHourRetentionDays;
+            case HOUR -> hourRetentionDays;
+        };
+    }
+}
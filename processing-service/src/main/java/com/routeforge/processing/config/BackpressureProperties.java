@@ -0,0 +1,28 @@
+package com.routeforge.processing.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "routeforge.processing.backpressure")
+public class BackpressureProperties {
+    
+    private boolean enabled = true;
+    /** Weight of the newest sample in the latency and error-rate EWMAs */
+    private double ewmaAlpha = 0.2;
+    /** Samples needed before a sink can be marked unhealthy */
+    private int minSamples = 5;
+    private long redisLatencyThresholdMs = 500;
+    private long databaseLatencyThresholdMs = 2000;
+    /** EWMA of failed write attempts above which a sink is unhealthy */
+    private double errorRateThreshold = 0.5;
+    /** A sink is healthy again once latency and error rate are below this fraction of the thresholds */
+    private double recoveryRatio = 0.5;
+    /** At most one probe (real write or ping) per unhealthy sink in this interval */
+    private long probeIntervalMs = 5000;
+    private long checkIntervalMs = 1000;
+    /** Keep consuming while PostgreSQL is unhealthy; history rows wait on the first retry tier */
+    private boolean deferDatabaseWrites = true;
+}
@@ -0,0 +1,23 @@
+package com.routeforge.processing.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "routeforge.processing.dlq-replay")
+public class DlqReplayProperties {
+    
+    /** Stable consumer group, so each job resumes where the previous one committed */
+    private String groupId = "routeforge-dlq-replay";
+    /** Partition workers per job; partitions are spread round-robin across them */
+    private int partitionWorkers = 3;
+    /** Events/sec ceiling shared by all workers of a job (0 = unlimited) */
+    private int maxEventsPerSecond = 500;
+    private int batchSize = 100;
+    private int maxPollRecords = 500;
+    private long pollTimeoutMs = 1000;
+    /** How long the synchronous /internal/dlq/replay call waits; below the gateway read timeout */
+    private long syncTimeoutMs = 25000;
+}
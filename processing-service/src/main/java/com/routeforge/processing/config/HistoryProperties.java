@@ -0,0 +1,72 @@
+package com.routeforge.processing.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "routeforge.history")
+public class HistoryProperties {
+    
+    private int retentionDays = 30;
+    private int partitionPrecreateDays = 3;
+    private long partitionMaintenanceIntervalMs = 3_600_000;
+    private Thinning thinning = new Thinning();
+    private Archive archive = new Archive();
+    private Dedup dedup = new Dedup();
+    
+    /**
+     * Dead-reckoning thinning of history writes
+     */
+    @Data
+    public static class Thinning {
+        
+        private boolean enabled = false;
+        /** Drop a point if the position predicted from the last kept point is within this distance */
+        private double toleranceM = 25.0;
+        /** Always keep a point at least this often per vehicle */
+        private long maxIntervalMs = 60_000;
+        /** Always keep a point whose heading differs this much from the last kept one */
+        private double headingChangeDeg = 30.0;
+        /** At or below this speed a vehicle counts as stopped; start/stop transitions are kept */
+        private double stoppedSpeedKph = 3.0;
+        private int maxTrackedVehicles = 100_000;
+    }
+    
+    /**
+     * Cold-tier archive of aged partitions into columnar segment files
+     */
+    @Data
+    public static class Archive {
+        
+        private boolean enabled = false;
+        private String directory = "/var/lib/routeforge/archive";
+        /** Partitions whose day is at least this old are archived */
+        private int archiveAfterDays = 7;
+        /** Drop the partition once its segment is written and verified */
+        private boolean dropAfterArchive = true;
+        private int rowGroupSize = 65_536;
+        private int fetchSize = 10_000;
+        private long intervalMs = 3_600_000;
+        private int maxQueryRows = 100_000;
+    }
+    
+    /**
+     * Bloom-filter screening of recently seen event IDs before the history insert
+     */
+    @Data
+    public static class Dedup {
+        
+        private boolean enabled = true;
+        /** Target false-positive rate of the whole window (possible duplicates looked up in PostgreSQL) */
+        private double falsePositiveRate = 0.01;
+        /** Events per bucket the filter is sized for; more raise the false-positive rate */
+        private long expectedEventsPerBucket = 500_000;
+        private long bucketMs = 600_000;
+        /** IDs are remembered for between (buckets - 1) and buckets bucket lengths */
+        private int buckets = 6;
+        /** Upper bound on filter memory; a smaller filter trades it for a higher false-positive rate */
+        private long maxMemoryBytes = 16 * 1024 * 1024;
+    }
+}
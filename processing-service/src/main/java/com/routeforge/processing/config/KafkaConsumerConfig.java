@@ -1,6 +1,9 @@
 package com.routeforge.processing.config;
 
 import com.routeforge.common.dto.VehiclePositionEvent;
+import com.routeforge.processing.consumer.VehiclePositionEventDeserializer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.springframework.beans.factory.annotation.Value;
@@ -10,9 +13,9 @@ import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.MicrometerConsumerListener;
 import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
-import org.springframework.kafka.support.serializer.JsonDeserializer;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -30,21 +33,33 @@ public class KafkaConsumerConfig {
     @Value("${routeforge.processing.batch-size:50}")
     private int batchSize;
     
+    private final MeterRegistry meterRegistry;
+    
+    public KafkaConsumerConfig(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+    
     @Bean
     public ConsumerFactory<String, VehiclePositionEvent> consumerFactory() {
         Map<String, Object> props = new HashMap<>();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
-        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class);
-        props.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, JsonDeserializer.class.getName());
-        props.put(JsonDeserializer.TRUSTED_PACKAGES, "com.routeforge.common.dto");
-        props.put(JsonDeserializer.VALUE_DEFAULT_TYPE, VehiclePositionEvent.class.getName());
         props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
         props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, batchSize);
         
-        return new DefaultKafkaConsumerFactory<>(props);
+        Counter unknownFields = Counter.builder("routeforge.processing.decode.unknown.fields")
+            .description("Unknown JSON fields skipped while decoding vehicle positions")
+            .register(meterRegistry);
+        
+        // Suppliers are called per consumer, so every consumer gets its own (non thread-safe) decoder
+        DefaultKafkaConsumerFactory<String, VehiclePositionEvent> factory = new DefaultKafkaConsumerFactory<>(
+            props,
+            StringDeserializer::new,
+            () -> new ErrorHandlingDeserializer<>(new VehiclePositionEventDeserializer(unknownFields)));
+        // Binds Kafka client metrics, incl. per-partition records-lag / records-lead, to Micrometer
+        factory.addListener(new MicrometerConsumerListener<>(meterRegistry));
+        return factory;
     }
     
     @Bean
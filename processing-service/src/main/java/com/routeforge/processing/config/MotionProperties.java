@@ -0,0 +1,26 @@
+package com.routeforge.processing.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "routeforge.processing.motion")
+public class MotionProperties {
+    
+    private boolean enabled = true;
+    /** Implied speeds above this are GPS jumps */
+    private double maxSpeedKph = 130.0;
+    /** Implied speed changes steeper than this (m/s²) are GPS jumps */
+    private double maxAccelerationMps2 = 4.0;
+    /** Positions closer in time than this keep the older baseline (too noisy to derive from) */
+    private long minIntervalMs = 2000;
+    /** After a longer gap the previous position is too old to derive from */
+    private long maxGapMs = 300000;
+    /** Below this displacement the vehicle is stationary and no heading is derived */
+    private double minHeadingDistanceM = 15.0;
+    /** Consecutive rejected jumps after which the new position is accepted as the baseline */
+    private int maxConsecutiveRejects = 2;
+    private int maxTrackedVehicles = 100_000;
+}
@@ -0,0 +1,56 @@
+package com.routeforge.processing.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "routeforge.processing.pipeline")
+public class PipelineProperties {
+    
+    private int workersPerStage = 3;
+    private int queueCapacity = 64;
+    private int retryMaxAttempts = 3;
+    private long retryInitialBackoffMs = 200;
+    private long retryMaxBackoffMs = 2000;
+    private double retryMultiplier = 2.0;
+    private Routing routing = Routing.LISTENER;
+    private boolean virtualThreads = false;
+    /** Write and announce only the newest position per vehicle of each batch (history keeps all) */
+    private boolean coalesceVehicleUpdates = true;
+    private Fairness fairness = new Fairness();
+    
+    /**
+     * How polled batches are spread over the stage workers
+     */
+    public enum Routing {
+        /** Whole batch on the lane of the listener thread that polled it */
+        LISTENER,
+        /** Batch split by vehicleId hash across all lanes */
+        KEY
+    }
+    
+    /**
+     * Per-agency lanes with weighted fair queuing in every stage worker
+     */
+    @Data
+    public static class Fairness {
+        
+        private boolean enabled = false;
+        /** Events an agency of weight 1 may write per round before others get a turn */
+        private int quantum = 50;
+        private int defaultWeight = 1;
+        /** agencyId -> weight; unlisted agencies get defaultWeight */
+        private Map<String, Integer> weights = new HashMap<>();
+        /** Poll-to-cache latency target, exported as an SLO bucket of the per-agency timer */
+        private long freshnessSloMs = 2000;
+        
+        public int weightOf(String agency) {
+            return weights.getOrDefault(agency, defaultWeight);
+        }
+    }
+}
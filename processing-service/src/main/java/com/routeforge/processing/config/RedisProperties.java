@@ -12,6 +12,38 @@ public class RedisProperties {
     private String host = "localhost";
     private int port = 6379;
     private String password;
+    private Mode mode = Mode.STANDALONE;
+    /** Seed nodes for cluster mode, host:port comma-separated */
+    private String clusterNodes = "localhost:7000";
+    /** Attempts per command across MOVED/ASK redirects and node failures (cluster mode) */
+    private int clusterMaxAttempts = 5;
     private int ttlSec = 300;
     private int timeoutMs = 3000;
+    private long sweepIntervalMs = 30000;
+    private int sweepBatchSize = 1000;
+    private UpdateFanout updateFanout = UpdateFanout.BOTH;
+    private String updatesStreamKey = "stream:route-updates";
+    private long updatesStreamMaxLen = 100_000;
+    
+    /**
+     * Single Redis node, or Redis Cluster with hash-tagged keys
+     */
+    public enum Mode {
+        STANDALONE, CLUSTER
+    }
+    
+    /**
+     * How route update notifications reach the api-gateway
+     */
+    public enum UpdateFanout {
+        PUBSUB, STREAM, BOTH;
+        
+        public boolean publishes() {
+            return this != STREAM;
+        }
+        
+        public boolean streams() {
+            return this != PUBSUB;
+        }
+    }
 }
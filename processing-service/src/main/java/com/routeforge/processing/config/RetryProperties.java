@@ -0,0 +1,32 @@
+package com.routeforge.processing.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "routeforge.processing.retry")
+public class RetryProperties {
+    
+    /** When false, failed events go straight to the DLQ */
+    private boolean enabled = true;
+    /** Delay of each retry tier; tier n consumes {topic}.retry-{n} */
+    private List<Long> delaysMs = new ArrayList<>(List.of(1000L, 10000L, 60000L));
+    private String topicPrefix = "vehicle_positions.retry-";
+    private String groupId = "routeforge-processing-retry";
+    private int concurrency = 1;
+    /** How long a retry tier waits for its forwards to the next tier before redelivering the batch */
+    private long sendTimeoutMs = 10000;
+    
+    public int tierCount() {
+        return enabled ? delaysMs.size() : 0;
+    }
+    
+    public String tierTopic(int tier) {
+        return topicPrefix + tier;
+    }
+}
@@ -0,0 +1,20 @@
+package com.routeforge.processing.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "routeforge.processing.rollup")
+public class RollupProperties {
+    
+    private boolean enabled = true;
+    private int windowSeconds = 60;
+    /** A window is flushed once its end is this far behind the newest sample of its route */
+    private long allowedLatenessMs = 30000;
+    /** A route without samples for this long (wall clock) has its open windows flushed */
+    private long idleFlushMs = 120000;
+    private long flushIntervalMs = 15000;
+    private int retentionDays = 7;
+}
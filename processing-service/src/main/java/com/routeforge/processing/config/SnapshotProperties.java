@@ -0,0 +1,17 @@
+package com.routeforge.processing.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "routeforge.processing.snapshot")
+public class SnapshotProperties {
+    
+    private boolean enabled = false;
+    private String file = "/var/lib/routeforge/processing-state.snap";
+    private long intervalMs = 30000;
+    /** Older snapshots are ignored at startup (state would have to be rebuilt anyway) */
+    private long maxAgeMs = 3_600_000;
+}
@@ -0,0 +1,85 @@
+package com.routeforge.processing.consumer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Orders the acknowledgments of one listener thread behind the retry tier forwards of its batches
+ * A batch is acknowledged once its own forwards and every earlier batch's acknowledgment have
+ * completed. A failed forward breaks the chain: no later batch is acknowledged, and the next
+ * poll of the listener takes the offsets to rewind to, so the records are redelivered instead
+ * of committed. Batches polled before that rewind are then ignored, since they are read again.
+ */
+@Slf4j
+final class AckChain {
+    
+    private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+    private long epoch;
+    private final Map<TopicPartition, Long> rewindTo = new HashMap<>();
+    
+    /**
+     * Batches remember the epoch they were polled in; a rewind starts a new one
+     */
+    synchronized long epoch() {
+        return epoch;
+    }
+    
+    /**
+     * Acknowledge a batch once its forwards completed; must be called in poll order
+     * @param firstOffsets first offset of the batch in each partition, where to rewind on failure
+     */
+    synchronized void append(long batchEpoch, CompletableFuture<?> forwarded,
+                             Map<TopicPartition, Long> firstOffsets, Runnable acknowledge) {
+        if (batchEpoch != epoch) {
+            // Polled before a rewind: not acknowledged, a later batch commits past it. Its failed
+            // events still have to reach the retry tiers, or be read again
+            forwarded.exceptionally(error -> {
+                failed(firstOffsets, error);
+                return null;
+            });
+            return;
+        }
+        CompletableFuture<Void> acked = tail
+            .thenCombine(forwarded, (previous, sent) -> (Void) null)
+            .thenRun(acknowledge);
+        acked.exceptionally(error -> {
+            failed(firstOffsets, error);
+            return null;
+        });
+        tail = acked;
+    }
+    
+    /**
+     * Called by the listener thread before it handles a poll
+     * @return offsets to seek to, empty if the chain is intact; non-empty starts a new epoch
+     */
+    synchronized Map<TopicPartition, Long> takeRewind() {
+        if (rewindTo.isEmpty()) {
+            return Map.of();
+        }
+        Map<TopicPartition, Long> rewind = Map.copyOf(rewindTo);
+        rewindTo.clear();
+        epoch++;
+        tail = CompletableFuture.completedFuture(null);
+        return rewind;
+    }
+    
+    /**
+     * Partitions revoked from this listener are read again by their next owner
+     */
+    synchronized void forget(Collection<TopicPartition> partitions) {
+        partitions.forEach(rewindTo::remove);
+    }
+    
+    private synchronized void failed(Map<TopicPartition, Long> firstOffsets, Throwable error) {
+        if (rewindTo.isEmpty()) {
+            log.error("Forward to the retry tiers failed, batches will be redelivered", error);
+        }
+        firstOffsets.forEach((partition, offset) -> rewindTo.merge(partition, offset, Math::min));
+    }
+}
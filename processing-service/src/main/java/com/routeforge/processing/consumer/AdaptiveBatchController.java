@@ -0,0 +1,236 @@
+package com.routeforge.processing.consumer;
+
+import com.routeforge.processing.config.AdaptiveBatchProperties;
+import com.routeforge.processing.config.ProcessingProperties;
+import com.routeforge.processing.pipeline.SinkPipeline;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adapts the consumer batch size to load
+ * Grows max.poll.records (and fetch.min.bytes / fetch.max.wait.ms with it) additively while
+ * consumer lag is above the high watermark, and shrinks it multiplicatively as soon as batch
+ * latency approaches the routeforge.processing.batch-timeout-ms goal. Back below the low
+ * watermark it steps down again towards the low-latency minimum.
+ *
+ * Poll settings only apply to a new consumer, so a change pauses the listener, lets the
+ * pipeline drain, restarts the container and resumes it. The drain runs on the controller's
+ * own thread, not the shared scheduler. Changes are rate-limited by a cooldown.
+ */
+@Slf4j
+@Component
+public class AdaptiveBatchController {
+    
+    static final String LISTENER_ID = "vehiclePositionListener";
+    
+    private final KafkaListenerEndpointRegistry registry;
+    private final SinkPipeline sinkPipeline;
+    private final AdaptiveBatchProperties properties;
+    private final long latencyGoalMs;
+    private final AtomicInteger batchSize = new AtomicInteger();
+    private final AtomicLong windowMaxLatencyMs = new AtomicLong();
+    private final AtomicLong observedLag = new AtomicLong();
+    private final Counter increases;
+    private final Counter decreases;
+    private final AtomicBoolean resizing = new AtomicBoolean();
+    private final ExecutorService resizeExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "adaptive-batch-resize");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile long lastChangeMs;
+    
+    public AdaptiveBatchController(
+            KafkaListenerEndpointRegistry registry,
+            SinkPipeline sinkPipeline,
+            AdaptiveBatchProperties properties,
+            ProcessingProperties processingProperties,
+            MeterRegistry meterRegistry) {
+        this.registry = registry;
+        this.sinkPipeline = sinkPipeline;
+        this.properties = properties;
+        this.latencyGoalMs = processingProperties.getBatchTimeoutMs();
+        this.batchSize.set(clamp(processingProperties.getBatchSize()));
+        
+        Gauge.builder("routeforge.processing.adaptive.batch.size", batchSize, AtomicInteger::get)
+            .description("Current max.poll.records chosen by the adaptive batch controller")
+            .register(meterRegistry);
+        Gauge.builder("routeforge.processing.adaptive.fetch.min.bytes", this, c -> c.fetchMinBytes(c.batchSize.get()))
+            .description("Current fetch.min.bytes chosen by the adaptive batch controller")
+            .register(meterRegistry);
+        Gauge.builder("routeforge.processing.adaptive.fetch.max.wait", this, c -> c.fetchMaxWaitMs(c.batchSize.get()))
+            .description("Current fetch.max.wait.ms chosen by the adaptive batch controller")
+            .register(meterRegistry);
+        Gauge.builder("routeforge.processing.adaptive.lag", observedLag, AtomicLong::get)
+            .description("Max records lag seen by the adaptive batch controller")
+            .register(meterRegistry);
+        this.increases = Counter.builder("routeforge.processing.adaptive.adjustments")
+            .description("Batch size adjustments made by the adaptive batch controller")
+            .tag("direction", "up")
+            .register(meterRegistry);
+        this.decreases = Counter.builder("routeforge.processing.adaptive.adjustments")
+            .description("Batch size adjustments made by the adaptive batch controller")
+            .tag("direction", "down")
+            .register(meterRegistry);
+    }
+    
+    /**
+     * Record end-to-end latency of a batch, from poll to acknowledgment
+     */
+    public void recordBatchLatency(long latencyMs) {
+        windowMaxLatencyMs.accumulateAndGet(latencyMs, Math::max);
+    }
+    
+    @PreDestroy
+    public void stop() {
+        resizeExecutor.shutdownNow();
+    }
+    
+    @Scheduled(fixedDelayString = "${routeforge.processing.adaptive-batch.control-interval-ms:10000}")
+    public void adjust() {
+        if (!properties.isEnabled() || resizing.get()) {
+            return;
+        }
+        MessageListenerContainer container = registry.getListenerContainer(LISTENER_ID);
+        if (container == null || !container.isRunning() || container.isPauseRequested()) {
+            // Paused by sink backpressure: lag grows by design, don't resize now
+            return;
+        }
+        
+        long latency = windowMaxLatencyMs.getAndSet(0);
+        long lag = maxRecordsLag(container);
+        observedLag.set(lag);
+        
+        int current = batchSize.get();
+        int target = current;
+        if (latency > latencyGoalMs * properties.getLatencyRiskRatio()) {
+            target = clamp((int) (current * properties.getDecreaseFactor()));
+        } else if (lag > properties.getLagHighWatermark()) {
+            target = clamp(current + properties.getIncreaseStep());
+        } else if (lag < properties.getLagLowWatermark()) {
+            target = clamp(current - properties.getIncreaseStep());
+        }
+        
+        if (target == current || System.currentTimeMillis() - lastChangeMs < properties.getCooldownMs()) {
+            return;
+        }
+        
+        log.info("Adapting batch size {} -> {} (lag: {}, max batch latency: {} ms, goal: {} ms)",
+            current, target, lag, latency, latencyGoalMs);
+        (target > current ? increases : decreases).increment();
+        batchSize.set(target);
+        lastChangeMs = System.currentTimeMillis();
+        
+        // The drain blocks for up to drain-timeout-ms: keep it off the shared scheduler thread
+        resizing.set(true);
+        resizeExecutor.execute(() -> {
+            try {
+                apply(container, target);
+            } catch (Exception e) {
+                log.error("Failed to apply batch size {}", target, e);
+                resizing.set(false);
+            }
+        });
+    }
+    
+    private void apply(MessageListenerContainer container, int target) {
+        Properties overrides = container.getContainerProperties().getKafkaConsumerProperties();
+        overrides.setProperty(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(target));
+        overrides.setProperty(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, String.valueOf(fetchMinBytes(target)));
+        overrides.setProperty(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, String.valueOf(fetchMaxWaitMs(target)));
+        
+        // Let in-flight batches acknowledge before the consumers are replaced
+        container.pause();
+        long deadline = System.currentTimeMillis() + properties.getDrainTimeoutMs();
+        while (sinkPipeline.pendingBatches() > 0 && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                // Shutting down: leave the consumers as they are, just undo our pause
+                Thread.currentThread().interrupt();
+                container.resume();
+                resizing.set(false);
+                return;
+            }
+        }
+        if (sinkPipeline.pendingBatches() > 0) {
+            log.warn("Restarting consumer with {} batches still pending; they will be redelivered",
+                sinkPipeline.pendingBatches());
+        }
+        
+        container.stop(() -> {
+            try {
+                container.start();
+                // A restarted container keeps the pause request and would pause its new consumers
+                container.resume();
+                log.info("Consumer restarted with max.poll.records={}", target);
+            } finally {
+                resizing.set(false);
+            }
+        });
+    }
+    
+    /**
+     * A resize is draining or restarting the container
+     */
+    boolean isResizing() {
+        return resizing.get();
+    }
+    
+    private long maxRecordsLag(MessageListenerContainer container) {
+        long lag = 0;
+        for (Map<MetricName, ? extends Metric> clientMetrics : container.metrics().values()) {
+            for (Map.Entry<MetricName, ? extends Metric> metric : clientMetrics.entrySet()) {
+                MetricName name = metric.getKey();
+                if ("records-lag-max".equals(name.name())
+                        && "consumer-fetch-manager-metrics".equals(name.group())
+                        && metric.getValue().metricValue() instanceof Double value
+                        && !value.isNaN()) {
+                    lag = Math.max(lag, value.longValue());
+                }
+            }
+        }
+        return lag;
+    }
+    
+    private int clamp(int size) {
+        return Math.max(properties.getMinBatchSize(), Math.min(properties.getMaxBatchSize(), size));
+    }
+    
+    /**
+     * At the minimum batch size the broker answers immediately; larger batches wait for
+     * roughly a batch worth of data
+     */
+    private int fetchMinBytes(int size) {
+        return size <= properties.getMinBatchSize() ? 1 : size * properties.getRecordBytesEstimate();
+    }
+    
+    /**
+     * Scales between min and max fetch wait with the batch size, capped by a quarter of the latency goal
+     */
+    private int fetchMaxWaitMs(int size) {
+        int range = Math.max(1, properties.getMaxBatchSize() - properties.getMinBatchSize());
+        double position = (double) (size - properties.getMinBatchSize()) / range;
+        int wait = (int) (properties.getMinFetchWaitMs()
+            + position * (properties.getMaxFetchWaitMs() - properties.getMinFetchWaitMs()));
+        return (int) Math.min(wait, Math.max(properties.getMinFetchWaitMs(), latencyGoalMs / 4));
+    }
+}
@@ -0,0 +1,23 @@
+package com.routeforge.processing.consumer;
+
+import java.util.Map;
+
+/**
+ * Per-vehicle consumer state as of the given Kafka offsets
+ * @param topic Topic the offsets belong to
+ * @param createdAtMs When the snapshot was taken
+ * @param offsets Partition -> next offset whose records are not yet reflected in the state
+ * @param lastTimestamps Vehicle -> newest accepted tsEpochMs (out-of-order filter)
+ * @param motion Vehicle -> last accepted fix of the motion tracker
+ */
+record ProcessingStateSnapshot(
+    String topic,
+    long createdAtMs,
+    Map<Integer, Long> offsets,
+    Map<String, Long> lastTimestamps,
+    Map<String, VehicleMotionTracker.MotionState> motion) {
+    
+    int vehicleCount() {
+        return lastTimestamps.size();
+    }
+}
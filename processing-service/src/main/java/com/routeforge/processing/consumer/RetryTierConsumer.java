@@ -0,0 +1,226 @@
+package com.routeforge.processing.consumer;
+
+import com.routeforge.common.dto.VehiclePositionEvent;
+import com.routeforge.processing.config.BackpressureProperties;
+import com.routeforge.processing.config.RetryProperties;
+import com.routeforge.processing.pipeline.Sink;
+import com.routeforge.processing.pipeline.SinkFailure;
+import com.routeforge.processing.pipeline.SinkHealthMonitor;
+import com.routeforge.processing.service.DlqPublisher;
+import com.routeforge.processing.service.SinkRewriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.BatchAcknowledgingMessageListener;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Consumes the delayed retry tiers
+ * Each tier has its own container. Records are rewritten to the sinks that failed for them
+ * once their due time has passed; until then the container is paused via a batch nack, so
+ * waiting never blocks the main topic. Records that fail again move to the next tier, and
+ * after the last tier to the DLQ. Records for a sink that is currently unhealthy are held
+ * (not retried, not escalated) until {@link SinkHealthMonitor} reports it recovered.
+ * Offsets are only committed once every forward to the next tier or the DLQ has been
+ * acknowledged by the broker; otherwise the batch is redelivered and rewritten.
+ */
+@Slf4j
+@Component
+public class RetryTierConsumer implements SmartLifecycle {
+    
+    /** Shortest pause, so records due in a few ms do not cause a tight poll loop */
+    private static final long MIN_PAUSE_MS = 50;
+    
+    private final ConsumerFactory<String, VehiclePositionEvent> consumerFactory;
+    private final RetryProperties retryProperties;
+    private final SinkRewriter sinkRewriter;
+    private final DlqPublisher dlqPublisher;
+    private final SinkHealthMonitor healthMonitor;
+    private final long holdPauseMs;
+    private final List<Counter> recovered = new ArrayList<>();
+    private final List<Counter> failed = new ArrayList<>();
+    private final List<ConcurrentMessageListenerContainer<String, VehiclePositionEvent>> containers = new ArrayList<>();
+    private volatile boolean running;
+    
+    public RetryTierConsumer(
+            ConsumerFactory<String, VehiclePositionEvent> consumerFactory,
+            RetryProperties retryProperties,
+            SinkRewriter sinkRewriter,
+            DlqPublisher dlqPublisher,
+            SinkHealthMonitor healthMonitor,
+            BackpressureProperties backpressureProperties,
+            MeterRegistry meterRegistry) {
+        this.consumerFactory = consumerFactory;
+        this.retryProperties = retryProperties;
+        this.sinkRewriter = sinkRewriter;
+        this.dlqPublisher = dlqPublisher;
+        this.healthMonitor = healthMonitor;
+        this.holdPauseMs = backpressureProperties.getProbeIntervalMs();
+        for (int tier = 0; tier < retryProperties.tierCount(); tier++) {
+            recovered.add(tierCounter(meterRegistry, "routeforge.processing.retry.recovered",
+                "Events written successfully by a retry tier", tier));
+            failed.add(tierCounter(meterRegistry, "routeforge.processing.retry.failed",
+                "Events that failed again on a retry tier", tier));
+        }
+    }
+    
+    private static Counter tierCounter(MeterRegistry meterRegistry, String name, String description, int tier) {
+        return Counter.builder(name)
+            .description(description)
+            .tag("tier", String.valueOf(tier))
+            .register(meterRegistry);
+    }
+    
+    @Override
+    public synchronized void start() {
+        for (int tier = 0; tier < retryProperties.tierCount(); tier++) {
+            int currentTier = tier;
+            ContainerProperties containerProperties = new ContainerProperties(retryProperties.tierTopic(tier));
+            containerProperties.setGroupId(retryProperties.getGroupId());
+            containerProperties.setAckMode(ContainerProperties.AckMode.MANUAL);
+            containerProperties.setMessageListener(
+                (BatchAcknowledgingMessageListener<String, VehiclePositionEvent>) (records, ack) ->
+                    onBatch(currentTier, records, ack));
+            
+            ConcurrentMessageListenerContainer<String, VehiclePositionEvent> container =
+                new ConcurrentMessageListenerContainer<>(consumerFactory, containerProperties);
+            container.setConcurrency(retryProperties.getConcurrency());
+            container.setBeanName("retryTier" + tier);
+            container.start();
+            containers.add(container);
+            log.info("Started retry tier {} on {} (delay {} ms)",
+                tier, retryProperties.tierTopic(tier), retryProperties.getDelaysMs().get(tier));
+        }
+        running = true;
+    }
+    
+    @Override
+    public synchronized void stop() {
+        containers.forEach(ConcurrentMessageListenerContainer::stop);
+        containers.clear();
+        running = false;
+    }
+    
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+    
+    /**
+     * Rewrite the records that are due; nack the rest so the container pauses until the first is due
+     * (or, for a held record, until its sink may have recovered)
+     */
+    void onBatch(int tier, List<ConsumerRecord<String, VehiclePositionEvent>> records, Acknowledgment ack) {
+        long now = System.currentTimeMillis();
+        int due = 0;
+        while (due < records.size() && dueAt(records.get(due)) <= now && !isHeld(records.get(due))) {
+            due++;
+        }
+        
+        if (due > 0 && !retry(tier, records.subList(0, due))) {
+            // A forward was not confirmed: committing now could lose those events
+            ack.nack(0, Duration.ofMillis(Math.max(holdPauseMs, MIN_PAUSE_MS)));
+            return;
+        }
+        
+        if (due < records.size()) {
+            ConsumerRecord<String, VehiclePositionEvent> next = records.get(due);
+            long waitMs = isHeld(next) ? holdPauseMs : Math.max(dueAt(next) - now, MIN_PAUSE_MS);
+            // Commits the records before 'due' and redelivers the rest after the pause
+            ack.nack(due, Duration.ofMillis(waitMs));
+        } else {
+            ack.acknowledge();
+        }
+    }
+    
+    /**
+     * @return false if events that failed again could not be handed to the next tier or the DLQ
+     */
+    private boolean retry(int tier, List<ConsumerRecord<String, VehiclePositionEvent>> records) {
+        Map<Optional<Sink>, List<VehiclePositionEvent>> bySink = new LinkedHashMap<>();
+        List<CompletableFuture<Void>> forwards = new ArrayList<>();
+        for (ConsumerRecord<String, VehiclePositionEvent> record : records) {
+            if (record.value() == null) {
+                // Undeserializable payload: nothing to rewrite
+                continue;
+            }
+            Sink sink = DlqPublisher.failedSink(record.headers().lastHeader(DlqPublisher.FAILED_SINK_HEADER));
+            bySink.computeIfAbsent(Optional.ofNullable(sink), s -> new ArrayList<>()).add(record.value());
+        }
+        
+        for (Map.Entry<Optional<Sink>, List<VehiclePositionEvent>> entry : bySink.entrySet()) {
+            List<VehiclePositionEvent> events = entry.getValue();
+            Set<Sink> sinks = entry.getKey().map(EnumSet::of).orElseGet(() -> EnumSet.allOf(Sink.class));
+            
+            List<SinkFailure> failures = sinkRewriter.rewrite(events, sinks);
+            long failedEvents = failures.stream()
+                .flatMap(failure -> failure.events().stream())
+                .map(VehiclePositionEvent::getEventId)
+                .distinct()
+                .count();
+            recovered.get(tier).increment(events.size() - failedEvents);
+            failed.get(tier).increment(failedEvents);
+            
+            for (SinkFailure failure : failures) {
+                log.warn("Retry tier {} failed for {} events on {}: {}",
+                    tier, failure.events().size(), failure.sink(), failure.cause().getMessage());
+                // Pub/Sub stays best-effort, as in the main pipeline
+                if (failure.sink().isDurable()) {
+                    forwards.add(dlqPublisher.publish(failure.sink(), failure.events(), failure.cause(), tier + 1));
+                }
+            }
+        }
+        return awaitForwards(tier, forwards);
+    }
+    
+    private boolean awaitForwards(int tier, List<CompletableFuture<Void>> forwards) {
+        if (forwards.isEmpty()) {
+            return true;
+        }
+        try {
+            CompletableFuture.allOf(forwards.toArray(CompletableFuture[]::new))
+                .get(retryProperties.getSendTimeoutMs(), TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("Retry tier {} could not forward failed events, redelivering batch: {}", tier, e.toString());
+            return false;
+        }
+    }
+    
+    /**
+     * Retrying against an unhealthy sink would only push the record towards the DLQ
+     */
+    private boolean isHeld(ConsumerRecord<String, VehiclePositionEvent> record) {
+        Sink sink = DlqPublisher.failedSink(record.headers().lastHeader(DlqPublisher.FAILED_SINK_HEADER));
+        if (sink != null) {
+            return !healthMonitor.isHealthy(sink);
+        }
+        return !healthMonitor.unhealthySinks().isEmpty();
+    }
+    
+    private static long dueAt(ConsumerRecord<?, ?> record) {
+        return DlqPublisher.dueAt(record.headers().lastHeader(DlqPublisher.DUE_AT_HEADER));
+    }
+}
@@ -0,0 +1,110 @@
+package com.routeforge.processing.consumer;
+
+import com.routeforge.processing.config.BackpressureProperties;
+import com.routeforge.processing.pipeline.Sink;
+import com.routeforge.processing.pipeline.SinkHealthMonitor;
+import com.routeforge.processing.service.DatabaseService;
+import com.routeforge.processing.service.RedisService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+/**
+ * Pauses the vehicle position listener while a sink it cannot do without is unhealthy
+ * and resumes it once the sink recovered, so a slow sink turns into consumer lag instead
+ * of a stream of timed-out batches in the DLQ. PostgreSQL is only blocking when its writes
+ * cannot be deferred (see {@link SinkHealthMonitor#blockingSinks()}).
+ *
+ * Unhealthy sinks are probed with a ping when no real write served as a probe, so recovery
+ * is noticed while consumption is paused or idle.
+ */
+@Slf4j
+@Component
+public class SinkBackpressureController {
+    
+    private final KafkaListenerEndpointRegistry registry;
+    private final SinkHealthMonitor healthMonitor;
+    private final BackpressureProperties properties;
+    private final RedisService redisService;
+    private final DatabaseService databaseService;
+    private final Counter pauses;
+    private volatile boolean paused;
+    
+    public SinkBackpressureController(
+            KafkaListenerEndpointRegistry registry,
+            SinkHealthMonitor healthMonitor,
+            BackpressureProperties properties,
+            RedisService redisService,
+            DatabaseService databaseService,
+            MeterRegistry meterRegistry) {
+        this.registry = registry;
+        this.healthMonitor = healthMonitor;
+        this.properties = properties;
+        this.redisService = redisService;
+        this.databaseService = databaseService;
+        this.pauses = Counter.builder("routeforge.processing.backpressure.pauses")
+            .description("Times the listener was paused because a sink was unhealthy")
+            .register(meterRegistry);
+        Gauge.builder("routeforge.processing.backpressure.paused", this, c -> c.paused ? 1 : 0)
+            .description("1 while the listener is paused by sink backpressure")
+            .register(meterRegistry);
+    }
+    
+    @Scheduled(fixedDelayString = "${routeforge.processing.backpressure.check-interval-ms:1000}")
+    public void check() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        for (Sink sink : healthMonitor.unhealthySinks()) {
+            if (healthMonitor.tryProbe(sink)) {
+                probe(sink);
+            }
+        }
+        
+        MessageListenerContainer container = registry.getListenerContainer(AdaptiveBatchController.LISTENER_ID);
+        if (container == null || !container.isRunning()) {
+            return;
+        }
+        
+        Set<Sink> blocking = healthMonitor.blockingSinks();
+        if (!blocking.isEmpty()) {
+            // Re-applied every check: a container restart (adaptive batch size) clears the pause
+            if (!container.isPauseRequested()) {
+                container.pause();
+                if (!paused) {
+                    pauses.increment();
+                    log.warn("Paused consumption: unhealthy sinks {}", blocking);
+                }
+            }
+            paused = true;
+        } else if (paused) {
+            container.resume();
+            paused = false;
+            log.info("Resumed consumption: sinks recovered");
+        }
+    }
+    
+    private void probe(Sink sink) {
+        long start = System.nanoTime();
+        try {
+            switch (sink) {
+                case REDIS -> redisService.ping();
+                case DATABASE -> databaseService.ping();
+                default -> {
+                    return;
+                }
+            }
+            healthMonitor.record(sink, System.nanoTime() - start, true);
+        } catch (Exception e) {
+            healthMonitor.record(sink, System.nanoTime() - start, false);
+            log.debug("Probe of {} failed: {}", sink, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.routeforge.processing.consumer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Binary, memory-mapped snapshot file
+ * Layout: magic, version, createdAt, topic, (partition, offset)*, (vehicle, lastTs, motion?)*, CRC32.
+ * Written to a temp file, forced to disk and renamed over the previous snapshot, so a
+ * crash mid-write leaves the old snapshot intact.
+ */
+final class StateSnapshotFile {
+    
+    static final int MAGIC = 0x52465353; // "RFSS"
+    static final int VERSION = 1;
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+    
+    private StateSnapshotFile() {
+    }
+    
+    static void write(Path file, ProcessingStateSnapshot snapshot) throws IOException {
+        byte[] topic = snapshot.topic().getBytes(StandardCharsets.UTF_8);
+        Set<String> vehicles = new HashSet<>(snapshot.lastTimestamps().keySet());
+        vehicles.addAll(snapshot.motion().keySet());
+        
+        Map<String, byte[]> ids = new HashMap<>(vehicles.size() * 2);
+        long size = 4 + 4 + 8 + 2 + topic.length + 4 + snapshot.offsets().size() * 12L + 4;
+        for (String vehicleId : vehicles) {
+            byte[] id = vehicleId.getBytes(StandardCharsets.UTF_8);
+            ids.put(vehicleId, id);
+            size += 2 + id.length + 8 + 1 + (snapshot.motion().containsKey(vehicleId) ? 36 : 0);
+        }
+        size += 8; // CRC
+        
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(snapshot.createdAtMs());
+            buffer.putShort((short) topic.length).put(topic);
+            
+            buffer.putInt(snapshot.offsets().size());
+            snapshot.offsets().forEach((partition, offset) -> buffer.putInt(partition).putLong(offset));
+            
+            buffer.putInt(vehicles.size());
+            for (String vehicleId : vehicles) {
+                byte[] id = ids.get(vehicleId);
+                buffer.putShort((short) id.length).put(id);
+                Long lastTs = snapshot.lastTimestamps().get(vehicleId);
+                buffer.putLong(lastTs != null ? lastTs : NO_TIMESTAMP);
+                
+                VehicleMotionTracker.MotionState state = snapshot.motion().get(vehicleId);
+                buffer.put((byte) (state != null ? 1 : 0));
+                if (state != null) {
+                    buffer.putDouble(state.lat()).putDouble(state.lon()).putLong(state.tsEpochMs())
+                        .putDouble(state.speedKph() != null ? state.speedKph() : Double.NaN)
+                        .putInt(state.consecutiveRejects());
+                }
+            }
+            
+            buffer.putLong(checksum(buffer, buffer.position()));
+            buffer.force();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * @throws IOException if the file is truncated, from another version or fails its checksum
+     */
+    static ProcessingStateSnapshot read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 32) {
+                throw new IOException("Snapshot too short: " + size + " bytes");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getLong((int) size - 8) != checksum(buffer, (int) size - 8)) {
+                throw new IOException("Snapshot checksum mismatch");
+            }
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Not a version " + VERSION + " snapshot");
+            }
+            long createdAtMs = buffer.getLong();
+            byte[] topic = new byte[buffer.getShort()];
+            buffer.get(topic);
+            
+            int partitions = buffer.getInt();
+            Map<Integer, Long> offsets = new HashMap<>();
+            for (int i = 0; i < partitions; i++) {
+                offsets.put(buffer.getInt(), buffer.getLong());
+            }
+            
+            int vehicles = buffer.getInt();
+            Map<String, Long> lastTimestamps = new HashMap<>(vehicles * 2);
+            Map<String, VehicleMotionTracker.MotionState> motion = new HashMap<>(vehicles * 2);
+            for (int i = 0; i < vehicles; i++) {
+                byte[] id = new byte[buffer.getShort()];
+                buffer.get(id);
+                String vehicleId = new String(id, StandardCharsets.UTF_8);
+                long lastTs = buffer.getLong();
+                if (lastTs != NO_TIMESTAMP) {
+                    lastTimestamps.put(vehicleId, lastTs);
+                }
+                if (buffer.get() == 1) {
+                    double lat = buffer.getDouble();
+                    double lon = buffer.getDouble();
+                    long ts = buffer.getLong();
+                    double speed = buffer.getDouble();
+                    int rejects = buffer.getInt();
+                    motion.put(vehicleId, new VehicleMotionTracker.MotionState(
+                        lat, lon, ts, Double.isNaN(speed) ? null : speed, rejects));
+                }
+            }
+            
+            return new ProcessingStateSnapshot(new String(topic, StandardCharsets.UTF_8),
+                createdAtMs, offsets, lastTimestamps, motion);
+        }
+    }
+    
+    private static long checksum(ByteBuffer buffer, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(0).limit(length));
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,126 @@
+package com.routeforge.processing.consumer;
+
+import com.routeforge.processing.config.ProcessingProperties;
+import com.routeforge.processing.config.SnapshotProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checkpoints the consumer's per-vehicle state (out-of-order timestamps and motion
+ * baselines) to a local file and restores it at startup, so a restarted instance does not
+ * begin with an empty state. Runs during bean initialization, i.e. before the Kafka
+ * listener containers start; the final checkpoint is written after they stopped.
+ */
+@Slf4j
+@Component
+public class StateSnapshotService {
+    
+    private final SnapshotProperties properties;
+    private final ProcessingProperties processingProperties;
+    private final VehiclePositionConsumer consumer;
+    private final Timer writeTimer;
+    private final Counter writeFailures;
+    private final Counter vehiclesRestored;
+    private final AtomicLong lastSnapshotAtMs = new AtomicLong();
+    
+    public StateSnapshotService(
+            SnapshotProperties properties,
+            ProcessingProperties processingProperties,
+            VehiclePositionConsumer consumer,
+            MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.processingProperties = processingProperties;
+        this.consumer = consumer;
+        this.writeTimer = Timer.builder("routeforge.processing.snapshot.write.duration")
+            .description("Time to capture and write the processing state snapshot")
+            .register(meterRegistry);
+        this.writeFailures = Counter.builder("routeforge.processing.snapshot.write.failures")
+            .description("Processing state snapshots that could not be written")
+            .register(meterRegistry);
+        this.vehiclesRestored = Counter.builder("routeforge.processing.snapshot.vehicles.restored")
+            .description("Vehicles whose state was restored from a snapshot at startup")
+            .register(meterRegistry);
+        Gauge.builder("routeforge.processing.snapshot.age", lastSnapshotAtMs,
+                ts -> ts.get() == 0 ? 0 : System.currentTimeMillis() - ts.get())
+            .description("Time since the last successful snapshot (ms)")
+            .baseUnit("milliseconds")
+            .register(meterRegistry);
+    }
+    
+    @PostConstruct
+    public void restore() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        Path file = Paths.get(properties.getFile());
+        if (!Files.exists(file)) {
+            log.info("No processing state snapshot at {}, starting cold", file);
+            return;
+        }
+        
+        long startedAt = System.currentTimeMillis();
+        try {
+            ProcessingStateSnapshot snapshot = StateSnapshotFile.read(file);
+            long ageMs = startedAt - snapshot.createdAtMs();
+            if (!snapshot.topic().equals(processingProperties.getTopic())) {
+                log.warn("Ignoring snapshot of topic {} (consuming {})", snapshot.topic(), processingProperties.getTopic());
+                return;
+            }
+            if (ageMs > properties.getMaxAgeMs()) {
+                log.info("Ignoring snapshot taken {} ms ago (max age {} ms)", ageMs, properties.getMaxAgeMs());
+                return;
+            }
+            
+            consumer.restoreState(snapshot);
+            vehiclesRestored.increment(snapshot.vehicleCount());
+            log.info("Restored state of {} vehicles as of offsets {} from a {} ms old snapshot in {} ms",
+                snapshot.vehicleCount(), snapshot.offsets(), ageMs, System.currentTimeMillis() - startedAt);
+            
+        } catch (Exception e) {
+            // A bad snapshot only costs the warm start
+            log.warn("Failed to restore processing state snapshot {}, starting cold", file, e);
+        }
+    }
+    
+    @Scheduled(fixedDelayString = "${routeforge.processing.snapshot.interval-ms:30000}",
+               initialDelayString = "${routeforge.processing.snapshot.interval-ms:30000}")
+    public void checkpoint() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        Path file = Paths.get(properties.getFile());
+        
+        try {
+            writeTimer.recordCallable(() -> {
+                if (file.getParent() != null) {
+                    Files.createDirectories(file.getParent());
+                }
+                ProcessingStateSnapshot snapshot = consumer.captureState(processingProperties.getTopic());
+                StateSnapshotFile.write(file, snapshot);
+                lastSnapshotAtMs.set(snapshot.createdAtMs());
+                log.debug("Wrote state snapshot of {} vehicles to {}", snapshot.vehicleCount(), file);
+                return null;
+            });
+        } catch (Exception e) {
+            writeFailures.increment();
+            log.warn("Failed to write processing state snapshot {}", file, e);
+        }
+    }
+    
+    @PreDestroy
+    public void checkpointOnShutdown() {
+        checkpoint();
+    }
+}
@@ -0,0 +1,48 @@
+package com.routeforge.processing.consumer;
+
+/**
+ * Direct-mapped cache of decoded strings
+ * Route, agency, stop and vehicle IDs repeat across records; looking them up from the
+ * parser's char buffer returns the cached instance without allocating. A slot collision
+ * simply replaces the older entry, so memory stays bounded by the table size.
+ * Not thread-safe: each consumer owns its own deserializer and interner.
+ */
+final class StringInterner {
+    
+    private final String[] table;
+    private final int mask;
+    
+    StringInterner(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.table = new String[size];
+        this.mask = size - 1;
+    }
+    
+    String intern(char[] chars, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        
+        String cached = table[slot];
+        if (cached != null && matches(cached, chars, offset, length)) {
+            return cached;
+        }
+        String value = new String(chars, offset, length);
+        table[slot] = value;
+        return value;
+    }
+    
+    private static boolean matches(String cached, char[] chars, int offset, int length) {
+        if (cached.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (cached.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,185 @@
+package com.routeforge.processing.consumer;
+
+import com.routeforge.common.dto.VehiclePositionEvent;
+import com.routeforge.common.util.GeoUtils;
+import com.routeforge.processing.config.MotionProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fills in missing speedKph / headingDeg from each vehicle's previous position
+ * Keeps one small state per vehicle (last accepted fix and speed). Implied speeds or
+ * accelerations that are physically implausible are treated as GPS jumps and ignored;
+ * if the jump persists the new position becomes the baseline. Reported values are never
+ * overwritten.
+ */
+@Slf4j
+@Component
+public class VehicleMotionTracker {
+    
+    private final MotionProperties properties;
+    private final Map<String, MotionState> states;
+    private final Counter speedDerived;
+    private final Counter headingDerived;
+    private final Counter jumpsRejected;
+    
+    public VehicleMotionTracker(MotionProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        int maxTracked = properties.getMaxTrackedVehicles();
+        this.states = Collections.synchronizedMap(
+            new LinkedHashMap<String, MotionState>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, MotionState> eldest) {
+                    return size() > maxTracked;
+                }
+            });
+        this.speedDerived = derivedCounter(meterRegistry, "speed");
+        this.headingDerived = derivedCounter(meterRegistry, "heading");
+        this.jumpsRejected = Counter.builder("routeforge.processing.motion.jumps.rejected")
+            .description("Positions whose implied speed or acceleration was implausible")
+            .register(meterRegistry);
+    }
+    
+    private static Counter derivedCounter(MeterRegistry meterRegistry, String field) {
+        return Counter.builder("routeforge.processing.motion.derived")
+            .description("Events whose speed or heading was derived from consecutive positions")
+            .tag("field", field)
+            .register(meterRegistry);
+    }
+    
+    /**
+     * Derive missing motion fields in place; events must be in timestamp order per vehicle
+     */
+    public void apply(List<VehiclePositionEvent> events) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        for (VehiclePositionEvent event : events) {
+            if (event.getVehicleId() == null || event.getLat() == null
+                    || event.getLon() == null || event.getTsEpochMs() == null) {
+                continue;
+            }
+            states.compute(event.getVehicleId(), (vehicleId, state) -> update(event, state));
+        }
+    }
+    
+    /**
+     * Derive missing motion fields for events the tracked state already reflects
+     * (redelivered below a restored checkpoint) without moving that state back: each event is
+     * derived from the previous one of its vehicle in the list, as after a cold start.
+     */
+    public void applyDetached(List<VehiclePositionEvent> events) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        Map<String, MotionState> scratch = new HashMap<>();
+        for (VehiclePositionEvent event : events) {
+            if (event.getVehicleId() == null || event.getLat() == null
+                    || event.getLon() == null || event.getTsEpochMs() == null) {
+                continue;
+            }
+            scratch.compute(event.getVehicleId(), (vehicleId, state) -> update(event, state));
+        }
+    }
+    
+    /**
+     * Copy of the per-vehicle state for checkpointing
+     */
+    Map<String, MotionState> snapshot() {
+        synchronized (states) {
+            return new HashMap<>(states);
+        }
+    }
+    
+    /**
+     * Seed the per-vehicle state from a checkpoint (before any events are applied)
+     */
+    void restore(Map<String, MotionState> snapshot) {
+        states.putAll(snapshot);
+    }
+    
+    /**
+     * @return the vehicle's new state
+     */
+    MotionState update(VehiclePositionEvent event, MotionState previous) {
+        long ts = event.getTsEpochMs();
+        double lat = event.getLat();
+        double lon = event.getLon();
+        Double reportedSpeed = validSpeed(event.getSpeedKph());
+        
+        if (previous == null || ts - previous.tsEpochMs() > properties.getMaxGapMs()
+                || ts < previous.tsEpochMs()) {
+            return new MotionState(lat, lon, ts, reportedSpeed, 0);
+        }
+        
+        long dtMs = ts - previous.tsEpochMs();
+        if (dtMs < properties.getMinIntervalMs()) {
+            // Too close to the baseline to tell movement from GPS noise; keep the older fix
+            return previous;
+        }
+        
+        double distanceM = GeoUtils.distanceMeters(previous.lat(), previous.lon(), lat, lon);
+        double speedKph = distanceM / dtMs * 3600.0;
+        
+        if (isJump(previous, speedKph, dtMs)) {
+            jumpsRejected.increment();
+            int rejects = previous.consecutiveRejects() + 1;
+            if (rejects >= properties.getMaxConsecutiveRejects()) {
+                // Consistently elsewhere: the vehicle really moved (e.g. after a feed outage)
+                log.debug("Re-anchoring vehicle {} after {} rejected jumps", event.getVehicleId(), rejects);
+                return new MotionState(lat, lon, ts, reportedSpeed, 0);
+            }
+            return previous.withRejects(rejects);
+        }
+        
+        if (event.getSpeedKph() == null) {
+            event.setSpeedKph(round(speedKph));
+            event.setSpeedDerived(true);
+            speedDerived.increment();
+        }
+        if (event.getHeadingDeg() == null && distanceM >= properties.getMinHeadingDistanceM()) {
+            event.setHeadingDeg(round(GeoUtils.bearingDegrees(previous.lat(), previous.lon(), lat, lon)));
+            event.setHeadingDerived(true);
+            headingDerived.increment();
+        }
+        
+        return new MotionState(lat, lon, ts, reportedSpeed != null ? reportedSpeed : speedKph, 0);
+    }
+    
+    private boolean isJump(MotionState previous, double speedKph, long dtMs) {
+        if (speedKph > properties.getMaxSpeedKph()) {
+            return true;
+        }
+        if (previous.speedKph() == null) {
+            return false;
+        }
+        double accelerationMps2 = Math.abs(speedKph - previous.speedKph()) / 3.6 / (dtMs / 1000.0);
+        return accelerationMps2 > properties.getMaxAccelerationMps2();
+    }
+    
+    private static Double validSpeed(Double value) {
+        return value != null && value >= 0 ? value : null;
+    }
+    
+    private static double round(double value) {
+        return Math.round(value * 10.0) / 10.0;
+    }
+    
+    /**
+     * Last accepted fix of a vehicle
+     */
+    record MotionState(double lat, double lon, long tsEpochMs, Double speedKph, int consecutiveRejects) {
+        
+        MotionState withRejects(int rejects) {
+            return new MotionState(lat, lon, tsEpochMs, speedKph, rejects);
+        }
+    }
+}
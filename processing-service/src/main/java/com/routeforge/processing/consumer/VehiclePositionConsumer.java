@@ -1,15 +1,21 @@
 package com.routeforge.processing.consumer;
 
 import com.routeforge.common.dto.VehiclePositionEvent;
-import com.routeforge.processing.config.ProcessingProperties;
-import com.routeforge.processing.service.DatabaseService;
-import com.routeforge.processing.service.RedisService;
-import com.routeforge.processing.service.RedisPubSubService;
+import com.routeforge.processing.pipeline.BatchResult;
+import com.routeforge.processing.pipeline.SinkDeferredException;
+import com.routeforge.processing.pipeline.SinkFailure;
+import com.routeforge.processing.pipeline.SinkPipeline;
+import com.routeforge.processing.pipeline.StageTimers;
+import com.routeforge.processing.service.DlqPublisher;
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ConsumerSeekAware;
 import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.messaging.handler.annotation.Header;
@@ -17,27 +23,45 @@ import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Kafka consumer for vehicle position events
- * Processes events and updates Redis + PostgreSQL
+ * Filters out-of-order events and hands each batch to the {@link SinkPipeline},
+ * acknowledging offsets once Redis and PostgreSQL have both completed and the events they
+ * failed were accepted by the retry tiers ({@link AckChain}).
+ * The per-vehicle state can be checkpointed and restored by {@link StateSnapshotService}.
  */
 @Slf4j
 @Component
-public class VehiclePositionConsumer {
+public class VehiclePositionConsumer implements ConsumerSeekAware {
     
-    private final RedisService redisService;
-    private final DatabaseService databaseService;
-    private final RedisPubSubService pubSubService;
-    private final ProcessingProperties properties;
-    private final KafkaTemplate<String, VehiclePositionEvent> kafkaTemplate;
+    private final SinkPipeline sinkPipeline;
+    private final DlqPublisher dlqPublisher;
+    private final AdaptiveBatchController batchController;
+    private final VehicleMotionTracker motionTracker;
     private final Counter eventsProcessed;
     private final Counter eventsFailed;
+    private final Counter rewinds;
+    private final Timer filterTimer;
+    private final Timer ackTimer;
+    private final Timer batchTimer;
+    private final DistributionSummary polledBatchSize;
+    private final DistributionSummary validBatchSize;
+    private final AtomicLong newestWrittenTsEpochMs = new AtomicLong();
     private static final int MAX_CACHE_SIZE = 100_000;
     
     private final Map<String, Long> vehicleLastTimestamp = 
@@ -49,75 +73,326 @@ public class VehiclePositionConsumer {
                 }
             });
     
+    /** Guards the per-vehicle state against snapshots taken mid-batch */
+    private final Object stateLock = new Object();
+    /** Partition -> next offset whose records have not passed the filter yet */
+    private final Map<Integer, Long> consumedOffsets = new HashMap<>();
+    /** Partition -> offset below which records are already reflected in the restored state */
+    private final Map<Integer, Long> restoredOffsets = new ConcurrentHashMap<>();
+    /** Partitions currently assigned to a listener thread of this instance */
+    private final Set<Integer> ownedPartitions = ConcurrentHashMap.newKeySet();
+    /** Tracked partitions no listener thread owned at the previous snapshot */
+    private final Set<Integer> unownedAtLastCapture = new HashSet<>();
+    /** Listener thread -> acknowledgments waiting on retry tier forwards */
+    private final Map<Long, AckChain> ackChains = new ConcurrentHashMap<>();
+    private final ThreadLocal<ConsumerSeekCallback> seekCallback = new ThreadLocal<>();
+    
     public VehiclePositionConsumer(
-            RedisService redisService,
-            DatabaseService databaseService,
-            RedisPubSubService pubSubService,
-            ProcessingProperties properties,
-            KafkaTemplate<String, VehiclePositionEvent> kafkaTemplate,
+            SinkPipeline sinkPipeline,
+            DlqPublisher dlqPublisher,
+            AdaptiveBatchController batchController,
+            VehicleMotionTracker motionTracker,
             MeterRegistry meterRegistry) {
-        this.redisService = redisService;
-        this.databaseService = databaseService;
-        this.pubSubService = pubSubService;
-        this.properties = properties;
-        this.kafkaTemplate = kafkaTemplate;
+        this.sinkPipeline = sinkPipeline;
+        this.dlqPublisher = dlqPublisher;
+        this.batchController = batchController;
+        this.motionTracker = motionTracker;
         this.eventsProcessed = Counter.builder("routeforge.processing.events.processed")
             .description("Total vehicle position events processed")
             .register(meterRegistry);
         this.eventsFailed = Counter.builder("routeforge.processing.events.failed")
             .description("Total vehicle position events that failed processing")
             .register(meterRegistry);
+        this.rewinds = Counter.builder("routeforge.processing.redeliveries")
+            .description("Listener rewinds after failed events could not be forwarded to the retry tiers")
+            .register(meterRegistry);
+        this.filterTimer = StageTimers.forStage(meterRegistry, "filter");
+        this.ackTimer = StageTimers.forStage(meterRegistry, "ack");
+        this.batchTimer = Timer.builder("routeforge.processing.batch.duration")
+            .description("End-to-end batch time from poll to acknowledgment")
+            .publishPercentiles(0.5, 0.95, 0.99)
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+        this.polledBatchSize = batchSizeSummary(meterRegistry, "polled");
+        this.validBatchSize = batchSizeSummary(meterRegistry, "valid");
+        Gauge.builder("routeforge.processing.event.time.lag", newestWrittenTsEpochMs,
+                ts -> ts.get() == 0 ? 0 : System.currentTimeMillis() - ts.get())
+            .description("Now minus tsEpochMs of the newest event written by all durable sinks (ms)")
+            .baseUnit("milliseconds")
+            .register(meterRegistry);
+    }
+    
+    private static DistributionSummary batchSizeSummary(MeterRegistry meterRegistry, String kind) {
+        return DistributionSummary.builder("routeforge.processing.batch.size")
+            .description("Events per batch, as polled and after out-of-order filtering")
+            .tag("kind", kind)
+            .publishPercentiles(0.5, 0.95, 0.99)
+            .register(meterRegistry);
     }
     
     @KafkaListener(
+        id = AdaptiveBatchController.LISTENER_ID,
+        idIsGroup = false,
         topics = "#{processingProperties.topic}",
         groupId = "${spring.kafka.consumer.group-id}",
         containerFactory = "kafkaListenerContainerFactory"
     )
     public void consume(
             @Payload List<VehiclePositionEvent> events,
-            @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
+            @Header(KafkaHeaders.RECEIVED_TOPIC) List<String> topics,
+            @Header(KafkaHeaders.RECEIVED_PARTITION) List<Integer> partitions,
+            @Header(KafkaHeaders.OFFSET) List<Long> offsets,
             Acknowledgment acknowledgment) {
         
-        log.info("Received {} events from partition {}", events.size(), partition);
+        log.info("Received {} events from partitions {}", events.size(), new TreeSet<>(partitions));
+        long receivedAt = System.currentTimeMillis();
+        long receivedNanos = System.nanoTime();
+        polledBatchSize.record(events.size());
+        
+        Map<TopicPartition, Long> firstOffsets = firstOffsets(topics, partitions, offsets);
+        AckChain ackChain = ackChains.computeIfAbsent(Thread.currentThread().getId(), t -> new AckChain());
+        Map<TopicPartition, Long> rewind = ackChain.takeRewind();
+        if (!rewind.isEmpty()) {
+            rewind(rewind, firstOffsets);
+            return;
+        }
+        long epoch = ackChain.epoch();
         
         try {
-            // Filter out-of-order events
-            List<VehiclePositionEvent> validEvents = filterOutOfOrderEvents(events);
+            List<VehiclePositionEvent> validEvents;
+            synchronized (stateLock) {
+                // Redelivered records the restored snapshot already saw skip the per-vehicle state
+                List<VehiclePositionEvent> redelivered = new ArrayList<>();
+                List<VehiclePositionEvent> polled = splitRedelivered(events, partitions, offsets, redelivered);
+                
+                // Filter out-of-order events
+                validEvents = filterOutOfOrderEvents(polled);
+                
+                // Feeds often omit speed/bearing: derive them from the previous position
+                motionTracker.apply(validEvents);
+                
+                recordConsumedOffsets(partitions, offsets);
+                if (!redelivered.isEmpty()) {
+                    // The tracked state is already past these positions: derive them among themselves
+                    motionTracker.applyDetached(redelivered);
+                    redelivered.addAll(validEvents);
+                    validEvents = redelivered;
+                }
+            }
+            filterTimer.record(System.nanoTime() - receivedNanos, TimeUnit.NANOSECONDS);
+            validBatchSize.record(validEvents.size());
             
+            // Speed rollups and history aggregates are fed by the database stage, from the rows it inserted
             if (validEvents.isEmpty()) {
+                // Still goes through the pipeline so the ack waits for earlier batches
                 log.debug("No valid events after filtering");
-                acknowledgment.acknowledge();
-                return;
             }
             
-            // Update Redis hot cache
-            redisService.updateVehiclePositions(validEvents);
-            
-            // Batch insert to PostgreSQL
-            databaseService.saveVehiclePositions(validEvents);
-            
-            // Publish update notifications for SSE streaming
-            publishUpdateNotifications(validEvents);
-            
-            eventsProcessed.increment(validEvents.size());
-            log.info("Successfully processed {} events", validEvents.size());
+            // Redis + Pub/Sub and PostgreSQL run on dedicated pipeline workers;
+            // the offset is committed once both durable sinks are done
+            sinkPipeline.submit(validEvents, result -> {
+                ackTimer.record(() -> onBatchComplete(result, acknowledgment, ackChain, epoch, firstOffsets));
+                batchTimer.record(System.nanoTime() - receivedNanos, TimeUnit.NANOSECONDS);
+                batchController.recordBatchLatency(System.currentTimeMillis() - receivedAt);
+            });
             
-            // Commit offset
-            acknowledgment.acknowledge();
+        } catch (InterruptedException e) {
+            // Shutting down - leave the batch unacknowledged so it is redelivered
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while submitting batch of {} events", events.size());
             
         } catch (Exception e) {
             log.error("Failed to process events batch", e);
             eventsFailed.increment(events.size());
             
-            // Send to DLQ
-            sendToDLQ(events);
+            // Nothing was written yet: every sink must retry these
+            dlqPublisher.publishAllSinks(events, e);
             
             // Acknowledge to avoid reprocessing
             acknowledgment.acknowledge();
         }
     }
     
+    /**
+     * Called by the pipeline once all durable sinks finished with a batch
+     */
+    private void onBatchComplete(BatchResult result, Acknowledgment acknowledgment,
+                                 AckChain ackChain, long epoch, Map<TopicPartition, Long> firstOffsets) {
+        Set<String> failedEventIds = new HashSet<>();
+        result.failures().values().forEach(failure ->
+            failure.events().forEach(event -> failedEventIds.add(event.getEventId())));
+        
+        // The lag gauge follows events every durable sink committed, not ones handed to retry
+        result.events().stream()
+            .filter(event -> !failedEventIds.contains(event.getEventId()))
+            .map(VehiclePositionEvent::getTsEpochMs)
+            .filter(Objects::nonNull)
+            .max(Long::compare)
+            .ifPresent(ts -> newestWrittenTsEpochMs.accumulateAndGet(ts, Math::max));
+        
+        List<CompletableFuture<Void>> forwards = new ArrayList<>();
+        if (result.isSuccess()) {
+            eventsProcessed.increment(result.events().size());
+            log.info("Successfully processed {} events", result.events().size());
+        } else {
+            // Only the failed events of each failed sink go to the retry tiers (then the DLQ)
+            for (SinkFailure failure : result.failures().values()) {
+                if (failure.cause() instanceof SinkDeferredException) {
+                    log.info("Deferred {} of {} events on unhealthy sink {}", failure.events().size(),
+                        result.events().size(), failure.sink());
+                } else {
+                    log.error("Sink {} failed for {} of {} events", failure.sink(),
+                        failure.events().size(), result.events().size(), failure.cause());
+                }
+                forwards.add(dlqPublisher.publish(failure.sink(), failure.events(), failure.cause(), 0));
+            }
+            
+            eventsFailed.increment(failedEventIds.size());
+            eventsProcessed.increment(result.events().size() - failedEventIds.size());
+        }
+        
+        // Acknowledge once the retry tiers have the failed events. This runs on a pipeline
+        // worker under the ack sequencer, so chain on the sends instead of waiting for them
+        CompletableFuture<Void> forwarded = CompletableFuture.allOf(forwards.toArray(CompletableFuture[]::new));
+        ackChain.append(epoch, forwarded, firstOffsets, acknowledgment::acknowledge);
+    }
+    
+    /**
+     * Seek back to where a failed forward left off, and drop the current poll, which is read again
+     * The per-vehicle state already reflects everything consumed, so the records read again
+     * bypass the out-of-order filter like records below a restored snapshot.
+     */
+    private void rewind(Map<TopicPartition, Long> rewind, Map<TopicPartition, Long> currentPoll) {
+        Map<TopicPartition, Long> seekTo = new HashMap<>(currentPoll);
+        rewind.forEach((partition, offset) -> seekTo.merge(partition, offset, Math::min));
+        synchronized (stateLock) {
+            for (TopicPartition partition : seekTo.keySet()) {
+                Long consumed = consumedOffsets.get(partition.partition());
+                if (consumed != null) {
+                    restoredOffsets.merge(partition.partition(), consumed, Math::max);
+                }
+            }
+        }
+        ConsumerSeekCallback callback = seekCallback.get();
+        seekTo.forEach((partition, offset) -> callback.seek(partition.topic(), partition.partition(), offset));
+        rewinds.increment();
+        log.warn("Redelivering from {} after a failed retry tier forward", seekTo);
+    }
+    
+    private static Map<TopicPartition, Long> firstOffsets(List<String> topics, List<Integer> partitions, List<Long> offsets) {
+        Map<TopicPartition, Long> first = new HashMap<>();
+        for (int i = 0; i < partitions.size(); i++) {
+            first.merge(new TopicPartition(topics.get(i), partitions.get(i)), offsets.get(i), Math::min);
+        }
+        return first;
+    }
+    
+    @Override
+    public void registerSeekCallback(ConsumerSeekCallback callback) {
+        seekCallback.set(callback);
+    }
+    
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        assignments.keySet().forEach(partition -> ownedPartitions.add(partition.partition()));
+    }
+    
+    @Override
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        partitions.forEach(partition -> ownedPartitions.remove(partition.partition()));
+        AckChain ackChain = ackChains.get(Thread.currentThread().getId());
+        if (ackChain != null) {
+            ackChain.forget(partitions);
+        }
+    }
+    
+    /**
+     * @return the events not yet reflected in the restored state; the rest go to {@code redelivered}
+     */
+    private List<VehiclePositionEvent> splitRedelivered(List<VehiclePositionEvent> events, List<Integer> partitions,
+                                                        List<Long> offsets, List<VehiclePositionEvent> redelivered) {
+        if (restoredOffsets.isEmpty()) {
+            return events;
+        }
+        List<VehiclePositionEvent> polled = new ArrayList<>(events.size());
+        for (int i = 0; i < events.size(); i++) {
+            Long restoredOffset = restoredOffsets.get(partitions.get(i));
+            if (restoredOffset != null && offsets.get(i) < restoredOffset) {
+                redelivered.add(events.get(i));
+            } else {
+                polled.add(events.get(i));
+            }
+        }
+        return polled;
+    }
+    
+    private void recordConsumedOffsets(List<Integer> partitions, List<Long> offsets) {
+        for (int i = 0; i < partitions.size(); i++) {
+            int partition = partitions.get(i);
+            long next = offsets.get(i) + 1;
+            consumedOffsets.merge(partition, next, Math::max);
+            Long restoredOffset = restoredOffsets.get(partition);
+            if (restoredOffset != null && next >= restoredOffset) {
+                restoredOffsets.remove(partition);
+            }
+        }
+    }
+    
+    /**
+     * Consistent copy of the per-vehicle state and the offsets it reflects
+     */
+    ProcessingStateSnapshot captureState(String topic) {
+        synchronized (stateLock) {
+            expireUnownedOffsets();
+            Map<String, Long> lastTimestamps;
+            synchronized (vehicleLastTimestamp) {
+                lastTimestamps = new HashMap<>(vehicleLastTimestamp);
+            }
+            Map<Integer, Long> offsets = new HashMap<>(restoredOffsets);
+            consumedOffsets.forEach((partition, offset) -> offsets.merge(partition, offset, Math::max));
+            return new ProcessingStateSnapshot(topic, System.currentTimeMillis(), offsets,
+                lastTimestamps, motionTracker.snapshot());
+        }
+    }
+    
+    /**
+     * Drop the offsets of partitions another instance reads now: what it consumes is not in this state
+     * A partition is dropped once no listener thread owned it at two snapshots in a row, so one
+     * moving between listener threads during a rebalance keeps its offsets. Nothing is dropped while
+     * no partition is owned: before the first assignment, mid-rebalance and on shutdown.
+     */
+    private void expireUnownedOffsets() {
+        if (ownedPartitions.isEmpty()) {
+            return;
+        }
+        Set<Integer> unowned = new HashSet<>(restoredOffsets.keySet());
+        unowned.addAll(consumedOffsets.keySet());
+        unowned.removeAll(ownedPartitions);
+        Set<Integer> expired = new HashSet<>(unowned);
+        expired.retainAll(unownedAtLastCapture);
+        for (Integer partition : expired) {
+            restoredOffsets.remove(partition);
+            consumedOffsets.remove(partition);
+        }
+        if (!expired.isEmpty()) {
+            log.info("Dropped state offsets of partitions {} no longer assigned to this instance", expired);
+        }
+        unowned.removeAll(expired);
+        unownedAtLastCapture.clear();
+        unownedAtLastCapture.addAll(unowned);
+    }
+    
+    /**
+     * Seed the per-vehicle state from a snapshot; must run before the listener starts
+     */
+    void restoreState(ProcessingStateSnapshot snapshot) {
+        synchronized (stateLock) {
+            vehicleLastTimestamp.putAll(snapshot.lastTimestamps());
+            motionTracker.restore(snapshot.motion());
+            restoredOffsets.putAll(snapshot.offsets());
+        }
+    }
+    
     /**
      * Filter out events that are out of order (older than last seen)
      */
@@ -140,26 +415,4 @@ public class VehiclePositionConsumer {
         return validEvents;
     }
     
-    /**
-     * Publish update notifications via Redis Pub/Sub for SSE streaming
-     */
-    private void publishUpdateNotifications(List<VehiclePositionEvent> events) {
-        for (VehiclePositionEvent event : events) {
-            pubSubService.publishRouteUpdate(event.getRouteId(), event.getVehicleId());
-        }
-    }
-    
-    /**
-     * Send failed events to dead-letter queue
-     */
-    private void sendToDLQ(List<VehiclePositionEvent> events) {
-        for (VehiclePositionEvent event : events) {
-            try {
-                kafkaTemplate.send(properties.getDlqTopic(), event.getVehicleId(), event);
-                log.debug("Sent event to DLQ: {}", event.getEventId());
-            } catch (Exception e) {
-                log.error("Failed to send event to DLQ: {}", event.getEventId(), e);
-            }
-        }
-    }
 }
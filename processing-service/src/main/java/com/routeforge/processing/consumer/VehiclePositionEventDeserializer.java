@@ -0,0 +1,128 @@
+package com.routeforge.processing.consumer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.routeforge.common.dto.VehiclePositionEvent;
+import io.micrometer.core.instrument.Counter;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.io.IOException;
+
+/**
+ * Kafka value deserializer for {@link VehiclePositionEvent} on Jackson's streaming parser
+ * Replaces the databind {@code JsonDeserializer} on the consumer hot path: the known fields
+ * are decoded straight into the event, with no tree model, bean introspection or type
+ * header lookup. Repeating IDs (route, agency, stop, vehicle) are interned per consumer.
+ *
+ * Unknown fields are skipped (including nested objects/arrays) and counted. Numbers and
+ * booleans sent as strings are accepted, like databind's default coercion. Anything else
+ * malformed throws {@link SerializationException}, which ErrorHandlingDeserializer turns
+ * into a failed record as before.
+ *
+ * One instance per consumer: the interner is not thread-safe.
+ */
+public class VehiclePositionEventDeserializer implements Deserializer<VehiclePositionEvent> {
+    
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int INTERNER_CAPACITY = 4096;
+    
+    private final StringInterner interner = new StringInterner(INTERNER_CAPACITY);
+    private final Counter unknownFields;
+    
+    public VehiclePositionEventDeserializer(Counter unknownFields) {
+        this.unknownFields = unknownFields;
+    }
+    
+    @Override
+    public VehiclePositionEvent deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        
+        try (JsonParser parser = JSON_FACTORY.createParser(data)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a JSON object");
+            }
+            
+            VehiclePositionEvent event = new VehiclePositionEvent();
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                if (parser.nextToken() == JsonToken.VALUE_NULL) {
+                    continue;
+                }
+                
+                switch (field) {
+                    case "eventId" -> event.setEventId(readText(parser));
+                    case "vehicleId" -> event.setVehicleId(readInterned(parser));
+                    case "routeId" -> event.setRouteId(readInterned(parser));
+                    case "lat" -> event.setLat(readDouble(parser));
+                    case "lon" -> event.setLon(readDouble(parser));
+                    case "speedKph" -> event.setSpeedKph(readDouble(parser));
+                    case "headingDeg" -> event.setHeadingDeg(readDouble(parser));
+                    case "speedDerived" -> event.setSpeedDerived(readBoolean(parser));
+                    case "headingDerived" -> event.setHeadingDerived(readBoolean(parser));
+                    case "tsEpochMs" -> event.setTsEpochMs(readLong(parser));
+                    case "stopId" -> event.setStopId(readInterned(parser));
+                    case "delaySec" -> event.setDelaySec((int) readLong(parser));
+                    case "agencyId" -> event.setAgencyId(readInterned(parser));
+                    default -> {
+                        unknownFields.increment();
+                        parser.skipChildren();
+                    }
+                }
+            }
+            
+            if (token != JsonToken.END_OBJECT) {
+                throw new JsonParseException(parser, "Expected a field name or end of object, got " + token);
+            }
+            return event;
+            
+        } catch (IOException | NumberFormatException e) {
+            throw new SerializationException("Can't deserialize vehicle position from topic [" + topic + "]", e);
+        }
+    }
+    
+    private String readInterned(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_STRING) {
+            return interner.intern(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+        }
+        return readText(parser);
+    }
+    
+    private static String readText(JsonParser parser) throws IOException {
+        if (!parser.currentToken().isScalarValue()) {
+            throw new JsonParseException(parser, "Expected a string for " + parser.currentName());
+        }
+        return parser.getText();
+    }
+    
+    private static double readDouble(JsonParser parser) throws IOException {
+        return switch (parser.currentToken()) {
+            case VALUE_NUMBER_FLOAT, VALUE_NUMBER_INT -> parser.getDoubleValue();
+            case VALUE_STRING -> Double.parseDouble(parser.getText().trim());
+            default -> throw new JsonParseException(parser, "Expected a number for " + parser.currentName());
+        };
+    }
+    
+    private static long readLong(JsonParser parser) throws IOException {
+        return switch (parser.currentToken()) {
+            case VALUE_NUMBER_INT -> parser.getLongValue();
+            case VALUE_NUMBER_FLOAT -> (long) parser.getDoubleValue();
+            case VALUE_STRING -> Long.parseLong(parser.getText().trim());
+            default -> throw new JsonParseException(parser, "Expected an integer for " + parser.currentName());
+        };
+    }
+    
+    private static boolean readBoolean(JsonParser parser) throws IOException {
+        return switch (parser.currentToken()) {
+            case VALUE_TRUE -> true;
+            case VALUE_FALSE -> false;
+            case VALUE_STRING -> Boolean.parseBoolean(parser.getText().trim());
+            default -> throw new JsonParseException(parser, "Expected a boolean for " + parser.currentName());
+        };
+    }
+}
@@ -0,0 +1,67 @@
+package com.routeforge.processing.controller;
+
+import com.routeforge.processing.archive.ArchiveQuery;
+import com.routeforge.processing.service.HistoryArchiveService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * Read access to archived (cold-tier) vehicle history
+ * Internal endpoint - should be called by api-gateway-service
+ */
+@Slf4j
+@RestController
+@RequestMapping("/internal/archive")
+@RequiredArgsConstructor
+public class ArchiveController {
+    
+    private final HistoryArchiveService archiveService;
+    
+    /**
+     * Positions from archive segments
+     * @param vehicleId Only this vehicle (optional, strongly recommended)
+     * @param fromMs Inclusive start (epoch ms)
+     * @param toMs Exclusive end (epoch ms)
+     * @param limit Maximum rows (default: 1000)
+     */
+    @GetMapping("/positions")
+    public ResponseEntity<Map<String, Object>> positions(
+            @RequestParam(required = false) String vehicleId,
+            @RequestParam long fromMs,
+            @RequestParam long toMs,
+            @RequestParam(defaultValue = "1000") int limit) {
+        
+        ArchiveQuery query;
+        try {
+            query = new ArchiveQuery(vehicleId, fromMs, toMs, limit);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "status", "error",
+                "message", e.getMessage()
+            ));
+        }
+        
+        try {
+            HistoryArchiveService.ArchiveResult result = archiveService.query(query);
+            return ResponseEntity.ok(Map.of(
+                "positions", result.rows(),
+                "count", result.rows().size(),
+                "segmentsScanned", result.segmentsScanned(),
+                "rowGroupsRead", result.rowGroupsRead(),
+                "rowGroupsSkipped", result.rowGroupsSkipped(),
+                "timestamp", System.currentTimeMillis()
+            ));
+        } catch (Exception e) {
+            log.error("Archive query failed: {}", query, e);
+            return ResponseEntity.status(500).body(Map.of(
+                "status", "error",
+                "message", String.valueOf(e.getMessage()),
+                "timestamp", System.currentTimeMillis()
+            ));
+        }
+    }
+}
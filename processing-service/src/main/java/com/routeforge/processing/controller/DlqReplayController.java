@@ -1,5 +1,7 @@
 package com.routeforge.processing.controller;
 
+import com.routeforge.processing.service.DlqReplayJob;
+import com.routeforge.processing.service.DlqReplayRequest;
 import com.routeforge.processing.service.DlqReplayService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -54,4 +56,67 @@ public class DlqReplayController {
             return ResponseEntity.status(500).body(response);
         }
     }
+    
+    /**
+     * Start a background replay job that drains the DLQ until caught up
+     * @param startFrom committed (resume, default), earliest, offsets or timestamp
+     * @param startTimestampMs Required for startFrom=timestamp
+     * @param maxMessages Stop after this many records (default: 0 = until caught up)
+     * @param maxEventsPerSecond Rate ceiling (default: configured value, 0 = unlimited)
+     * @param startOffsets Partition -> offset, required for startFrom=offsets
+     */
+    @PostMapping("/replay/jobs")
+    public ResponseEntity<Map<String, Object>> startReplayJob(
+            @RequestParam(defaultValue = "committed") String startFrom,
+            @RequestParam(required = false) Long startTimestampMs,
+            @RequestParam(defaultValue = "0") long maxMessages,
+            @RequestParam(required = false) Integer maxEventsPerSecond,
+            @RequestBody(required = false) Map<Integer, Long> startOffsets) {
+        
+        log.info("Received DLQ replay job request: startFrom={}, maxMessages={}", startFrom, maxMessages);
+        
+        DlqReplayRequest request;
+        try {
+            request = new DlqReplayRequest(
+                DlqReplayRequest.StartFrom.valueOf(startFrom.toUpperCase()),
+                startTimestampMs, startOffsets, maxMessages, maxEventsPerSecond);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "status", "error",
+                "message", e.getMessage(),
+                "timestamp", System.currentTimeMillis()
+            ));
+        }
+        
+        try {
+            DlqReplayJob job = dlqReplayService.startReplay(request);
+            return ResponseEntity.accepted().body(job.toStatus());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(409).body(Map.of(
+                "status", "error",
+                "message", e.getMessage(),
+                "timestamp", System.currentTimeMillis()
+            ));
+        }
+    }
+    
+    /**
+     * Progress of the current (or last finished) replay job
+     */
+    @GetMapping("/replay/jobs/current")
+    public ResponseEntity<Map<String, Object>> replayJobStatus() {
+        return dlqReplayService.currentJob()
+            .map(job -> ResponseEntity.ok(job.toStatus()))
+            .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+    
+    /**
+     * Cancel the running replay job; progress committed so far is kept
+     */
+    @DeleteMapping("/replay/jobs/current")
+    public ResponseEntity<Map<String, Object>> cancelReplayJob() {
+        return dlqReplayService.cancelReplay()
+            .map(job -> ResponseEntity.accepted().body(job.toStatus()))
+            .orElseGet(() -> ResponseEntity.notFound().build());
+    }
 }
@@ -24,7 +24,8 @@ public class VehiclePositionHistory {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
     
-    @Column(name = "event_id", nullable = false, unique = true, length = 100)
+    // Unique together with ts_epoch_ms (partition key), see V2 migration
+    @Column(name = "event_id", nullable = false, length = 100)
     private String eventId;
     
     @Column(name = "vehicle_id", nullable = false, length = 50)
@@ -45,6 +46,13 @@ public class VehiclePositionHistory {
     @Column(name = "heading_deg")
     private Double headingDeg;
     
+    // Set when the value was computed from consecutive positions, see V4 migration
+    @Column(name = "speed_derived", nullable = false)
+    private boolean speedDerived;
+    
+    @Column(name = "heading_derived", nullable = false)
+    private boolean headingDerived;
+    
     @Column(name = "ts_epoch_ms", nullable = false)
     private Long tsEpochMs;
     
@@ -0,0 +1,47 @@
+package com.routeforge.processing.pipeline;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Releases batch completions in submission order per listener
+ * A batch that finishes early waits for every earlier batch polled by the same consumer,
+ * so acknowledged offsets only ever cover fully processed ranges of each partition
+ */
+@Slf4j
+final class AckSequencer {
+    
+    private final Map<Long, Deque<PipelineBatch>> pending = new HashMap<>();
+    
+    synchronized void register(PipelineBatch batch) {
+        pending.computeIfAbsent(batch.source(), p -> new ArrayDeque<>()).addLast(batch);
+    }
+    
+    synchronized void completed(PipelineBatch batch) {
+        Deque<PipelineBatch> queue = pending.get(batch.source());
+        if (queue == null) {
+            return;
+        }
+        
+        while (!queue.isEmpty() && queue.peekFirst().isDone()) {
+            PipelineBatch head = queue.pollFirst();
+            try {
+                head.complete();
+            } catch (Exception e) {
+                log.error("Batch completion callback failed for listener {}", head.source(), e);
+            }
+        }
+        
+        if (queue.isEmpty()) {
+            pending.remove(batch.source());
+        }
+    }
+    
+    synchronized int pendingBatches() {
+        return pending.values().stream().mapToInt(Deque::size).sum();
+    }
+}
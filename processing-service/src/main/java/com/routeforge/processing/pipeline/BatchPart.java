@@ -0,0 +1,69 @@
+package com.routeforge.processing.pipeline;
+
+import com.routeforge.common.dto.VehiclePositionEvent;
+
+import java.util.List;
+
+/**
+ * The slice of a polled batch handled by one lane of each sink stage
+ * With listener routing a batch has a single part; with key routing there is one part
+ * per lane that owns at least one of the batch's vehicles. With agency fairness each of
+ * those is further split per agency.
+ */
+final class BatchPart {
+    
+    private final PipelineBatch batch;
+    private final int lane;
+    private final String agency;
+    private final List<VehiclePositionEvent> events;
+    private final long createdNanos = System.nanoTime();
+    private volatile List<VehiclePositionEvent> cachedEvents = List.of();
+    
+    BatchPart(PipelineBatch batch, int lane, List<VehiclePositionEvent> events) {
+        this(batch, lane, null, events);
+    }
+    
+    BatchPart(PipelineBatch batch, int lane, String agency, List<VehiclePositionEvent> events) {
+        this.batch = batch;
+        this.lane = lane;
+        this.agency = agency;
+        this.events = events;
+    }
+    
+    PipelineBatch batch() {
+        return batch;
+    }
+    
+    int lane() {
+        return lane;
+    }
+    
+    /**
+     * Agency all events belong to, or null when the batch was not split by agency
+     */
+    String agency() {
+        return agency;
+    }
+    
+    List<VehiclePositionEvent> events() {
+        return events;
+    }
+    
+    /**
+     * When the part was split off its batch, i.e. when it entered the stage queues
+     */
+    long createdNanos() {
+        return createdNanos;
+    }
+    
+    /**
+     * Events the Redis stage wrote successfully, to be announced via Pub/Sub
+     */
+    List<VehiclePositionEvent> cachedEvents() {
+        return cachedEvents;
+    }
+    
+    void setCachedEvents(List<VehiclePositionEvent> cachedEvents) {
+        this.cachedEvents = cachedEvents;
+    }
+}
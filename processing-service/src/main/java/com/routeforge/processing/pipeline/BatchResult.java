@@ -0,0 +1,20 @@
+package com.routeforge.processing.pipeline;
+
+import com.routeforge.common.dto.VehiclePositionEvent;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of a batch once every durable sink has finished with it
+ * Only the events a sink actually failed to write are listed under that sink.
+ */
+public record BatchResult(
+    List<VehiclePositionEvent> events,
+    Map<Sink, SinkFailure> failures
+) {
+    
+    public boolean isSuccess() {
+        return failures.isEmpty();
+    }
+}
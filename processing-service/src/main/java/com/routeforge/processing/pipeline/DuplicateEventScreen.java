@@ -0,0 +1,125 @@
+package com.routeforge.processing.pipeline;
+
+import com.routeforge.common.dto.VehiclePositionEvent;
+import com.routeforge.processing.config.HistoryProperties;
+import com.routeforge.processing.service.DatabaseService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Drops already stored events before the history insert
+ *
+ * Rebalances and replays redeliver events whose rows exist; without screening they hit the
+ * unique index and fail the whole batch insert. Event IDs go through a rotating Bloom filter:
+ * an ID it has definitely not seen recently is inserted directly, and only the possible
+ * duplicates are looked up in PostgreSQL. Repeats within one part are dropped outright.
+ * After a restart the filter is empty, so the first replays still fall back to the unique
+ * index (and the per-row insert) as before.
+ */
+@Slf4j
+class DuplicateEventScreen {
+    
+    private final HistoryProperties.Dedup properties;
+    private final DatabaseService databaseService;
+    private final RotatingBloomFilter filter;
+    private final Counter fresh;
+    private final Counter falsePositives;
+    private final Counter duplicates;
+    private final Counter unchecked;
+    
+    DuplicateEventScreen(HistoryProperties.Dedup properties, DatabaseService databaseService, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.databaseService = databaseService;
+        this.fresh = eventCounter(meterRegistry, "new");
+        this.falsePositives = eventCounter(meterRegistry, "false_positive");
+        this.duplicates = eventCounter(meterRegistry, "duplicate");
+        this.unchecked = eventCounter(meterRegistry, "unchecked");
+        if (!properties.isEnabled()) {
+            this.filter = null;
+            return;
+        }
+        
+        this.filter = new RotatingBloomFilter(properties.getBuckets(), properties.getExpectedEventsPerBucket(),
+            properties.getFalsePositiveRate(), properties.getMaxMemoryBytes(), properties.getBucketMs(),
+            System.currentTimeMillis());
+        Gauge.builder("routeforge.processing.history.dedup.false.positive.rate", filter, RotatingBloomFilter::falsePositiveRate)
+            .description("Estimated Bloom filter false-positive rate at its current fill")
+            .register(meterRegistry);
+        Gauge.builder("routeforge.processing.history.dedup.memory", filter, RotatingBloomFilter::memoryBytes)
+            .description("Memory held by the duplicate-screening Bloom filter")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        log.info("History dedup filter: {} buckets of {} ms, {} KiB, {} hashes",
+            properties.getBuckets(), properties.getBucketMs(), filter.memoryBytes() / 1024, filter.hashCount());
+    }
+    
+    private static Counter eventCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("routeforge.processing.history.dedup.events")
+            .description("History rows by duplicate screening outcome")
+            .tag("outcome", outcome)
+            .register(meterRegistry);
+    }
+    
+    /**
+     * @return the events to insert, in their original order
+     */
+    List<VehiclePositionEvent> screen(List<VehiclePositionEvent> events) {
+        if (filter == null || events.isEmpty()) {
+            return events;
+        }
+        
+        long now = System.currentTimeMillis();
+        Set<String> inPart = new HashSet<>();
+        List<VehiclePositionEvent> candidates = new ArrayList<>(events.size());
+        List<VehiclePositionEvent> possible = new ArrayList<>();
+        for (VehiclePositionEvent event : events) {
+            String eventId = event.getEventId();
+            if (eventId == null) {
+                candidates.add(event);
+                continue;
+            }
+            if (!inPart.add(eventId)) {
+                duplicates.increment();
+                continue;
+            }
+            if (filter.mightContainAndPut(eventId, now)) {
+                possible.add(event);
+            }
+            candidates.add(event);
+        }
+        fresh.increment(candidates.size() - possible.size());
+        
+        if (possible.isEmpty()) {
+            return candidates;
+        }
+        Set<String> stored;
+        try {
+            stored = databaseService.findStoredEventIds(possible);
+        } catch (Exception e) {
+            // Let the unique index decide, as without screening
+            log.debug("Duplicate lookup for {} events failed", possible.size(), e);
+            unchecked.increment(possible.size());
+            return candidates;
+        }
+        duplicates.increment(stored.size());
+        falsePositives.increment(possible.size() - stored.size());
+        if (stored.isEmpty()) {
+            return candidates;
+        }
+        
+        List<VehiclePositionEvent> remaining = new ArrayList<>(candidates.size() - stored.size());
+        for (VehiclePositionEvent event : candidates) {
+            if (event.getEventId() == null || !stored.contains(event.getEventId())) {
+                remaining.add(event);
+            }
+        }
+        return remaining;
+    }
+}
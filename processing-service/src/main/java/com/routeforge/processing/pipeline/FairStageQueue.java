@@ -0,0 +1,129 @@
+package com.routeforge.processing.pipeline;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Stage queue with one FIFO per flow (agency), served by weighted deficit round robin
+ *
+ * Each time a flow reaches the head of the round it is credited {@code quantum * weight};
+ * it is served while the cost (event count) of its next item fits in its credit, then
+ * moves to the back. A flow that bursts therefore gets its weighted share of the stage,
+ * not all of it, and a quiet flow's items wait at most about one round.
+ *
+ * Items of one flow stay in order. Every flow has its own bound, so a full backlog
+ * only blocks producers of that flow.
+ */
+final class FairStageQueue<T> implements StageQueue<T> {
+    
+    private final int capacityPerFlow;
+    private final int quantum;
+    private final Function<T, String> flowOf;
+    private final ToIntFunction<T> costOf;
+    private final ToIntFunction<String> weightOf;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Map<String, Flow<T>> flows = new HashMap<>();
+    private final Deque<Flow<T>> round = new ArrayDeque<>();
+    private int size;
+    
+    FairStageQueue(int capacityPerFlow, int quantum, Function<T, String> flowOf,
+                   ToIntFunction<T> costOf, ToIntFunction<String> weightOf) {
+        this.capacityPerFlow = capacityPerFlow;
+        this.quantum = quantum;
+        this.flowOf = flowOf;
+        this.costOf = costOf;
+        this.weightOf = weightOf;
+    }
+    
+    @Override
+    public void put(T item) throws InterruptedException {
+        String key = flowOf.apply(item);
+        lock.lockInterruptibly();
+        try {
+            Flow<T> flow = flows.computeIfAbsent(key, Flow::new);
+            while (flow.items.size() >= capacityPerFlow) {
+                notFull.await();
+            }
+            flow.items.addLast(item);
+            size++;
+            if (!flow.scheduled) {
+                flow.scheduled = true;
+                flow.deficit = 0;
+                flow.credited = false;
+                round.addLast(flow);
+            }
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public T take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (round.isEmpty()) {
+                notEmpty.await();
+            }
+            while (true) {
+                Flow<T> flow = round.peekFirst();
+                if (!flow.credited) {
+                    flow.deficit += (long) quantum * Math.max(1, weightOf.applyAsInt(flow.key));
+                    flow.credited = true;
+                }
+                
+                T head = flow.items.peekFirst();
+                int cost = Math.max(1, costOf.applyAsInt(head));
+                if (cost <= flow.deficit) {
+                    flow.items.pollFirst();
+                    flow.deficit -= cost;
+                    size--;
+                    if (flow.items.isEmpty()) {
+                        // An idle flow does not bank credit
+                        round.pollFirst();
+                        flow.scheduled = false;
+                    }
+                    notFull.signalAll();
+                    return head;
+                }
+                
+                // Turn over: keep the remaining credit, go to the back of the round
+                round.pollFirst();
+                flow.credited = false;
+                round.addLast(flow);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private static final class Flow<T> {
+        private final String key;
+        private final Deque<T> items = new ArrayDeque<>();
+        private long deficit;
+        private boolean credited;
+        private boolean scheduled;
+        
+        Flow(String key) {
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.routeforge.processing.pipeline;
+
+import com.routeforge.common.dto.VehiclePositionEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A polled batch travelling through the sink stages
+ * Tracks which durable stages are still outstanding across all of its parts
+ */
+final class PipelineBatch {
+    
+    private final long source;
+    private final List<VehiclePositionEvent> events;
+    private final Consumer<BatchResult> onComplete;
+    private final AtomicInteger pendingDurable = new AtomicInteger();
+    private final Map<Sink, SinkFailure> failures = new ConcurrentHashMap<>();
+    private volatile boolean done;
+    
+    PipelineBatch(long source, List<VehiclePositionEvent> events, Consumer<BatchResult> onComplete) {
+        this.source = source;
+        this.events = events;
+        this.onComplete = onComplete;
+    }
+    
+    /**
+     * Identifies the listener (consumer thread) that polled this batch
+     */
+    long source() {
+        return source;
+    }
+    
+    List<VehiclePositionEvent> events() {
+        return events;
+    }
+    
+    /**
+     * Set how many parts the batch was split into, before any part is submitted
+     */
+    void expectParts(int parts) {
+        pendingDurable.set(parts * Sink.durableCount());
+        done = parts == 0;
+    }
+    
+    /**
+     * Record that a stage finished for one part (fully successful when failure is null)
+     * @return true when this was the last outstanding durable stage of the last part
+     */
+    boolean stageFinished(Sink sink, SinkFailure failure) {
+        if (!sink.isDurable()) {
+            return false;
+        }
+        if (failure != null) {
+            failures.merge(sink, failure, PipelineBatch::mergeFailures);
+        }
+        boolean last = pendingDurable.decrementAndGet() == 0;
+        if (last) {
+            done = true;
+        }
+        return last;
+    }
+    
+    boolean isDone() {
+        return done;
+    }
+    
+    void complete() {
+        onComplete.accept(new BatchResult(events, Map.copyOf(failures)));
+    }
+    
+    private static SinkFailure mergeFailures(SinkFailure existing, SinkFailure added) {
+        List<VehiclePositionEvent> merged = new ArrayList<>(existing.events());
+        merged.addAll(added.events());
+        return new SinkFailure(existing.sink(), merged, existing.cause());
+    }
+}
@@ -0,0 +1,133 @@
+package com.routeforge.processing.pipeline;
+
+import java.util.Arrays;
+
+/**
+ * Bloom filter over a sliding window of wall-clock buckets
+ *
+ * One generation per bucket; keys go into the current generation and are looked up in all
+ * of them, so a key is remembered for between (generations - 1) and generations buckets.
+ * When a bucket ends, the oldest generation is cleared and becomes the current one.
+ * Each generation is sized for {@code expectedPerBucket} keys so that the window as a whole
+ * stays at the target false-positive rate, unless that exceeds {@code maxMemoryBytes}, in
+ * which case the filter is capped and the rate rises ({@link #falsePositiveRate()}).
+ * False negatives are impossible within the window.
+ */
+final class RotatingBloomFilter {
+    
+    private final long[][] generations;
+    private final long[] bitsSet;
+    private final long bitsPerGeneration;
+    private final int hashCount;
+    private final long bucketMs;
+    private int current;
+    private long currentBucketEnd;
+    
+    RotatingBloomFilter(int generationCount, long expectedPerBucket, double falsePositiveRate,
+                        long maxMemoryBytes, long bucketMs, long nowMs) {
+        if (generationCount < 1 || expectedPerBucket < 1 || bucketMs < 1
+                || !(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("Invalid Bloom filter settings");
+        }
+        // Lookups hit every generation: split the error budget between them
+        double perGeneration = 1 - Math.pow(1 - falsePositiveRate, 1.0 / generationCount);
+        long bits = (long) Math.ceil(-expectedPerBucket * Math.log(perGeneration) / (Math.log(2) * Math.log(2)));
+        long maxWords = Math.max(1, Math.min(maxMemoryBytes / 8 / generationCount, Integer.MAX_VALUE));
+        int words = (int) Math.min((bits + 63) / 64, maxWords);
+        
+        this.bitsPerGeneration = words * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitsPerGeneration / expectedPerBucket * Math.log(2)));
+        this.generations = new long[generationCount][words];
+        this.bitsSet = new long[generationCount];
+        this.bucketMs = bucketMs;
+        this.currentBucketEnd = nowMs - Math.floorMod(nowMs, bucketMs) + bucketMs;
+    }
+    
+    /**
+     * Add a key
+     * @return false if the key was definitely not added within the window, true if it may have been
+     */
+    synchronized boolean mightContainAndPut(String key, long nowMs) {
+        rotate(nowMs);
+        long hash = fnv1a(key);
+        long h1 = mix(hash);
+        long h2 = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+        long[] indexes = new long[hashCount];
+        for (int i = 0; i < hashCount; i++) {
+            indexes[i] = Math.floorMod(h1 + i * h2, bitsPerGeneration);
+        }
+        
+        boolean present = false;
+        for (long[] bits : generations) {
+            present |= containsAll(bits, indexes);
+        }
+        
+        long[] bits = generations[current];
+        for (long index : indexes) {
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            if ((bits[word] & mask) == 0) {
+                bits[word] |= mask;
+                bitsSet[current]++;
+            }
+        }
+        return present;
+    }
+    
+    private static boolean containsAll(long[] bits, long[] indexes) {
+        for (long index : indexes) {
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private void rotate(long nowMs) {
+        if (nowMs < currentBucketEnd) {
+            return;
+        }
+        long elapsedBuckets = (nowMs - currentBucketEnd) / bucketMs + 1;
+        for (long b = 0; b < Math.min(elapsedBuckets, generations.length); b++) {
+            current = (current + 1) % generations.length;
+            Arrays.fill(generations[current], 0L);
+            bitsSet[current] = 0;
+        }
+        currentBucketEnd += elapsedBuckets * bucketMs;
+    }
+    
+    /**
+     * Probability that a key not in the window is reported as present, from the current fill
+     */
+    synchronized double falsePositiveRate() {
+        double allClear = 1.0;
+        for (long set : bitsSet) {
+            allClear *= 1 - Math.pow((double) set / bitsPerGeneration, hashCount);
+        }
+        return 1 - allClear;
+    }
+    
+    long memoryBytes() {
+        return bitsPerGeneration / 8 * generations.length;
+    }
+    
+    int hashCount() {
+        return hashCount;
+    }
+    
+    private static long fnv1a(String key) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return hash;
+    }
+    
+    /** SplitMix64 finalizer: spreads FNV's weak low bits over the whole word */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
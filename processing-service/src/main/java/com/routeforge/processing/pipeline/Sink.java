@@ -0,0 +1,32 @@
+package com.routeforge.processing.pipeline;
+
+/**
+ * Downstream sinks written by the processing pipeline
+ * Durable sinks must complete before a batch's offsets are acknowledged
+ */
+public enum Sink {
+    
+    REDIS(true),
+    DATABASE(true),
+    PUBSUB(false);
+    
+    private final boolean durable;
+    
+    Sink(boolean durable) {
+        this.durable = durable;
+    }
+    
+    public boolean isDurable() {
+        return durable;
+    }
+    
+    public static int durableCount() {
+        int count = 0;
+        for (Sink sink : values()) {
+            if (sink.durable) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,11 @@
+package com.routeforge.processing.pipeline;
+
+/**
+ * Cause recorded for events whose write was not attempted because the sink is unhealthy
+ */
+public class SinkDeferredException extends RuntimeException {
+    
+    public SinkDeferredException(Sink sink) {
+        super(sink + " unhealthy, write deferred");
+    }
+}
@@ -0,0 +1,15 @@
+package com.routeforge.processing.pipeline;
+
+import com.routeforge.common.dto.VehiclePositionEvent;
+
+import java.util.List;
+
+/**
+ * Events a sink could not write after retries, with the last error seen
+ */
+public record SinkFailure(
+    Sink sink,
+    List<VehiclePositionEvent> events,
+    Exception cause
+) {
+}
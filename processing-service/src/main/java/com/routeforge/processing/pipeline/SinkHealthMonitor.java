@@ -0,0 +1,196 @@
+package com.routeforge.processing.pipeline;
+
+import com.routeforge.processing.config.BackpressureProperties;
+import com.routeforge.processing.config.RetryProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the health of the durable sinks from every write attempt
+ * Keeps an EWMA of attempt latency and of the error rate per sink. A sink turns unhealthy
+ * when either crosses its threshold and healthy again only once both are well below it
+ * (recovery-ratio), so the state does not flap. While a sink is unhealthy, one probe per
+ * probe-interval-ms is let through to notice recovery.
+ */
+@Slf4j
+@Component
+public class SinkHealthMonitor {
+    
+    private final BackpressureProperties properties;
+    private final boolean retryTiersEnabled;
+    private final Map<Sink, SinkHealth> health = new EnumMap<>(Sink.class);
+    private final Map<Sink, Counter> unhealthyTransitions = new EnumMap<>(Sink.class);
+    
+    public SinkHealthMonitor(
+            BackpressureProperties properties,
+            RetryProperties retryProperties,
+            MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.retryTiersEnabled = retryProperties.isEnabled();
+        health.put(Sink.REDIS, new SinkHealth(properties.getRedisLatencyThresholdMs()));
+        health.put(Sink.DATABASE, new SinkHealth(properties.getDatabaseLatencyThresholdMs()));
+        
+        health.forEach((sink, sinkHealth) -> {
+            String tag = sink.name().toLowerCase();
+            Gauge.builder("routeforge.processing.sink.latency.ewma", sinkHealth, SinkHealth::latencyMs)
+                .description("EWMA of sink write attempt latency (ms)")
+                .tag("sink", tag)
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+            Gauge.builder("routeforge.processing.sink.error.rate", sinkHealth, SinkHealth::errorRate)
+                .description("EWMA of failed sink write attempts")
+                .tag("sink", tag)
+                .register(meterRegistry);
+            Gauge.builder("routeforge.processing.sink.healthy", sinkHealth, h -> h.isHealthy() ? 1 : 0)
+                .description("1 while the sink is healthy, 0 while writes are paused or deferred")
+                .tag("sink", tag)
+                .register(meterRegistry);
+            unhealthyTransitions.put(sink, Counter.builder("routeforge.processing.sink.unhealthy")
+                .description("Times a sink turned unhealthy")
+                .tag("sink", tag)
+                .register(meterRegistry));
+        });
+    }
+    
+    /**
+     * Record one write attempt (or probe)
+     */
+    public void record(Sink sink, long latencyNanos, boolean success) {
+        SinkHealth sinkHealth = health.get(sink);
+        if (sinkHealth == null) {
+            return;
+        }
+        double latencyMs = latencyNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        Transition transition = sinkHealth.record(latencyMs, success);
+        if (transition == Transition.UNHEALTHY) {
+            unhealthyTransitions.get(sink).increment();
+            log.warn("Sink {} unhealthy (latency EWMA {} ms, error rate {})",
+                sink, Math.round(sinkHealth.latencyMs()), String.format("%.2f", sinkHealth.errorRate()));
+        } else if (transition == Transition.RECOVERED) {
+            log.info("Sink {} recovered (latency EWMA {} ms, error rate {})",
+                sink, Math.round(sinkHealth.latencyMs()), String.format("%.2f", sinkHealth.errorRate()));
+        }
+    }
+    
+    public boolean isHealthy(Sink sink) {
+        SinkHealth sinkHealth = health.get(sink);
+        return !properties.isEnabled() || sinkHealth == null || sinkHealth.isHealthy();
+    }
+    
+    /**
+     * True at most once per probe interval while the sink is unhealthy
+     */
+    public boolean tryProbe(Sink sink) {
+        SinkHealth sinkHealth = health.get(sink);
+        return sinkHealth != null && sinkHealth.tryProbe(System.currentTimeMillis(), properties.getProbeIntervalMs());
+    }
+    
+    /**
+     * Whether a write to the sink should be parked on the retry tier instead of attempted
+     */
+    public boolean shouldDefer(Sink sink) {
+        return sink == Sink.DATABASE && canDeferDatabase() && !isHealthy(sink) && !tryProbe(sink);
+    }
+    
+    /**
+     * Unhealthy sinks that consumption cannot continue without
+     */
+    public Set<Sink> blockingSinks() {
+        Set<Sink> blocking = EnumSet.noneOf(Sink.class);
+        for (Sink sink : health.keySet()) {
+            if (!isHealthy(sink) && !(sink == Sink.DATABASE && canDeferDatabase())) {
+                blocking.add(sink);
+            }
+        }
+        return blocking;
+    }
+    
+    public Set<Sink> unhealthySinks() {
+        Set<Sink> unhealthy = EnumSet.noneOf(Sink.class);
+        for (Sink sink : health.keySet()) {
+            if (!isHealthy(sink)) {
+                unhealthy.add(sink);
+            }
+        }
+        return unhealthy;
+    }
+    
+    private boolean canDeferDatabase() {
+        return properties.isDeferDatabaseWrites() && retryTiersEnabled;
+    }
+    
+    private enum Transition {
+        NONE, UNHEALTHY, RECOVERED
+    }
+    
+    /**
+     * EWMA state of one sink
+     */
+    private final class SinkHealth {
+        
+        private final double latencyThresholdMs;
+        private double latencyMs;
+        private double errorRate;
+        private long samples;
+        private boolean healthy = true;
+        private long lastProbeMs;
+        
+        SinkHealth(double latencyThresholdMs) {
+            this.latencyThresholdMs = latencyThresholdMs;
+        }
+        
+        synchronized Transition record(double sampleLatencyMs, boolean success) {
+            double alpha = properties.getEwmaAlpha();
+            if (samples++ == 0) {
+                latencyMs = sampleLatencyMs;
+                errorRate = success ? 0 : 1;
+            } else {
+                latencyMs += alpha * (sampleLatencyMs - latencyMs);
+                errorRate += alpha * ((success ? 0 : 1) - errorRate);
+            }
+            
+            if (healthy && samples >= properties.getMinSamples()
+                    && (latencyMs > latencyThresholdMs || errorRate > properties.getErrorRateThreshold())) {
+                healthy = false;
+                lastProbeMs = System.currentTimeMillis();
+                return Transition.UNHEALTHY;
+            }
+            double ratio = properties.getRecoveryRatio();
+            if (!healthy && latencyMs < latencyThresholdMs * ratio
+                    && errorRate < properties.getErrorRateThreshold() * ratio) {
+                healthy = true;
+                return Transition.RECOVERED;
+            }
+            return Transition.NONE;
+        }
+        
+        synchronized boolean tryProbe(long nowMs, long intervalMs) {
+            if (healthy || nowMs - lastProbeMs < intervalMs) {
+                return false;
+            }
+            lastProbeMs = nowMs;
+            return true;
+        }
+        
+        synchronized boolean isHealthy() {
+            return healthy;
+        }
+        
+        synchronized double latencyMs() {
+            return latencyMs;
+        }
+        
+        synchronized double errorRate() {
+            return errorRate;
+        }
+    }
+}
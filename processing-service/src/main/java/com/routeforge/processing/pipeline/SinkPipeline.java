@@ -0,0 +1,445 @@
+package com.routeforge.processing.pipeline;
+
+import com.routeforge.common.dto.VehiclePositionEvent;
+import com.routeforge.processing.config.HistoryProperties;
+import com.routeforge.processing.config.PipelineProperties;
+import com.routeforge.processing.config.PipelineProperties.Fairness;
+import com.routeforge.processing.config.PipelineProperties.Routing;
+import com.routeforge.processing.service.DatabaseService;
+import com.routeforge.processing.service.HistoryStatsRecorder;
+import com.routeforge.processing.service.RedisPubSubService;
+import com.routeforge.processing.service.RedisService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Staged asynchronous sink pipeline
+ *
+ * Each sink (Redis, PostgreSQL, Pub/Sub) has its own bounded queues and dedicated workers:
+ * - Redis and PostgreSQL stages run in parallel as soon as a batch is submitted
+ * - Pub/Sub notifications follow the Redis stage, without waiting for PostgreSQL
+ * - A batch completes once every durable stage has finished, and completions are
+ *   released in submission order per listener
+ *
+ * The Redis stage writes and announces only the newest position per vehicle in each part
+ * ({@link VehicleCoalescer}); the PostgreSQL stage still stores every position, minus events
+ * already stored ({@link DuplicateEventScreen}). Rows it inserts, and only those, feed the
+ * speed rollups and history aggregates ({@link HistoryStatsRecorder}).
+ *
+ * Each stage retries only its own failed events with backoff ({@link SinkRetrier}); events
+ * that still fail are reported per sink in the {@link BatchResult}. Pub/Sub is best-effort:
+ * a notification that could not be sent after retries is dropped, since a late one has no value.
+ * While PostgreSQL is unhealthy ({@link SinkHealthMonitor}) the database stage defers its rows
+ * to the retry tiers instead of writing them, so Redis keeps flowing.
+ *
+ * Work is spread over lanes (one worker of each stage per lane):
+ * - LISTENER routing sends a whole batch to the lane of the listener thread that polled it.
+ *   Kafka keys by vehicleId, so each vehicle's events stay on one lane, in order.
+ * - KEY routing splits every batch by vehicleId hash across all lanes, so parallelism is
+ *   bounded by workers-per-stage rather than by partitions or listener threads. A vehicle
+ *   always maps to the same lane, so its events are still written in order.
+ *
+ * With agency fairness enabled, each lane's part is split per agencyId and every stage
+ * worker serves agencies by weighted deficit round robin ({@link FairStageQueue}), so a
+ * burst from one agency cannot hold the other agencies' updates behind it. A vehicle
+ * belongs to one agency, so per-vehicle order is unchanged.
+ */
+@Slf4j
+@Component
+public class SinkPipeline {
+
+    static final String UNKNOWN_AGENCY = "unknown";
+
+    private final RedisService redisService;
+    private final DatabaseService databaseService;
+    private final RedisPubSubService pubSubService;
+    private final HistoryStatsRecorder historyStats;
+    private final Routing routing;
+    private final Fairness fairness;
+    private final List<StageWorker<BatchPart>> redisWorkers = new ArrayList<>();
+    private final List<StageWorker<BatchPart>> databaseWorkers = new ArrayList<>();
+    private final List<StageWorker<BatchPart>> pubSubWorkers = new ArrayList<>();
+    private final AckSequencer ackSequencer = new AckSequencer();
+    private final SinkRetrier retrier;
+    private final TrajectoryThinner historyThinner;
+    private final VehicleCoalescer coalescer;
+    private final DuplicateEventScreen duplicateScreen;
+    private final SinkHealthMonitor healthMonitor;
+    private final Counter deferred;
+    private final Map<Sink, Timer> stageTimers = new EnumMap<>(Sink.class);
+    private final Map<Long, Integer> laneBySource = new ConcurrentHashMap<>();
+    private final AtomicInteger nextLane = new AtomicInteger();
+    private final MeterRegistry meterRegistry;
+    private final Map<String, AgencyMeters> agencyMeters = new ConcurrentHashMap<>();
+
+    public SinkPipeline(
+            RedisService redisService,
+            DatabaseService databaseService,
+            RedisPubSubService pubSubService,
+            HistoryStatsRecorder historyStats,
+            PipelineProperties pipelineProperties,
+            HistoryProperties historyProperties,
+            SinkHealthMonitor healthMonitor,
+            MeterRegistry meterRegistry) {
+        this.redisService = redisService;
+        this.databaseService = databaseService;
+        this.pubSubService = pubSubService;
+        this.historyStats = historyStats;
+        this.routing = pipelineProperties.getRouting();
+        this.fairness = pipelineProperties.getFairness();
+        this.meterRegistry = meterRegistry;
+        this.healthMonitor = healthMonitor;
+        this.retrier = new SinkRetrier(pipelineProperties, healthMonitor, meterRegistry);
+        this.historyThinner = new TrajectoryThinner(historyProperties.getThinning(), meterRegistry);
+        this.coalescer = new VehicleCoalescer(pipelineProperties.isCoalesceVehicleUpdates(), meterRegistry);
+        this.duplicateScreen = new DuplicateEventScreen(historyProperties.getDedup(), databaseService, meterRegistry);
+
+        WorkerThreadFactory threadFactory = WorkerThreadFactory.create(pipelineProperties.isVirtualThreads());
+        int capacity = pipelineProperties.getQueueCapacity();
+        for (int i = 0; i < pipelineProperties.getWorkersPerStage(); i++) {
+            redisWorkers.add(new StageWorker<>("pipeline-redis-" + i, stageQueue(capacity),
+                part -> runStage(part, Sink.REDIS, this::runRedisStage), threadFactory));
+            databaseWorkers.add(new StageWorker<>("pipeline-db-" + i, stageQueue(capacity),
+                part -> runStage(part, Sink.DATABASE, this::runDatabaseStage), threadFactory));
+            pubSubWorkers.add(new StageWorker<>("pipeline-pubsub-" + i, stageQueue(capacity),
+                part -> runStage(part, Sink.PUBSUB, this::runPubSubStage), threadFactory));
+        }
+
+        stageTimers.put(Sink.REDIS, StageTimers.forStage(meterRegistry, "redis"));
+        stageTimers.put(Sink.DATABASE, StageTimers.forStage(meterRegistry, "db"));
+        stageTimers.put(Sink.PUBSUB, StageTimers.forStage(meterRegistry, "pubsub"));
+        registerQueueGauge(meterRegistry, "redis", redisWorkers);
+        registerQueueGauge(meterRegistry, "db", databaseWorkers);
+        registerQueueGauge(meterRegistry, "pubsub", pubSubWorkers);
+        this.deferred = Counter.builder("routeforge.processing.sink.deferred")
+            .description("Events whose write was deferred to the retry tiers while the sink was unhealthy")
+            .tag("sink", "db")
+            .register(meterRegistry);
+        Gauge.builder("routeforge.processing.pipeline.pending.batches", ackSequencer, AckSequencer::pendingBatches)
+            .description("Batches submitted to the pipeline and not yet acknowledged")
+            .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        redisWorkers.forEach(StageWorker::start);
+        databaseWorkers.forEach(StageWorker::start);
+        pubSubWorkers.forEach(StageWorker::start);
+        log.info("Started sink pipeline with {} workers per stage ({} routing, agency fairness {})",
+            redisWorkers.size(), routing, fairness.isEnabled() ? "on" : "off");
+    }
+
+    @PreDestroy
+    public void stop() {
+        log.info("Stopping sink pipeline ({} batches pending)", ackSequencer.pendingBatches());
+        redisWorkers.forEach(StageWorker::stop);
+        databaseWorkers.forEach(StageWorker::stop);
+        pubSubWorkers.forEach(StageWorker::stop);
+    }
+
+    /**
+     * Submit a validated batch to the sink stages from the listener thread
+     * Blocks while the stage queues of the target lanes are full. An empty batch completes
+     * as soon as every earlier batch from the same listener has.
+     *
+     * @param onComplete invoked once all durable stages finished for this batch and
+     *                   every earlier batch from the same listener has completed
+     */
+    public void submit(List<VehiclePositionEvent> events, Consumer<BatchResult> onComplete)
+            throws InterruptedException {
+        long source = Thread.currentThread().getId();
+        PipelineBatch batch = new PipelineBatch(source, events, onComplete);
+        List<BatchPart> parts = split(batch);
+
+        batch.expectParts(parts.size());
+        ackSequencer.register(batch);
+        if (parts.isEmpty()) {
+            ackSequencer.completed(batch);
+            return;
+        }
+        if (fairness.isEnabled()) {
+            // Smaller agencies first: if a large agency's queue is full, the listener blocks
+            // after the others' parts are already queued
+            parts.sort(Comparator.comparingInt(part -> part.events().size()));
+        }
+
+        for (BatchPart part : parts) {
+            redisWorkers.get(part.lane()).submit(part);
+            databaseWorkers.get(part.lane()).submit(part);
+        }
+    }
+
+    /**
+     * Batches submitted and not yet completed
+     */
+    public int pendingBatches() {
+        return ackSequencer.pendingBatches();
+    }
+
+    private List<BatchPart> split(PipelineBatch batch) {
+        if (batch.events().isEmpty()) {
+            return List.of();
+        }
+
+        Map<Integer, List<VehiclePositionEvent>> byLane = new TreeMap<>();
+        if (routing == Routing.LISTENER) {
+            int lane = laneBySource.computeIfAbsent(batch.source(),
+                s -> Math.floorMod(nextLane.getAndIncrement(), redisWorkers.size()));
+            byLane.put(lane, batch.events());
+        } else {
+            for (VehiclePositionEvent event : batch.events()) {
+                byLane.computeIfAbsent(laneForKey(event.getVehicleId()), l -> new ArrayList<>()).add(event);
+            }
+        }
+
+        List<BatchPart> parts = new ArrayList<>(byLane.size());
+        byLane.forEach((lane, events) -> {
+            if (!fairness.isEnabled()) {
+                parts.add(new BatchPart(batch, lane, events));
+                return;
+            }
+            Map<String, List<VehiclePositionEvent>> byAgency = new LinkedHashMap<>();
+            for (VehiclePositionEvent event : events) {
+                byAgency.computeIfAbsent(agencyOf(event), a -> new ArrayList<>()).add(event);
+            }
+            byAgency.forEach((agency, agencyEvents) -> parts.add(new BatchPart(batch, lane, agency, agencyEvents)));
+        });
+        return parts;
+    }
+
+    private StageQueue<BatchPart> stageQueue(int capacity) {
+        if (!fairness.isEnabled()) {
+            return StageQueue.fifo(capacity);
+        }
+        return new FairStageQueue<>(capacity, fairness.getQuantum(), BatchPart::agency,
+            part -> part.events().size(), fairness::weightOf);
+    }
+
+    static String agencyOf(VehiclePositionEvent event) {
+        String agency = event.getAgencyId();
+        return agency == null || agency.isBlank() ? UNKNOWN_AGENCY : agency;
+    }
+
+    private int laneForKey(String vehicleId) {
+        return vehicleId == null ? 0 : Math.floorMod(vehicleId.hashCode(), redisWorkers.size());
+    }
+
+    /**
+     * Run a stage body and always report the stage finished, so an unexpected exception fails
+     * the part instead of holding every later batch of the listener in the ack sequencer
+     */
+    private void runStage(BatchPart part, Sink sink, Function<BatchPart, SinkFailure> stage) {
+        SinkFailure failure = new SinkFailure(sink, part.events(),
+            new IllegalStateException(sink + " stage did not complete"));
+        try {
+            failure = stage.apply(part);
+        } catch (Exception e) {
+            log.error("Pipeline stage {} failed for {} events", sink, part.events().size(), e);
+            failure = new SinkFailure(sink, part.events(), e);
+        } finally {
+            finishStage(part, sink, failure);
+        }
+    }
+
+    private SinkFailure runRedisStage(BatchPart part) {
+        long start = System.nanoTime();
+        // The cache only holds current state: older positions of a vehicle in this part would be overwritten anyway
+        List<VehiclePositionEvent> latest = coalescer.coalesce(part.events());
+        List<VehiclePositionEvent> applied = new ArrayList<>();
+        // Attempts after the first repair whatever the failed write left half done
+        AtomicBoolean retry = new AtomicBoolean();
+        SinkFailure failure = writeWithRetry(Sink.REDIS, latest, events -> {
+            RedisService.CacheUpdate update = redisService.updateVehiclePositions(events, retry.getAndSet(true));
+            applied.addAll(update.applied());
+            return update.failed();
+        });
+
+        // Only announce what changed the cache: stale events skipped by the timestamp guard
+        // would otherwise publish an older position after a newer one
+        List<VehiclePositionEvent> cached = inBatchOrder(latest, applied);
+        part.setCachedEvents(cached);
+        stageTimers.get(Sink.REDIS).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        recordAgencyFreshness(part, cached);
+
+        if (!cached.isEmpty()) {
+            try {
+                pubSubWorkers.get(part.lane()).submit(part);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return failure;
+    }
+
+    private SinkFailure runDatabaseStage(BatchPart part) {
+        long start = System.nanoTime();
+        // Optional: drop points dead reckoning already predicts (history only; Redis keeps every fix)
+        List<VehiclePositionEvent> thinned = historyThinner.thin(part.events());
+        
+        if (!thinned.isEmpty() && healthMonitor.shouldDefer(Sink.DATABASE)) {
+            // Don't wait on a struggling database: the rows go to the retry tier, which holds them until it recovers
+            deferred.increment(thinned.size());
+            historyStats.recordInserted(excluding(part.events(), thinned));
+            return new SinkFailure(Sink.DATABASE, thinned, new SinkDeferredException(Sink.DATABASE));
+        }
+        
+        // Replays and rebalances redeliver stored rows: drop them here rather than fail the batch insert
+        List<VehiclePositionEvent> toStore = duplicateScreen.screen(thinned);
+        
+        SinkFailure failure = writeWithRetry(Sink.DATABASE, toStore, events -> {
+            databaseService.saveVehiclePositions(events);
+            return List.of();
+        });
+
+        List<VehiclePositionEvent> inserted = failure == null ? toStore : List.of();
+        if (failure != null && healthMonitor.isHealthy(Sink.DATABASE)) {
+            // Batch insert kept failing on a healthy database: isolate the rows that are actually bad
+            DatabaseService.IndividualSave save = databaseService.saveVehiclePositionsIndividually(failure.events());
+            inserted = save.inserted();
+            failure = save.failed().isEmpty() ? null : new SinkFailure(Sink.DATABASE, save.failed(), failure.cause());
+        }
+        // Thinning only saves storage: rollups and aggregates see every point of the part, less the
+        // duplicates (screened, or rejected row by row) and the rows left to the retry tier
+        historyStats.recordInserted(excluding(part.events(), excluding(thinned, inserted)));
+        stageTimers.get(Sink.DATABASE).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return failure;
+    }
+
+    private SinkFailure runPubSubStage(BatchPart part) {
+        long start = System.nanoTime();
+        SinkFailure failure = writeWithRetry(Sink.PUBSUB, part.cachedEvents(), pubSubService::publishRouteUpdates);
+        stageTimers.get(Sink.PUBSUB).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        if (failure != null) {
+            log.warn("Dropped {} update notifications after retries", failure.events().size());
+        }
+        return failure;
+    }
+
+    private SinkFailure writeWithRetry(
+            Sink sink,
+            List<VehiclePositionEvent> events,
+            Function<List<VehiclePositionEvent>, List<VehiclePositionEvent>> writer) {
+        try {
+            return retrier.write(sink, events, writer);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new SinkFailure(sink, events, e);
+        }
+    }
+
+    /**
+     * The events of {@code events} that are also in {@code included}, in the order of {@code events}
+     * (retries append later successes out of order)
+     */
+    static List<VehiclePositionEvent> inBatchOrder(
+            List<VehiclePositionEvent> events, List<VehiclePositionEvent> included) {
+        Set<VehiclePositionEvent> includedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        includedSet.addAll(included);
+        List<VehiclePositionEvent> selected = new ArrayList<>(included.size());
+        for (VehiclePositionEvent event : events) {
+            if (includedSet.contains(event)) {
+                selected.add(event);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * @return events not in excluded (by identity), in their original order
+     */
+    static List<VehiclePositionEvent> excluding(
+            List<VehiclePositionEvent> events, List<VehiclePositionEvent> excluded) {
+        if (excluded.isEmpty()) {
+            return events;
+        }
+        Set<VehiclePositionEvent> excludedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        excludedSet.addAll(excluded);
+        List<VehiclePositionEvent> remaining = new ArrayList<>(events.size());
+        for (VehiclePositionEvent event : events) {
+            if (!excludedSet.contains(event)) {
+                remaining.add(event);
+            }
+        }
+        return remaining;
+    }
+
+    private void finishStage(BatchPart part, Sink sink, SinkFailure failure) {
+        if (part.batch().stageFinished(sink, failure)) {
+            ackSequencer.completed(part.batch());
+        }
+    }
+
+    /**
+     * Per-agency cache writes and the time their part spent from submit to written in Redis
+     */
+    private void recordAgencyFreshness(BatchPart part, List<VehiclePositionEvent> cached) {
+        if (cached.isEmpty()) {
+            return;
+        }
+        long latencyNanos = System.nanoTime() - part.createdNanos();
+        if (part.agency() != null) {
+            agencyMeters(part.agency()).record(cached.size(), latencyNanos);
+            return;
+        }
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (VehiclePositionEvent event : cached) {
+            counts.merge(agencyOf(event), 1, Integer::sum);
+        }
+        counts.forEach((agency, count) -> agencyMeters(agency).record(count, latencyNanos));
+    }
+
+    private AgencyMeters agencyMeters(String agency) {
+        return agencyMeters.computeIfAbsent(agency, a -> new AgencyMeters(
+            Counter.builder("routeforge.processing.agency.events")
+                .description("Events written to the hot cache, per agency")
+                .tag("agency", a)
+                .register(meterRegistry),
+            Timer.builder("routeforge.processing.agency.cache.latency")
+                .description("Time from pipeline submit to the hot cache write, per agency")
+                .tag("agency", a)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .serviceLevelObjectives(Duration.ofMillis(fairness.getFreshnessSloMs()))
+                .register(meterRegistry)));
+    }
+
+    private record AgencyMeters(Counter events, Timer latency) {
+        void record(int count, long latencyNanos) {
+            events.increment(count);
+            latency.record(latencyNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static void registerQueueGauge(
+            MeterRegistry meterRegistry, String stage, List<StageWorker<BatchPart>> workers) {
+        Gauge.builder("routeforge.processing.pipeline.queue.depth", workers,
+                w -> w.stream().mapToInt(StageWorker::depth).sum())
+            .description("Batch parts waiting in pipeline stage queues")
+            .tag("stage", stage)
+            .register(meterRegistry);
+    }
+}
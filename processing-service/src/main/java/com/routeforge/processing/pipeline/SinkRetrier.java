@@ -0,0 +1,83 @@
+package com.routeforge.processing.pipeline;
+
+import com.routeforge.common.dto.VehiclePositionEvent;
+import com.routeforge.processing.config.PipelineProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Retries a single sink with exponential backoff, resubmitting only the events
+ * that failed on the previous attempt
+ */
+@Slf4j
+final class SinkRetrier {
+    
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+    private final double multiplier;
+    private final Map<Sink, Counter> retries = new EnumMap<>(Sink.class);
+    private final SinkHealthMonitor healthMonitor;
+    
+    SinkRetrier(PipelineProperties properties, SinkHealthMonitor healthMonitor, MeterRegistry meterRegistry) {
+        this.healthMonitor = healthMonitor;
+        this.maxAttempts = Math.max(1, properties.getRetryMaxAttempts());
+        this.initialBackoffMs = properties.getRetryInitialBackoffMs();
+        this.maxBackoffMs = properties.getRetryMaxBackoffMs();
+        this.multiplier = properties.getRetryMultiplier();
+        for (Sink sink : Sink.values()) {
+            retries.put(sink, Counter.builder("routeforge.processing.sink.retries")
+                .description("Sink write attempts retried after a failure")
+                .tag("sink", sink.name().toLowerCase())
+                .register(meterRegistry));
+        }
+    }
+    
+    /**
+     * Write events to a sink, retrying failures
+     * @param writer writes the given events and returns those that failed; may throw,
+     *               in which case all given events count as failed
+     * @return events still failing after the last attempt, or null when all succeeded
+     */
+    SinkFailure write(Sink sink,
+                      List<VehiclePositionEvent> events,
+                      Function<List<VehiclePositionEvent>, List<VehiclePositionEvent>> writer)
+            throws InterruptedException {
+        List<VehiclePositionEvent> pending = events;
+        Exception lastError = null;
+        long backoffMs = initialBackoffMs;
+        
+        for (int attempt = 1; attempt <= maxAttempts && !pending.isEmpty(); attempt++) {
+            if (attempt > 1) {
+                retries.get(sink).increment();
+                log.warn("Retrying {} of {} events on sink {} (attempt {}/{}) in {} ms",
+                    pending.size(), events.size(), sink, attempt, maxAttempts, backoffMs);
+                Thread.sleep(backoffMs);
+                backoffMs = Math.min(maxBackoffMs, (long) (backoffMs * multiplier));
+            }
+            
+            long start = System.nanoTime();
+            try {
+                pending = writer.apply(pending);
+                healthMonitor.record(sink, System.nanoTime() - start, true);
+            } catch (Exception e) {
+                healthMonitor.record(sink, System.nanoTime() - start, false);
+                lastError = e;
+                log.warn("Sink {} failed for {} events: {}", sink, pending.size(), e.getMessage());
+            }
+        }
+        
+        if (pending.isEmpty()) {
+            return null;
+        }
+        return new SinkFailure(sink, pending, lastError != null
+            ? lastError
+            : new IllegalStateException(sink + " rejected " + pending.size() + " events"));
+    }
+}
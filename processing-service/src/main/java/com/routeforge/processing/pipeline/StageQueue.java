@@ -0,0 +1,40 @@
+package com.routeforge.processing.pipeline;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bounded hand-off queue in front of a {@link StageWorker}
+ * {@code put} blocks while the queue is full, {@code take} while it is empty.
+ */
+interface StageQueue<T> {
+    
+    void put(T item) throws InterruptedException;
+    
+    T take() throws InterruptedException;
+    
+    int size();
+    
+    /**
+     * Plain FIFO
+     */
+    static <T> StageQueue<T> fifo(int capacity) {
+        BlockingQueue<T> queue = new ArrayBlockingQueue<>(capacity);
+        return new StageQueue<>() {
+            @Override
+            public void put(T item) throws InterruptedException {
+                queue.put(item);
+            }
+            
+            @Override
+            public T take() throws InterruptedException {
+                return queue.take();
+            }
+            
+            @Override
+            public int size() {
+                return queue.size();
+            }
+        };
+    }
+}
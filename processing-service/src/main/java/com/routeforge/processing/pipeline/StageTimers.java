@@ -0,0 +1,23 @@
+package com.routeforge.processing.pipeline;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Percentile timers for the processing stages
+ * All stages share one metric name, tagged by stage: filter, redis, db, pubsub, ack
+ */
+public final class StageTimers {
+    
+    private StageTimers() {
+    }
+    
+    public static Timer forStage(MeterRegistry meterRegistry, String stage) {
+        return Timer.builder("routeforge.processing.stage.duration")
+            .description("Time spent per batch in each processing stage (including sink retries)")
+            .tag("stage", stage)
+            .publishPercentiles(0.5, 0.95, 0.99)
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+    }
+}
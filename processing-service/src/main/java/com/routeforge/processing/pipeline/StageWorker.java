@@ -0,0 +1,71 @@
+package com.routeforge.processing.pipeline;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.function.Consumer;
+
+/**
+ * Single dedicated thread (platform or virtual) draining a bounded queue for one pipeline stage
+ * Producers block when the queue is full, which throttles the Kafka listener
+ */
+@Slf4j
+final class StageWorker<T> {
+    
+    private final String name;
+    private final StageQueue<T> queue;
+    private final Consumer<T> handler;
+    private final WorkerThreadFactory threadFactory;
+    private volatile boolean running;
+    private Thread thread;
+    
+    StageWorker(String name, int capacity, Consumer<T> handler, WorkerThreadFactory threadFactory) {
+        this(name, StageQueue.fifo(capacity), handler, threadFactory);
+    }
+    
+    StageWorker(String name, StageQueue<T> queue, Consumer<T> handler, WorkerThreadFactory threadFactory) {
+        this.name = name;
+        this.queue = queue;
+        this.handler = handler;
+        this.threadFactory = threadFactory;
+    }
+    
+    void start() {
+        running = true;
+        thread = threadFactory.newThread(name, this::run);
+        thread.start();
+    }
+    
+    void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+    
+    void submit(T item) throws InterruptedException {
+        queue.put(item);
+    }
+    
+    int depth() {
+        return queue.size();
+    }
+    
+    String name() {
+        return name;
+    }
+    
+    private void run() {
+        while (running) {
+            try {
+                T item = queue.take();
+                handler.accept(item);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Unhandled error in pipeline stage {}", name, e);
+            }
+        }
+        log.debug("Pipeline stage {} stopped ({} items left in queue)", name, queue.size());
+    }
+}
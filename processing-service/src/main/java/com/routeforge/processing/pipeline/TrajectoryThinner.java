@@ -0,0 +1,146 @@
+package com.routeforge.processing.pipeline;
+
+import com.routeforge.common.dto.VehiclePositionEvent;
+import com.routeforge.common.util.GeoUtils;
+import com.routeforge.processing.config.HistoryProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Online dead-reckoning thinning of history writes
+ *
+ * For each vehicle the last kept point is extrapolated with its speed and heading; a new
+ * point is dropped when it lies within the tolerance of that prediction, i.e. when it adds
+ * no information beyond "kept moving as before" (stationary runs and straight constant-speed
+ * runs). Points are always kept when the route or stop changes, the vehicle starts or stops,
+ * the heading turns past the threshold, or the max interval since the last kept point passed.
+ */
+class TrajectoryThinner {
+    
+    private final HistoryProperties.Thinning properties;
+    private final Map<String, KeptPoint> lastKept;
+    private final Counter kept;
+    private final Counter dropped;
+    private final AtomicLong keptTotal = new AtomicLong();
+    private final AtomicLong seenTotal = new AtomicLong();
+    
+    TrajectoryThinner(HistoryProperties.Thinning properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        int maxTracked = properties.getMaxTrackedVehicles();
+        this.lastKept = Collections.synchronizedMap(
+            new LinkedHashMap<String, KeptPoint>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, KeptPoint> eldest) {
+                    return size() > maxTracked;
+                }
+            });
+        this.kept = pointCounter(meterRegistry, "kept");
+        this.dropped = pointCounter(meterRegistry, "dropped");
+        Gauge.builder("routeforge.processing.history.thinning.retained.ratio", this, TrajectoryThinner::retainedRatio)
+            .description("Fraction of positions written to history since startup")
+            .register(meterRegistry);
+    }
+    
+    private static Counter pointCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("routeforge.processing.history.thinning.points")
+            .description("History points kept or dropped by trajectory thinning")
+            .tag("outcome", outcome)
+            .register(meterRegistry);
+    }
+    
+    /**
+     * @return the events to write, in their original order
+     */
+    List<VehiclePositionEvent> thin(List<VehiclePositionEvent> events) {
+        if (!properties.isEnabled()) {
+            return events;
+        }
+        
+        List<VehiclePositionEvent> retained = new ArrayList<>(events.size());
+        for (VehiclePositionEvent event : events) {
+            if (keep(event)) {
+                retained.add(event);
+            }
+        }
+        
+        kept.increment(retained.size());
+        dropped.increment(events.size() - retained.size());
+        keptTotal.addAndGet(retained.size());
+        seenTotal.addAndGet(events.size());
+        return retained;
+    }
+    
+    private boolean keep(VehiclePositionEvent event) {
+        if (event.getVehicleId() == null || event.getLat() == null
+                || event.getLon() == null || event.getTsEpochMs() == null) {
+            return true;
+        }
+        
+        boolean[] keep = new boolean[1];
+        lastKept.compute(event.getVehicleId(), (vehicleId, last) -> {
+            keep[0] = last == null || mustKeep(last, event) || deviates(last, event);
+            return keep[0] ? KeptPoint.of(event, isStopped(event.getSpeedKph())) : last;
+        });
+        return keep[0];
+    }
+    
+    private boolean mustKeep(KeptPoint last, VehiclePositionEvent event) {
+        if (event.getTsEpochMs() - last.tsEpochMs() >= properties.getMaxIntervalMs()
+                || event.getTsEpochMs() < last.tsEpochMs()) {
+            return true;
+        }
+        if (!Objects.equals(last.routeId(), event.getRouteId())
+                || !Objects.equals(last.stopId(), event.getStopId())) {
+            return true;
+        }
+        if (last.stopped() != isStopped(event.getSpeedKph())) {
+            return true;
+        }
+        return last.headingDeg() != null && event.getHeadingDeg() != null
+            && GeoUtils.headingDelta(last.headingDeg(), event.getHeadingDeg()) >= properties.getHeadingChangeDeg();
+    }
+    
+    private boolean deviates(KeptPoint last, VehiclePositionEvent event) {
+        double predictedLat = last.lat();
+        double predictedLon = last.lon();
+        
+        // Without speed and heading the model is "stayed put"
+        if (last.speedKph() != null && last.headingDeg() != null && !last.stopped()) {
+            double travelledM = last.speedKph() / 3.6 * (event.getTsEpochMs() - last.tsEpochMs()) / 1000.0;
+            double[] predicted = GeoUtils.project(last.lat(), last.lon(), last.headingDeg(), travelledM);
+            predictedLat = predicted[0];
+            predictedLon = predicted[1];
+        }
+        
+        return GeoUtils.distanceMeters(predictedLat, predictedLon, event.getLat(), event.getLon())
+            > properties.getToleranceM();
+    }
+    
+    private boolean isStopped(Double speedKph) {
+        return speedKph != null && speedKph <= properties.getStoppedSpeedKph();
+    }
+    
+    private double retainedRatio() {
+        long seen = seenTotal.get();
+        return seen == 0 ? 1.0 : (double) keptTotal.get() / seen;
+    }
+    
+    private record KeptPoint(double lat, double lon, long tsEpochMs, Double speedKph, Double headingDeg,
+                             String routeId, String stopId, boolean stopped) {
+        
+        static KeptPoint of(VehiclePositionEvent event, boolean stopped) {
+            return new KeptPoint(event.getLat(), event.getLon(), event.getTsEpochMs(),
+                event.getSpeedKph(), event.getHeadingDeg(), event.getRouteId(), event.getStopId(),
+                stopped);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.routeforge.processing.pipeline;
+
+import com.routeforge.common.dto.VehiclePositionEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-batch coalescing of the hot-cache writes
+ *
+ * Redis and the update notifications only hold a vehicle's current state, so when a part
+ * carries several positions for one vehicle only the newest (highest tsEpochMs, the later
+ * record on ties) is written and announced. History still receives the full sequence.
+ * Events without a vehicleId or timestamp pass through untouched.
+ */
+class VehicleCoalescer {
+    
+    private final boolean enabled;
+    private final Counter written;
+    private final Counter superseded;
+    private final AtomicLong writtenTotal = new AtomicLong();
+    private final AtomicLong seenTotal = new AtomicLong();
+    
+    VehicleCoalescer(boolean enabled, MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.written = eventCounter(meterRegistry, "written");
+        this.superseded = eventCounter(meterRegistry, "superseded");
+        Gauge.builder("routeforge.processing.coalesce.ratio", this, VehicleCoalescer::coalescedRatio)
+            .description("Fraction of positions written to the hot cache after in-batch coalescing, since startup")
+            .register(meterRegistry);
+    }
+    
+    private static Counter eventCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("routeforge.processing.coalesce.events")
+            .description("Positions written to the hot cache or superseded by a newer one in the same batch")
+            .tag("outcome", outcome)
+            .register(meterRegistry);
+    }
+    
+    /**
+     * @return the newest event per vehicle, in the order they appear in the part
+     */
+    List<VehiclePositionEvent> coalesce(List<VehiclePositionEvent> events) {
+        if (!enabled || events.isEmpty()) {
+            return events;
+        }
+        
+        Map<String, Integer> newestIndex = new HashMap<>();
+        for (int i = 0; i < events.size(); i++) {
+            VehiclePositionEvent event = events.get(i);
+            if (event.getVehicleId() == null || event.getTsEpochMs() == null) {
+                continue;
+            }
+            newestIndex.merge(event.getVehicleId(), i,
+                (current, candidate) -> events.get(current).getTsEpochMs() > event.getTsEpochMs() ? current : candidate);
+        }
+        
+        List<VehiclePositionEvent> latest = new ArrayList<>(newestIndex.size());
+        for (int i = 0; i < events.size(); i++) {
+            VehiclePositionEvent event = events.get(i);
+            if (event.getVehicleId() == null || event.getTsEpochMs() == null
+                    || newestIndex.get(event.getVehicleId()) == i) {
+                latest.add(event);
+            }
+        }
+        
+        written.increment(latest.size());
+        superseded.increment(events.size() - latest.size());
+        writtenTotal.addAndGet(latest.size());
+        seenTotal.addAndGet(events.size());
+        return latest.size() == events.size() ? events : latest;
+    }
+    
+    double coalescedRatio() {
+        long seen = seenTotal.get();
+        return seen == 0 ? 1.0 : (double) writtenTotal.get() / seen;
+    }
+}
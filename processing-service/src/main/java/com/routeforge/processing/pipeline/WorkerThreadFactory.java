@@ -0,0 +1,63 @@
+package com.routeforge.processing.pipeline;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+
+/**
+ * Creates pipeline worker threads
+ * Virtual threads are used when enabled and the runtime supports them (Java 21+); the
+ * build targets Java 17, so they are looked up reflectively and platform daemon threads
+ * are the fallback.
+ */
+@Slf4j
+abstract class WorkerThreadFactory {
+    
+    abstract Thread newThread(String name, Runnable task);
+    
+    static WorkerThreadFactory create(boolean virtualThreads) {
+        if (virtualThreads) {
+            try {
+                return new Virtual();
+            } catch (ReflectiveOperationException e) {
+                log.warn("Virtual threads requested but not supported by Java {}, using platform threads",
+                    Runtime.version().feature());
+            }
+        }
+        return new Platform();
+    }
+    
+    private static final class Platform extends WorkerThreadFactory {
+        
+        @Override
+        Thread newThread(String name, Runnable task) {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+    
+    private static final class Virtual extends WorkerThreadFactory {
+        
+        private final Method ofVirtual;
+        private final Method name;
+        private final Method unstarted;
+        
+        Virtual() throws ReflectiveOperationException {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            this.ofVirtual = Thread.class.getMethod("ofVirtual");
+            this.name = builder.getMethod("name", String.class);
+            this.unstarted = builder.getMethod("unstarted", Runnable.class);
+        }
+        
+        @Override
+        Thread newThread(String threadName, Runnable task) {
+            try {
+                Object builder = name.invoke(ofVirtual.invoke(null), threadName);
+                return (Thread) unstarted.invoke(builder, task);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Failed to create virtual thread " + threadName, e);
+            }
+        }
+    }
+}
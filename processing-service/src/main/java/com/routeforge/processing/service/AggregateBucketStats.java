@@ -0,0 +1,62 @@
+package com.routeforge.processing.service;
+
+/**
+ * Running totals of one history aggregate bucket
+ * Kept as sums and counts, so partial buckets from several instances and the finer
+ * buckets behind a coarse one add up exactly; averages are derived on read.
+ */
+public final class AggregateBucketStats {
+    
+    private long sampleCount;
+    private long speedSamples;
+    private double speedSumKph;
+    private double maxSpeedKph = Double.NaN;
+    private long delaySamples;
+    private long delaySumSec;
+    private double distanceM;
+    
+    public void add(Double speedKph, Integer delaySec, double distanceM) {
+        sampleCount++;
+        if (speedKph != null && !speedKph.isNaN()) {
+            speedSamples++;
+            speedSumKph += speedKph;
+            maxSpeedKph = Double.isNaN(maxSpeedKph) ? speedKph : Math.max(maxSpeedKph, speedKph);
+        }
+        if (delaySec != null) {
+            delaySamples++;
+            delaySumSec += delaySec;
+        }
+        this.distanceM += distanceM;
+    }
+    
+    public long sampleCount() {
+        return sampleCount;
+    }
+    
+    public long speedSamples() {
+        return speedSamples;
+    }
+    
+    public double speedSumKph() {
+        return speedSumKph;
+    }
+    
+    /**
+     * @return the highest speed, or null when no sample had one
+     */
+    public Double maxSpeedKph() {
+        return Double.isNaN(maxSpeedKph) ? null : maxSpeedKph;
+    }
+    
+    public long delaySamples() {
+        return delaySamples;
+    }
+    
+    public long delaySumSec() {
+        return delaySumSec;
+    }
+    
+    public double distanceM() {
+        return distanceM;
+    }
+}
@@ -7,10 +7,19 @@ import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.LongSummaryStatistics;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -21,13 +30,16 @@ import java.util.stream.Collectors;
 public class DatabaseService {
     
     private final VehiclePositionHistoryRepository repository;
+    private final JdbcTemplate jdbcTemplate;
     private final Counter dbInserts;
     private final Counter dbErrors;
     
     public DatabaseService(
             VehiclePositionHistoryRepository repository,
+            JdbcTemplate jdbcTemplate,
             MeterRegistry meterRegistry) {
         this.repository = repository;
+        this.jdbcTemplate = jdbcTemplate;
         this.dbInserts = Counter.builder("routeforge.processing.db.inserts")
             .description("Total database inserts")
             .register(meterRegistry);
@@ -62,6 +74,79 @@ public class DatabaseService {
         }
     }
     
+    /**
+     * Round trip to PostgreSQL, used to probe an unhealthy sink
+     */
+    public void ping() {
+        jdbcTemplate.queryForObject("SELECT 1", Integer.class);
+    }
+    
+    /**
+     * Insert events one at a time, each in its own transaction, to isolate failing rows
+     * Rows that already exist (duplicate eventId) count as stored but not as inserted.
+     * @return events inserted by this call, and events that could not be stored
+     */
+    public IndividualSave saveVehiclePositionsIndividually(List<VehiclePositionEvent> events) {
+        List<VehiclePositionEvent> inserted = new ArrayList<>();
+        List<VehiclePositionEvent> failed = new ArrayList<>();
+        
+        for (VehiclePositionEvent event : events) {
+            try {
+                repository.saveAndFlush(toEntity(event));
+                dbInserts.increment();
+                inserted.add(event);
+            } catch (DataIntegrityViolationException e) {
+                if (isDuplicateKey(e)) {
+                    log.debug("Event already stored, skipping: {}", event.getEventId());
+                } else {
+                    log.error("Constraint violation storing event: {}", event.getEventId(), e);
+                    dbErrors.increment();
+                    failed.add(event);
+                }
+            } catch (Exception e) {
+                log.error("Failed to save vehicle position: {}", event.getEventId(), e);
+                dbErrors.increment();
+                failed.add(event);
+            }
+        }
+        
+        log.info("Saved {} of {} vehicle positions individually", events.size() - failed.size(), events.size());
+        return new IndividualSave(inserted, failed);
+    }
+    
+    /**
+     * Event IDs of the given events that are already stored
+     * The unique key is (event_id, ts_epoch_ms): bounding ts_epoch_ms limits the lookup to
+     * the partitions the events fall into.
+     */
+    public Set<String> findStoredEventIds(List<VehiclePositionEvent> events) {
+        List<Object> args = new ArrayList<>(events.size() + 2);
+        LongSummaryStatistics ts = events.stream()
+            .map(VehiclePositionEvent::getTsEpochMs)
+            .filter(Objects::nonNull)
+            .mapToLong(Long::longValue)
+            .summaryStatistics();
+        if (ts.getCount() == 0) {
+            return Set.of();
+        }
+        args.add(ts.getMin());
+        args.add(ts.getMax());
+        events.forEach(event -> args.add(event.getEventId()));
+        
+        String sql = "SELECT event_id FROM vehicle_positions_history WHERE ts_epoch_ms BETWEEN ? AND ? AND event_id IN ("
+            + String.join(",", Collections.nCopies(events.size(), "?")) + ")";
+        return new HashSet<>(jdbcTemplate.queryForList(sql, String.class, args.toArray()));
+    }
+    
+    private boolean isDuplicateKey(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLException sqlException && "23505".equals(sqlException.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     private VehiclePositionHistory toEntity(VehiclePositionEvent event) {
         return VehiclePositionHistory.builder()
             .eventId(event.getEventId())
@@ -71,9 +156,17 @@ public class DatabaseService {
             .lon(event.getLon())
             .speedKph(event.getSpeedKph())
             .headingDeg(event.getHeadingDeg())
+            .speedDerived(Boolean.TRUE.equals(event.getSpeedDerived()))
+            .headingDerived(Boolean.TRUE.equals(event.getHeadingDerived()))
             .tsEpochMs(event.getTsEpochMs())
             .stopId(event.getStopId())
             .delaySec(event.getDelaySec())
             .build();
     }
+    
+    /**
+     * Outcome of a row-by-row insert; duplicates are in neither list
+     */
+    public record IndividualSave(List<VehiclePositionEvent> inserted, List<VehiclePositionEvent> failed) {
+    }
 }
@@ -0,0 +1,188 @@
+package com.routeforge.processing.service;
+
+import com.routeforge.common.dto.VehiclePositionEvent;
+import com.routeforge.processing.config.ProcessingProperties;
+import com.routeforge.processing.config.RetryProperties;
+import com.routeforge.processing.pipeline.Sink;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Publishes failed events to the next retry tier, or to the dead-letter queue once
+ * every tier has been used
+ * Records carry the sink that failed so retries and replay only rewrite that sink;
+ * records without the header are rewritten to every sink.
+ */
+@Slf4j
+@Service
+public class DlqPublisher {
+
+    public static final String FAILED_SINK_HEADER = "routeforge-failed-sink";
+    public static final String FAILURE_CAUSE_HEADER = "routeforge-failure-cause";
+    /** Number of retry tiers already used when the record was written */
+    public static final String ATTEMPT_HEADER = "routeforge-retry-attempt";
+    /** Epoch millis before which a retry tier must not process the record */
+    public static final String DUE_AT_HEADER = "routeforge-retry-due-at";
+    private static final int MAX_CAUSE_LENGTH = 500;
+
+    private final KafkaTemplate<String, VehiclePositionEvent> kafkaTemplate;
+    private final ProcessingProperties properties;
+    private final RetryProperties retryProperties;
+    private final Map<Sink, Counter> dlqEvents = new EnumMap<>(Sink.class);
+    private final Counter dlqEventsAllSinks;
+    private final List<Counter> retryEvents = new ArrayList<>();
+
+    public DlqPublisher(
+            KafkaTemplate<String, VehiclePositionEvent> kafkaTemplate,
+            ProcessingProperties properties,
+            RetryProperties retryProperties,
+            MeterRegistry meterRegistry) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.properties = properties;
+        this.retryProperties = retryProperties;
+        for (Sink sink : Sink.values()) {
+            dlqEvents.put(sink, dlqCounter(meterRegistry, sink.name().toLowerCase()));
+        }
+        this.dlqEventsAllSinks = dlqCounter(meterRegistry, "all");
+        for (int tier = 0; tier < retryProperties.tierCount(); tier++) {
+            retryEvents.add(Counter.builder("routeforge.processing.retry.events")
+                .description("Events sent to a delayed retry tier")
+                .tag("tier", String.valueOf(tier))
+                .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Send events that failed on a single sink in the main pipeline
+     */
+    public void publish(Sink sink, List<VehiclePositionEvent> events, Exception cause) {
+        publish(sink, events, cause, 0);
+    }
+
+    /**
+     * Send events that failed on a single sink
+     * @param attempt Retry tiers already used (0 from the main pipeline)
+     * @return completes once the broker acknowledged every record, or exceptionally if any send failed
+     */
+    public CompletableFuture<Void> publish(Sink sink, List<VehiclePositionEvent> events, Exception cause, int attempt) {
+        return route(events, sink, cause, attempt);
+    }
+
+    /**
+     * Send events that must be rewritten to every sink (failure before any sink ran)
+     */
+    public void publishAllSinks(List<VehiclePositionEvent> events, Exception cause) {
+        route(events, null, cause, 0);
+    }
+
+    /**
+     * Read the retry attempt from a retry record header
+     */
+    public static int attempt(Header header) {
+        Long value = longHeader(header);
+        return value == null ? 0 : value.intValue();
+    }
+
+    /**
+     * Read the due time from a retry record header
+     * @return epoch millis, or 0 if the record is due immediately
+     */
+    public static long dueAt(Header header) {
+        Long value = longHeader(header);
+        return value == null ? 0 : value;
+    }
+
+    /**
+     * Read the failed sink from a DLQ record header
+     * @return the sink, or null if the record applies to all sinks
+     */
+    public static Sink failedSink(Header header) {
+        if (header == null) {
+            return null;
+        }
+        try {
+            return Sink.valueOf(new String(header.value(), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private CompletableFuture<Void> route(List<VehiclePositionEvent> events, Sink sink, Exception cause, int attempt) {
+        List<CompletableFuture<?>> sends = new ArrayList<>(events.size());
+        if (attempt < retryProperties.tierCount()) {
+            String topic = retryProperties.tierTopic(attempt);
+            long dueAt = System.currentTimeMillis() + retryProperties.getDelaysMs().get(attempt);
+            for (VehiclePositionEvent event : events) {
+                sends.add(send(topic, event, sink, cause, attempt + 1, dueAt));
+            }
+            retryEvents.get(attempt).increment(events.size());
+        } else {
+            for (VehiclePositionEvent event : events) {
+                sends.add(send(properties.getDlqTopic(), event, sink, cause, attempt, 0));
+            }
+            (sink != null ? dlqEvents.get(sink) : dlqEventsAllSinks).increment(events.size());
+        }
+        return CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new));
+    }
+
+    private CompletableFuture<?> send(String topic, VehiclePositionEvent event, Sink sink, Exception cause,
+                      int attempt, long dueAt) {
+        try {
+            ProducerRecord<String, VehiclePositionEvent> record =
+                new ProducerRecord<>(topic, event.getVehicleId(), event);
+            if (sink != null) {
+                record.headers().add(FAILED_SINK_HEADER, sink.name().getBytes(StandardCharsets.UTF_8));
+            }
+            if (cause != null) {
+                record.headers().add(FAILURE_CAUSE_HEADER, describe(cause).getBytes(StandardCharsets.UTF_8));
+            }
+            record.headers().add(ATTEMPT_HEADER, String.valueOf(attempt).getBytes(StandardCharsets.UTF_8));
+            if (dueAt > 0) {
+                record.headers().add(DUE_AT_HEADER, String.valueOf(dueAt).getBytes(StandardCharsets.UTF_8));
+            }
+
+            CompletableFuture<?> sent = kafkaTemplate.send(record);
+            log.debug("Sent event to {}: {} (sink: {}, attempt: {})",
+                topic, event.getEventId(), sink != null ? sink : "all", attempt);
+            return sent;
+        } catch (Exception e) {
+            log.error("Failed to send event to {}: {}", topic, event.getEventId(), e);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static Long longHeader(Header header) {
+        if (header == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(new String(header.value(), StandardCharsets.UTF_8));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String describe(Exception cause) {
+        String text = cause.getClass().getSimpleName() + ": " + cause.getMessage();
+        return text.length() > MAX_CAUSE_LENGTH ? text.substring(0, MAX_CAUSE_LENGTH) : text;
+    }
+
+    private static Counter dlqCounter(MeterRegistry meterRegistry, String sink) {
+        return Counter.builder("routeforge.processing.dlq.events")
+            .description("Events sent to the dead-letter queue")
+            .tag("sink", sink)
+            .register(meterRegistry);
+    }
+}
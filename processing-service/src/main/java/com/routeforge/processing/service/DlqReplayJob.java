@@ -0,0 +1,208 @@
+package com.routeforge.processing.service;
+
+import org.apache.kafka.clients.consumer.Consumer;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * State and progress of one DLQ replay job
+ * Workers report per-partition progress; status and cancel are safe from any thread.
+ */
+public class DlqReplayJob {
+    
+    public enum State { RUNNING, COMPLETED, CANCELLED, FAILED }
+    
+    private final String id;
+    private final DlqReplayRequest request;
+    private final int maxEventsPerSecond;
+    private final long startedAt = System.currentTimeMillis();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    /** Records left before maxMessages is reached (unused when maxMessages = 0) */
+    private final AtomicLong budget;
+    private final Map<Integer, PartitionProgress> partitions = new ConcurrentHashMap<>();
+    private final List<Consumer<?, ?>> consumers = new CopyOnWriteArrayList<>();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile State state = State.RUNNING;
+    private volatile boolean cancelRequested;
+    private volatile long finishedAt;
+    private volatile String error;
+    
+    DlqReplayJob(String id, DlqReplayRequest request, int maxEventsPerSecond) {
+        this.id = id;
+        this.request = request;
+        this.maxEventsPerSecond = maxEventsPerSecond;
+        this.budget = new AtomicLong(request.maxMessages());
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    public State getState() {
+        return state;
+    }
+    
+    public boolean isRunning() {
+        return state == State.RUNNING;
+    }
+    
+    public long getReplayed() {
+        return replayed.get();
+    }
+    
+    /**
+     * Stop workers after their current batch; committed offsets stay where they are
+     */
+    public void cancel() {
+        cancelRequested = true;
+        consumers.forEach(Consumer::wakeup);
+    }
+    
+    /**
+     * @return true if the job finished within the timeout
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+    
+    public Map<String, Object> toStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("jobId", id);
+        status.put("state", state.name());
+        status.put("startFrom", request.startFrom().name());
+        status.put("maxMessages", request.maxMessages());
+        status.put("maxEventsPerSecond", maxEventsPerSecond);
+        status.put("replayed", replayed.get());
+        status.put("failed", failed.get());
+        status.put("lag", partitions.values().stream().mapToLong(PartitionProgress::lag).sum());
+        status.put("startedAt", startedAt);
+        long end = finishedAt == 0 ? System.currentTimeMillis() : finishedAt;
+        double elapsedSec = Math.max(end - startedAt, 1) / 1000.0;
+        status.put("eventsPerSecond", Math.round((replayed.get() + failed.get()) / elapsedSec));
+        if (finishedAt != 0) {
+            status.put("finishedAt", finishedAt);
+        }
+        if (error != null) {
+            status.put("error", error);
+        }
+        Map<Integer, Object> byPartition = new TreeMap<>();
+        partitions.forEach((partition, progress) -> byPartition.put(partition, progress.toStatus()));
+        status.put("partitions", byPartition);
+        return status;
+    }
+    
+    // --- worker side ---
+    
+    DlqReplayRequest request() {
+        return request;
+    }
+    
+    boolean shouldStop() {
+        return cancelRequested || (request.maxMessages() > 0 && budget.get() <= 0);
+    }
+    
+    /**
+     * Claim up to {@code wanted} records of the maxMessages budget
+     */
+    int reserve(int wanted) {
+        if (request.maxMessages() == 0) {
+            return wanted;
+        }
+        while (true) {
+            long left = budget.get();
+            int granted = (int) Math.min(left, wanted);
+            if (granted <= 0) {
+                return 0;
+            }
+            if (budget.compareAndSet(left, left - granted)) {
+                return granted;
+            }
+        }
+    }
+    
+    void register(Consumer<?, ?> consumer) {
+        consumers.add(consumer);
+        if (cancelRequested) {
+            consumer.wakeup();
+        }
+    }
+    
+    void unregister(Consumer<?, ?> consumer) {
+        consumers.remove(consumer);
+    }
+    
+    void startPartition(int partition, long startOffset, long endOffset) {
+        partitions.put(partition, new PartitionProgress(startOffset, endOffset));
+    }
+    
+    void recordBatch(int partition, int succeeded, int failedCount, long nextOffset) {
+        replayed.addAndGet(succeeded);
+        failed.addAndGet(failedCount);
+        PartitionProgress progress = partitions.get(partition);
+        if (progress != null) {
+            progress.advance(succeeded, failedCount, nextOffset);
+        }
+    }
+    
+    void finish(Throwable failure) {
+        if (failure != null) {
+            error = failure.getMessage();
+            state = State.FAILED;
+        } else if (cancelRequested) {
+            state = State.CANCELLED;
+        } else {
+            state = State.COMPLETED;
+        }
+        finishedAt = System.currentTimeMillis();
+        finished.countDown();
+    }
+    
+    /**
+     * Position of one partition against the end offset captured when the job started
+     */
+    private static final class PartitionProgress {
+        
+        private final long startOffset;
+        private final long endOffset;
+        private volatile long position;
+        private volatile long replayed;
+        private volatile long failed;
+        
+        private PartitionProgress(long startOffset, long endOffset) {
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.position = startOffset;
+        }
+        
+        // Each partition is owned by a single worker
+        private void advance(int succeeded, int failedCount, long nextOffset) {
+            replayed += succeeded;
+            failed += failedCount;
+            position = nextOffset;
+        }
+        
+        private long lag() {
+            return Math.max(endOffset - position, 0);
+        }
+        
+        private Map<String, Long> toStatus() {
+            Map<String, Long> status = new LinkedHashMap<>();
+            status.put("startOffset", startOffset);
+            status.put("position", position);
+            status.put("endOffset", endOffset);
+            status.put("lag", lag());
+            status.put("replayed", replayed);
+            status.put("failed", failed);
+            return status;
+        }
+    }
+}
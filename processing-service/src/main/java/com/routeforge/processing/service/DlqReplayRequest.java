@@ -0,0 +1,47 @@
+package com.routeforge.processing.service;
+
+import java.util.Map;
+
+/**
+ * Parameters of a DLQ replay job
+ * @param startFrom Where each partition starts reading
+ * @param startTimestampMs First record timestamp to replay (TIMESTAMP only)
+ * @param startOffsets Partition -> first offset to replay (OFFSETS only; missing partitions start at earliest)
+ * @param maxMessages Stop after this many records (0 = until caught up)
+ * @param maxEventsPerSecond Rate ceiling override (null = configured default, 0 = unlimited)
+ */
+public record DlqReplayRequest(
+        StartFrom startFrom,
+        Long startTimestampMs,
+        Map<Integer, Long> startOffsets,
+        long maxMessages,
+        Integer maxEventsPerSecond) {
+    
+    public enum StartFrom {
+        /** Resume from the replay group's committed offsets, earliest where none exist */
+        COMMITTED,
+        EARLIEST,
+        OFFSETS,
+        TIMESTAMP
+    }
+    
+    public DlqReplayRequest {
+        if (startFrom == null) {
+            startFrom = StartFrom.COMMITTED;
+        }
+        if (startFrom == StartFrom.TIMESTAMP && startTimestampMs == null) {
+            throw new IllegalArgumentException("startTimestampMs is required when starting from TIMESTAMP");
+        }
+        if (startFrom == StartFrom.OFFSETS && (startOffsets == null || startOffsets.isEmpty())) {
+            throw new IllegalArgumentException("startOffsets are required when starting from OFFSETS");
+        }
+        if (maxMessages < 0) {
+            throw new IllegalArgumentException("maxMessages must be >= 0");
+        }
+        startOffsets = startOffsets == null ? Map.of() : Map.copyOf(startOffsets);
+    }
+    
+    public static DlqReplayRequest resume(long maxMessages) {
+        return new DlqReplayRequest(StartFrom.COMMITTED, null, null, maxMessages, null);
+    }
+}
@@ -1,170 +1,505 @@
 package com.routeforge.processing.service;
 
 import com.routeforge.common.dto.VehiclePositionEvent;
+import com.routeforge.processing.config.DlqReplayProperties;
 import com.routeforge.processing.config.ProcessingProperties;
+import com.routeforge.processing.pipeline.Sink;
+import com.routeforge.processing.pipeline.SinkFailure;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
 import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Service for replaying messages from the DLQ (Dead Letter Queue)
+ * Replay runs as a background job under a stable consumer group: partition workers
+ * drain the DLQ up to the end offsets seen at start, under a shared events/sec ceiling.
  */
 @Slf4j
 @Service
 public class DlqReplayService {
     
     private final ProcessingProperties properties;
-    private final RedisService redisService;
-    private final DatabaseService databaseService;
-    private final RedisPubSubService pubSubService;
+    private final DlqReplayProperties replayProperties;
+    private final SinkRewriter sinkRewriter;
     private final Counter replaySuccessCounter;
     private final Counter replayFailureCounter;
+    private final Counter replaySkippedCounter;
+    private volatile DlqReplayJob currentJob;
     
     public DlqReplayService(
             ProcessingProperties properties,
-            RedisService redisService,
-            DatabaseService databaseService,
-            RedisPubSubService pubSubService,
+            DlqReplayProperties replayProperties,
+            SinkRewriter sinkRewriter,
             MeterRegistry meterRegistry) {
         this.properties = properties;
-        this.redisService = redisService;
-        this.databaseService = databaseService;
-        this.pubSubService = pubSubService;
+        this.replayProperties = replayProperties;
+        this.sinkRewriter = sinkRewriter;
         this.replaySuccessCounter = Counter.builder("routeforge.dlq.replay.success")
             .description("Successfully replayed DLQ messages")
             .register(meterRegistry);
         this.replayFailureCounter = Counter.builder("routeforge.dlq.replay.failure")
             .description("Failed to replay DLQ messages")
             .register(meterRegistry);
+        this.replaySkippedCounter = Counter.builder("routeforge.dlq.replay.skipped")
+            .description("DLQ records skipped because they had no decodable value")
+            .register(meterRegistry);
     }
     
     /**
-     * Replay messages from DLQ
+     * Replay messages from DLQ and wait for the job to finish
+     * Resumes from the replay group's committed offsets, so records are not replayed twice.
      * @param maxMessages Maximum number of messages to replay (0 = all available)
      * @return Number of messages successfully replayed
      */
     public int replayDlqMessages(int maxMessages) {
-        log.info("Starting DLQ replay: maxMessages={}", maxMessages);
+        DlqReplayJob job = startReplay(DlqReplayRequest.resume(maxMessages));
+        try {
+            if (!job.awaitCompletion(replayProperties.getSyncTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                log.warn("DLQ replay job {} still running after {} ms, continuing in background",
+                    job.getId(), replayProperties.getSyncTimeoutMs());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (job.getState() == DlqReplayJob.State.FAILED) {
+            throw new IllegalStateException("DLQ replay failed: " + job.toStatus().get("error"));
+        }
+        return (int) job.getReplayed();
+    }
+    
+    /**
+     * Start a replay job in the background; only one job runs at a time
+     * @throws IllegalStateException if a job is already running
+     */
+    public synchronized DlqReplayJob startReplay(DlqReplayRequest request) {
+        if (currentJob != null && currentJob.isRunning()) {
+            throw new IllegalStateException("DLQ replay job " + currentJob.getId() + " is already running");
+        }
         
-        int successCount = 0;
-        int failureCount = 0;
+        int rate = request.maxEventsPerSecond() != null
+            ? request.maxEventsPerSecond()
+            : replayProperties.getMaxEventsPerSecond();
+        DlqReplayJob job = new DlqReplayJob(UUID.randomUUID().toString(), request, rate);
+        currentJob = job;
         
-        // Create temporary consumer for DLQ
-        KafkaConsumer<String, VehiclePositionEvent> consumer = createDlqConsumer();
+        Thread runner = new Thread(() -> runJob(job, new ReplayRateLimiter(rate)), "dlq-replay-" + job.getId());
+        runner.setDaemon(true);
+        runner.start();
         
+        log.info("Started DLQ replay job {}: startFrom={}, maxMessages={}, maxEventsPerSecond={}",
+            job.getId(), request.startFrom(), request.maxMessages(), rate);
+        return job;
+    }
+    
+    /**
+     * Most recent replay job, running or finished
+     */
+    public Optional<DlqReplayJob> currentJob() {
+        return Optional.ofNullable(currentJob);
+    }
+    
+    /**
+     * Cancel the running job, if any
+     * @return the cancelled job
+     */
+    public Optional<DlqReplayJob> cancelReplay() {
+        DlqReplayJob job = currentJob;
+        if (job == null || !job.isRunning()) {
+            return Optional.empty();
+        }
+        log.info("Cancelling DLQ replay job {}", job.getId());
+        job.cancel();
+        return Optional.of(job);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        cancelReplay();
+    }
+    
+    /**
+     * Spread the DLQ partitions over the partition workers and wait for all of them
+     */
+    private void runJob(DlqReplayJob job, ReplayRateLimiter rateLimiter) {
+        Throwable failure = null;
+        ExecutorService workers = null;
         try {
-            consumer.subscribe(Collections.singleton(properties.getDlqTopic()));
-            
-            // Poll messages
-            ConsumerRecords<String, VehiclePositionEvent> records = 
-                consumer.poll(Duration.ofSeconds(10));
+            List<TopicPartition> partitions = dlqPartitions();
+            int workerCount = Math.max(1, Math.min(replayProperties.getPartitionWorkers(), partitions.size()));
             
-            if (records.isEmpty()) {
-                log.info("No messages found in DLQ");
-                return 0;
+            List<List<TopicPartition>> assignments = new ArrayList<>();
+            for (int i = 0; i < workerCount; i++) {
+                assignments.add(new ArrayList<>());
+            }
+            for (int i = 0; i < partitions.size(); i++) {
+                assignments.get(i % workerCount).add(partitions.get(i));
             }
             
-            List<VehiclePositionEvent> eventsToProcess = new ArrayList<>();
-            int processedCount = 0;
-            
-            for (ConsumerRecord<String, VehiclePositionEvent> record : records) {
-                eventsToProcess.add(record.value());
-                processedCount++;
-            
-                if (eventsToProcess.size() >= 100 ||
-                    (maxMessages > 0 && processedCount >= maxMessages)) {
-                    int batchSuccess = processBatch(eventsToProcess);
-                    successCount += batchSuccess;
-                    failureCount += (eventsToProcess.size() - batchSuccess);
-                    eventsToProcess.clear();
+            AtomicInteger threadIndex = new AtomicInteger();
+            workers = Executors.newFixedThreadPool(workerCount, r -> {
+                Thread thread = new Thread(r, "dlq-replay-worker-" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
             
-                    // ✅ commit offsets for processed records
-                    consumer.commitSync();
+            List<Future<?>> futures = new ArrayList<>();
+            for (List<TopicPartition> assignment : assignments) {
+                if (!assignment.isEmpty()) {
+                    futures.add(workers.submit(() -> {
+                        runWorker(job, assignment, rateLimiter);
+                        return null;
+                    }));
                 }
-            
-                if (maxMessages > 0 && processedCount >= maxMessages) {
-                    break;
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    // Keep waiting for the other workers; their committed progress still counts
+                    failure = e.getCause();
+                    log.error("DLQ replay worker failed for job {}", job.getId(), e.getCause());
                 }
             }
             
-            // Process any remaining events
-            if (!eventsToProcess.isEmpty()) {
-                int batchSuccess = processBatch(eventsToProcess);
-                successCount += batchSuccess;
-                failureCount += (eventsToProcess.size() - batchSuccess);
-                // ✅ commit offsets after final batch
-                consumer.commitSync();
-            }
-
-            
-            log.info("DLQ replay completed: success={}, failure={}", successCount, failureCount);
-            
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.cancel();
         } catch (Exception e) {
-            log.error("Error during DLQ replay", e);
-            throw new RuntimeException("DLQ replay failed", e);
+            failure = e;
+            log.error("DLQ replay job {} failed", job.getId(), e);
         } finally {
-            consumer.close();
+            if (workers != null) {
+                workers.shutdownNow();
+            }
         }
         
-        replaySuccessCounter.increment(successCount);
-        replayFailureCounter.increment(failureCount);
-        
-        return successCount;
+        job.finish(failure);
+        log.info("DLQ replay job {} {}: {}", job.getId(), job.getState(), job.toStatus());
     }
     
     /**
-     * Process a batch of events from DLQ
+     * Replay a set of partitions up to the end offsets they had when the worker started,
+     * committing each batch under the stable replay group
      */
-    private int processBatch(List<VehiclePositionEvent> events) {
-        try {
-            // Update Redis
-            redisService.updateVehiclePositions(events);
+    private void runWorker(DlqReplayJob job, List<TopicPartition> partitions, ReplayRateLimiter rateLimiter)
+            throws InterruptedException {
+        try (KafkaConsumer<String, VehiclePositionEvent> consumer = createDlqConsumer()) {
+            job.register(consumer);
+            try {
+                consumer.assign(partitions);
+                seekToStart(consumer, partitions, job.request());
+                
+                Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions);
+                Set<TopicPartition> remaining = new HashSet<>();
+                for (TopicPartition tp : partitions) {
+                    long position = consumer.position(tp);
+                    long end = endOffsets.get(tp);
+                    job.startPartition(tp.partition(), position, end);
+                    if (position < end) {
+                        remaining.add(tp);
+                    }
+                }
+                
+                Duration pollTimeout = Duration.ofMillis(replayProperties.getPollTimeoutMs());
+                while (!remaining.isEmpty() && !job.shouldStop()) {
+                    ConsumerRecords<String, VehiclePositionEvent> records = consumer.poll(pollTimeout);
+                    
+                    boolean stop = false;
+                    for (TopicPartition tp : records.partitions()) {
+                        if (!remaining.contains(tp)) {
+                            continue;
+                        }
+                        PartitionOutcome outcome =
+                            replayPartition(job, consumer, tp, records.records(tp), endOffsets.get(tp), rateLimiter);
+                        if (outcome == PartitionOutcome.HALTED) {
+                            // Failed record stays uncommitted; the next job starts from it
+                            consumer.pause(List.of(tp));
+                            remaining.remove(tp);
+                        } else if (outcome == PartitionOutcome.STOP) {
+                            stop = true;
+                            break;
+                        }
+                    }
+                    if (stop) {
+                        break;
+                    }
+                    
+                    // Caught up: everything that was in the DLQ when the job started
+                    remaining.removeIf(tp -> consumer.position(tp) >= endOffsets.get(tp));
+                }
+            } catch (WakeupException e) {
+                log.debug("DLQ replay worker woken up for cancellation");
+            } finally {
+                job.unregister(consumer);
+            }
+        }
+    }
+    
+    /**
+     * What a worker does with a partition after replaying the records of one poll
+     */
+    enum PartitionOutcome {
+        /** Keep polling the partition */
+        CONTINUE,
+        /** A record failed; offsets are committed up to it and the partition is left for the next job */
+        HALTED,
+        /** maxMessages budget used up or job cancelled */
+        STOP
+    }
+    
+    /**
+     * Replay one partition's records in batches, committing after each batch
+     * Offsets are only committed up to the first record that failed to replay, so a
+     * failed record is never skipped: the consumer is rewound to it and the partition halts.
+     */
+    PartitionOutcome replayPartition(DlqReplayJob job,
+                                     Consumer<String, VehiclePositionEvent> consumer,
+                                     TopicPartition tp,
+                                     List<ConsumerRecord<String, VehiclePositionEvent>> records,
+                                     long endOffset,
+                                     ReplayRateLimiter rateLimiter) throws InterruptedException {
+        int batchSize = replayProperties.getBatchSize();
+        int from = 0;
+        
+        while (from < records.size()) {
+            if (job.shouldStop()) {
+                return PartitionOutcome.STOP;
+            }
             
-            // Save to PostgreSQL
-            databaseService.saveVehiclePositions(events);
+            int to = Math.min(from + batchSize, records.size());
+            // Records appended after the job started are left for the next job
+            while (to > from && records.get(to - 1).offset() >= endOffset) {
+                to--;
+            }
+            if (to == from) {
+                return PartitionOutcome.CONTINUE;
+            }
             
-            // Publish update notifications
-            for (VehiclePositionEvent event : events) {
-                pubSubService.publishRouteUpdate(event.getRouteId(), event.getVehicleId());
+            int granted = job.reserve(to - from);
+            if (granted == 0) {
+                return PartitionOutcome.STOP;
             }
+            List<ConsumerRecord<String, VehiclePositionEvent>> batch = records.subList(from, from + granted);
             
-            log.debug("Successfully processed batch of {} events from DLQ", events.size());
-            return events.size();
+            rateLimiter.acquire(batch.size());
+            Set<String> failedIds = processBatch(tp, batch);
+            int batchSkipped = (int) batch.stream().filter(r -> r.value() == null).count();
+            int batchFailure = (int) batch.stream()
+                .filter(r -> r.value() != null && failedIds.contains(r.value().getEventId()))
+                .count();
+            int batchSuccess = batch.size() - batchSkipped - batchFailure;
+            replaySuccessCounter.increment(batchSuccess);
+            replayFailureCounter.increment(batchFailure);
+            replaySkippedCounter.increment(batchSkipped);
             
-        } catch (Exception e) {
-            log.error("Failed to process DLQ batch", e);
-            return 0;
+            long nextOffset = committableOffset(batch, failedIds);
+            boolean woken = commit(consumer, tp, nextOffset);
+            job.recordBatch(tp.partition(), batchSuccess, batchFailure, nextOffset);
+            
+            if (batchFailure > 0) {
+                log.warn("DLQ replay of {} halted at offset {} after {} failed records; the next job resumes there",
+                    tp, nextOffset, batchFailure);
+                consumer.seek(tp, nextOffset);
+                return PartitionOutcome.HALTED;
+            }
+            if (woken) {
+                return PartitionOutcome.STOP;
+            }
+            from += granted;
+        }
+        return PartitionOutcome.CONTINUE;
+    }
+    
+    /**
+     * Offset to commit after a batch: the first failed record, or past the whole batch
+     * Records without a value never fail: there is nothing to replay, so they are committed past.
+     */
+    static long committableOffset(List<ConsumerRecord<String, VehiclePositionEvent>> batch, Set<String> failedIds) {
+        for (ConsumerRecord<String, VehiclePositionEvent> record : batch) {
+            if (record.value() != null && failedIds.contains(record.value().getEventId())) {
+                return record.offset();
+            }
         }
+        return batch.get(batch.size() - 1).offset() + 1;
     }
     
     /**
-     * Create a temporary Kafka consumer for DLQ
+     * Commit a batch that has already been written to the sinks
+     * A cancel can wake the consumer inside commitSync; the wakeup is one-shot, so the
+     * commit is retried once rather than dropping progress for records already rewritten.
+     * @return true if the commit was interrupted by a wakeup
+     */
+    private boolean commit(Consumer<String, VehiclePositionEvent> consumer, TopicPartition tp, long offset) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = Map.of(tp, new OffsetAndMetadata(offset));
+        try {
+            consumer.commitSync(offsets);
+            return false;
+        } catch (WakeupException e) {
+            log.debug("DLQ replay commit of {} woken up, retrying before stopping", tp);
+            consumer.commitSync(offsets);
+            return true;
+        }
+    }
+    
+    private void seekToStart(KafkaConsumer<String, VehiclePositionEvent> consumer,
+                             List<TopicPartition> partitions,
+                             DlqReplayRequest request) {
+        switch (request.startFrom()) {
+            case COMMITTED -> {
+                Map<TopicPartition, OffsetAndMetadata> committed = consumer.committed(new HashSet<>(partitions));
+                for (TopicPartition tp : partitions) {
+                    OffsetAndMetadata offset = committed.get(tp);
+                    if (offset != null) {
+                        consumer.seek(tp, offset.offset());
+                    } else {
+                        consumer.seekToBeginning(List.of(tp));
+                    }
+                }
+            }
+            case EARLIEST -> consumer.seekToBeginning(partitions);
+            case OFFSETS -> {
+                for (TopicPartition tp : partitions) {
+                    Long offset = request.startOffsets().get(tp.partition());
+                    if (offset != null) {
+                        consumer.seek(tp, offset);
+                    } else {
+                        consumer.seekToBeginning(List.of(tp));
+                    }
+                }
+            }
+            case TIMESTAMP -> {
+                Map<TopicPartition, Long> timestamps = new HashMap<>();
+                partitions.forEach(tp -> timestamps.put(tp, request.startTimestampMs()));
+                Map<TopicPartition, OffsetAndTimestamp> offsets = consumer.offsetsForTimes(timestamps);
+                for (TopicPartition tp : partitions) {
+                    OffsetAndTimestamp offset = offsets.get(tp);
+                    if (offset != null) {
+                        consumer.seek(tp, offset.offset());
+                    } else {
+                        // Nothing at or after the timestamp
+                        consumer.seekToEnd(List.of(tp));
+                    }
+                }
+            }
+        }
+    }
+    
+    private List<TopicPartition> dlqPartitions() {
+        try (KafkaConsumer<String, VehiclePositionEvent> consumer = createDlqConsumer()) {
+            List<PartitionInfo> infos = consumer.partitionsFor(properties.getDlqTopic());
+            if (infos == null || infos.isEmpty()) {
+                return List.of();
+            }
+            return infos.stream()
+                .map(info -> new TopicPartition(info.topic(), info.partition()))
+                .sorted(Comparator.comparingInt(TopicPartition::partition))
+                .toList();
+        }
+    }
+    
+    /**
+     * Process a batch of records from DLQ
+     * Records tagged with a failed sink are only rewritten to that sink; untagged
+     * records (legacy, or failed before any sink ran) go to every sink. Tombstones and
+     * undeserializable payloads have no value and are skipped.
+     * @return event IDs that failed to replay
+     */
+    private Set<String> processBatch(TopicPartition tp, List<ConsumerRecord<String, VehiclePositionEvent>> records) {
+        Map<Sink, List<VehiclePositionEvent>> bySink = new EnumMap<>(Sink.class);
+        List<VehiclePositionEvent> allSinks = new ArrayList<>();
+        
+        for (ConsumerRecord<String, VehiclePositionEvent> record : records) {
+            if (record.value() == null) {
+                log.warn("Skipping DLQ record {}@{} without a decodable value", tp, record.offset());
+                continue;
+            }
+            Sink sink = DlqPublisher.failedSink(record.headers().lastHeader(DlqPublisher.FAILED_SINK_HEADER));
+            if (sink == null) {
+                allSinks.add(record.value());
+            } else {
+                bySink.computeIfAbsent(sink, s -> new ArrayList<>()).add(record.value());
+            }
+        }
+        
+        Set<String> failedIds = new HashSet<>();
+        if (!allSinks.isEmpty()) {
+            replay(allSinks, EnumSet.allOf(Sink.class), failedIds);
+        }
+        for (Map.Entry<Sink, List<VehiclePositionEvent>> entry : bySink.entrySet()) {
+            replay(entry.getValue(), EnumSet.of(entry.getKey()), failedIds);
+        }
+        return failedIds;
+    }
+    
+    private void replay(List<VehiclePositionEvent> events, Set<Sink> sinks, Set<String> failedIds) {
+        List<SinkFailure> failures = sinkRewriter.rewrite(events, sinks);
+        if (failures.isEmpty()) {
+            log.debug("Successfully replayed {} events from DLQ to {}", events.size(), sinks);
+            return;
+        }
+        
+        for (SinkFailure failure : failures) {
+            log.error("Failed to replay {} DLQ events to {}", failure.events().size(), failure.sink(), failure.cause());
+            failure.events().forEach(event -> failedIds.add(event.getEventId()));
+        }
+    }
+    
+    /**
+     * Create a Kafka consumer for DLQ under the stable replay group
+     * Partitions are assigned manually, so several workers can share the group. Undecodable
+     * records come back with a null value instead of failing every poll at their offset.
      */
     private KafkaConsumer<String, VehiclePositionEvent> createDlqConsumer() {
+        return new KafkaConsumer<>(dlqConsumerProperties());
+    }
+    
+    Properties dlqConsumerProperties() {
         Properties props = new Properties();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, properties.getKafkaBootstrapServers());
-        props.put(ConsumerConfig.GROUP_ID_CONFIG, "dlq-replay-" + System.currentTimeMillis());
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, replayProperties.getGroupId());
         props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class.getName());
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class.getName());
+        props.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, JsonDeserializer.class.getName());
         props.put(JsonDeserializer.TRUSTED_PACKAGES, "com.routeforge.common.dto");
         props.put(JsonDeserializer.VALUE_DEFAULT_TYPE, VehiclePositionEvent.class.getName());
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
         props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
-        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, "500");
-        
-        return new KafkaConsumer<>(props);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(replayProperties.getMaxPollRecords()));
+        return props;
     }
 }
@@ -0,0 +1,335 @@
+package com.routeforge.processing.service;
+
+import com.routeforge.common.dto.VehiclePositionEvent;
+import com.routeforge.common.util.AggregateResolution;
+import com.routeforge.common.util.GeoUtils;
+import com.routeforge.processing.config.AggregateProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Maintains per-route and per-vehicle history aggregates at 1-minute, 15-minute and 1-hour
+ * resolution (count, avg/max speed, avg delay, distance travelled)
+ *
+ * 1-minute buckets are accumulated from inserted history rows (and the points thinning kept
+ * out of history, see {@link HistoryStatsRecorder}) and flushed once closed; the
+ * upsert adds partial buckets from other instances (or late events) to the stored row.
+ * Every flushed minute marks its 15-minute and 1-hour buckets dirty, and only dirty buckets
+ * are recomputed from their 1-minute rows, however old, so neither level ever rescans raw
+ * history or the whole aggregate table.
+ * Distance is measured between consecutive positions of a vehicle and credited to the
+ * bucket of the later one.
+ */
+@Slf4j
+@Service
+public class HistoryAggregateService {
+    
+    private static final AggregateResolution STREAM_RESOLUTION = AggregateResolution.MINUTE;
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final AggregateProperties properties;
+    private final Map<BucketKey, AggregateBucketStats> buckets = new ConcurrentHashMap<>();
+    /** Coarse buckets whose 1-minute rows changed since they were last recomputed */
+    private final Set<CoarseBucket> dirtyBuckets = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean caughtUp = new AtomicBoolean();
+    private final Map<String, LastPosition> lastPositions;
+    private final Counter bucketsFlushed;
+    private final Counter samples;
+    
+    public HistoryAggregateService(
+            JdbcTemplate jdbcTemplate,
+            AggregateProperties properties,
+            MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.properties = properties;
+        int maxTracked = properties.getMaxTrackedVehicles();
+        this.lastPositions = Collections.synchronizedMap(
+            new LinkedHashMap<String, LastPosition>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, LastPosition> eldest) {
+                    return size() > maxTracked;
+                }
+            });
+        this.bucketsFlushed = Counter.builder("routeforge.processing.aggregates.buckets.flushed")
+            .description("1-minute route and vehicle buckets written to the history aggregates")
+            .register(meterRegistry);
+        this.samples = Counter.builder("routeforge.processing.aggregates.samples")
+            .description("Positions added to history aggregate buckets")
+            .register(meterRegistry);
+        Gauge.builder("routeforge.processing.aggregates.buckets.open", buckets, Map::size)
+            .description("Route and vehicle aggregate buckets held in memory")
+            .register(meterRegistry);
+    }
+    
+    /**
+     * Add a batch of positions to their 1-minute route and vehicle buckets
+     */
+    public void record(List<VehiclePositionEvent> events) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        int added = 0;
+        
+        for (VehiclePositionEvent event : events) {
+            if (event.getTsEpochMs() == null) {
+                continue;
+            }
+            double distanceM = distanceFromLast(event);
+            long bucketStart = STREAM_RESOLUTION.bucketStart(event.getTsEpochMs());
+            if (event.getRouteId() != null) {
+                add(new BucketKey(Scope.ROUTE, event.getRouteId(), bucketStart), event, distanceM);
+            }
+            if (event.getVehicleId() != null) {
+                add(new BucketKey(Scope.VEHICLE, event.getVehicleId(), bucketStart), event, distanceM);
+            }
+            added++;
+        }
+        samples.increment(added);
+    }
+    
+    private void add(BucketKey key, VehiclePositionEvent event, double distanceM) {
+        buckets.compute(key, (k, stats) -> {
+            AggregateBucketStats bucket = stats != null ? stats : new AggregateBucketStats();
+            bucket.add(event.getSpeedKph(), event.getDelaySec(), distanceM);
+            return bucket;
+        });
+    }
+    
+    private double distanceFromLast(VehiclePositionEvent event) {
+        if (event.getVehicleId() == null || event.getLat() == null || event.getLon() == null) {
+            return 0.0;
+        }
+        
+        double[] distance = new double[1];
+        lastPositions.compute(event.getVehicleId(), (vehicleId, last) -> {
+            if (last != null && event.getTsEpochMs() <= last.tsEpochMs()) {
+                return last; // redelivered or replayed: already counted
+            }
+            if (last != null && event.getTsEpochMs() - last.tsEpochMs() <= properties.getMaxDistanceGapMs()) {
+                distance[0] = GeoUtils.distanceMeters(last.lat(), last.lon(), event.getLat(), event.getLon());
+            }
+            return new LastPosition(event.getLat(), event.getLon(), event.getTsEpochMs());
+        });
+        return distance[0];
+    }
+    
+    /**
+     * Write every 1-minute bucket whose end is older than the allowed lateness
+     */
+    @Scheduled(fixedDelayString = "${routeforge.processing.aggregates.flush-interval-ms:15000}")
+    public void flush() {
+        long cutoff = System.currentTimeMillis() - properties.getAllowedLatenessMs();
+        
+        Map<BucketKey, Object[]> routeRows = new LinkedHashMap<>();
+        Map<BucketKey, Object[]> vehicleRows = new LinkedHashMap<>();
+        for (BucketKey key : buckets.keySet()) {
+            if (key.bucketStart() + STREAM_RESOLUTION.millis() > cutoff) {
+                continue;
+            }
+            AggregateBucketStats stats = buckets.remove(key);
+            if (stats == null || stats.sampleCount() == 0) {
+                continue;
+            }
+            (key.scope() == Scope.ROUTE ? routeRows : vehicleRows).put(key, new Object[] {
+                key.id(), STREAM_RESOLUTION.seconds(), key.bucketStart(), stats.sampleCount(),
+                stats.speedSamples(), stats.speedSumKph(), stats.maxSpeedKph(),
+                stats.delaySamples(), stats.delaySumSec(), stats.distanceM()
+            });
+        }
+        
+        upsert(Scope.ROUTE, routeRows);
+        upsert(Scope.VEHICLE, vehicleRows);
+    }
+    
+    private void upsert(Scope scope, Map<BucketKey, Object[]> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            jdbcTemplate.batchUpdate(upsertSql(scope.table(), scope.keyColumn()), new ArrayList<>(rows.values()));
+            bucketsFlushed.increment(rows.size());
+            rows.keySet().forEach(key -> markDirty(scope, key.bucketStart()));
+            log.debug("Flushed {} buckets to {}", rows.size(), scope.table());
+        } catch (Exception e) {
+            // Aggregates are derived data: a lost bucket only understates that minute
+            log.error("Failed to flush {} buckets to {}", rows.size(), scope.table(), e);
+        }
+    }
+    
+    private void markDirty(Scope scope, long minuteStart) {
+        for (AggregateResolution resolution : AggregateResolution.values()) {
+            if (resolution != STREAM_RESOLUTION) {
+                dirtyBuckets.add(new CoarseBucket(scope, resolution, resolution.bucketStart(minuteStart)));
+            }
+        }
+    }
+    
+    /**
+     * Recompute the 15-minute and 1-hour buckets whose 1-minute rows changed
+     */
+    @Scheduled(fixedDelayString = "${routeforge.processing.aggregates.refresh-interval-ms:60000}")
+    public void refreshCoarse() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        if (caughtUp.compareAndSet(false, true)) {
+            // Minutes of the last hour a previous run flushed but stopped before rolling up
+            long now = System.currentTimeMillis();
+            for (long minute = now - AggregateResolution.HOUR.millis(); minute <= now;
+                    minute += AggregateResolution.QUARTER_HOUR.millis()) {
+                for (Scope scope : Scope.values()) {
+                    markDirty(scope, minute);
+                }
+            }
+        }
+        
+        List<CoarseBucket> due = dirtyBuckets.stream()
+            .sorted(Comparator.comparingLong(CoarseBucket::bucketStart))
+            .toList();
+        int refreshed = 0;
+        for (CoarseBucket bucket : due) {
+            // Unmark first: a minute flushed while this runs marks the bucket again
+            dirtyBuckets.remove(bucket);
+            AggregateResolution resolution = bucket.resolution();
+            try {
+                refreshed += jdbcTemplate.update(rollUpSql(bucket.scope().table(), bucket.scope().keyColumn()),
+                    resolution.seconds(), resolution.seconds(), STREAM_RESOLUTION.seconds(),
+                    bucket.bucketStart(), bucket.bucketStart() + resolution.millis());
+            } catch (Exception e) {
+                dirtyBuckets.add(bucket);
+                log.error("Failed to refresh the {}s {} aggregates at {}",
+                    resolution.seconds(), bucket.scope(), bucket.bucketStart(), e);
+            }
+        }
+        if (!due.isEmpty()) {
+            log.debug("Refreshed {} coarse aggregate rows from {} dirty buckets", refreshed, due.size());
+        }
+    }
+    
+    @Scheduled(fixedDelayString = "${routeforge.history.partition-maintenance-interval-ms:3600000}")
+    public void pruneExpired() {
+        for (AggregateResolution resolution : AggregateResolution.values()) {
+            int retentionDays = properties.retentionDays(resolution);
+            try {
+                int deleted = 0;
+                for (Scope scope : Scope.values()) {
+                    deleted += jdbcTemplate.update(
+                        "DELETE FROM " + scope.table() + " WHERE resolution_seconds = ? "
+                            + "AND bucket_start < NOW() - INTERVAL '1 day' * ?",
+                        resolution.seconds(), retentionDays);
+                }
+                if (deleted > 0) {
+                    log.info("Deleted {} {}s history aggregates older than {} days",
+                        deleted, resolution.seconds(), retentionDays);
+                }
+            } catch (Exception e) {
+                log.error("History aggregate retention failed for {}s buckets", resolution.seconds(), e);
+            }
+        }
+    }
+    
+    /**
+     * Buckets held in memory, for tests
+     */
+    AggregateBucketStats openBucket(Scope scope, String id, long bucketStart) {
+        return buckets.get(new BucketKey(scope, id, bucketStart));
+    }
+    
+    private static String upsertSql(String table, String keyColumn) {
+        return """
+            INSERT INTO %1$s AS a
+                (%2$s, resolution_seconds, bucket_start, sample_count, speed_samples, speed_sum_kph,
+                 max_speed_kph, delay_samples, delay_sum_sec, distance_m)
+            VALUES (?, ?, to_timestamp(? / 1000.0), ?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (%2$s, resolution_seconds, bucket_start) DO UPDATE SET
+                sample_count = a.sample_count + EXCLUDED.sample_count,
+                speed_samples = a.speed_samples + EXCLUDED.speed_samples,
+                speed_sum_kph = a.speed_sum_kph + EXCLUDED.speed_sum_kph,
+                max_speed_kph = GREATEST(a.max_speed_kph, EXCLUDED.max_speed_kph),
+                delay_samples = a.delay_samples + EXCLUDED.delay_samples,
+                delay_sum_sec = a.delay_sum_sec + EXCLUDED.delay_sum_sec,
+                distance_m = a.distance_m + EXCLUDED.distance_m
+            """.formatted(table, keyColumn);
+    }
+    
+    /**
+     * Coarse buckets marked for the next refresh, for tests
+     */
+    boolean isDirty(Scope scope, AggregateResolution resolution, long bucketStart) {
+        return dirtyBuckets.contains(new CoarseBucket(scope, resolution, bucketStart));
+    }
+    
+    /**
+     * Replaces each coarse bucket in the given range with the sum of its 1-minute rows;
+     * idempotent, so instances refreshing concurrently write the same values
+     */
+    private static String rollUpSql(String table, String keyColumn) {
+        return """
+            INSERT INTO %1$s AS a
+                (%2$s, resolution_seconds, bucket_start, sample_count, speed_samples, speed_sum_kph,
+                 max_speed_kph, delay_samples, delay_sum_sec, distance_m)
+            SELECT %2$s, ?, date_bin(make_interval(secs => ?), bucket_start, TIMESTAMPTZ 'epoch') AS coarse_start,
+                   SUM(sample_count), SUM(speed_samples), SUM(speed_sum_kph), MAX(max_speed_kph),
+                   SUM(delay_samples), SUM(delay_sum_sec), SUM(distance_m)
+            FROM %1$s
+            WHERE resolution_seconds = ?
+              AND bucket_start >= to_timestamp(? / 1000.0)
+              AND bucket_start < to_timestamp(? / 1000.0)
+            GROUP BY %2$s, coarse_start
+            ORDER BY %2$s, coarse_start
+            ON CONFLICT (%2$s, resolution_seconds, bucket_start) DO UPDATE SET
+                sample_count = EXCLUDED.sample_count,
+                speed_samples = EXCLUDED.speed_samples,
+                speed_sum_kph = EXCLUDED.speed_sum_kph,
+                max_speed_kph = EXCLUDED.max_speed_kph,
+                delay_samples = EXCLUDED.delay_samples,
+                delay_sum_sec = EXCLUDED.delay_sum_sec,
+                distance_m = EXCLUDED.distance_m
+            """.formatted(table, keyColumn);
+    }
+    
+    enum Scope {
+        ROUTE("route_history_aggregates", "route_id"),
+        VEHICLE("vehicle_history_aggregates", "vehicle_id");
+        
+        private final String table;
+        private final String keyColumn;
+        
+        Scope(String table, String keyColumn) {
+            this.table = table;
+            this.keyColumn = keyColumn;
+        }
+        
+        String table() {
+            return table;
+        }
+        
+        String keyColumn() {
+            return keyColumn;
+        }
+    }
+    
+    private record BucketKey(Scope scope, String id, long bucketStart) {
+    }
+    
+    private record CoarseBucket(Scope scope, AggregateResolution resolution, long bucketStart) {
+    }
+    
+    private record LastPosition(double lat, double lon, long tsEpochMs) {
+    }
+}
@@ -0,0 +1,302 @@
+package com.routeforge.processing.service;
+
+import com.routeforge.processing.archive.ArchiveQuery;
+import com.routeforge.processing.archive.ArchivedPosition;
+import com.routeforge.processing.archive.SegmentFooter;
+import com.routeforge.processing.archive.SegmentReader;
+import com.routeforge.processing.archive.SegmentWriter;
+import com.routeforge.processing.config.HistoryProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Moves aged daily partitions of vehicle_positions_history into columnar segment files
+ * (one per partition, {partition}.rfseg) and answers vehicle / time-range queries over them.
+ * When partitions are dropped after archiving, each one is detached first so late inserts
+ * cannot land in it between the read and the drop; it is only dropped after its segment has
+ * been written, renamed into place and its row count checked against the detached table.
+ * One instance archives at a time, under a PostgreSQL advisory lock.
+ */
+@Slf4j
+@Service
+public class HistoryArchiveService {
+    
+    static final String SEGMENT_SUFFIX = ".rfseg";
+    private static final long DAY_MS = 86_400_000L;
+    /** pg_advisory_lock key shared by every processing-service instance */
+    private static final long ARCHIVE_LOCK_KEY = 0x52464152_43484956L; // "RFARCHIV"
+    
+    private final DataSource dataSource;
+    private final JdbcTemplate streamingJdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final HistoryPartitionManager partitionManager;
+    private final HistoryProperties.Archive properties;
+    private final Counter partitionsArchived;
+    private final Counter rowsArchived;
+    private final Counter rowGroupsSkipped;
+    private final Counter rowGroupsRead;
+    
+    public HistoryArchiveService(
+            DataSource dataSource,
+            PlatformTransactionManager transactionManager,
+            HistoryPartitionManager partitionManager,
+            HistoryProperties historyProperties,
+            MeterRegistry meterRegistry) {
+        this.properties = historyProperties.getArchive();
+        this.dataSource = dataSource;
+        // Own template: the fetch size streams rows through a cursor instead of loading the partition
+        this.streamingJdbcTemplate = new JdbcTemplate(dataSource);
+        this.streamingJdbcTemplate.setFetchSize(properties.getFetchSize());
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.partitionManager = partitionManager;
+        this.partitionsArchived = Counter.builder("routeforge.processing.archive.partitions")
+            .description("History partitions written to archive segments")
+            .register(meterRegistry);
+        this.rowsArchived = Counter.builder("routeforge.processing.archive.rows")
+            .description("History rows written to archive segments")
+            .register(meterRegistry);
+        this.rowGroupsSkipped = Counter.builder("routeforge.processing.archive.rowgroups")
+            .description("Archive row groups read or skipped by the min/max index during queries")
+            .tag("outcome", "skipped")
+            .register(meterRegistry);
+        this.rowGroupsRead = Counter.builder("routeforge.processing.archive.rowgroups")
+            .description("Archive row groups read or skipped by the min/max index during queries")
+            .tag("outcome", "read")
+            .register(meterRegistry);
+    }
+    
+    @Scheduled(fixedDelayString = "${routeforge.history.archive.interval-ms:3600000}", initialDelay = 60000)
+    public void archiveAgedPartitions() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        LocalDate cutoff = LocalDate.now(ZoneOffset.UTC).minusDays(properties.getArchiveAfterDays());
+        
+        // Session-level lock on a connection of its own, held for the whole run
+        try (Connection lockConnection = dataSource.getConnection()) {
+            if (!advisoryLock(lockConnection, "pg_try_advisory_lock")) {
+                log.debug("History archive already running on another instance");
+                return;
+            }
+            try {
+                // Tables a previous run detached but did not get to drop come first
+                List<HistoryPartitionManager.HistoryPartition> pending =
+                    new ArrayList<>(partitionManager.listDetachedPartitions());
+                for (HistoryPartitionManager.HistoryPartition partition : partitionManager.listPartitions()) {
+                    if (partition.day().isBefore(cutoff)) {
+                        pending.add(partition);
+                    }
+                }
+                for (HistoryPartitionManager.HistoryPartition partition : pending) {
+                    try {
+                        archivePartition(partition);
+                    } catch (Exception e) {
+                        log.error("Failed to archive history partition {}", partition.name(), e);
+                    }
+                }
+            } finally {
+                // Pooled connections keep session locks, so release explicitly
+                advisoryLock(lockConnection, "pg_advisory_unlock");
+            }
+        } catch (SQLException e) {
+            log.error("History archive lock failed", e);
+        }
+    }
+    
+    /**
+     * Write (or reuse) the partition's segment, verify it and drop the partition
+     * Callers must hold the archive advisory lock.
+     */
+    public void archivePartition(HistoryPartitionManager.HistoryPartition partition) throws IOException {
+        Path directory = Paths.get(properties.getDirectory());
+        Files.createDirectories(directory);
+        Path segment = directory.resolve(partition.name() + SEGMENT_SUFFIX);
+        
+        boolean drop = properties.isDropAfterArchive();
+        if (drop) {
+            // Freeze the row set: later rows for this day go to the default partition
+            partitionManager.detachPartition(partition);
+        }
+        long tableRows = streamingJdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM " + partition.name(), Long.class);
+        
+        if (Files.exists(segment)) {
+            SegmentFooter footer = SegmentReader.readFooter(segment);
+            if (footer.version() < 2 || footer.rowCount() != tableRows) {
+                // Written by an older format, or before late rows arrived in a still attached partition
+                log.info("Rewriting segment {} ({} rows, format {}) for {} rows of {}",
+                    segment, footer.rowCount(), footer.version(), tableRows, partition.name());
+                Files.delete(segment);
+            }
+        }
+        if (!Files.exists(segment)) {
+            long written = writeSegment(partition, segment);
+            partitionsArchived.increment();
+            rowsArchived.increment(written);
+            log.info("Archived {} rows of {} to {} ({} bytes)",
+                written, partition.name(), segment, Files.size(segment));
+        }
+        
+        long segmentRows = SegmentReader.readFooter(segment).rowCount();
+        if (segmentRows != tableRows) {
+            // Only possible while the partition stays attached (late data): rewrite on the next run
+            log.warn("Segment {} has {} rows but {} has {}; keeping the partition",
+                segment, segmentRows, partition.name(), tableRows);
+            Files.delete(segment);
+            return;
+        }
+        
+        if (drop) {
+            partitionManager.dropArchivedPartition(partition);
+        }
+    }
+    
+    private static boolean advisoryLock(Connection connection, String function) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT " + function + "(?)")) {
+            statement.setLong(1, ARCHIVE_LOCK_KEY);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+    
+    private long writeSegment(HistoryPartitionManager.HistoryPartition partition, Path segment) throws IOException {
+        Path temp = segment.resolveSibling(segment.getFileName() + ".tmp");
+        
+        try (SegmentWriter writer = new SegmentWriter(temp, properties.getRowGroupSize())) {
+            // Postgres only streams with a cursor inside a transaction
+            readOnlyTransaction.executeWithoutResult(status -> streamingJdbcTemplate.query(
+                """
+                SELECT id, event_id, vehicle_id, route_id, ts_epoch_ms, lat, lon, speed_kph, heading_deg,
+                       speed_derived, heading_derived, stop_id, delay_sec, recorded_at
+                FROM %s
+                ORDER BY vehicle_id, ts_epoch_ms
+                """.formatted(partition.name()),
+                rs -> {
+                    try {
+                        writer.append(new ArchivedPosition(
+                            rs.getString("vehicle_id"),
+                            rs.getString("route_id"),
+                            rs.getLong("ts_epoch_ms"),
+                            rs.getDouble("lat"),
+                            rs.getDouble("lon"),
+                            rs.getObject("speed_kph", Double.class),
+                            rs.getObject("heading_deg", Double.class),
+                            rs.getString("stop_id"),
+                            rs.getObject("delay_sec", Integer.class),
+                            rs.getLong("id"),
+                            rs.getString("event_id"),
+                            rs.getBoolean("speed_derived"),
+                            rs.getBoolean("heading_derived"),
+                            epochMicros(rs.getObject("recorded_at", LocalDateTime.class))));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+            long rows = writer.rowCount();
+            writer.close();
+            Files.move(temp, segment, StandardCopyOption.ATOMIC_MOVE);
+            return rows;
+        } catch (RuntimeException | IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+    
+    /**
+     * recorded_at has no time zone: keep its wall-clock value, independent of the JVM zone
+     */
+    private static long epochMicros(LocalDateTime recordedAt) {
+        Instant instant = recordedAt.toInstant(ZoneOffset.UTC);
+        return instant.getEpochSecond() * 1_000_000L + instant.getNano() / 1_000L;
+    }
+    
+    /**
+     * Scan archived segments, pruning whole files by their day and row groups by their min/max index
+     */
+    public ArchiveResult query(ArchiveQuery query) throws IOException {
+        Path directory = Paths.get(properties.getDirectory());
+        List<ArchivedPosition> rows = new ArrayList<>();
+        int limit = Math.min(query.limit(), properties.getMaxQueryRows());
+        int segmentsScanned = 0;
+        int read = 0;
+        int skipped = 0;
+        
+        if (!Files.isDirectory(directory)) {
+            return new ArchiveResult(rows, 0, 0, 0);
+        }
+        
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(directory)) {
+            segments = files
+                .filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                .filter(file -> segmentMayOverlap(file, query))
+                .sorted()
+                .toList();
+        }
+        
+        for (Path segment : segments) {
+            if (rows.size() >= limit) {
+                break;
+            }
+            SegmentReader.ScanStats stats = SegmentReader.scan(segment, query, limit - rows.size(), rows::add);
+            segmentsScanned++;
+            read += stats.rowGroupsRead();
+            skipped += stats.rowGroupsSkipped();
+        }
+        
+        rowGroupsRead.increment(read);
+        rowGroupsSkipped.increment(skipped);
+        return new ArchiveResult(rows, segmentsScanned, read, skipped);
+    }
+    
+    /**
+     * Segments are named after their daily partition, so most are pruned without opening them
+     */
+    private static boolean segmentMayOverlap(Path file, ArchiveQuery query) {
+        String name = file.getFileName().toString();
+        String partition = name.substring(0, name.length() - SEGMENT_SUFFIX.length());
+        try {
+            LocalDate day = LocalDate.parse(partition.substring(partition.length() - 8),
+                DateTimeFormatter.BASIC_ISO_DATE);
+            long from = day.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            return from < query.toEpochMs() && from + DAY_MS > query.fromEpochMs();
+        } catch (RuntimeException e) {
+            return true; // unexpected name: let the footer decide
+        }
+    }
+    
+    /**
+     * Rows found plus how much of the archive had to be read
+     */
+    public record ArchiveResult(List<ArchivedPosition> rows, int segmentsScanned,
+                                int rowGroupsRead, int rowGroupsSkipped) {
+    }
+}
@@ -0,0 +1,290 @@
+package com.routeforge.processing.service;
+
+import com.routeforge.processing.config.HistoryProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Maintains daily range partitions of vehicle_positions_history
+ * Pre-creates upcoming partitions and drops partitions past the retention window,
+ * so old history is removed without DELETE/VACUUM churn
+ * Rows that reached the default partition before their day's partition existed are moved
+ * into it when it is created.
+ */
+@Slf4j
+@Service
+public class HistoryPartitionManager {
+
+    private static final String PARENT_TABLE = "vehicle_positions_history";
+    private static final String PARTITION_PREFIX = PARENT_TABLE + "_p";
+    private static final String DEFAULT_PARTITION = PARENT_TABLE + "_default";
+    private static final DateTimeFormatter SUFFIX_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final long DAY_MS = 86_400_000L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final HistoryProperties historyProperties;
+    private final TransactionTemplate transaction;
+    private final Counter partitionsCreated;
+    private final Counter partitionsDropped;
+    private final AtomicInteger partitionCount = new AtomicInteger();
+
+    public HistoryPartitionManager(
+            JdbcTemplate jdbcTemplate,
+            HistoryProperties historyProperties,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.historyProperties = historyProperties;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.partitionsCreated = Counter.builder("routeforge.processing.history.partitions.created")
+            .description("Total history partitions created")
+            .register(meterRegistry);
+        this.partitionsDropped = Counter.builder("routeforge.processing.history.partitions.dropped")
+            .description("Total history partitions dropped by retention")
+            .register(meterRegistry);
+        Gauge.builder("routeforge.processing.history.partitions", partitionCount, AtomicInteger::get)
+            .description("Current number of daily history partitions")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Run partition maintenance on startup and then periodically
+     */
+    @Scheduled(fixedDelayString = "${routeforge.history.partition-maintenance-interval-ms:3600000}",
+               initialDelay = 0)
+    public void maintainPartitions() {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+
+        try {
+            ensurePartitions(today);
+            dropExpiredPartitions(today);
+            partitionCount.set(listPartitions().size());
+        } catch (Exception e) {
+            log.error("History partition maintenance failed", e);
+        }
+    }
+
+    /**
+     * Create partitions for today and the configured number of days ahead
+     */
+    public void ensurePartitions(LocalDate today) {
+        for (int i = 0; i <= historyProperties.getPartitionPrecreateDays(); i++) {
+            createPartition(today.plusDays(i));
+        }
+    }
+
+    /**
+     * Drop partitions whose whole day lies before the retention cutoff
+     */
+    public void dropExpiredPartitions(LocalDate today) {
+        LocalDate cutoff = today.minusDays(historyProperties.getRetentionDays());
+
+        for (HistoryPartition partition : listPartitions()) {
+            if (partition.day().isBefore(cutoff)) {
+                dropPartition(partition);
+            }
+        }
+
+        // Late rows for days that were archived (detached) or dropped land in the default partition
+        long cutoffMs = cutoff.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        int purged = jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + " WHERE ts_epoch_ms < ?", cutoffMs);
+        if (purged > 0) {
+            log.info("Deleted {} expired rows from {}", purged, DEFAULT_PARTITION);
+        }
+    }
+
+    /**
+     * List daily partitions currently attached to the history table, oldest first
+     */
+    public List<HistoryPartition> listPartitions() {
+        List<String> names = jdbcTemplate.queryForList(
+            """
+            SELECT c.relname
+            FROM pg_inherits i
+            JOIN pg_class c ON c.oid = i.inhrelid
+            JOIN pg_class p ON p.oid = i.inhparent
+            WHERE p.relname = ?
+            """,
+            String.class,
+            PARENT_TABLE
+        );
+        return toPartitions(names);
+    }
+
+    /**
+     * Daily partition tables that were detached for archiving but not dropped yet
+     * (the archiver stopped between detach and drop), oldest first
+     */
+    public List<HistoryPartition> listDetachedPartitions() {
+        List<String> names = jdbcTemplate.queryForList(
+            """
+            SELECT c.relname
+            FROM pg_class c
+            WHERE c.relkind = 'r'
+              AND c.relname LIKE ?
+              AND pg_table_is_visible(c.oid)
+              AND NOT EXISTS (SELECT 1 FROM pg_inherits i WHERE i.inhrelid = c.oid)
+            """,
+            String.class,
+            PARTITION_PREFIX.replace("_", "\\_") + "%"
+        );
+        return toPartitions(names);
+    }
+
+    private List<HistoryPartition> toPartitions(List<String> names) {
+        List<HistoryPartition> partitions = new ArrayList<>();
+        for (String name : names) {
+            if (!name.startsWith(PARTITION_PREFIX)) {
+                continue; // default partition
+            }
+            try {
+                LocalDate day = LocalDate.parse(name.substring(PARTITION_PREFIX.length()), SUFFIX_FORMAT);
+                partitions.add(new HistoryPartition(name, day));
+            } catch (DateTimeParseException e) {
+                log.warn("Ignoring history partition with unexpected name: {}", name);
+            }
+        }
+
+        partitions.sort(Comparator.comparing(HistoryPartition::day));
+        return partitions;
+    }
+
+    private void createPartition(LocalDate day) {
+        String name = partitionName(day);
+        long fromMs = day.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        long toMs = fromMs + DAY_MS;
+
+        try {
+            Boolean exists = jdbcTemplate.queryForObject(
+                "SELECT to_regclass(?) IS NOT NULL", Boolean.class, name);
+            if (Boolean.TRUE.equals(exists)) {
+                return;
+            }
+
+            if (defaultPartitionHasRows(fromMs, toMs)) {
+                // PARTITION OF would fail the default partition's constraint check
+                int moved = createFromDefaultPartition(name, fromMs, toMs);
+                log.info("Created history partition {} with {} rows moved from {}", name, moved, DEFAULT_PARTITION);
+            } else {
+                jdbcTemplate.execute(String.format(
+                    "CREATE TABLE IF NOT EXISTS %s PARTITION OF %s FOR VALUES FROM (%d) TO (%d)",
+                    name, PARENT_TABLE, fromMs, toMs));
+                log.info("Created history partition {}", name);
+            }
+            partitionsCreated.increment();
+
+        } catch (Exception e) {
+            // Another instance may have created it concurrently; otherwise retried on the next run
+            log.warn("Failed to create history partition {}: {}", name, e.getMessage());
+        }
+    }
+
+    private boolean defaultPartitionHasRows(long fromMs, long toMs) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+            "SELECT EXISTS (SELECT 1 FROM " + DEFAULT_PARTITION + " WHERE ts_epoch_ms >= ? AND ts_epoch_ms < ?)",
+            Boolean.class, fromMs, toMs));
+    }
+
+    /**
+     * Create the partition as a plain table, move its range out of the default partition
+     * and attach it, in one transaction
+     * Inserts routed to the default partition wait on its lock until the attach commits.
+     */
+    private int createFromDefaultPartition(String name, long fromMs, long toMs) {
+        Integer moved = transaction.execute(status -> {
+            jdbcTemplate.execute("LOCK TABLE " + DEFAULT_PARTITION + " IN SHARE ROW EXCLUSIVE MODE");
+            jdbcTemplate.execute(String.format(
+                "CREATE TABLE %s (LIKE %s INCLUDING DEFAULTS INCLUDING CONSTRAINTS)", name, PARENT_TABLE));
+            int rows = jdbcTemplate.update(String.format(
+                """
+                WITH moved AS (
+                    DELETE FROM %s WHERE ts_epoch_ms >= ? AND ts_epoch_ms < ? RETURNING *
+                )
+                INSERT INTO %s SELECT * FROM moved
+                """, DEFAULT_PARTITION, name), fromMs, toMs);
+            jdbcTemplate.execute(String.format(
+                "ALTER TABLE %s ATTACH PARTITION %s FOR VALUES FROM (%d) TO (%d)",
+                PARENT_TABLE, name, fromMs, toMs));
+            return rows;
+        });
+        return moved == null ? 0 : moved;
+    }
+
+    private void dropPartition(HistoryPartition partition) {
+        try {
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition.name());
+            partitionsDropped.increment();
+            log.info("Dropped expired history partition {} (retention: {} days)",
+                partition.name(), historyProperties.getRetentionDays());
+        } catch (Exception e) {
+            log.error("Failed to drop history partition {}", partition.name(), e);
+        }
+    }
+
+    /**
+     * Detach a partition before archiving it, so no insert can reach it between the read
+     * and the drop; rows for its day arriving later go to the default partition
+     * No-op if the partition is already detached.
+     */
+    public void detachPartition(HistoryPartition partition) {
+        if (isAttached(partition)) {
+            jdbcTemplate.execute(String.format("ALTER TABLE %s DETACH PARTITION %s", PARENT_TABLE, partition.name()));
+            partitionCount.set(listPartitions().size());
+            log.info("Detached history partition {} for archiving", partition.name());
+        }
+    }
+
+    /**
+     * Drop a detached partition whose rows were moved to the archive
+     * Refuses a table that is still attached, whose rows could have changed since the read.
+     */
+    public void dropArchivedPartition(HistoryPartition partition) {
+        if (isAttached(partition)) {
+            throw new IllegalStateException("History partition " + partition.name() + " is still attached");
+        }
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition.name());
+        partitionsDropped.increment();
+        partitionCount.set(listPartitions().size());
+        log.info("Dropped archived history partition {}", partition.name());
+    }
+
+    private boolean isAttached(HistoryPartition partition) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+            "SELECT EXISTS (SELECT 1 FROM pg_inherits WHERE inhrelid = to_regclass(?))",
+            Boolean.class, partition.name()));
+    }
+
+    static String partitionName(LocalDate day) {
+        return PARTITION_PREFIX + SUFFIX_FORMAT.format(day);
+    }
+
+    /**
+     * A daily partition of the history table
+     */
+    public record HistoryPartition(String name, LocalDate day) {
+
+        public long fromEpochMs() {
+            return day.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        }
+
+        public long toEpochMs() {
+            return fromEpochMs() + DAY_MS;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.routeforge.processing.service;
+
+import com.routeforge.common.dto.VehiclePositionEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Feeds history rows to the route speed rollups and the history aggregates once their
+ * insert has committed
+ * Callers pass only rows their insert actually added, so redelivered and replayed events
+ * (duplicates of stored rows) and failed writes are never counted; rows written later by a
+ * retry tier or DLQ replay are counted then. Points dropped by history thinning are passed
+ * along with the rows of their part: thinning saves storage, it does not change the stats.
+ */
+@Service
+@RequiredArgsConstructor
+public class HistoryStatsRecorder {
+    
+    private final RouteSpeedRollupService rollupService;
+    private final HistoryAggregateService aggregateService;
+    
+    public void recordInserted(List<VehiclePositionEvent> inserted) {
+        if (inserted.isEmpty()) {
+            return;
+        }
+        // In-memory per-route speed windows, flushed to route_speed_rollups
+        rollupService.record(inserted);
+        // 1-minute route/vehicle buckets, rolled up to 15 minutes and 1 hour in PostgreSQL
+        aggregateService.record(inserted);
+    }
+}
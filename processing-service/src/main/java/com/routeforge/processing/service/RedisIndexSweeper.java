@@ -0,0 +1,90 @@
+package com.routeforge.processing.service;
+
+import com.routeforge.processing.config.RedisProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.stream.Collectors;
+
+/**
+ * Removes vehicles that stopped reporting from the Redis indexes
+ * A vehicle is stale once it has not been seen for the vehicle TTL, i.e. when its
+ * veh:{vehicleId} hash would have expired. Covers the GEO indexes and the
+ * route:{routeId}:vehicles sets, and reports per-route set sizes.
+ */
+@Slf4j
+@Service
+public class RedisIndexSweeper {
+
+    private final RedisService redisService;
+    private final RedisProperties redisProperties;
+    private final Counter geoEvicted;
+    private final Counter routeMembersPruned;
+    private final MultiGauge routeSetSize;
+
+    public RedisIndexSweeper(
+            RedisService redisService,
+            RedisProperties redisProperties,
+            MeterRegistry meterRegistry) {
+        this.redisService = redisService;
+        this.redisProperties = redisProperties;
+        this.geoEvicted = Counter.builder("routeforge.processing.geo.evicted")
+            .description("Stale vehicles evicted from the GEO indexes")
+            .register(meterRegistry);
+        this.routeMembersPruned = Counter.builder("routeforge.processing.route.members.pruned")
+            .description("Stale vehicles pruned from route sets by the sweeper")
+            .register(meterRegistry);
+        this.routeSetSize = MultiGauge.builder("routeforge.processing.route.set.size")
+            .description("Live vehicles per route:{routeId}:vehicles set after the last sweep")
+            .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${routeforge.redis.sweep-interval-ms:30000}")
+    public void sweep() {
+        long cutoff = System.currentTimeMillis() - redisProperties.getTtlSec() * 1000L;
+        sweepGeoIndexes(cutoff);
+        sweepRouteSets(cutoff);
+    }
+
+    private void sweepGeoIndexes(long cutoff) {
+        int batchSize = redisProperties.getSweepBatchSize();
+
+        try {
+            long total = 0;
+            long evicted;
+            do {
+                evicted = redisService.evictStaleGeoMembers(cutoff, batchSize);
+                total += evicted;
+            } while (evicted >= batchSize);
+
+            if (total > 0) {
+                geoEvicted.increment(total);
+                log.info("Evicted {} stale vehicles from GEO indexes", total);
+            }
+        } catch (Exception e) {
+            log.error("GEO index sweep failed", e);
+        }
+    }
+
+    private void sweepRouteSets(long cutoff) {
+        try {
+            RedisService.RouteSetTrim trim = redisService.trimRouteSets(cutoff);
+
+            routeSetSize.register(trim.sizes().entrySet().stream()
+                .map(entry -> MultiGauge.Row.of(Tags.of("route", entry.getKey()), entry.getValue()))
+                .collect(Collectors.toList()), true);
+
+            if (trim.removed() > 0) {
+                routeMembersPruned.increment(trim.removed());
+                log.info("Pruned {} stale vehicles from {} route sets", trim.removed(), trim.sizes().size());
+            }
+        } catch (Exception e) {
+            log.error("Route set sweep failed", e);
+        }
+    }
+}
@@ -1,76 +1,200 @@
 package com.routeforge.processing.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.routeforge.common.dto.RouteUpdateNotification;
+import com.routeforge.common.dto.VehiclePositionEvent;
+import com.routeforge.common.dto.VehicleResponse;
+import com.routeforge.processing.config.RedisProperties;
+import com.routeforge.processing.config.RedisProperties.UpdateFanout;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.AbstractPipeline;
+import redis.clients.jedis.StreamEntryID;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.params.XAddParams;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * Redis Pub/Sub service for publishing vehicle update notifications
  * Enables real-time SSE streaming in API Gateway
+ * Depending on routeforge.redis.update-fanout, notifications are published on per-route
+ * channels, appended to a capped stream (XADD MAXLEN ~) that subscribers can resume from, or both.
  */
 @Slf4j
 @Service
 public class RedisPubSubService {
     
-    private final JedisPool jedisPool;
+    private final UnifiedJedis redisClient;
     private final ObjectMapper objectMapper;
+    private final RedisProperties redisProperties;
     private final Counter notificationsPublished;
+    private final Counter vehiclesPublished;
+    private final Counter streamEntriesAdded;
     
     public RedisPubSubService(
-            JedisPool jedisPool,
+            UnifiedJedis redisClient,
             ObjectMapper objectMapper,
+            RedisProperties redisProperties,
             MeterRegistry meterRegistry) {
-        this.jedisPool = jedisPool;
+        this.redisClient = redisClient;
         this.objectMapper = objectMapper;
+        this.redisProperties = redisProperties;
         this.notificationsPublished = Counter.builder("routeforge.processing.pubsub.published")
             .description("Total update notifications published to Redis Pub/Sub")
             .register(meterRegistry);
+        this.vehiclesPublished = Counter.builder("routeforge.processing.pubsub.vehicles")
+            .description("Total vehicle states carried by update notifications")
+            .register(meterRegistry);
+        this.streamEntriesAdded = Counter.builder("routeforge.processing.stream.entries")
+            .description("Total update notifications appended to the updates stream")
+            .register(meterRegistry);
     }
     
     /**
-     * Publish update notification for a route
+     * Publish one update notification per route for a batch of events
      * Channel: route:{routeId}:updates
-     * Payload: {routeId, vehicleId, updatedAt}
+     * Payload: {@link RouteUpdateNotification} with the latest state of each vehicle
+     *
+     * All PUBLISH / XADD commands go out in a single pipeline on one connection. In cluster
+     * mode PUBLISH has no key to route a pipeline by, so it is sent directly; any node
+     * forwards it to subscribers on the whole cluster. Failures are kept per route: only the
+     * routes whose PUBLISH or XADD did not go through are reported, so a retry does not
+     * publish the other routes again.
+     * @return events whose route notification could not be published
      */
-    public void publishRouteUpdate(String routeId, String vehicleId) {
-        if (routeId == null || vehicleId == null) {
-            log.warn("Cannot publish update with null routeId or vehicleId");
-            return;
+    public List<VehiclePositionEvent> publishRouteUpdates(List<VehiclePositionEvent> events) {
+        Map<String, Map<String, VehiclePositionEvent>> latestByRoute = groupLatestByRoute(events);
+        if (latestByRoute.isEmpty()) {
+            return List.of();
         }
         
-        try (Jedis jedis = jedisPool.getResource()) {
-            String channel = "route:" + routeId + ":updates";
-            
-            Map<String, Object> notification = new HashMap<>();
-            notification.put("routeId", routeId);
-            notification.put("vehicleId", vehicleId);
-            notification.put("updatedAt", Instant.now().toEpochMilli());
-            
-            String message = objectMapper.writeValueAsString(notification);
-            long subscribers = jedis.publish(channel, message);
-            
-            notificationsPublished.increment();
-            log.debug("Published update to channel {} for vehicle {} ({} subscribers)", 
-                channel, vehicleId, subscribers);
+        List<String> routeIds = new ArrayList<>(latestByRoute.keySet());
+        Map<String, Supplier<Long>> published = new HashMap<>();
+        Map<String, Supplier<StreamEntryID>> appended = new HashMap<>();
+        List<VehiclePositionEvent> failed = new ArrayList<>();
+        UpdateFanout fanout = redisProperties.getUpdateFanout();
+        XAddParams streamParams = XAddParams.xAddParams()
+            .maxLen(redisProperties.getUpdatesStreamMaxLen())
+            .approximateTrimming();
+        long updatedAt = Instant.now().toEpochMilli();
+        
+        boolean cluster = redisProperties.getMode() == RedisProperties.Mode.CLUSTER;
+        
+        try (AbstractPipeline pipeline = redisClient.pipelined()) {
+            for (String routeId : routeIds) {
+                RouteUpdateNotification notification = RouteUpdateNotification.builder()
+                    .routeId(routeId)
+                    .updatedAt(updatedAt)
+                    .vehicles(latestByRoute.get(routeId).values().stream()
+                        .map(this::toVehicleResponse)
+                        .toList())
+                    .build();
+                String message = objectMapper.writeValueAsString(notification);
+                
+                if (fanout.publishes()) {
+                    String channel = "route:" + routeId + ":updates";
+                    if (cluster) {
+                        published.put(routeId, publishDirect(channel, message));
+                    } else {
+                        published.put(routeId, pipeline.publish(channel, message)::get);
+                    }
+                }
+                if (fanout.streams()) {
+                    appended.put(routeId, pipeline.xadd(redisProperties.getUpdatesStreamKey(), streamParams,
+                        Map.of("routeId", routeId, "payload", message))::get);
+                }
+            }
             
         } catch (Exception e) {
-            log.error("Failed to publish update notification for route: {}, vehicle: {}", 
-                routeId, vehicleId, e);
+            // Routes sent before the failure keep their results; the rest count as not sent
+            log.error("Failed to publish update notifications for {} routes", routeIds.size(), e);
+        }
+        
+        for (String routeId : routeIds) {
+            Map<String, VehiclePositionEvent> vehicles = latestByRoute.get(routeId);
+            try {
+                if (fanout.publishes()) {
+                    long subscribers = published.getOrDefault(routeId, RedisPubSubService::notSent).get();
+                    log.debug("Published {} vehicles to channel route:{}:updates ({} subscribers)",
+                        vehicles.size(), routeId, subscribers);
+                }
+                if (fanout.streams()) {
+                    appended.getOrDefault(routeId, RedisPubSubService::notSent).get();
+                    streamEntriesAdded.increment();
+                }
+                notificationsPublished.increment();
+                vehiclesPublished.increment(vehicles.size());
+            } catch (Exception e) {
+                log.error("Failed to publish update notification for route: {}", routeId, e);
+                for (VehiclePositionEvent event : events) {
+                    if (routeId.equals(event.getRouteId())) {
+                        failed.add(event);
+                    }
+                }
+            }
         }
+        
+        return failed;
     }
     
     /**
-     * Publish bulk updates for multiple vehicles (batch optimization)
+     * PUBLISH outside the pipeline; a failure is returned for its route instead of aborting the batch
      */
-    public void publishBulkRouteUpdates(Map<String, String> routeVehicleMap) {
-        routeVehicleMap.forEach(this::publishRouteUpdate);
+    private Supplier<Long> publishDirect(String channel, String message) {
+        try {
+            long subscribers = redisClient.publish(channel, message);
+            return () -> subscribers;
+        } catch (Exception e) {
+            return () -> {
+                throw new IllegalStateException("PUBLISH to " + channel + " failed", e);
+            };
+        }
+    }
+    
+    private static <T> T notSent() {
+        throw new IllegalStateException("Update notification was not sent");
+    }
+    
+    /**
+     * Group events by route, keeping only the newest event of each vehicle
+     */
+    private Map<String, Map<String, VehiclePositionEvent>> groupLatestByRoute(List<VehiclePositionEvent> events) {
+        Map<String, Map<String, VehiclePositionEvent>> latestByRoute = new LinkedHashMap<>();
+        
+        for (VehiclePositionEvent event : events) {
+            if (event.getRouteId() == null || event.getVehicleId() == null) {
+                log.warn("Cannot publish update with null routeId or vehicleId");
+                continue;
+            }
+            latestByRoute
+                .computeIfAbsent(event.getRouteId(), r -> new LinkedHashMap<>())
+                .merge(event.getVehicleId(), event,
+                    (current, candidate) -> candidate.getTsEpochMs() >= current.getTsEpochMs() ? candidate : current);
+        }
+        
+        return latestByRoute;
+    }
+    
+    private VehicleResponse toVehicleResponse(VehiclePositionEvent event) {
+        return VehicleResponse.builder()
+            .vehicleId(event.getVehicleId())
+            .routeId(event.getRouteId())
+            .lat(event.getLat())
+            .lon(event.getLon())
+            .speedKph(event.getSpeedKph())
+            .headingDeg(event.getHeadingDeg())
+            .timestamp(Instant.ofEpochMilli(event.getTsEpochMs()))
+            .stopId(event.getStopId())
+            .delaySec(event.getDelaySec())
+            .build();
     }
 }
@@ -3,38 +3,67 @@ package com.routeforge.processing.service;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.routeforge.common.dto.VehiclePositionEvent;
+import com.routeforge.common.util.RedisKeys;
 import com.routeforge.processing.config.RedisProperties;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
-import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
-import redis.clients.jedis.Pipeline;
+import org.springframework.util.StreamUtils;
+import redis.clients.jedis.AbstractPipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.jedis.params.ZAddParams;
+import redis.clients.jedis.resps.ScanResult;
+import redis.clients.jedis.util.JedisCommandIterationBase;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * Redis service for hot vehicle position cache
+ *
+ * On a single node each position is one atomic script call. In cluster mode
+ * (routeforge.redis.mode=cluster) the vehicle hash is updated by a script in its own slot
+ * first, then the route and GEO indexes are written with a cluster pipeline that splits
+ * commands by slot owner and flushes the node pipelines in parallel.
  */
 @Slf4j
 @Service
 public class RedisService {
     
-    private final JedisPool jedisPool;
+    private static final String UPDATE_SCRIPT = readScript("redis/update_vehicle_position.lua");
+    private static final String UPDATE_HASH_SCRIPT = readScript("redis/update_vehicle_hash.lua");
+    private static final String EVICT_GEO_SCRIPT = readScript("redis/evict_stale_geo_members.lua");
+    /** Script passes for events whose route entry another writer changed after it was read */
+    private static final int MAX_ROUTE_READ_ATTEMPTS = 3;
+    
+    private final UnifiedJedis redisClient;
+    private final RedisKeys keys;
     private final RedisProperties redisProperties;
     private final ObjectMapper objectMapper;
     private final Counter cacheUpdates;
     private final Counter cacheErrors;
+    private final Counter staleSkipped;
+    private volatile String updateScriptSha;
     
     public RedisService(
-            JedisPool jedisPool,
+            UnifiedJedis redisClient,
+            RedisKeys keys,
             RedisProperties redisProperties,
             ObjectMapper objectMapper,
             MeterRegistry meterRegistry) {
-        this.jedisPool = jedisPool;
+        this.redisClient = redisClient;
+        this.keys = keys;
         this.redisProperties = redisProperties;
         this.objectMapper = objectMapper;
         this.cacheUpdates = Counter.builder("routeforge.processing.cache.updates")
@@ -43,48 +72,391 @@ public class RedisService {
         this.cacheErrors = Counter.builder("routeforge.processing.cache.errors")
             .description("Total Redis cache errors")
             .register(meterRegistry);
+        this.staleSkipped = Counter.builder("routeforge.processing.cache.stale.skipped")
+            .description("Cache updates skipped because a newer position was already cached")
+            .register(meterRegistry);
+    }
+    
+    /**
+     * Load the conditional update script so the pipeline can call it by SHA
+     */
+    @PostConstruct
+    public void loadScripts() {
+        try {
+            loadUpdateScript();
+        } catch (Exception e) {
+            // Loaded lazily on first write if Redis is not reachable yet
+            log.warn("Could not preload Redis update script: {}", e.getMessage());
+        }
     }
     
     /**
      * Update vehicle positions in Redis
      * Key pattern: veh:{vehicleId} -> Hash
      * Key pattern: route:{routeId}:vehicles -> Sorted Set (score = timestamp)
+     * Key pattern: geo:vehicles, geo:route:{routeId}:vehicles -> GEO sets
+     * (see {@link RedisKeys} for the hash-tagged cluster names)
+     *
+     * Each event is one EVALSHA of a script that writes only if tsEpochMs is newer than
+     * the cached position; stale events are skipped and count as written but not applied.
+     * @return events that changed the cache, and events whose writes failed
      */
-    public void updateVehiclePositions(List<VehiclePositionEvent> events) {
+    public CacheUpdate updateVehiclePositions(List<VehiclePositionEvent> events) {
+        return updateVehiclePositions(events, false);
+    }
+    
+    /**
+     * @param repair the events are written again after a failure: an event with the cached
+     *               tsEpochMs is re-applied instead of skipped, so index writes it missed are repeated
+     */
+    public CacheUpdate updateVehiclePositions(List<VehiclePositionEvent> events, boolean repair) {
         if (events.isEmpty()) {
-            return;
+            return CacheUpdate.EMPTY;
         }
         
-        try (Jedis jedis = jedisPool.getResource()) {
-            Pipeline pipeline = jedis.pipelined();
+        try {
+            if (updateScriptSha == null) {
+                loadUpdateScript();
+            }
+            
+            List<VehiclePositionEvent> noScript = new ArrayList<>();
+            List<VehiclePositionEvent> applied = new ArrayList<>();
+            List<VehiclePositionEvent> failed = runUpdate(events, repair, noScript, applied);
+            if (!noScript.isEmpty()) {
+                // Redis restarted, flushed its script cache or a node joined: reload and retry once
+                log.warn("Redis update script missing, reloading");
+                loadUpdateScript();
+                List<VehiclePositionEvent> stillMissing = new ArrayList<>();
+                failed.addAll(runUpdate(noScript, repair, stillMissing, applied));
+                failed.addAll(stillMissing);
+            }
             
+            log.info("Updated {} vehicle positions in Redis ({} stale)",
+                applied.size(), events.size() - failed.size() - applied.size());
+            return new CacheUpdate(applied, failed);
+            
+        } catch (Exception e) {
+            log.error("Redis pipeline error", e);
+            cacheErrors.increment();
+            return new CacheUpdate(List.of(), events);
+        }
+    }
+    
+    /**
+     * @param noScript collects events rejected with NOSCRIPT, which are not in the returned list
+     * @param applied collects events that changed the cache (not stale, not failed)
+     */
+    private List<VehiclePositionEvent> runUpdate(
+            List<VehiclePositionEvent> events, boolean repair, List<VehiclePositionEvent> noScript,
+            List<VehiclePositionEvent> applied) {
+        return keys.isHashTagged()
+            ? runClusterUpdate(events, repair, noScript, applied)
+            : runUpdateScript(events, repair, noScript, applied);
+    }
+    
+    /**
+     * Standalone write: the script declares the previous route's keys, so the previous
+     * routeIds are read first and the script rejects (-1) an event whose route entry changed
+     * in between; those are read and written again.
+     */
+    private List<VehiclePositionEvent> runUpdateScript(
+            List<VehiclePositionEvent> events, boolean repair, List<VehiclePositionEvent> noScript,
+            List<VehiclePositionEvent> applied) {
+        List<VehiclePositionEvent> failed = new ArrayList<>();
+        List<VehiclePositionEvent> pending = events;
+        for (int attempt = 1; !pending.isEmpty(); attempt++) {
+            List<VehiclePositionEvent> routeChanged = new ArrayList<>();
+            failed.addAll(runUpdateScriptOnce(pending, repair, noScript, applied, routeChanged));
+            if (attempt == MAX_ROUTE_READ_ATTEMPTS && !routeChanged.isEmpty()) {
+                log.error("Route entry of {} vehicles kept changing during the cache update", routeChanged.size());
+                cacheErrors.increment(routeChanged.size());
+                failed.addAll(routeChanged);
+                break;
+            }
+            pending = routeChanged;
+        }
+        return failed;
+    }
+    
+    private List<VehiclePositionEvent> runUpdateScriptOnce(
+            List<VehiclePositionEvent> events, boolean repair, List<VehiclePositionEvent> noScript,
+            List<VehiclePositionEvent> applied, List<VehiclePositionEvent> routeChanged) {
+        List<Response<String>> previousRoutes = new ArrayList<>(events.size());
+        try (AbstractPipeline pipeline = redisClient.pipelined()) {
             for (VehiclePositionEvent event : events) {
-                try {
-                    // Store vehicle position as hash
-                    String vehicleKey = "veh:" + event.getVehicleId();
-                    Map<String, String> fields = buildVehicleFields(event);
-                    pipeline.hset(vehicleKey, fields);
-                    pipeline.expire(vehicleKey, redisProperties.getTtlSec());
-                    
-                    // Add to route's sorted set
-                    String routeKey = "route:" + event.getRouteId() + ":vehicles";
-                    pipeline.zadd(routeKey, event.getTsEpochMs(), event.getVehicleId());
-                    pipeline.expire(routeKey, redisProperties.getTtlSec());
-                    
+                previousRoutes.add(pipeline.hget(keys.geoRoute(), event.getVehicleId()));
+            }
+        }
+        
+        long seenAtMs = System.currentTimeMillis();
+        List<Response<Object>> writes = new ArrayList<>(events.size());
+        try (AbstractPipeline pipeline = redisClient.pipelined()) {
+            for (int i = 0; i < events.size(); i++) {
+                VehiclePositionEvent event = events.get(i);
+                String previousRoute = Objects.requireNonNullElse(previousRoutes.get(i).get(), "");
+                String indexRoute = previousRoute.isEmpty() ? event.getRouteId() : previousRoute;
+                List<String> scriptKeys = List.of(
+                    keys.vehicle(event.getVehicleId()),
+                    keys.routeVehicles(event.getRouteId()),
+                    keys.geoVehicles(),
+                    keys.routeGeo(event.getRouteId()),
+                    keys.geoSeen(),
+                    keys.geoRoute(),
+                    keys.routeVehicles(indexRoute),
+                    keys.routeGeo(indexRoute));
+                writes.add(pipeline.evalsha(updateScriptSha, scriptKeys, buildScriptArgs(event, previousRoute, seenAtMs, repair)));
+            }
+        }
+        
+        // Command errors surface per response, so each event is checked individually
+        List<VehiclePositionEvent> failed = new ArrayList<>();
+        for (int i = 0; i < events.size(); i++) {
+            try {
+                Object result = writes.get(i).get();
+                if (Long.valueOf(1L).equals(result)) {
                     cacheUpdates.increment();
-                    
+                    applied.add(events.get(i));
+                } else if (Long.valueOf(-1L).equals(result)) {
+                    routeChanged.add(events.get(i));
+                } else {
+                    staleSkipped.increment();
+                    log.debug("Skipped stale cache update for vehicle: {} (ts: {})",
+                        events.get(i).getVehicleId(), events.get(i).getTsEpochMs());
+                }
+            } catch (JedisNoScriptException e) {
+                noScript.add(events.get(i));
+            } catch (Exception e) {
+                log.error("Failed to update cache for vehicle: {}", events.get(i).getVehicleId(), e);
+                cacheErrors.increment();
+                failed.add(events.get(i));
+            }
+        }
+        return failed;
+    }
+    
+    /**
+     * Cluster write: one pipeline of vehicle hash scripts, then one pipeline of index
+     * updates for the events that applied. Each pipeline is split by slot owner.
+     *
+     * The two phases are not atomic. An index write that fails marks the event failed;
+     * its retry is a repair, which re-applies the equal tsEpochMs and rewrites the indexes.
+     * The route set and GEO eviction scores only move forward (ZADD GT).
+     */
+    private List<VehiclePositionEvent> runClusterUpdate(
+            List<VehiclePositionEvent> events, boolean repair, List<VehiclePositionEvent> noScript,
+            List<VehiclePositionEvent> applied) {
+        long seenAtMs = System.currentTimeMillis();
+        List<Response<Object>> hashWrites = new ArrayList<>(events.size());
+        
+        try (AbstractPipeline pipeline = redisClient.pipelined()) {
+            for (VehiclePositionEvent event : events) {
+                hashWrites.add(pipeline.evalsha(updateScriptSha,
+                    List.of(keys.vehicle(event.getVehicleId())), buildHashScriptArgs(event, repair)));
+            }
+        }
+        
+        List<VehiclePositionEvent> failed = new ArrayList<>();
+        List<VehiclePositionEvent> hashApplied = new ArrayList<>();
+        List<Response<?>> indexWrites = new ArrayList<>();
+        List<Integer> indexWriteCounts = new ArrayList<>();
+        
+        try (AbstractPipeline pipeline = redisClient.pipelined()) {
+            for (int i = 0; i < events.size(); i++) {
+                VehiclePositionEvent event = events.get(i);
+                Object previousRoute;
+                try {
+                    previousRoute = hashWrites.get(i).get();
+                } catch (JedisNoScriptException e) {
+                    noScript.add(event);
+                    continue;
                 } catch (Exception e) {
                     log.error("Failed to update cache for vehicle: {}", event.getVehicleId(), e);
                     cacheErrors.increment();
+                    failed.add(event);
+                    continue;
+                }
+                
+                if (previousRoute instanceof Long) {
+                    staleSkipped.increment();
+                    log.debug("Skipped stale cache update for vehicle: {} (ts: {})",
+                        event.getVehicleId(), event.getTsEpochMs());
+                    continue;
                 }
+                
+                int before = indexWrites.size();
+                queueIndexWrites(pipeline, event, previousRoute == null ? "" : previousRoute.toString(), seenAtMs, indexWrites);
+                hashApplied.add(event);
+                indexWriteCounts.add(indexWrites.size() - before);
             }
+        }
+        
+        int offset = 0;
+        for (int i = 0; i < hashApplied.size(); i++) {
+            VehiclePositionEvent event = hashApplied.get(i);
+            int count = indexWriteCounts.get(i);
+            try {
+                for (int j = offset; j < offset + count; j++) {
+                    indexWrites.get(j).get();
+                }
+                cacheUpdates.increment();
+                applied.add(event);
+            } catch (Exception e) {
+                log.error("Failed to update cache indexes for vehicle: {}", event.getVehicleId(), e);
+                cacheErrors.increment();
+                failed.add(event);
+            }
+            offset += count;
+        }
+        return failed;
+    }
+    
+    private void queueIndexWrites(
+            AbstractPipeline pipeline, VehiclePositionEvent event, String previousRoute, long seenAtMs,
+            List<Response<?>> responses) {
+        String vehicleId = event.getVehicleId();
+        String routeId = event.getRouteId();
+        long ts = event.getTsEpochMs();
+        long ttlSec = redisProperties.getTtlSec();
+        String routeKey = keys.routeVehicles(routeId);
+        
+        // Vehicle switched routes: drop it from the previous route's indexes
+        if (!previousRoute.isEmpty() && !previousRoute.equals(routeId)) {
+            responses.add(pipeline.zrem(keys.routeVehicles(previousRoute), vehicleId));
+            responses.add(pipeline.zrem(keys.routeGeo(previousRoute), vehicleId));
+        }
+        
+        responses.add(pipeline.zadd(routeKey, ts, vehicleId, ZAddParams.zAddParams().gt()));
+        responses.add(pipeline.expire(routeKey, ttlSec));
+        responses.add(pipeline.zremrangeByScore(routeKey, "-inf", "(" + (ts - ttlSec * 1000)));
+        
+        // Same range check as update_vehicle_position.lua: GEOADD rejects the rest
+        double lon = event.getLon();
+        double lat = event.getLat();
+        if (lon >= -180 && lon <= 180 && lat >= -85.05112878 && lat <= 85.05112878) {
+            String routeGeoKey = keys.routeGeo(routeId);
+            responses.add(pipeline.geoadd(keys.geoVehicles(), lon, lat, vehicleId));
+            responses.add(pipeline.geoadd(routeGeoKey, lon, lat, vehicleId));
+            responses.add(pipeline.expire(routeGeoKey, ttlSec));
+            responses.add(pipeline.zadd(keys.geoSeen(), seenAtMs, vehicleId, ZAddParams.zAddParams().gt()));
+            responses.add(pipeline.hset(keys.geoRoute(), vehicleId, routeId));
+        }
+    }
+    
+    /**
+     * Round trip to Redis, used to probe an unhealthy sink
+     */
+    public void ping() {
+        redisClient.ping();
+    }
+    
+    /**
+     * Remove vehicles last seen at or before the cutoff from the GEO indexes
+     * Last seen is the wall clock of the write, not the event time.
+     * @return number of vehicles evicted (at most maxMembers)
+     */
+    public long evictStaleGeoMembers(long cutoffEpochMs, int maxMembers) {
+        Object result = redisClient.eval(EVICT_GEO_SCRIPT,
+            List.of(keys.geoSeen(), keys.geoRoute(), keys.geoVehicles()),
+            List.of(String.valueOf(cutoffEpochMs), String.valueOf(maxMembers)));
+        if (!(result instanceof List<?> evicted) || evicted.isEmpty()) {
+            return 0L;
+        }
+        
+        // Route GEO sets may sit on other nodes, so they are cleaned outside the script
+        try (AbstractPipeline pipeline = redisClient.pipelined()) {
+            for (int i = 0; i + 1 < evicted.size(); i += 2) {
+                String routeId = String.valueOf(evicted.get(i + 1));
+                if (!routeId.isEmpty()) {
+                    pipeline.zrem(keys.routeGeo(routeId), String.valueOf(evicted.get(i)));
+                }
+            }
+        }
+        return evicted.size() / 2;
+    }
+    
+    /**
+     * Trim members last seen before the cutoff from every route:{routeId}:vehicles set
+     * Active routes are already trimmed on write; this catches routes that stopped receiving events.
+     */
+    public RouteSetTrim trimRouteSets(long cutoffEpochMs) {
+        Map<String, Long> sizes = new HashMap<>();
+        long removed = 0;
+        
+        // Scans every master in cluster mode
+        JedisCommandIterationBase<ScanResult<String>, String> scan =
+            redisClient.scanIteration(100, keys.routeVehiclesPattern());
+        
+        while (!scan.isIterationCompleted()) {
+            List<String> routeKeys = scan.nextBatch().getResult();
+            List<Response<Long>> trimmed = new ArrayList<>(routeKeys.size());
+            List<Response<Long>> remaining = new ArrayList<>(routeKeys.size());
             
-            pipeline.sync();
-            log.info("Updated {} vehicle positions in Redis", events.size());
+            try (AbstractPipeline pipeline = redisClient.pipelined()) {
+                for (String routeKey : routeKeys) {
+                    trimmed.add(pipeline.zremrangeByScore(routeKey, "-inf", "(" + cutoffEpochMs));
+                    remaining.add(pipeline.zcard(routeKey));
+                }
+            }
             
-        } catch (Exception e) {
-            log.error("Redis pipeline error", e);
-            cacheErrors.increment();
+            for (int i = 0; i < routeKeys.size(); i++) {
+                removed += trimmed.get(i).get();
+                long size = remaining.get(i).get();
+                if (size > 0) {
+                    sizes.put(keys.routeIdOf(routeKeys.get(i)), size);
+                }
+            }
+        }
+        
+        return new RouteSetTrim(removed, sizes);
+    }
+    
+    /**
+     * SCRIPT LOAD goes to every master in cluster mode
+     */
+    private void loadUpdateScript() {
+        updateScriptSha = redisClient.scriptLoad(keys.isHashTagged() ? UPDATE_HASH_SCRIPT : UPDATE_SCRIPT);
+        log.info("Loaded Redis update script (sha: {})", updateScriptSha);
+    }
+    
+    private List<String> buildScriptArgs(VehiclePositionEvent event, String previousRoute, long seenAtMs,
+                                         boolean repair) {
+        Map<String, String> fields = buildVehicleFields(event);
+        List<String> args = new ArrayList<>(9 + fields.size() * 2);
+        args.add(String.valueOf(event.getTsEpochMs()));
+        args.add(String.valueOf(redisProperties.getTtlSec()));
+        args.add(event.getVehicleId());
+        args.add(event.getRouteId());
+        args.add(String.valueOf(event.getLon()));
+        args.add(String.valueOf(event.getLat()));
+        args.add(previousRoute);
+        args.add(String.valueOf(seenAtMs));
+        args.add(repair ? "1" : "0");
+        fields.forEach((field, value) -> {
+            args.add(field);
+            args.add(value);
+        });
+        return args;
+    }
+    
+    private List<String> buildHashScriptArgs(VehiclePositionEvent event, boolean repair) {
+        Map<String, String> fields = buildVehicleFields(event);
+        List<String> args = new ArrayList<>(3 + fields.size() * 2);
+        args.add(String.valueOf(event.getTsEpochMs()));
+        args.add(String.valueOf(redisProperties.getTtlSec()));
+        args.add(repair ? "1" : "0");
+        fields.forEach((field, value) -> {
+            args.add(field);
+            args.add(value);
+        });
+        return args;
+    }
+    
+    private static String readScript(String path) {
+        try {
+            return StreamUtils.copyToString(
+                new ClassPathResource(path).getInputStream(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read Redis script: " + path, e);
         }
     }
     
@@ -102,6 +474,9 @@ public class RedisService {
         if (event.getHeadingDeg() != null) {
             fields.put("headingDeg", String.valueOf(event.getHeadingDeg()));
         }
+        // Always written: HSET keeps fields of earlier updates
+        fields.put("speedDerived", String.valueOf(Boolean.TRUE.equals(event.getSpeedDerived())));
+        fields.put("headingDerived", String.valueOf(Boolean.TRUE.equals(event.getHeadingDerived())));
         if (event.getStopId() != null) {
             fields.put("stopId", event.getStopId());
         }
@@ -111,4 +486,20 @@ public class RedisService {
         
         return fields;
     }
+    
+    /**
+     * Outcome of a cache write
+     * @param applied events that replaced the cached position, in input order per attempt
+     * @param failed events whose writes failed; stale events are in neither list
+     */
+    public record CacheUpdate(List<VehiclePositionEvent> applied, List<VehiclePositionEvent> failed) {
+        
+        public static final CacheUpdate EMPTY = new CacheUpdate(List.of(), List.of());
+    }
+    
+    /**
+     * Outcome of a route set trim: members removed and remaining members per route
+     */
+    public record RouteSetTrim(long removed, Map<String, Long> sizes) {
+    }
 }
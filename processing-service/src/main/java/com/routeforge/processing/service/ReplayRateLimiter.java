@@ -0,0 +1,37 @@
+package com.routeforge.processing.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Smooth events/sec limiter shared by the workers of one replay job:
+ * each permit is scheduled 1/rate after the previous one
+ */
+class ReplayRateLimiter {
+    
+    private final long intervalNanos;
+    private long nextFreeNanos = System.nanoTime();
+    
+    ReplayRateLimiter(int permitsPerSecond) {
+        this.intervalNanos = permitsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / permitsPerSecond : 0;
+    }
+    
+    /**
+     * Block until {@code permits} may be used
+     */
+    void acquire(int permits) throws InterruptedException {
+        if (intervalNanos == 0 || permits <= 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            // Idle time does not accumulate into a burst
+            long start = Math.max(nextFreeNanos, now);
+            nextFreeNanos = start + intervalNanos * permits;
+            waitNanos = start - now;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
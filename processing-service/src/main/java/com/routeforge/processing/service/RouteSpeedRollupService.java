@@ -0,0 +1,247 @@
+package com.routeforge.processing.service;
+
+import com.routeforge.common.dto.VehiclePositionEvent;
+import com.routeforge.processing.config.RollupProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps per-route speed statistics in tumbling event-time windows as positions are stored
+ * and flushes closed windows to route_speed_rollups, so speed consumers (ETA) read a
+ * few precomputed rows instead of scanning raw history.
+ * Windows close on each route's own event-time watermark (newest position minus the allowed
+ * lateness), so a lagging consumer or a replay doesn't turn its samples into late drops;
+ * a route that goes quiet is flushed after idle-flush-ms.
+ * A route's vehicles are spread over partitions and instances, so each instance writes
+ * partial windows and the upsert merges them (count, mean, variance exactly; quantiles
+ * as a count-weighted approximation).
+ */
+@Slf4j
+@Service
+public class RouteSpeedRollupService {
+    
+    private static final String UPSERT_SQL = """
+        INSERT INTO route_speed_rollups AS r
+            (route_id, window_start, window_seconds, sample_count, mean_kph, variance_kph,
+             min_kph, max_kph, p50_kph, p90_kph, p95_kph)
+        VALUES (?, to_timestamp(? / 1000.0), ?, ?, ?, ?, ?, ?, ?, ?, ?)
+        ON CONFLICT (route_id, window_start) DO UPDATE SET
+            sample_count = r.sample_count + EXCLUDED.sample_count,
+            mean_kph = (r.mean_kph * r.sample_count + EXCLUDED.mean_kph * EXCLUDED.sample_count)
+                / (r.sample_count + EXCLUDED.sample_count),
+            variance_kph = GREATEST(
+                ((r.variance_kph + r.mean_kph * r.mean_kph) * r.sample_count
+                    + (EXCLUDED.variance_kph + EXCLUDED.mean_kph * EXCLUDED.mean_kph) * EXCLUDED.sample_count)
+                    / (r.sample_count + EXCLUDED.sample_count)
+                - POWER((r.mean_kph * r.sample_count + EXCLUDED.mean_kph * EXCLUDED.sample_count)
+                    / (r.sample_count + EXCLUDED.sample_count), 2),
+                0),
+            min_kph = LEAST(r.min_kph, EXCLUDED.min_kph),
+            max_kph = GREATEST(r.max_kph, EXCLUDED.max_kph),
+            p50_kph = (r.p50_kph * r.sample_count + EXCLUDED.p50_kph * EXCLUDED.sample_count)
+                / (r.sample_count + EXCLUDED.sample_count),
+            p90_kph = (r.p90_kph * r.sample_count + EXCLUDED.p90_kph * EXCLUDED.sample_count)
+                / (r.sample_count + EXCLUDED.sample_count),
+            p95_kph = (r.p95_kph * r.sample_count + EXCLUDED.p95_kph * EXCLUDED.sample_count)
+                / (r.sample_count + EXCLUDED.sample_count)
+        """;
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final RollupProperties rollupProperties;
+    private final TransactionTemplate transaction;
+    private final Map<WindowKey, SpeedWindowStats> windows = new ConcurrentHashMap<>();
+    private final Map<String, RouteClock> routeClocks = new ConcurrentHashMap<>();
+    private final Counter windowsFlushed;
+    private final Counter lateSamples;
+    private final Counter samples;
+    
+    public RouteSpeedRollupService(
+            JdbcTemplate jdbcTemplate,
+            RollupProperties rollupProperties,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.rollupProperties = rollupProperties;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.windowsFlushed = Counter.builder("routeforge.processing.rollup.windows.flushed")
+            .description("Per-route speed windows written to route_speed_rollups")
+            .register(meterRegistry);
+        this.lateSamples = Counter.builder("routeforge.processing.rollup.samples.late")
+            .description("Speed samples dropped because their window was already flushed")
+            .register(meterRegistry);
+        this.samples = Counter.builder("routeforge.processing.rollup.samples")
+            .description("Speed samples added to rollup windows")
+            .register(meterRegistry);
+        Gauge.builder("routeforge.processing.rollup.windows.open", windows, Map::size)
+            .description("Per-route speed windows held in memory")
+            .register(meterRegistry);
+    }
+    
+    /**
+     * Add the moving-speed samples of stored positions to their route windows
+     */
+    public void record(List<VehiclePositionEvent> events) {
+        if (!rollupProperties.isEnabled()) {
+            return;
+        }
+        long windowMs = rollupProperties.getWindowSeconds() * 1000L;
+        long now = System.currentTimeMillis();
+        int added = 0;
+        
+        for (VehiclePositionEvent event : events) {
+            Double speed = event.getSpeedKph();
+            if (speed == null || !(speed > 0) || event.getRouteId() == null || event.getTsEpochMs() == null) {
+                continue; // ETA averages moving speed only
+            }
+            long windowStart = event.getTsEpochMs() - Math.floorMod(event.getTsEpochMs(), windowMs);
+            RouteClock clock = routeClocks.computeIfAbsent(event.getRouteId(), routeId -> new RouteClock(now));
+            if (windowStart + windowMs <= clock.observe(event.getTsEpochMs(), now)) {
+                lateSamples.increment();
+                continue;
+            }
+            windows.compute(new WindowKey(event.getRouteId(), windowStart), (k, stats) -> {
+                SpeedWindowStats window = stats != null ? stats : new SpeedWindowStats();
+                window.add(speed);
+                return window;
+            });
+            added++;
+        }
+        samples.increment(added);
+    }
+    
+    /**
+     * Write every window its route's watermark has passed by the allowed lateness
+     */
+    @Scheduled(fixedDelayString = "${routeforge.processing.rollup.flush-interval-ms:15000}")
+    public void flush() {
+        long windowMs = rollupProperties.getWindowSeconds() * 1000L;
+        long now = System.currentTimeMillis();
+        Map<String, Long> closedThrough = new HashMap<>();
+        routeClocks.forEach((routeId, clock) -> {
+            long closed = clock.close(rollupProperties.getAllowedLatenessMs(), rollupProperties.getIdleFlushMs(), windowMs, now);
+            closedThrough.put(routeId, closed);
+            if (clock.idleSince(now) >= rollupProperties.getIdleFlushMs()) {
+                routeClocks.remove(routeId, clock); // a late sample just starts a fresh clock
+            }
+        });
+        
+        Map<WindowKey, SpeedWindowStats> closedWindows = new LinkedHashMap<>();
+        for (WindowKey key : windows.keySet()) {
+            Long closed = closedThrough.get(key.routeId());
+            if (closed == null || key.windowStart() + windowMs > closed) {
+                continue;
+            }
+            SpeedWindowStats stats = windows.remove(key);
+            if (stats != null && stats.count() > 0) {
+                closedWindows.put(key, stats);
+            }
+        }
+        
+        if (closedWindows.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = closedWindows.entrySet().stream()
+            .map(entry -> toRow(entry.getKey(), entry.getValue()))
+            .toList();
+        try {
+            // One transaction, so a failed flush leaves nothing half-added to the stored rows
+            transaction.executeWithoutResult(status -> jdbcTemplate.batchUpdate(UPSERT_SQL, rows));
+            windowsFlushed.increment(rows.size());
+            log.debug("Flushed {} route speed windows", rows.size());
+        } catch (Exception e) {
+            // Keep the windows for the next flush, together with anything recorded meanwhile
+            closedWindows.forEach((key, stats) -> windows.merge(key, stats, (current, failed) -> {
+                failed.merge(current);
+                return failed;
+            }));
+            log.error("Failed to flush {} route speed windows, retrying on the next flush", rows.size(), e);
+        }
+    }
+    
+    private Object[] toRow(WindowKey key, SpeedWindowStats stats) {
+        return new Object[] {
+            key.routeId(), key.windowStart(), rollupProperties.getWindowSeconds(), stats.count(),
+            stats.mean(), stats.variance(), stats.min(), stats.max(),
+            stats.quantile(0.5), stats.quantile(0.9), stats.quantile(0.95)
+        };
+    }
+    
+    @Scheduled(fixedDelayString = "${routeforge.history.partition-maintenance-interval-ms:3600000}")
+    public void pruneExpired() {
+        try {
+            int deleted = jdbcTemplate.update(
+                "DELETE FROM route_speed_rollups WHERE window_start < NOW() - INTERVAL '1 day' * ?",
+                rollupProperties.getRetentionDays());
+            if (deleted > 0) {
+                log.info("Deleted {} route speed rollups older than {} days", deleted, rollupProperties.getRetentionDays());
+            }
+        } catch (Exception e) {
+            log.error("Route speed rollup retention failed", e);
+        }
+    }
+    
+    /**
+     * Windows held in memory, for tests
+     */
+    SpeedWindowStats openWindow(String routeId, long windowStart) {
+        return windows.get(new WindowKey(routeId, windowStart));
+    }
+    
+    private record WindowKey(String routeId, long windowStart) {
+    }
+    
+    /**
+     * Event-time progress of one route: the newest sample seen and how far its windows were flushed
+     */
+    private static final class RouteClock {
+        
+        private long watermark = Long.MIN_VALUE;
+        private long flushedThrough = Long.MIN_VALUE;
+        private long lastSampleAtMs;
+        
+        RouteClock(long now) {
+            this.lastSampleAtMs = now;
+        }
+        
+        /**
+         * Advance the watermark with a sample and return the end of the flushed windows
+         */
+        synchronized long observe(long tsEpochMs, long now) {
+            // A clock ahead of ours must not close every window of the route at once
+            watermark = Math.max(watermark, Math.min(tsEpochMs, now));
+            lastSampleAtMs = now;
+            return flushedThrough;
+        }
+        
+        /**
+         * Mark the windows the watermark has passed as flushed; an idle route closes its last window too
+         */
+        synchronized long close(long allowedLatenessMs, long idleFlushMs, long windowMs, long now) {
+            if (watermark == Long.MIN_VALUE) {
+                return flushedThrough;
+            }
+            long closed = now - lastSampleAtMs >= idleFlushMs
+                ? watermark - Math.floorMod(watermark, windowMs) + windowMs
+                : watermark - allowedLatenessMs;
+            flushedThrough = Math.max(flushedThrough, closed);
+            return flushedThrough;
+        }
+        
+        synchronized long idleSince(long now) {
+            return now - lastSampleAtMs;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.routeforge.processing.service;
+
+import com.routeforge.common.dto.VehiclePositionEvent;
+import com.routeforge.processing.pipeline.Sink;
+import com.routeforge.processing.pipeline.SinkFailure;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Rewrites events to a chosen set of sinks outside the pipeline (retry tiers, DLQ replay)
+ * Each sink is attempted independently; failures are reported per sink.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SinkRewriter {
+    
+    private final RedisService redisService;
+    private final DatabaseService databaseService;
+    private final RedisPubSubService pubSubService;
+    private final HistoryStatsRecorder historyStats;
+    
+    /**
+     * @return one failure per sink that could not take all events (empty = all written)
+     */
+    public List<SinkFailure> rewrite(List<VehiclePositionEvent> events, Set<Sink> sinks) {
+        List<SinkFailure> failures = new ArrayList<>();
+        List<VehiclePositionEvent> cached = events;
+        
+        if (sinks.contains(Sink.REDIS)) {
+            List<VehiclePositionEvent> applied = new ArrayList<>();
+            SinkFailure failure = write(Sink.REDIS, events, () -> {
+                // Everything rewritten here failed before, possibly after its hash but not its indexes
+                RedisService.CacheUpdate update = redisService.updateVehiclePositions(events, true);
+                applied.addAll(update.applied());
+                return update.failed();
+            });
+            if (failure != null) {
+                failures.add(failure);
+            }
+            // Only announce what actually changed the cache: a stale replay must not follow a newer position
+            cached = applied;
+        }
+        
+        if (sinks.contains(Sink.DATABASE)) {
+            try {
+                databaseService.saveVehiclePositions(events);
+                historyStats.recordInserted(events);
+            } catch (Exception e) {
+                // Rows from an earlier partial write count as stored
+                DatabaseService.IndividualSave save = databaseService.saveVehiclePositionsIndividually(events);
+                historyStats.recordInserted(save.inserted());
+                if (!save.failed().isEmpty()) {
+                    failures.add(new SinkFailure(Sink.DATABASE, save.failed(), e));
+                }
+            }
+        }
+        
+        if (sinks.contains(Sink.PUBSUB) && !cached.isEmpty()) {
+            List<VehiclePositionEvent> toPublish = cached;
+            SinkFailure failure = write(Sink.PUBSUB, toPublish, () -> pubSubService.publishRouteUpdates(toPublish));
+            if (failure != null) {
+                failures.add(failure);
+            }
+        }
+        
+        log.debug("Rewrote {} events to {} with {} failed sinks", events.size(), sinks, failures.size());
+        return failures;
+    }
+    
+    private static SinkFailure write(Sink sink, List<VehiclePositionEvent> events,
+                                     Supplier<List<VehiclePositionEvent>> writer) {
+        try {
+            List<VehiclePositionEvent> failed = writer.get();
+            if (failed.isEmpty()) {
+                return null;
+            }
+            return new SinkFailure(sink, failed,
+                new IllegalStateException(failed.size() + " events failed to reach " + sink));
+        } catch (Exception e) {
+            return new SinkFailure(sink, events, e);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.routeforge.processing.service;
+
+/**
+ * Speed statistics of one rollup window
+ * Mean and variance use Welford's online update (and Chan's formula to merge);
+ * quantiles come from a fixed 2 km/h histogram, so a window stays a few hundred bytes
+ * regardless of how many samples it holds.
+ */
+public final class SpeedWindowStats {
+    
+    static final double BIN_KPH = 2.0;
+    static final int BINS = 80; // 0-160 km/h, last bin open-ended
+    
+    private long count;
+    private double mean;
+    private double m2;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private final int[] histogram = new int[BINS];
+    
+    public void add(double speedKph) {
+        count++;
+        double delta = speedKph - mean;
+        mean += delta / count;
+        m2 += delta * (speedKph - mean);
+        min = Math.min(min, speedKph);
+        max = Math.max(max, speedKph);
+        histogram[bin(speedKph)]++;
+    }
+    
+    public void merge(SpeedWindowStats other) {
+        if (other.count == 0) {
+            return;
+        }
+        long total = count + other.count;
+        double delta = other.mean - mean;
+        m2 += other.m2 + delta * delta * count * other.count / total;
+        mean += delta * other.count / total;
+        count = total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        for (int i = 0; i < BINS; i++) {
+            histogram[i] += other.histogram[i];
+        }
+    }
+    
+    public long count() {
+        return count;
+    }
+    
+    public double mean() {
+        return mean;
+    }
+    
+    /**
+     * Population variance (0 for fewer than two samples)
+     */
+    public double variance() {
+        return count < 2 ? 0.0 : m2 / count;
+    }
+    
+    public double min() {
+        return count == 0 ? 0.0 : min;
+    }
+    
+    public double max() {
+        return count == 0 ? 0.0 : max;
+    }
+    
+    /**
+     * Quantile estimate, interpolated within its histogram bin and clamped to [min, max]
+     */
+    public double quantile(double q) {
+        if (count == 0) {
+            return 0.0;
+        }
+        double rank = q * count;
+        long seen = 0;
+        for (int i = 0; i < BINS; i++) {
+            if (histogram[i] == 0) {
+                continue;
+            }
+            if (seen + histogram[i] >= rank) {
+                double fraction = (rank - seen) / histogram[i];
+                double estimate = (i + fraction) * BIN_KPH;
+                return Math.max(min, Math.min(max, estimate));
+            }
+            seen += histogram[i];
+        }
+        return max;
+    }
+    
+    private static int bin(double speedKph) {
+        int bin = (int) (speedKph / BIN_KPH);
+        return Math.max(0, Math.min(BINS - 1, bin));
+    }
+}
@@ -0,0 +1,91 @@
+-- RouteForge Database Schema
+-- Convert vehicle_positions_history to declarative daily range partitioning on ts_epoch_ms.
+-- Partitions are named vehicle_positions_history_pYYYYMMDD (UTC day) and are
+-- pre-created / dropped at runtime by HistoryPartitionManager in processing-service.
+
+-- Move the unpartitioned table (and the names of its indexes/constraints) out of the way
+ALTER TABLE vehicle_positions_history RENAME TO vehicle_positions_history_legacy;
+ALTER TABLE vehicle_positions_history_legacy RENAME CONSTRAINT vehicle_positions_history_pkey TO vehicle_positions_history_legacy_pkey;
+ALTER TABLE vehicle_positions_history_legacy RENAME CONSTRAINT vehicle_positions_history_event_id_key TO vehicle_positions_history_legacy_event_id_key;
+ALTER INDEX idx_vehicle_ts RENAME TO idx_vehicle_ts_legacy;
+ALTER INDEX idx_route_ts RENAME TO idx_route_ts_legacy;
+ALTER INDEX idx_recorded_at RENAME TO idx_recorded_at_legacy;
+
+-- Partitioned parent. Unique constraints on a partitioned table must include the
+-- partition key, so the primary key and the eventId idempotency key both carry ts_epoch_ms.
+-- eventId is {feedTimestamp}:{vehicleId}, so a replayed event always maps to the same ts_epoch_ms.
+CREATE TABLE vehicle_positions_history (
+    id BIGINT NOT NULL DEFAULT nextval('vehicle_positions_history_id_seq'),
+    event_id VARCHAR(100) NOT NULL,
+    vehicle_id VARCHAR(50) NOT NULL,
+    route_id VARCHAR(50) NOT NULL,
+    lat DOUBLE PRECISION NOT NULL,
+    lon DOUBLE PRECISION NOT NULL,
+    speed_kph DOUBLE PRECISION,
+    heading_deg DOUBLE PRECISION,
+    ts_epoch_ms BIGINT NOT NULL,
+    stop_id VARCHAR(50),
+    delay_sec INTEGER,
+    recorded_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT vehicle_positions_history_pkey PRIMARY KEY (id, ts_epoch_ms),
+    CONSTRAINT vehicle_positions_history_event_id_key UNIQUE (event_id, ts_epoch_ms)
+) PARTITION BY RANGE (ts_epoch_ms);
+
+ALTER SEQUENCE vehicle_positions_history_id_seq OWNED BY vehicle_positions_history.id;
+
+-- Partitioned indexes: each partition gets its own small local index
+CREATE INDEX idx_vehicle_ts ON vehicle_positions_history(vehicle_id, ts_epoch_ms DESC);
+CREATE INDEX idx_route_ts ON vehicle_positions_history(route_id, ts_epoch_ms DESC);
+CREATE INDEX idx_recorded_at ON vehicle_positions_history(recorded_at DESC);
+
+-- Catch-all for timestamps outside any daily partition (e.g. bogus feed clocks).
+-- Should stay empty in normal operation; future partitions are created ahead of time.
+CREATE TABLE vehicle_positions_history_default PARTITION OF vehicle_positions_history DEFAULT;
+
+-- Daily partitions covering existing data plus the next 7 days.
+-- At most the default retention (routeforge.history.retention-days: 30) is backfilled, so one
+-- bogus old timestamp cannot create thousands of partitions; older rows go to the default
+-- partition, which HistoryPartitionManager purges past retention.
+DO $$
+DECLARE
+    day_ms CONSTANT BIGINT := 86400000;
+    max_backfill_days CONSTANT INTEGER := 30;
+    today DATE := (NOW() AT TIME ZONE 'UTC')::DATE;
+    first_day DATE;
+    last_day DATE := today + 7;
+    d DATE;
+    from_ms BIGINT;
+BEGIN
+    SELECT GREATEST(
+               COALESCE((to_timestamp(MIN(ts_epoch_ms) / 1000.0) AT TIME ZONE 'UTC')::DATE, today),
+               today - max_backfill_days)
+      INTO first_day
+      FROM vehicle_positions_history_legacy;
+
+    d := first_day;
+    WHILE d <= last_day LOOP
+        from_ms := (EXTRACT(EPOCH FROM d::TIMESTAMP) * 1000)::BIGINT;
+        EXECUTE format(
+            'CREATE TABLE IF NOT EXISTS %I PARTITION OF vehicle_positions_history FOR VALUES FROM (%s) TO (%s)',
+            'vehicle_positions_history_p' || to_char(d, 'YYYYMMDD'),
+            from_ms,
+            from_ms + day_ms);
+        d := d + 1;
+    END LOOP;
+END $$;
+
+-- Copy existing history, then drop the unpartitioned table
+INSERT INTO vehicle_positions_history (
+    id, event_id, vehicle_id, route_id, lat, lon, speed_kph, heading_deg,
+    ts_epoch_ms, stop_id, delay_sec, recorded_at
+)
+SELECT id, event_id, vehicle_id, route_id, lat, lon, speed_kph, heading_deg,
+       ts_epoch_ms, stop_id, delay_sec, recorded_at
+FROM vehicle_positions_history_legacy;
+
+DROP TABLE vehicle_positions_history_legacy;
+
+COMMENT ON TABLE vehicle_positions_history IS 'Historical vehicle position data from GTFS-RT feeds (daily range partitions on ts_epoch_ms)';
+COMMENT ON COLUMN vehicle_positions_history.event_id IS 'Unique event identifier for idempotency';
+COMMENT ON COLUMN vehicle_positions_history.ts_epoch_ms IS 'Position timestamp in epoch milliseconds (partition key)';
+COMMENT ON COLUMN vehicle_positions_history.recorded_at IS 'When the position was recorded in our system';
@@ -0,0 +1,26 @@
+-- RouteForge Database Schema
+-- Per-route speed statistics in tumbling event-time windows (1 minute by default).
+-- Written by RouteSpeedRollupService in processing-service; several instances may write
+-- partial stats for the same window, which the upsert merges. Read by the ETA service.
+
+CREATE TABLE IF NOT EXISTS route_speed_rollups (
+    route_id VARCHAR(50) NOT NULL,
+    window_start TIMESTAMPTZ NOT NULL,
+    window_seconds INTEGER NOT NULL,
+    sample_count BIGINT NOT NULL,
+    mean_kph DOUBLE PRECISION NOT NULL,
+    variance_kph DOUBLE PRECISION NOT NULL,
+    min_kph DOUBLE PRECISION NOT NULL,
+    max_kph DOUBLE PRECISION NOT NULL,
+    p50_kph DOUBLE PRECISION NOT NULL,
+    p90_kph DOUBLE PRECISION NOT NULL,
+    p95_kph DOUBLE PRECISION NOT NULL,
+    CONSTRAINT route_speed_rollups_pkey PRIMARY KEY (route_id, window_start)
+);
+
+CREATE INDEX idx_route_speed_rollups_window ON route_speed_rollups(window_start);
+
+COMMENT ON TABLE route_speed_rollups IS 'Per-route moving-speed statistics per time window';
+COMMENT ON COLUMN route_speed_rollups.window_start IS 'Window start (event time, aligned to window_seconds)';
+COMMENT ON COLUMN route_speed_rollups.variance_kph IS 'Population variance of speed_kph in km²/h²';
+COMMENT ON COLUMN route_speed_rollups.p50_kph IS 'Histogram estimate; merged partial windows use a count-weighted average';
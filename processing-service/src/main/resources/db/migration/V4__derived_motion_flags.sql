@@ -0,0 +1,11 @@
+-- RouteForge Database Schema
+-- Flags for speed/heading values derived by processing-service from consecutive positions
+-- (many GTFS-RT feeds omit Position.speed and bearing). Added on the partitioned parent,
+-- so every existing and future daily partition gets the columns.
+
+ALTER TABLE vehicle_positions_history
+    ADD COLUMN IF NOT EXISTS speed_derived BOOLEAN NOT NULL DEFAULT FALSE,
+    ADD COLUMN IF NOT EXISTS heading_derived BOOLEAN NOT NULL DEFAULT FALSE;
+
+COMMENT ON COLUMN vehicle_positions_history.speed_derived IS 'speed_kph computed from the previous position, not reported by the feed';
+COMMENT ON COLUMN vehicle_positions_history.heading_derived IS 'heading_deg computed from the previous position, not reported by the feed';
@@ -0,0 +1,47 @@
+-- RouteForge Database Schema
+-- Multi-resolution aggregates of vehicle positions, per route and per vehicle.
+-- 60-second rows are written by HistoryAggregateService in processing-service from the event
+-- stream (several instances may write partial rows for the same bucket, which the upsert adds
+-- up). 900- and 3600-second rows are recomputed from the recent 60-second rows only.
+-- Sums are stored rather than averages so partial rows and coarser buckets merge exactly.
+
+CREATE TABLE IF NOT EXISTS route_history_aggregates (
+    route_id VARCHAR(50) NOT NULL,
+    resolution_seconds INTEGER NOT NULL,
+    bucket_start TIMESTAMPTZ NOT NULL,
+    sample_count BIGINT NOT NULL,
+    speed_samples BIGINT NOT NULL,
+    speed_sum_kph DOUBLE PRECISION NOT NULL,
+    max_speed_kph DOUBLE PRECISION,
+    delay_samples BIGINT NOT NULL,
+    delay_sum_sec BIGINT NOT NULL,
+    distance_m DOUBLE PRECISION NOT NULL,
+    CONSTRAINT route_history_aggregates_pkey PRIMARY KEY (route_id, resolution_seconds, bucket_start),
+    CONSTRAINT route_history_aggregates_resolution CHECK (resolution_seconds IN (60, 900, 3600))
+);
+
+CREATE TABLE IF NOT EXISTS vehicle_history_aggregates (
+    vehicle_id VARCHAR(50) NOT NULL,
+    resolution_seconds INTEGER NOT NULL,
+    bucket_start TIMESTAMPTZ NOT NULL,
+    sample_count BIGINT NOT NULL,
+    speed_samples BIGINT NOT NULL,
+    speed_sum_kph DOUBLE PRECISION NOT NULL,
+    max_speed_kph DOUBLE PRECISION,
+    delay_samples BIGINT NOT NULL,
+    delay_sum_sec BIGINT NOT NULL,
+    distance_m DOUBLE PRECISION NOT NULL,
+    CONSTRAINT vehicle_history_aggregates_pkey PRIMARY KEY (vehicle_id, resolution_seconds, bucket_start),
+    CONSTRAINT vehicle_history_aggregates_resolution CHECK (resolution_seconds IN (60, 900, 3600))
+);
+
+-- Coarse refresh and retention scan one resolution's recent buckets across all keys
+CREATE INDEX idx_route_history_aggregates_bucket ON route_history_aggregates(resolution_seconds, bucket_start);
+CREATE INDEX idx_vehicle_history_aggregates_bucket ON vehicle_history_aggregates(resolution_seconds, bucket_start);
+
+COMMENT ON TABLE route_history_aggregates IS 'Per-route position aggregates at 1-minute, 15-minute and 1-hour resolution';
+COMMENT ON TABLE vehicle_history_aggregates IS 'Per-vehicle position aggregates at 1-minute, 15-minute and 1-hour resolution';
+COMMENT ON COLUMN route_history_aggregates.bucket_start IS 'Bucket start (event time, aligned to resolution_seconds)';
+COMMENT ON COLUMN route_history_aggregates.speed_samples IS 'Positions with a speed; avg speed = speed_sum_kph / speed_samples';
+COMMENT ON COLUMN route_history_aggregates.delay_samples IS 'Positions with a delay; avg delay = delay_sum_sec / delay_samples';
+COMMENT ON COLUMN route_history_aggregates.distance_m IS 'Distance between consecutive positions of each vehicle, credited to the later position';
@@ -0,0 +1,24 @@
+-- Remove vehicles not seen since the cutoff from the global GEO index
+-- Route GEO sets may live in other cluster slots, so the caller removes the returned
+-- vehicles from them. Scores are the writers' wall clock when the position was written,
+-- not event time, so a replayed or lagging feed is not evicted on arrival.
+--
+-- KEYS[1] = geo:vehicles:seen    (sorted set, score = last seen epoch ms)
+-- KEYS[2] = geo:vehicles:route   (hash, vehicleId -> routeId)
+-- KEYS[3] = geo:vehicles         (GEO set)
+-- ARGV[1] = cutoff epoch ms on the same clock (inclusive)
+-- ARGV[2] = max members to evict in this call
+--
+-- Returns flat vehicleId, routeId pairs of the evicted vehicles ('' when the route is unknown)
+
+local ids = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, tonumber(ARGV[2]))
+local evicted = {}
+for _, vehicleId in ipairs(ids) do
+    local routeId = redis.call('HGET', KEYS[2], vehicleId) or ''
+    redis.call('ZREM', KEYS[3], vehicleId)
+    redis.call('HDEL', KEYS[2], vehicleId)
+    redis.call('ZREM', KEYS[1], vehicleId)
+    table.insert(evicted, vehicleId)
+    table.insert(evicted, routeId)
+end
+return evicted
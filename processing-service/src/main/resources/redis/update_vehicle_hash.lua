@@ -0,0 +1,25 @@
+-- Cluster mode, first phase of a position write: conditionally update the vehicle hash
+-- The route and GEO indexes live in other slots, so the caller writes them afterwards
+-- (pipelined per slot owner) only when this returns a previous routeId.
+--
+-- KEYS[1] = veh:{vehicleId}   (hash)
+-- ARGV[1] = tsEpochMs
+-- ARGV[2] = ttl seconds
+-- ARGV[3] = '1' when repairing: the write is retried after a failure
+-- ARGV[4..n] = hash field/value pairs
+--
+-- Returns 0 if the event was stale, otherwise the routeId cached before this write
+-- ('' if none). Same stale rule as update_vehicle_position.lua: an event with the cached
+-- tsEpochMs is stale, unless repairing, so the retry repeats the index updates that may
+-- have failed the first time.
+
+local ts = tonumber(ARGV[1])
+local current = redis.call('HGET', KEYS[1], 'tsEpochMs')
+if current and (tonumber(current) > ts or (tonumber(current) == ts and ARGV[3] ~= '1')) then
+    return 0
+end
+
+local previousRoute = redis.call('HGET', KEYS[1], 'routeId') or ''
+redis.call('HSET', KEYS[1], unpack(ARGV, 4))
+redis.call('EXPIRE', KEYS[1], ARGV[2])
+return previousRoute
@@ -0,0 +1,68 @@
+-- Conditionally write a vehicle position to the hot cache
+-- Applies only if the event is newer than the cached position, so ordering holds
+-- across consumer instances regardless of delivery order.
+-- Standalone mode only: it touches keys of several slots. Cluster mode uses
+-- update_vehicle_hash.lua.
+--
+-- KEYS[1] = veh:{vehicleId}                (hash)
+-- KEYS[2] = route:{routeId}:vehicles       (sorted set, score = tsEpochMs)
+-- KEYS[3] = geo:vehicles                   (GEO set, all live vehicles)
+-- KEYS[4] = geo:route:{routeId}:vehicles   (GEO set, live vehicles of the route)
+-- KEYS[5] = geo:vehicles:seen              (sorted set, score = last seen epoch ms, drives GEO eviction)
+-- KEYS[6] = geo:vehicles:route             (hash, vehicleId -> routeId of its GEO entry)
+-- KEYS[7] = route:{previousRouteId}:vehicles      (the route's own keys when ARGV[7] is '')
+-- KEYS[8] = geo:route:{previousRouteId}:vehicles
+-- ARGV[1] = tsEpochMs
+-- ARGV[2] = ttl seconds
+-- ARGV[3] = vehicleId
+-- ARGV[4] = routeId
+-- ARGV[5] = lon
+-- ARGV[6] = lat
+-- ARGV[7] = previous routeId the caller read from KEYS[6] ('' if none)
+-- ARGV[8] = last seen epoch ms (writer's clock)
+-- ARGV[9] = '1' when repairing: the write is retried after a failure
+-- ARGV[10..n] = hash field/value pairs
+--
+-- Returns 1 if the write applied, 0 if the event was stale, -1 if the vehicle's route
+-- entry changed since the caller read it (re-read and retry). An event with the cached
+-- tsEpochMs is stale unless repairing, as in update_vehicle_hash.lua.
+
+local ts = tonumber(ARGV[1])
+local current = redis.call('HGET', KEYS[1], 'tsEpochMs')
+if current and (tonumber(current) > ts or (tonumber(current) == ts and ARGV[9] ~= '1')) then
+    return 0
+end
+
+local vehicleId = ARGV[3]
+local routeId = ARGV[4]
+
+local previousRoute = redis.call('HGET', KEYS[6], vehicleId) or ''
+if previousRoute ~= ARGV[7] then
+    return -1
+end
+
+-- Vehicle switched routes: drop it from the previous route's indexes
+if previousRoute ~= '' and previousRoute ~= routeId then
+    redis.call('ZREM', KEYS[7], vehicleId)
+    redis.call('ZREM', KEYS[8], vehicleId)
+end
+
+redis.call('HSET', KEYS[1], unpack(ARGV, 10))
+redis.call('EXPIRE', KEYS[1], ARGV[2])
+redis.call('ZADD', KEYS[2], ts, vehicleId)
+redis.call('EXPIRE', KEYS[2], ARGV[2])
+-- The route set is refreshed on every write and never expires while the route is active,
+-- so trim members not seen within the TTL window
+redis.call('ZREMRANGEBYSCORE', KEYS[2], '-inf', string.format('(%d', ts - tonumber(ARGV[2]) * 1000))
+
+-- GEOADD rejects coordinates outside the Web Mercator range; keep the rest of the write
+local lon = tonumber(ARGV[5])
+local lat = tonumber(ARGV[6])
+if lon and lat and lon >= -180 and lon <= 180 and lat >= -85.05112878 and lat <= 85.05112878 then
+    redis.call('GEOADD', KEYS[3], lon, lat, vehicleId)
+    redis.call('GEOADD', KEYS[4], lon, lat, vehicleId)
+    redis.call('EXPIRE', KEYS[4], ARGV[2])
+    redis.call('ZADD', KEYS[5], 'GT', ARGV[8], vehicleId)
+    redis.call('HSET', KEYS[6], vehicleId, routeId)
+end
+return 1
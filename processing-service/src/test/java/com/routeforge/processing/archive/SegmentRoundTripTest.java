@@ -0,0 +1,104 @@
+package com.routeforge.processing.archive;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentRoundTripTest {
+    
+    private static final long DAY_START = 1_704_067_200_000L;
+    
+    @TempDir
+    Path tempDir;
+    
+    @Test
+    void scan_shouldReturnEveryRowUnchanged() throws Exception {
+        List<ArchivedPosition> rows = rows(20, 50);
+        Path file = write(rows, 128);
+        
+        List<ArchivedPosition> read = new ArrayList<>();
+        SegmentReader.scan(file, new ArchiveQuery(null, DAY_START, DAY_START + 86_400_000L, 10_000), read::add);
+        
+        assertEquals(rows.size(), read.size());
+        for (int i = 0; i < rows.size(); i++) {
+            ArchivedPosition expected = rows.get(i);
+            ArchivedPosition actual = read.get(i);
+            assertEquals(expected.vehicleId(), actual.vehicleId());
+            assertEquals(expected.routeId(), actual.routeId());
+            assertEquals(expected.tsEpochMs(), actual.tsEpochMs());
+            assertEquals(expected.lat(), actual.lat(), 1e-6);
+            assertEquals(expected.lon(), actual.lon(), 1e-6);
+            assertEquals(expected.speedKph() == null, actual.speedKph() == null);
+            if (expected.speedKph() != null) {
+                assertEquals(expected.speedKph(), actual.speedKph(), 0.05);
+            }
+            assertEquals(expected.stopId(), actual.stopId());
+            assertEquals(expected.delaySec(), actual.delaySec());
+            assertEquals(expected.id(), actual.id());
+            assertEquals(expected.eventId(), actual.eventId());
+            assertEquals(expected.speedDerived(), actual.speedDerived());
+            assertEquals(expected.headingDerived(), actual.headingDerived());
+            assertEquals(expected.recordedAtEpochUs(), actual.recordedAtEpochUs());
+        }
+        assertEquals(rows.size(), SegmentReader.readFooter(file).rowCount());
+    }
+    
+    @Test
+    void scan_shouldSkipRowGroupsOutsideVehicleAndTimeRange() throws Exception {
+        Path file = write(rows(20, 50), 100);
+        long from = DAY_START + 10 * 15_000L;
+        long to = DAY_START + 20 * 15_000L;
+        
+        List<ArchivedPosition> read = new ArrayList<>();
+        SegmentReader.ScanStats stats = SegmentReader.scan(file, new ArchiveQuery("V0007", from, to, 1_000), read::add);
+        
+        assertEquals(10, read.size());
+        assertTrue(read.stream().allMatch(row -> row.vehicleId().equals("V0007")
+            && row.tsEpochMs() >= from && row.tsEpochMs() < to));
+        assertEquals(1, stats.rowGroupsRead());
+        assertEquals(SegmentReader.readFooter(file).rowGroups().size() - 1, stats.rowGroupsSkipped());
+    }
+    
+    private Path write(List<ArchivedPosition> rows, int rowGroupSize) throws Exception {
+        Path file = tempDir.resolve("segment.rfseg");
+        try (SegmentWriter writer = new SegmentWriter(file, rowGroupSize)) {
+            for (ArchivedPosition row : rows) {
+                writer.append(row);
+            }
+        }
+        return file;
+    }
+    
+    /**
+     * Rows sorted by vehicle then time, like the archiver reads them from a partition
+     */
+    private static List<ArchivedPosition> rows(int vehicles, int pointsPerVehicle) {
+        List<ArchivedPosition> rows = new ArrayList<>();
+        for (int v = 0; v < vehicles; v++) {
+            String vehicleId = String.format("V%04d", v);
+            for (int i = 0; i < pointsPerVehicle; i++) {
+                rows.add(new ArchivedPosition(
+                    vehicleId,
+                    "R" + (v % 3),
+                    DAY_START + i * 15_000L,
+                    40.7 + v * 0.01 + i * 0.0001,
+                    -74.0 - i * 0.0002,
+                    i % 5 == 0 ? null : 20.0 + i * 0.3,
+                    i % 7 == 0 ? null : (double) (i * 7 % 360),
+                    i % 4 == 0 ? "S" + i : null,
+                    i % 6 == 0 ? null : i - 10,
+                    1_000_000L + v * pointsPerVehicle + i,
+                    (DAY_START + i * 15_000L) + ":" + vehicleId,
+                    i % 5 == 0,
+                    i % 7 == 0,
+                    (DAY_START + i * 15_000L) * 1_000L + 250_123L));
+            }
+        }
+        return rows;
+    }
+}
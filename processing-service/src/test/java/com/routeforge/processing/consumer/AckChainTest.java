@@ -0,0 +1,94 @@
+package com.routeforge.processing.consumer;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AckChainTest {
+
+    private static final TopicPartition P0 = new TopicPartition("vehicle_positions", 0);
+    private static final TopicPartition P1 = new TopicPartition("vehicle_positions", 1);
+
+    private final AckChain chain = new AckChain();
+    private final List<String> acked = new ArrayList<>();
+
+    @Test
+    void append_shouldAcknowledgeImmediatelyWithoutForwards() {
+        chain.append(chain.epoch(), CompletableFuture.completedFuture(null), Map.of(P0, 0L), ack("first"));
+
+        assertEquals(List.of("first"), acked);
+        assertEquals(Map.of(), chain.takeRewind());
+    }
+
+    @Test
+    void append_shouldHoldLaterBatchesBehindAPendingForward() {
+        CompletableFuture<Void> forward = new CompletableFuture<>();
+        chain.append(chain.epoch(), forward, Map.of(P0, 0L), ack("first"));
+        chain.append(chain.epoch(), CompletableFuture.completedFuture(null), Map.of(P0, 10L), ack("second"));
+
+        assertEquals(List.of(), acked);
+
+        forward.complete(null);
+
+        assertEquals(List.of("first", "second"), acked);
+    }
+
+    @Test
+    void append_shouldStopAcknowledgingAndRewindWhenAForwardFails() {
+        CompletableFuture<Void> forward = new CompletableFuture<>();
+        chain.append(chain.epoch(), forward, Map.of(P0, 10L), ack("first"));
+        chain.append(chain.epoch(), CompletableFuture.completedFuture(null), Map.of(P0, 20L, P1, 5L), ack("second"));
+
+        forward.completeExceptionally(new RuntimeException("broker unavailable"));
+
+        assertEquals(List.of(), acked);
+        assertEquals(Map.of(P0, 10L, P1, 5L), chain.takeRewind());
+    }
+
+    @Test
+    void takeRewind_shouldStartANewEpochThatIgnoresEarlierBatches() {
+        long before = chain.epoch();
+        chain.append(before, CompletableFuture.failedFuture(new RuntimeException("timeout")), Map.of(P0, 10L), ack("failed"));
+        chain.takeRewind();
+
+        // Polled before the rewind: read again, so never acknowledged
+        chain.append(before, CompletableFuture.completedFuture(null), Map.of(P0, 20L), ack("stale"));
+        chain.append(chain.epoch(), CompletableFuture.completedFuture(null), Map.of(P0, 10L), ack("redelivered"));
+
+        assertNotEquals(before, chain.epoch());
+        assertEquals(List.of("redelivered"), acked);
+        assertEquals(Map.of(), chain.takeRewind());
+    }
+
+    @Test
+    void append_shouldRewindAStaleBatchWhoseForwardFails() {
+        long before = chain.epoch();
+        chain.append(before, CompletableFuture.failedFuture(new RuntimeException("timeout")), Map.of(P0, 10L), ack("failed"));
+        chain.takeRewind();
+
+        chain.append(before, CompletableFuture.failedFuture(new RuntimeException("timeout")), Map.of(P1, 7L), ack("stale"));
+
+        assertEquals(Map.of(P1, 7L), chain.takeRewind());
+    }
+
+    @Test
+    void forget_shouldDropRevokedPartitionsFromTheRewind() {
+        chain.append(chain.epoch(), CompletableFuture.failedFuture(new RuntimeException("timeout")),
+            Map.of(P0, 10L, P1, 3L), ack("failed"));
+
+        chain.forget(Set.of(P1));
+
+        assertEquals(Map.of(P0, 10L), chain.takeRewind());
+    }
+
+    private Runnable ack(String name) {
+        return () -> acked.add(name);
+    }
+}
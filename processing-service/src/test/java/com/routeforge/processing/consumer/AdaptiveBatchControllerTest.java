@@ -0,0 +1,98 @@
+package com.routeforge.processing.consumer;
+
+import com.routeforge.processing.config.AdaptiveBatchProperties;
+import com.routeforge.processing.config.ProcessingProperties;
+import com.routeforge.processing.pipeline.SinkPipeline;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.MessageListenerContainer;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class AdaptiveBatchControllerTest {
+    
+    private MessageListenerContainer container;
+    private final AtomicBoolean pauseRequested = new AtomicBoolean();
+    private final ContainerProperties containerProperties = new ContainerProperties("vehicle_positions");
+    private AdaptiveBatchController controller;
+    
+    @BeforeEach
+    void setUp() {
+        container = mock(MessageListenerContainer.class);
+        when(container.isRunning()).thenReturn(true);
+        when(container.getContainerProperties()).thenReturn(containerProperties);
+        when(container.isPauseRequested()).thenAnswer(invocation -> pauseRequested.get());
+        doAnswer(invocation -> {
+            pauseRequested.set(true);
+            return null;
+        }).when(container).pause();
+        doAnswer(invocation -> {
+            pauseRequested.set(false);
+            return null;
+        }).when(container).resume();
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(container).stop(any(Runnable.class));
+        
+        KafkaListenerEndpointRegistry registry = mock(KafkaListenerEndpointRegistry.class);
+        when(registry.getListenerContainer(AdaptiveBatchController.LISTENER_ID)).thenReturn(container);
+        
+        AdaptiveBatchProperties properties = new AdaptiveBatchProperties();
+        properties.setEnabled(true);
+        properties.setCooldownMs(0);
+        ProcessingProperties processingProperties = new ProcessingProperties();
+        processingProperties.setBatchSize(400);
+        
+        controller = new AdaptiveBatchController(registry, mock(SinkPipeline.class), properties,
+            processingProperties, new SimpleMeterRegistry());
+    }
+    
+    @AfterEach
+    void tearDown() {
+        controller.stop();
+    }
+    
+    @Test
+    void adjust_shouldResumeContainerAfterRestart() {
+        controller.recordBatchLatency(10_000);
+        
+        controller.adjust();
+        
+        verify(container, timeout(2_000)).resume();
+        InOrder order = inOrder(container);
+        order.verify(container).pause();
+        order.verify(container).stop(any(Runnable.class));
+        order.verify(container).start();
+        order.verify(container).resume();
+        assertFalse(container.isPauseRequested());
+        assertEquals("200", containerProperties.getKafkaConsumerProperties()
+            .getProperty(ConsumerConfig.MAX_POLL_RECORDS_CONFIG));
+    }
+    
+    @Test
+    void adjust_shouldKeepAdaptingAfterResize() {
+        controller.recordBatchLatency(10_000);
+        controller.adjust();
+        await().atMost(Duration.ofSeconds(2)).until(() -> !controller.isResizing());
+        
+        controller.recordBatchLatency(10_000);
+        controller.adjust();
+        
+        verify(container, timeout(2_000).times(2)).resume();
+        assertEquals("100", containerProperties.getKafkaConsumerProperties()
+            .getProperty(ConsumerConfig.MAX_POLL_RECORDS_CONFIG));
+    }
+}
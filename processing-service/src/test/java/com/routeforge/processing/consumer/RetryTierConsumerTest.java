@@ -0,0 +1,176 @@
+package com.routeforge.processing.consumer;
+
+import com.routeforge.common.dto.VehiclePositionEvent;
+import com.routeforge.processing.config.BackpressureProperties;
+import com.routeforge.processing.config.RetryProperties;
+import com.routeforge.processing.pipeline.Sink;
+import com.routeforge.processing.pipeline.SinkFailure;
+import com.routeforge.processing.pipeline.SinkHealthMonitor;
+import com.routeforge.processing.service.DlqPublisher;
+import com.routeforge.processing.service.SinkRewriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class RetryTierConsumerTest {
+    
+    private static final long HOLD_PAUSE_MS = 5000;
+    
+    private RetryProperties retryProperties;
+    private SinkRewriter sinkRewriter;
+    private DlqPublisher dlqPublisher;
+    private SinkHealthMonitor healthMonitor;
+    private SimpleMeterRegistry meterRegistry;
+    private Acknowledgment ack;
+    private RetryTierConsumer consumer;
+    
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        retryProperties = new RetryProperties();
+        retryProperties.setSendTimeoutMs(1000);
+        sinkRewriter = mock(SinkRewriter.class);
+        dlqPublisher = mock(DlqPublisher.class);
+        healthMonitor = mock(SinkHealthMonitor.class);
+        when(healthMonitor.isHealthy(any())).thenReturn(true);
+        when(healthMonitor.unhealthySinks()).thenReturn(Set.of());
+        when(sinkRewriter.rewrite(anyList(), anySet())).thenReturn(List.of());
+        BackpressureProperties backpressureProperties = new BackpressureProperties();
+        backpressureProperties.setProbeIntervalMs(HOLD_PAUSE_MS);
+        meterRegistry = new SimpleMeterRegistry();
+        ack = mock(Acknowledgment.class);
+        consumer = new RetryTierConsumer(mock(ConsumerFactory.class), retryProperties, sinkRewriter,
+            dlqPublisher, healthMonitor, backpressureProperties, meterRegistry);
+    }
+    
+    @Test
+    void onBatch_shouldRewriteDueRecordsToTheFailedSinkAndAcknowledge() {
+        ConsumerRecord<String, VehiclePositionEvent> record = record(0, Sink.DATABASE, 0);
+        
+        consumer.onBatch(0, List.of(record), ack);
+        
+        verify(sinkRewriter).rewrite(List.of(record.value()), EnumSet.of(Sink.DATABASE));
+        verify(ack).acknowledge();
+        verify(ack, never()).nack(anyInt(), any(Duration.class));
+        assertEquals(1.0, meterRegistry.counter("routeforge.processing.retry.recovered", "tier", "0").count());
+    }
+    
+    @Test
+    void onBatch_shouldNackFromTheFirstRecordNotYetDue() {
+        long dueAt = System.currentTimeMillis() + 60_000;
+        ConsumerRecord<String, VehiclePositionEvent> due = record(0, Sink.REDIS, 0);
+        ConsumerRecord<String, VehiclePositionEvent> later = record(1, Sink.REDIS, dueAt);
+        
+        consumer.onBatch(0, List.of(due, later), ack);
+        
+        verify(sinkRewriter).rewrite(List.of(due.value()), EnumSet.of(Sink.REDIS));
+        verify(ack).nack(eq(1), argThat(pause -> pause.toMillis() > 50 && pause.toMillis() <= 60_000));
+        verify(ack, never()).acknowledge();
+    }
+    
+    @Test
+    void onBatch_shouldHoldRecordsForAnUnhealthySink() {
+        when(healthMonitor.isHealthy(Sink.DATABASE)).thenReturn(false);
+        
+        consumer.onBatch(0, List.of(record(0, Sink.DATABASE, 0), record(1, Sink.REDIS, 0)), ack);
+        
+        verifyNoInteractions(sinkRewriter);
+        verify(ack).nack(0, Duration.ofMillis(HOLD_PAUSE_MS));
+    }
+    
+    @Test
+    void onBatch_shouldHoldRecordsWithoutSinkWhileAnySinkIsUnhealthy() {
+        when(healthMonitor.unhealthySinks()).thenReturn(Set.of(Sink.REDIS));
+        
+        consumer.onBatch(0, List.of(record(0, null, 0)), ack);
+        
+        verifyNoInteractions(sinkRewriter);
+        verify(ack).nack(0, Duration.ofMillis(HOLD_PAUSE_MS));
+    }
+    
+    @Test
+    void onBatch_shouldAcknowledgeOnlyAfterTheNextTierAcceptedTheFailures() {
+        ConsumerRecord<String, VehiclePositionEvent> record = record(0, Sink.DATABASE, 0);
+        RuntimeException cause = new RuntimeException("db down");
+        when(sinkRewriter.rewrite(anyList(), anySet()))
+            .thenReturn(List.of(new SinkFailure(Sink.DATABASE, List.of(record.value()), cause)));
+        when(dlqPublisher.publish(Sink.DATABASE, List.of(record.value()), cause, 1))
+            .thenReturn(CompletableFuture.completedFuture(null));
+        
+        consumer.onBatch(0, List.of(record), ack);
+        
+        verify(ack).acknowledge();
+        assertEquals(1.0, meterRegistry.counter("routeforge.processing.retry.failed", "tier", "0").count());
+    }
+    
+    @Test
+    void onBatch_shouldRedeliverTheBatchWhenTheForwardFails() {
+        ConsumerRecord<String, VehiclePositionEvent> record = record(0, Sink.DATABASE, 0);
+        when(sinkRewriter.rewrite(anyList(), anySet()))
+            .thenReturn(List.of(new SinkFailure(Sink.DATABASE, List.of(record.value()), new RuntimeException("db down"))));
+        when(dlqPublisher.publish(any(), anyList(), any(), anyInt()))
+            .thenReturn(CompletableFuture.failedFuture(new RuntimeException("broker unavailable")));
+        
+        consumer.onBatch(0, List.of(record, record(1, Sink.DATABASE, 0)), ack);
+        
+        verify(ack).nack(0, Duration.ofMillis(HOLD_PAUSE_MS));
+        verify(ack, never()).acknowledge();
+    }
+    
+    @Test
+    void onBatch_shouldRedeliverTheBatchWhenTheForwardTimesOut() {
+        retryProperties.setSendTimeoutMs(10);
+        ConsumerRecord<String, VehiclePositionEvent> record = record(0, Sink.REDIS, 0);
+        when(sinkRewriter.rewrite(anyList(), anySet()))
+            .thenReturn(List.of(new SinkFailure(Sink.REDIS, List.of(record.value()), new RuntimeException("timeout"))));
+        when(dlqPublisher.publish(any(), anyList(), any(), anyInt())).thenReturn(new CompletableFuture<>());
+        
+        consumer.onBatch(0, List.of(record), ack);
+        
+        verify(ack).nack(0, Duration.ofMillis(HOLD_PAUSE_MS));
+        verify(ack, never()).acknowledge();
+    }
+    
+    @Test
+    void onBatch_shouldNotForwardBestEffortSinkFailures() {
+        ConsumerRecord<String, VehiclePositionEvent> record = record(0, Sink.PUBSUB, 0);
+        when(sinkRewriter.rewrite(anyList(), anySet()))
+            .thenReturn(List.of(new SinkFailure(Sink.PUBSUB, List.of(record.value()), new RuntimeException("down"))));
+        
+        consumer.onBatch(0, List.of(record), ack);
+        
+        verifyNoInteractions(dlqPublisher);
+        verify(ack).acknowledge();
+    }
+    
+    private static ConsumerRecord<String, VehiclePositionEvent> record(long offset, Sink sink, long dueAt) {
+        VehiclePositionEvent event = new VehiclePositionEvent();
+        event.setEventId("evt-" + offset);
+        event.setVehicleId("V" + offset);
+        event.setRouteId("R1");
+        event.setTsEpochMs(1_700_000_000_000L + offset);
+        ConsumerRecord<String, VehiclePositionEvent> record =
+            new ConsumerRecord<>("vehicle_positions.retry-0", 0, offset, event.getVehicleId(), event);
+        if (sink != null) {
+            record.headers().add(DlqPublisher.FAILED_SINK_HEADER, sink.name().getBytes(StandardCharsets.UTF_8));
+        }
+        if (dueAt > 0) {
+            record.headers().add(DlqPublisher.DUE_AT_HEADER, String.valueOf(dueAt).getBytes(StandardCharsets.UTF_8));
+        }
+        return record;
+    }
+}
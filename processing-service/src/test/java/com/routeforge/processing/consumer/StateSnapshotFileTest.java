@@ -0,0 +1,48 @@
+package com.routeforge.processing.consumer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StateSnapshotFileTest {
+    
+    @TempDir
+    Path tempDir;
+    
+    @Test
+    void read_shouldReturnWrittenState() throws Exception {
+        Path file = tempDir.resolve("state.snap");
+        ProcessingStateSnapshot snapshot = new ProcessingStateSnapshot(
+            "vehicle_positions",
+            1_704_067_200_000L,
+            Map.of(0, 1200L, 2, 980L),
+            Map.of("V1", 1_704_067_190_000L, "V2", 1_704_067_195_000L),
+            Map.of("V1", new VehicleMotionTracker.MotionState(40.7128, -74.006, 1_704_067_190_000L, 31.5, 0),
+                   "V2", new VehicleMotionTracker.MotionState(40.758, -73.9855, 1_704_067_195_000L, null, 1)));
+        
+        StateSnapshotFile.write(file, snapshot);
+        ProcessingStateSnapshot read = StateSnapshotFile.read(file);
+        
+        assertEquals(snapshot, read);
+        assertFalse(Files.exists(tempDir.resolve("state.snap.tmp")));
+    }
+    
+    @Test
+    void read_shouldRejectCorruptedFile() throws Exception {
+        Path file = tempDir.resolve("state.snap");
+        StateSnapshotFile.write(file, new ProcessingStateSnapshot(
+            "vehicle_positions", 1L, Map.of(0, 5L), Map.of("V1", 10L), Map.of()));
+        
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 0x5A;
+        Files.write(file, bytes);
+        
+        assertThrows(IOException.class, () -> StateSnapshotFile.read(file));
+    }
+}
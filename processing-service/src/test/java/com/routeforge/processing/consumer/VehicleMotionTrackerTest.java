@@ -0,0 +1,119 @@
+package com.routeforge.processing.consumer;
+
+import com.routeforge.common.dto.VehiclePositionEvent;
+import com.routeforge.processing.config.MotionProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VehicleMotionTrackerTest {
+    
+    // ~111 m per 0.001 degree of latitude
+    private static final double LAT = 40.7128;
+    private static final double LON = -74.0060;
+    
+    private VehicleMotionTracker tracker;
+    
+    @BeforeEach
+    void setUp() {
+        tracker = new VehicleMotionTracker(new MotionProperties(), new SimpleMeterRegistry());
+    }
+    
+    @Test
+    void apply_shouldDeriveSpeedAndHeadingFromPreviousPosition() {
+        VehiclePositionEvent first = event(LAT, LON, 0, null);
+        VehiclePositionEvent second = event(LAT + 0.001, LON, 10_000, null);
+        
+        tracker.apply(List.of(first, second));
+        
+        assertNull(first.getSpeedKph(), "No previous position for the first fix");
+        assertEquals(40.0, second.getSpeedKph(), 0.5); // 111 m in 10 s
+        assertTrue(second.getSpeedDerived());
+        assertEquals(0.0, second.getHeadingDeg(), 0.5); // due north
+        assertTrue(second.getHeadingDerived());
+    }
+    
+    @Test
+    void apply_shouldKeepReportedValues() {
+        VehiclePositionEvent first = event(LAT, LON, 0, 30.0);
+        VehiclePositionEvent second = event(LAT + 0.001, LON, 10_000, 35.0);
+        second.setHeadingDeg(5.0);
+        
+        tracker.apply(List.of(first, second));
+        
+        assertEquals(35.0, second.getSpeedKph());
+        assertEquals(5.0, second.getHeadingDeg());
+        assertNull(second.getSpeedDerived());
+        assertNull(second.getHeadingDerived());
+    }
+    
+    @Test
+    void apply_shouldRejectGpsJumpAndDeriveFromLastGoodFix() {
+        VehiclePositionEvent first = event(LAT, LON, 0, null);
+        VehiclePositionEvent jump = event(LAT + 0.05, LON, 10_000, null); // 5.5 km in 10 s
+        VehiclePositionEvent next = event(LAT + 0.002, LON, 20_000, null);
+        
+        tracker.apply(List.of(first, jump, next));
+        
+        assertNull(jump.getSpeedKph());
+        assertEquals(40.0, next.getSpeedKph(), 0.5); // 222 m in 20 s from the first fix
+    }
+    
+    @Test
+    void apply_shouldReanchorAfterPersistentJump() {
+        VehiclePositionEvent first = event(LAT, LON, 0, null);
+        VehiclePositionEvent moved1 = event(LAT + 0.05, LON, 10_000, null);
+        VehiclePositionEvent moved2 = event(LAT + 0.0501, LON, 20_000, null);
+        VehiclePositionEvent moved3 = event(LAT + 0.0502, LON, 30_000, null);
+        
+        tracker.apply(List.of(first, moved1, moved2, moved3));
+        
+        assertNull(moved2.getSpeedKph(), "Second jump re-anchors instead of deriving");
+        assertEquals(4.0, moved3.getSpeedKph(), 0.5); // 11 m in 10 s
+    }
+    
+    @Test
+    void apply_shouldNotDeriveHeadingWhenStationary() {
+        VehiclePositionEvent first = event(LAT, LON, 0, null);
+        VehiclePositionEvent second = event(LAT + 0.00001, LON, 30_000, null);
+        
+        tracker.apply(List.of(first, second));
+        
+        assertEquals(0.0, second.getSpeedKph(), 0.1);
+        assertNull(second.getHeadingDeg());
+    }
+    
+    @Test
+    void applyDetached_shouldDeriveRedeliveriesWithoutMovingTrackedState() {
+        tracker.apply(List.of(event(LAT, LON, 0, null), event(LAT + 0.002, LON, 20_000, null)));
+        VehiclePositionEvent redeliveredFirst = event(LAT, LON, 0, null);
+        VehiclePositionEvent redeliveredSecond = event(LAT + 0.001, LON, 10_000, null);
+        
+        tracker.applyDetached(List.of(redeliveredFirst, redeliveredSecond));
+        
+        assertNull(redeliveredFirst.getSpeedKph());
+        assertEquals(40.0, redeliveredSecond.getSpeedKph(), 0.5);
+        assertTrue(redeliveredSecond.getSpeedDerived());
+        
+        // The next live fix is still derived from the newest tracked position
+        VehiclePositionEvent next = event(LAT + 0.003, LON, 30_000, null);
+        tracker.apply(List.of(next));
+        assertEquals(40.0, next.getSpeedKph(), 0.5);
+    }
+    
+    private static VehiclePositionEvent event(double lat, double lon, long offsetMs, Double speedKph) {
+        VehiclePositionEvent event = new VehiclePositionEvent();
+        event.setVehicleId("V1");
+        event.setRouteId("R1");
+        event.setLat(lat);
+        event.setLon(lon);
+        event.setSpeedKph(speedKph);
+        event.setTsEpochMs(1_700_000_000_000L + offsetMs);
+        event.setEventId("evt-" + offsetMs);
+        return event;
+    }
+}
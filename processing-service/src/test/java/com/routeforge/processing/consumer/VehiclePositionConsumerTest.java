@@ -0,0 +1,62 @@
+package com.routeforge.processing.consumer;
+
+import com.routeforge.processing.config.MotionProperties;
+import com.routeforge.processing.pipeline.SinkPipeline;
+import com.routeforge.processing.service.DlqPublisher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class VehiclePositionConsumerTest {
+
+    private static final String TOPIC = "vehicle_positions";
+
+    private VehiclePositionConsumer consumer;
+
+    @BeforeEach
+    void setUp() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        consumer = new VehiclePositionConsumer(mock(SinkPipeline.class), mock(DlqPublisher.class),
+            mock(AdaptiveBatchController.class), new VehicleMotionTracker(new MotionProperties(), meterRegistry),
+            meterRegistry);
+        consumer.restoreState(new ProcessingStateSnapshot(TOPIC, 0, Map.of(0, 100L, 1, 200L), Map.of(), Map.of()));
+    }
+
+    @Test
+    void captureState_shouldDropRestoredOffsetsOfPartitionsAssignedElsewhere() {
+        consumer.onPartitionsAssigned(Map.of(new TopicPartition(TOPIC, 0), 0L), null);
+
+        assertEquals(Map.of(0, 100L, 1, 200L), consumer.captureState(TOPIC).offsets());
+        assertEquals(Map.of(0, 100L), consumer.captureState(TOPIC).offsets());
+    }
+
+    @Test
+    void captureState_shouldKeepRestoredOffsetsOfAPartitionMovedBetweenListenerThreads() {
+        consumer.onPartitionsAssigned(Map.of(new TopicPartition(TOPIC, 0), 0L, new TopicPartition(TOPIC, 1), 0L), null);
+        consumer.captureState(TOPIC);
+
+        consumer.onPartitionsRevoked(List.of(new TopicPartition(TOPIC, 1)));
+        consumer.captureState(TOPIC);
+        consumer.onPartitionsAssigned(Map.of(new TopicPartition(TOPIC, 1), 0L), null);
+
+        assertEquals(Map.of(0, 100L, 1, 200L), consumer.captureState(TOPIC).offsets());
+    }
+
+    @Test
+    void captureState_shouldKeepAllOffsetsWhileNoPartitionIsAssigned() {
+        consumer.onPartitionsAssigned(Map.of(new TopicPartition(TOPIC, 0), 0L), null);
+        consumer.captureState(TOPIC);
+
+        // Shutdown revokes everything before the final snapshot
+        consumer.onPartitionsRevoked(List.of(new TopicPartition(TOPIC, 0)));
+
+        assertEquals(Map.of(0, 100L, 1, 200L), consumer.captureState(TOPIC).offsets());
+    }
+}
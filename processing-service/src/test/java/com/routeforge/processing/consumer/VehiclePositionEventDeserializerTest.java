@@ -0,0 +1,105 @@
+package com.routeforge.processing.consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.routeforge.common.dto.VehiclePositionEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VehiclePositionEventDeserializerTest {
+    
+    private Counter unknownFields;
+    private VehiclePositionEventDeserializer deserializer;
+    
+    @BeforeEach
+    void setUp() {
+        unknownFields = new SimpleMeterRegistry().counter("unknown");
+        deserializer = new VehiclePositionEventDeserializer(unknownFields);
+    }
+    
+    @Test
+    void deserialize_shouldMatchDatabind() throws Exception {
+        VehiclePositionEvent event = VehiclePositionEvent.builder()
+            .eventId("1704067200000-V1")
+            .vehicleId("V1")
+            .routeId("R1")
+            .lat(40.7128)
+            .lon(-74.006)
+            .speedKph(31.5)
+            .headingDeg(270.0)
+            .speedDerived(true)
+            .headingDerived(false)
+            .tsEpochMs(1_704_067_200_000L)
+            .stopId("S42")
+            .delaySec(-30)
+            .agencyId("MTA")
+            .build();
+        byte[] json = new ObjectMapper().writeValueAsBytes(event);
+        
+        assertEquals(event, deserializer.deserialize("vehicle_positions", json));
+        assertEquals(0, unknownFields.count());
+    }
+    
+    @Test
+    void deserialize_shouldSkipUnknownFieldsAndNulls() {
+        String json = """
+            {"vehicleId":"V1","extra":{"nested":[1,2,{"x":true}]},"routeId":"R1","lat":40.7,
+             "lon":-74.0,"tsEpochMs":1704067200000,"speedKph":null,"tags":["a","b"],"stopId":null}
+            """;
+        
+        VehiclePositionEvent event = deserializer.deserialize("vehicle_positions", bytes(json));
+        
+        assertEquals("V1", event.getVehicleId());
+        assertEquals("R1", event.getRouteId());
+        assertEquals(1_704_067_200_000L, event.getTsEpochMs());
+        assertNull(event.getSpeedKph());
+        assertNull(event.getStopId());
+        assertEquals(2, unknownFields.count());
+    }
+    
+    @Test
+    void deserialize_shouldCoerceQuotedScalars() {
+        String json = "{\"vehicleId\":1001,\"lat\":\"40.7\",\"lon\":\"-74.0\",\"tsEpochMs\":\"1704067200000\","
+            + "\"delaySec\":\"45\",\"speedDerived\":\"true\"}";
+        
+        VehiclePositionEvent event = deserializer.deserialize("vehicle_positions", bytes(json));
+        
+        assertEquals("1001", event.getVehicleId());
+        assertEquals(40.7, event.getLat());
+        assertEquals(1_704_067_200_000L, event.getTsEpochMs());
+        assertEquals(45, event.getDelaySec());
+        assertTrue(event.getSpeedDerived());
+    }
+    
+    @Test
+    void deserialize_shouldInternRepeatedIds() {
+        VehiclePositionEvent first = deserializer.deserialize("t", bytes("{\"routeId\":\"R1\",\"agencyId\":\"MTA\"}"));
+        VehiclePositionEvent second = deserializer.deserialize("t", bytes("{\"routeId\":\"R1\",\"agencyId\":\"MTA\"}"));
+        
+        assertSame(first.getRouteId(), second.getRouteId());
+        assertSame(first.getAgencyId(), second.getAgencyId());
+    }
+    
+    @Test
+    void deserialize_shouldRejectMalformedPayloads() {
+        assertThrows(SerializationException.class, () -> deserializer.deserialize("t", bytes("[1,2]")));
+        assertThrows(SerializationException.class, () -> deserializer.deserialize("t", bytes("{\"lat\":\"north\"}")));
+        assertThrows(SerializationException.class, () -> deserializer.deserialize("t", bytes("{\"lat\":[1]}")));
+        assertThrows(SerializationException.class, () -> deserializer.deserialize("t", bytes("{\"vehicleId\":\"V1\"")));
+    }
+    
+    @Test
+    void deserialize_shouldReturnNullForTombstones() {
+        assertNull(deserializer.deserialize("t", null));
+    }
+    
+    private static byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -16,8 +16,7 @@ import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 import org.testcontainers.utility.DockerImageName;
-import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.UnifiedJedis;
 
 import java.util.concurrent.TimeUnit;
 
@@ -54,7 +53,7 @@ class DlqReplayIntegrationTest {
     private ProcessingProperties properties;
     
     @Autowired
-    private JedisPool jedisPool;
+    private UnifiedJedis jedis;
     
     @DynamicPropertySource
     static void configureProperties(DynamicPropertyRegistry registry) {
@@ -70,9 +69,7 @@ class DlqReplayIntegrationTest {
     @BeforeEach
     void setUp() {
         // Clear Redis
-        try (Jedis jedis = jedisPool.getResource()) {
-            jedis.flushAll();
-        }
+        jedis.flushAll();
         
         // Ensure DLQ topic exists and is ready
         try {
@@ -130,10 +127,8 @@ class DlqReplayIntegrationTest {
         
         // Verify messages were written to Redis
         await().atMost(10, TimeUnit.SECONDS).untilAsserted(() -> {
-            try (Jedis jedis = jedisPool.getResource()) {
-                String cached1 = jedis.get("veh:V1001");
-                assertThat(cached1).isNotNull();
-            }
+            String cached1 = jedis.get("veh:V1001");
+            assertThat(cached1).isNotNull();
         });
     }
     
@@ -15,8 +15,7 @@ import org.testcontainers.containers.GenericContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 import org.testcontainers.utility.DockerImageName;
-import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.UnifiedJedis;
 
 import java.util.Map;
 import java.util.Optional;
@@ -71,7 +70,7 @@ class ProcessingIntegrationTest {
     private VehiclePositionHistoryRepository repository;
     
     @Autowired
-    private JedisPool jedisPool;
+    private UnifiedJedis jedis;
     
     @Test
     void testVehiclePositionProcessing() {
@@ -95,15 +94,13 @@ class ProcessingIntegrationTest {
             .atMost(Duration.ofSeconds(10))
             .pollInterval(Duration.ofMillis(500))
             .untilAsserted(() -> {
-                try (Jedis jedis = jedisPool.getResource()) {
-                    String vehicleKey = "veh:" + event.getVehicleId();
-                    Map<String, String> vehicleData = jedis.hgetAll(vehicleKey);
-                    
-                    assertFalse(vehicleData.isEmpty(), "Vehicle data should exist in Redis");
-                    assertEquals(event.getVehicleId(), vehicleData.get("vehicleId"));
-                    assertEquals(event.getRouteId(), vehicleData.get("routeId"));
-                    assertEquals(String.valueOf(event.getLat()), vehicleData.get("lat"));
-                }
+                String vehicleKey = "veh:" + event.getVehicleId();
+                Map<String, String> vehicleData = jedis.hgetAll(vehicleKey);
+                
+                assertFalse(vehicleData.isEmpty(), "Vehicle data should exist in Redis");
+                assertEquals(event.getVehicleId(), vehicleData.get("vehicleId"));
+                assertEquals(event.getRouteId(), vehicleData.get("routeId"));
+                assertEquals(String.valueOf(event.getLat()), vehicleData.get("lat"));
             });
         
         // And: Event should be stored in PostgreSQL
@@ -152,13 +149,11 @@ class ProcessingIntegrationTest {
         await()
             .atMost(Duration.ofSeconds(15))
             .untilAsserted(() -> {
-                try (Jedis jedis = jedisPool.getResource()) {
-                    String routeKey = "route:" + routeId + ":vehicles";
-                    Long vehicleCount = jedis.zcard(routeKey);
-                    
-                    assertNotNull(vehicleCount);
-                    assertTrue(vehicleCount >= 5, "Route should have at least 5 vehicles");
-                }
+                String routeKey = "route:" + routeId + ":vehicles";
+                Long vehicleCount = jedis.zcard(routeKey);
+                
+                assertNotNull(vehicleCount);
+                assertTrue(vehicleCount >= 5, "Route should have at least 5 vehicles");
             });
     }
 }
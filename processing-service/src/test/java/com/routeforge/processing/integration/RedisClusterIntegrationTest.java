@@ -0,0 +1,208 @@
+package com.routeforge.processing.integration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.routeforge.common.dto.VehiclePositionEvent;
+import com.routeforge.common.util.RedisKeys;
+import com.routeforge.processing.config.RedisProperties;
+import com.routeforge.processing.service.RedisService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import redis.clients.jedis.DefaultJedisClientConfig;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RedisService against a six-node Redis Cluster (three masters, three replicas)
+ * Vehicle and route keys are hash-tagged, so a batch spreads over every master and the
+ * index writes go through a pipeline split by slot owner.
+ */
+@Testcontainers
+class RedisClusterIntegrationTest {
+    
+    private static final int FIRST_PORT = 7000;
+    private static final int NODE_COUNT = 6;
+    
+    @Container
+    static GenericContainer<?> redisCluster = new GenericContainer<>(
+        DockerImageName.parse("grokzen/redis-cluster:7.0.10")
+    )
+        .withEnv("IP", "0.0.0.0")
+        .withExposedPorts(7000, 7001, 7002, 7003, 7004, 7005);
+    
+    private static JedisCluster cluster;
+    
+    private final RedisKeys keys = RedisKeys.cluster();
+    private RedisService redisService;
+    
+    @BeforeAll
+    static void connect() {
+        await()
+            .atMost(Duration.ofSeconds(60))
+            .pollInterval(Duration.ofSeconds(1))
+            .ignoreExceptions()
+            .until(() -> {
+                try (Jedis node = new Jedis(redisCluster.getHost(), redisCluster.getMappedPort(FIRST_PORT))) {
+                    return node.clusterInfo().contains("cluster_state:ok");
+                }
+            });
+        
+        // Nodes announce their container ports; route those to the mapped ports
+        DefaultJedisClientConfig clientConfig = DefaultJedisClientConfig.builder()
+            .hostAndPortMapper(announced -> announced.getPort() >= FIRST_PORT && announced.getPort() < FIRST_PORT + NODE_COUNT
+                ? new HostAndPort(redisCluster.getHost(), redisCluster.getMappedPort(announced.getPort()))
+                : announced)
+            .build();
+        cluster = new JedisCluster(
+            Set.of(new HostAndPort(redisCluster.getHost(), redisCluster.getMappedPort(FIRST_PORT))), clientConfig);
+    }
+    
+    @AfterAll
+    static void disconnect() {
+        if (cluster != null) {
+            cluster.close();
+        }
+    }
+    
+    @BeforeEach
+    void setUp() {
+        cluster.flushAll();
+        
+        RedisProperties properties = new RedisProperties();
+        properties.setMode(RedisProperties.Mode.CLUSTER);
+        redisService = new RedisService(cluster, keys, properties, new ObjectMapper(), new SimpleMeterRegistry());
+        redisService.loadScripts();
+    }
+    
+    @Test
+    void updateVehiclePositions_writesHashRouteAndGeoIndexesAcrossNodes() {
+        long now = System.currentTimeMillis();
+        List<VehiclePositionEvent> events = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            events.add(event("V" + i, "R" + (i % 10), 40.7 + i * 0.001, -74.0, now));
+        }
+        
+        RedisService.CacheUpdate update = redisService.updateVehiclePositions(events);
+        
+        assertTrue(update.failed().isEmpty());
+        assertEquals(50, update.applied().size());
+        Map<String, String> vehicle = cluster.hgetAll("veh:{V7}");
+        assertEquals("R7", vehicle.get("routeId"));
+        assertEquals(String.valueOf(now), vehicle.get("tsEpochMs"));
+        for (int r = 0; r < 10; r++) {
+            assertEquals(5, cluster.zcard(keys.routeVehicles("R" + r)));
+            assertEquals(5, cluster.zcard(keys.routeGeo("R" + r)));
+        }
+        assertEquals(50, cluster.zcard(keys.geoVehicles()));
+        assertEquals(50, cluster.zcard(keys.geoSeen()));
+        assertEquals("R3", cluster.hget(keys.geoRoute(), "V3"));
+    }
+    
+    @Test
+    void updateVehiclePositions_skipsStaleEvents() {
+        long now = System.currentTimeMillis();
+        redisService.updateVehiclePositions(List.of(event("V1", "R1", 40.75, -73.98, now)));
+        
+        RedisService.CacheUpdate update = redisService.updateVehiclePositions(
+            List.of(event("V1", "R1", 41.00, -73.00, now - 5_000)));
+        
+        assertTrue(update.failed().isEmpty());
+        assertTrue(update.applied().isEmpty());
+        assertEquals("40.75", cluster.hget("veh:{V1}", "lat"));
+        assertEquals(Double.valueOf(now), cluster.zscore(keys.routeVehicles("R1"), "V1"));
+    }
+    
+    @Test
+    void updateVehiclePositions_skipsAnEqualTimestampUnlessRepairing() {
+        long now = System.currentTimeMillis();
+        VehiclePositionEvent event = event("V1", "R1", 40.75, -73.98, now);
+        redisService.updateVehiclePositions(List.of(event));
+        // The hash was written but the index pipeline failed
+        cluster.zrem(keys.routeVehicles("R1"), "V1");
+        cluster.zrem(keys.geoVehicles(), "V1");
+        
+        RedisService.CacheUpdate skipped = redisService.updateVehiclePositions(List.of(event));
+        
+        assertTrue(skipped.applied().isEmpty());
+        assertNull(cluster.zscore(keys.routeVehicles("R1"), "V1"));
+        
+        RedisService.CacheUpdate repaired = redisService.updateVehiclePositions(List.of(event), true);
+        
+        assertEquals(List.of(event), repaired.applied());
+        assertEquals(Double.valueOf(now), cluster.zscore(keys.routeVehicles("R1"), "V1"));
+        assertNotNull(cluster.zscore(keys.geoVehicles(), "V1"));
+    }
+    
+    @Test
+    void updateVehiclePositions_routeChangeMovesVehicleBetweenRouteIndexes() {
+        long now = System.currentTimeMillis();
+        redisService.updateVehiclePositions(List.of(event("V1", "R1", 40.75, -73.98, now)));
+        
+        redisService.updateVehiclePositions(List.of(event("V1", "R2", 40.76, -73.97, now + 1_000)));
+        
+        assertNull(cluster.zscore(keys.routeVehicles("R1"), "V1"));
+        assertNull(cluster.zscore(keys.routeGeo("R1"), "V1"));
+        assertNotNull(cluster.zscore(keys.routeVehicles("R2"), "V1"));
+        assertNotNull(cluster.zscore(keys.routeGeo("R2"), "V1"));
+        assertEquals("R2", cluster.hget(keys.geoRoute(), "V1"));
+    }
+    
+    @Test
+    void evictStaleGeoMembers_removesGlobalAndRouteEntries() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        redisService.updateVehiclePositions(List.of(event("V1", "R1", 40.75, -73.98, now)));
+        long afterFirstWrite = System.currentTimeMillis();
+        Thread.sleep(5);
+        redisService.updateVehiclePositions(List.of(event("V2", "R2", 40.76, -73.97, now)));
+        
+        // Eviction follows the time of the last write, not the event time
+        long evicted = redisService.evictStaleGeoMembers(afterFirstWrite, 100);
+        
+        assertEquals(1, evicted);
+        assertNull(cluster.zscore(keys.geoVehicles(), "V1"));
+        assertNull(cluster.zscore(keys.routeGeo("R1"), "V1"));
+        assertNotNull(cluster.zscore(keys.routeGeo("R2"), "V2"));
+    }
+    
+    @Test
+    void trimRouteSets_scansEveryMaster() {
+        long now = System.currentTimeMillis();
+        List<VehiclePositionEvent> events = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            events.add(event("V" + i, "R" + i, 40.7, -74.0, now));
+        }
+        redisService.updateVehiclePositions(events);
+        
+        RedisService.RouteSetTrim trim = redisService.trimRouteSets(now + 1);
+        
+        assertEquals(20, trim.removed());
+        assertTrue(trim.sizes().isEmpty());
+    }
+    
+    private static VehiclePositionEvent event(String vehicleId, String routeId, double lat, double lon, long ts) {
+        VehiclePositionEvent event = new VehiclePositionEvent();
+        event.setVehicleId(vehicleId);
+        event.setRouteId(routeId);
+        event.setLat(lat);
+        event.setLon(lon);
+        event.setTsEpochMs(ts);
+        event.setEventId("evt-" + vehicleId + "-" + ts);
+        return event;
+    }
+}
@@ -0,0 +1,187 @@
+package com.routeforge.processing.integration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.routeforge.common.dto.VehiclePositionEvent;
+import com.routeforge.common.util.RedisKeys;
+import com.routeforge.processing.config.RedisProperties;
+import com.routeforge.processing.service.RedisService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.StreamUtils;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import redis.clients.jedis.JedisPooled;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The standalone cache scripts against a single Redis node
+ * update_vehicle_position.lua rejects events no newer than the cached position and gets
+ * every key it touches through KEYS, including the previous route's, and GEO eviction
+ * runs on the wall clock of the last write.
+ */
+@Testcontainers
+class RedisScriptIntegrationTest {
+    
+    @Container
+    static GenericContainer<?> redis = new GenericContainer<>(
+        DockerImageName.parse("redis:7.2-alpine")
+    )
+        .withExposedPorts(6379);
+    
+    private static JedisPooled client;
+    
+    private final RedisKeys keys = RedisKeys.standalone();
+    private RedisService redisService;
+    
+    @BeforeAll
+    static void connect() {
+        client = new JedisPooled(redis.getHost(), redis.getMappedPort(6379));
+    }
+    
+    @AfterAll
+    static void disconnect() {
+        if (client != null) {
+            client.close();
+        }
+    }
+    
+    @BeforeEach
+    void setUp() {
+        client.flushAll();
+        redisService = new RedisService(client, keys, new RedisProperties(), new ObjectMapper(), new SimpleMeterRegistry());
+        redisService.loadScripts();
+    }
+    
+    @Test
+    void updateVehiclePositions_shouldSkipEventsOlderThanTheCachedPosition() {
+        long now = System.currentTimeMillis();
+        redisService.updateVehiclePositions(List.of(event("V1", "R1", now)));
+        
+        RedisService.CacheUpdate update = redisService.updateVehiclePositions(List.of(event("V1", "R2", now - 1_000)));
+        
+        assertEquals(List.of(), update.applied());
+        assertEquals(List.of(), update.failed());
+        assertEquals(String.valueOf(now), client.hget(keys.vehicle("V1"), "tsEpochMs"));
+        assertEquals("R1", client.hget(keys.vehicle("V1"), "routeId"));
+        assertEquals(now, client.zscore(keys.routeVehicles("R1"), "V1").longValue());
+        assertNull(client.zscore(keys.routeVehicles("R2"), "V1"));
+        assertNull(client.zscore(keys.routeGeo("R2"), "V1"));
+    }
+    
+    @Test
+    void updateScript_shouldReturnZeroForAnEventWithTheCachedTimestamp() throws IOException {
+        long now = System.currentTimeMillis();
+        redisService.updateVehiclePositions(List.of(event("V1", "R1", now)));
+        
+        Object result = client.eval(script("redis/update_vehicle_position.lua"),
+            List.of(keys.vehicle("V1"), keys.routeVehicles("R1"), keys.geoVehicles(), keys.routeGeo("R1"),
+                keys.geoSeen(), keys.geoRoute(), keys.routeVehicles("R1"), keys.routeGeo("R1")),
+            List.of(String.valueOf(now), "300", "V1", "R1", "-73.97", "40.76", "R1", String.valueOf(now), "0",
+                "routeId", "R1", "tsEpochMs", String.valueOf(now), "lon", "-73.97"));
+        
+        assertEquals(0L, result);
+        assertEquals("-73.98", client.hget(keys.vehicle("V1"), "lon"));
+    }
+    
+    @Test
+    void updateVehiclePositions_repairShouldReapplyTheCachedTimestampAndRewriteIndexes() {
+        long now = System.currentTimeMillis();
+        VehiclePositionEvent event = event("V1", "R1", now);
+        redisService.updateVehiclePositions(List.of(event));
+        client.zrem(keys.routeVehicles("R1"), "V1");
+        
+        RedisService.CacheUpdate skipped = redisService.updateVehiclePositions(List.of(event));
+        RedisService.CacheUpdate repaired = redisService.updateVehiclePositions(List.of(event), true);
+        
+        assertEquals(List.of(), skipped.applied());
+        assertEquals(List.of(event), repaired.applied());
+        assertEquals(now, client.zscore(keys.routeVehicles("R1"), "V1").longValue());
+    }
+    
+    @Test
+    void updateVehiclePositions_routeChangeUsesDeclaredPreviousRouteKeys() {
+        long now = System.currentTimeMillis();
+        redisService.updateVehiclePositions(List.of(event("V1", "R1", now)));
+        
+        RedisService.CacheUpdate update = redisService.updateVehiclePositions(List.of(event("V1", "R2", now + 1_000)));
+        
+        assertEquals(1, update.applied().size());
+        assertNull(client.zscore(keys.routeVehicles("R1"), "V1"));
+        assertNull(client.zscore(keys.routeGeo("R1"), "V1"));
+        assertNotNull(client.zscore(keys.routeVehicles("R2"), "V1"));
+        assertNotNull(client.zscore(keys.routeGeo("R2"), "V1"));
+        assertEquals("R2", client.hget(keys.geoRoute(), "V1"));
+    }
+    
+    @Test
+    void updateScript_shouldRejectWriteWhenRouteEntryChangedSinceRead() throws IOException {
+        long now = System.currentTimeMillis();
+        redisService.updateVehiclePositions(List.of(event("V1", "R1", now)));
+        
+        // The caller read no previous route, but R1 is cached: nothing may be written
+        Object result = client.eval(script("redis/update_vehicle_position.lua"),
+            List.of(keys.vehicle("V1"), keys.routeVehicles("R2"), keys.geoVehicles(), keys.routeGeo("R2"),
+                keys.geoSeen(), keys.geoRoute(), keys.routeVehicles("R2"), keys.routeGeo("R2")),
+            List.of(String.valueOf(now + 1_000), "300", "V1", "R2", "-73.97", "40.76", "", String.valueOf(now), "0",
+                "routeId", "R2", "tsEpochMs", String.valueOf(now + 1_000)));
+        
+        assertEquals(-1L, result);
+        assertEquals("R1", client.hget(keys.vehicle("V1"), "routeId"));
+        assertNotNull(client.zscore(keys.routeVehicles("R1"), "V1"));
+        assertNull(client.zscore(keys.routeVehicles("R2"), "V1"));
+    }
+    
+    @Test
+    void evictStaleGeoMembers_shouldKeepVehiclesWrittenRecentlyWithOldEventTime() {
+        long now = System.currentTimeMillis();
+        redisService.updateVehiclePositions(List.of(event("V1", "R1", now - 600_000)));
+        
+        long evicted = redisService.evictStaleGeoMembers(now - 30_000, 100);
+        
+        assertEquals(0, evicted);
+        assertNotNull(client.zscore(keys.geoVehicles(), "V1"));
+    }
+    
+    @Test
+    void evictStaleGeoMembers_shouldEvictByLastWriteTime() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        redisService.updateVehiclePositions(List.of(event("V1", "R1", now)));
+        long afterFirstWrite = System.currentTimeMillis();
+        Thread.sleep(5);
+        redisService.updateVehiclePositions(List.of(event("V2", "R2", now)));
+        
+        long evicted = redisService.evictStaleGeoMembers(afterFirstWrite, 100);
+        
+        assertEquals(1, evicted);
+        assertNull(client.zscore(keys.geoVehicles(), "V1"));
+        assertNull(client.zscore(keys.routeGeo("R1"), "V1"));
+        assertNull(client.hget(keys.geoRoute(), "V1"));
+        assertNotNull(client.zscore(keys.geoVehicles(), "V2"));
+    }
+    
+    private static String script(String path) throws IOException {
+        return StreamUtils.copyToString(new ClassPathResource(path).getInputStream(), StandardCharsets.UTF_8);
+    }
+    
+    private static VehiclePositionEvent event(String vehicleId, String routeId, long ts) {
+        VehiclePositionEvent event = new VehiclePositionEvent();
+        event.setVehicleId(vehicleId);
+        event.setRouteId(routeId);
+        event.setLat(40.75);
+        event.setLon(-73.98);
+        event.setTsEpochMs(ts);
+        event.setEventId("evt-" + vehicleId + "-" + ts);
+        return event;
+    }
+}
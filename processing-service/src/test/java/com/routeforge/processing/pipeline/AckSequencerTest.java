@@ -0,0 +1,115 @@
+package com.routeforge.processing.pipeline;
+
+import com.routeforge.common.dto.VehiclePositionEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AckSequencerTest {
+    
+    private final AckSequencer sequencer = new AckSequencer();
+    private final List<String> completed = new ArrayList<>();
+    
+    @Test
+    void completed_shouldHoldALaterBatchUntilEveryEarlierBatchIsDone() {
+        PipelineBatch first = register(1L, "first");
+        PipelineBatch second = register(1L, "second");
+        PipelineBatch third = register(1L, "third");
+        
+        finishAll(third);
+        finishAll(second);
+        assertEquals(List.of(), completed);
+        assertEquals(3, sequencer.pendingBatches());
+        
+        finishAll(first);
+        assertEquals(List.of("first", "second", "third"), completed);
+        assertEquals(0, sequencer.pendingBatches());
+    }
+    
+    @Test
+    void completed_shouldReleaseOnlyTheDonePrefix() {
+        PipelineBatch first = register(1L, "first");
+        PipelineBatch second = register(1L, "second");
+        PipelineBatch third = register(1L, "third");
+        
+        finishAll(first);
+        finishAll(third);
+        
+        assertEquals(List.of("first"), completed);
+        assertEquals(2, sequencer.pendingBatches());
+        
+        finishAll(second);
+        assertEquals(List.of("first", "second", "third"), completed);
+    }
+    
+    @Test
+    void completed_shouldOrderEachListenerIndependently() {
+        PipelineBatch slow = register(1L, "listener1-slow");
+        PipelineBatch other = register(2L, "listener2");
+        
+        finishAll(other);
+        assertEquals(List.of("listener2"), completed);
+        
+        finishAll(slow);
+        assertEquals(List.of("listener2", "listener1-slow"), completed);
+    }
+    
+    @Test
+    void completed_shouldWaitForEveryPartOfABatch() {
+        PipelineBatch batch = new PipelineBatch(1L, List.of(event()), result -> completed.add("split"));
+        batch.expectParts(2);
+        sequencer.register(batch);
+        
+        finishStages(batch);
+        sequencer.completed(batch);
+        assertEquals(List.of(), completed);
+        
+        finishStages(batch);
+        sequencer.completed(batch);
+        assertEquals(List.of("split"), completed);
+    }
+    
+    @Test
+    void completed_shouldKeepReleasingWhenACallbackThrows() {
+        PipelineBatch failing = new PipelineBatch(1L, List.of(event()), result -> {
+            throw new IllegalStateException("ack failed");
+        });
+        failing.expectParts(1);
+        sequencer.register(failing);
+        PipelineBatch next = register(1L, "next");
+        
+        finishAll(next);
+        finishAll(failing);
+        
+        assertEquals(List.of("next"), completed);
+        assertEquals(0, sequencer.pendingBatches());
+    }
+    
+    private PipelineBatch register(long source, String name) {
+        PipelineBatch batch = new PipelineBatch(source, List.of(event()), result -> completed.add(name));
+        batch.expectParts(1);
+        sequencer.register(batch);
+        return batch;
+    }
+    
+    private void finishAll(PipelineBatch batch) {
+        finishStages(batch);
+        sequencer.completed(batch);
+    }
+    
+    private static void finishStages(PipelineBatch batch) {
+        for (Sink sink : Sink.values()) {
+            batch.stageFinished(sink, null);
+        }
+    }
+    
+    private static VehiclePositionEvent event() {
+        VehiclePositionEvent event = new VehiclePositionEvent();
+        event.setEventId("evt-1");
+        event.setVehicleId("V1");
+        return event;
+    }
+}
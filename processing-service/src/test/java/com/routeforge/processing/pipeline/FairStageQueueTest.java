@@ -0,0 +1,94 @@
+package com.routeforge.processing.pipeline;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FairStageQueueTest {
+    
+    private record Item(String agency, int events, int seq) {
+    }
+    
+    private static FairStageQueue<Item> queue(int capacityPerFlow, int quantum, Map<String, Integer> weights) {
+        return new FairStageQueue<>(capacityPerFlow, quantum, Item::agency, Item::events,
+            agency -> weights.getOrDefault(agency, 1));
+    }
+    
+    @Test
+    void take_shouldNotQueueSmallAgencyBehindBurst() throws Exception {
+        FairStageQueue<Item> queue = queue(100, 50, Map.of());
+        for (int i = 0; i < 20; i++) {
+            queue.put(new Item("big", 50, i));
+        }
+        queue.put(new Item("small", 5, 0));
+        
+        assertEquals("big", queue.take().agency());
+        assertEquals("small", queue.take().agency());
+        assertEquals(19, queue.size());
+    }
+    
+    @Test
+    void take_shouldShareByWeight() throws Exception {
+        FairStageQueue<Item> queue = queue(100, 10, Map.of("a", 2));
+        for (int i = 0; i < 60; i++) {
+            queue.put(new Item("a", 10, i));
+            queue.put(new Item("b", 10, i));
+        }
+        
+        int a = 0;
+        for (int i = 0; i < 30; i++) {
+            if (queue.take().agency().equals("a")) {
+                a++;
+            }
+        }
+        assertEquals(20, a);
+    }
+    
+    @Test
+    void take_shouldKeepOrderWithinAgency() throws Exception {
+        FairStageQueue<Item> queue = queue(100, 7, Map.of());
+        for (int i = 0; i < 10; i++) {
+            queue.put(new Item("a", 3 + i % 4, i));
+            queue.put(new Item("b", 1 + i % 9, i));
+        }
+        
+        List<Integer> a = new ArrayList<>();
+        List<Integer> b = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Item item = queue.take();
+            (item.agency().equals("a") ? a : b).add(item.seq());
+        }
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), a);
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), b);
+    }
+    
+    @Test
+    void put_shouldOnlyBlockTheFullAgency() throws Exception {
+        FairStageQueue<Item> queue = queue(2, 50, Map.of());
+        queue.put(new Item("big", 50, 0));
+        queue.put(new Item("big", 50, 1));
+        
+        Thread producer = new Thread(() -> {
+            try {
+                queue.put(new Item("big", 50, 2));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        producer.join(100);
+        assertTrue(producer.isAlive());
+        
+        queue.put(new Item("small", 1, 0));
+        assertEquals(3, queue.size());
+        
+        queue.take();
+        producer.join(1000);
+        assertFalse(producer.isAlive());
+        assertEquals(3, queue.size());
+    }
+}
@@ -0,0 +1,55 @@
+package com.routeforge.processing.pipeline;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RotatingBloomFilterTest {
+    
+    private static final long BUCKET_MS = 60_000;
+    private static final long START = 1_704_067_200_000L;
+    
+    @Test
+    void mightContainAndPut_shouldRememberKeysWithinWindow() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(3, 10_000, 0.01, 1 << 20, BUCKET_MS, START);
+        
+        assertFalse(filter.mightContainAndPut("evt-1", START));
+        assertTrue(filter.mightContainAndPut("evt-1", START + 1_000));
+        assertTrue(filter.mightContainAndPut("evt-1", START + 2 * BUCKET_MS + 1_000));
+    }
+    
+    @Test
+    void mightContainAndPut_shouldForgetKeysAfterWindow() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(3, 10_000, 0.01, 1 << 20, BUCKET_MS, START);
+        filter.mightContainAndPut("evt-1", START);
+        
+        assertFalse(filter.mightContainAndPut("evt-1", START + 10 * BUCKET_MS));
+    }
+    
+    @Test
+    void falsePositiveRate_shouldStayNearTargetAtExpectedLoad() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(4, 10_000, 0.01, 1 << 20, BUCKET_MS, START);
+        for (int bucket = 0; bucket < 4; bucket++) {
+            for (int i = 0; i < 10_000; i++) {
+                filter.mightContainAndPut("evt-" + bucket + "-" + i, START + bucket * BUCKET_MS);
+            }
+        }
+        
+        // Probes are added too, so keep them few enough not to overload the current generation
+        int falsePositives = 0;
+        for (int i = 0; i < 2_000; i++) {
+            if (filter.mightContainAndPut("new-" + i, START + 3 * BUCKET_MS)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 2_000 * 0.02, "false positives: " + falsePositives);
+        assertTrue(filter.falsePositiveRate() < 0.02, "estimated rate: " + filter.falsePositiveRate());
+    }
+    
+    @Test
+    void constructor_shouldCapMemory() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(6, 10_000_000, 0.001, 1 << 20, BUCKET_MS, START);
+        
+        assertTrue(filter.memoryBytes() <= 1 << 20);
+    }
+}
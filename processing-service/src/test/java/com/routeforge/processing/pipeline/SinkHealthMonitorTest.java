@@ -0,0 +1,71 @@
+package com.routeforge.processing.pipeline;
+
+import com.routeforge.processing.config.BackpressureProperties;
+import com.routeforge.processing.config.RetryProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SinkHealthMonitorTest {
+    
+    private BackpressureProperties properties;
+    private SinkHealthMonitor monitor;
+    
+    @BeforeEach
+    void setUp() {
+        properties = new BackpressureProperties();
+        monitor = new SinkHealthMonitor(properties, new RetryProperties(), new SimpleMeterRegistry());
+    }
+    
+    @Test
+    void slowDatabase_shouldBeDeferredButNotBlocking() {
+        recordDatabase(5000, 10);
+        
+        assertFalse(monitor.isHealthy(Sink.DATABASE));
+        assertTrue(monitor.isHealthy(Sink.REDIS));
+        assertEquals(Set.of(), monitor.blockingSinks());
+        assertTrue(monitor.shouldDefer(Sink.DATABASE));
+    }
+    
+    @Test
+    void slowDatabase_shouldBlockWhenWritesCannotBeDeferred() {
+        properties.setDeferDatabaseWrites(false);
+        recordDatabase(5000, 10);
+        
+        assertEquals(Set.of(Sink.DATABASE), monitor.blockingSinks());
+        assertFalse(monitor.shouldDefer(Sink.DATABASE));
+    }
+    
+    @Test
+    void recovery_shouldRequireLatencyWellBelowThreshold() {
+        recordDatabase(5000, 10);
+        
+        // Just under the 2000 ms threshold is not enough to recover
+        recordDatabase(1900, 30);
+        assertFalse(monitor.isHealthy(Sink.DATABASE));
+        
+        recordDatabase(50, 30);
+        assertTrue(monitor.isHealthy(Sink.DATABASE));
+        assertFalse(monitor.shouldDefer(Sink.DATABASE));
+    }
+    
+    @Test
+    void errors_shouldMarkSinkUnhealthy() {
+        for (int i = 0; i < 10; i++) {
+            monitor.record(Sink.REDIS, TimeUnit.MILLISECONDS.toNanos(5), false);
+        }
+        
+        assertEquals(Set.of(Sink.REDIS), monitor.blockingSinks());
+    }
+    
+    private void recordDatabase(long latencyMs, int samples) {
+        for (int i = 0; i < samples; i++) {
+            monitor.record(Sink.DATABASE, TimeUnit.MILLISECONDS.toNanos(latencyMs), true);
+        }
+    }
+}
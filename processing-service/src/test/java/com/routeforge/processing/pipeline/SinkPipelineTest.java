@@ -0,0 +1,299 @@
+package com.routeforge.processing.pipeline;
+
+import com.routeforge.common.dto.VehiclePositionEvent;
+import com.routeforge.processing.config.BackpressureProperties;
+import com.routeforge.processing.config.HistoryProperties;
+import com.routeforge.processing.config.PipelineProperties;
+import com.routeforge.processing.config.RetryProperties;
+import com.routeforge.processing.service.DatabaseService;
+import com.routeforge.processing.service.HistoryStatsRecorder;
+import com.routeforge.processing.service.RedisPubSubService;
+import com.routeforge.processing.service.RedisService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SinkPipelineTest {
+    
+    // With two lanes, "V1".hashCode() is odd and "V2".hashCode() even: the vehicles use different lanes
+    private static final String SLOW_VEHICLE = "V1";
+    private static final String FAST_VEHICLE = "V2";
+    private static final long TS = 1_700_000_000_000L;
+    
+    private RedisService redisService;
+    private DatabaseService databaseService;
+    private RedisPubSubService pubSubService;
+    private HistoryStatsRecorder historyStats;
+    private final CountDownLatch releaseDatabase = new CountDownLatch(1);
+    private final List<String> completed = new CopyOnWriteArrayList<>();
+    /** eventId -> Redis stage worker that wrote it */
+    private final Map<String, String> redisWorkerByEvent = new ConcurrentHashMap<>();
+    private final List<SinkPipeline> started = new ArrayList<>();
+    private SinkPipeline pipeline;
+    
+    @BeforeEach
+    void setUp() {
+        redisService = mock(RedisService.class);
+        databaseService = mock(DatabaseService.class);
+        pubSubService = mock(RedisPubSubService.class);
+        historyStats = mock(HistoryStatsRecorder.class);
+        when(redisService.updateVehiclePositions(anyList(), anyBoolean())).thenAnswer(invocation -> {
+            List<VehiclePositionEvent> events = invocation.getArgument(0);
+            events.forEach(event -> redisWorkerByEvent.put(event.getEventId(), Thread.currentThread().getName()));
+            return new RedisService.CacheUpdate(events, List.of());
+        });
+        when(pubSubService.publishRouteUpdates(anyList())).thenReturn(List.of());
+        // The slow vehicle's history insert hangs until the test releases it
+        doAnswer(invocation -> {
+            List<VehiclePositionEvent> events = invocation.getArgument(0);
+            if (events.stream().anyMatch(event -> SLOW_VEHICLE.equals(event.getVehicleId()))) {
+                assertTrue(releaseDatabase.await(5, TimeUnit.SECONDS));
+            }
+            return null;
+        }).when(databaseService).saveVehiclePositions(anyList());
+        
+        pipeline = startPipeline(PipelineProperties.Routing.KEY);
+    }
+    
+    @AfterEach
+    void tearDown() {
+        releaseDatabase.countDown();
+        started.forEach(SinkPipeline::stop);
+    }
+    
+    @Test
+    void submit_shouldPublishAfterTheCacheWriteWithoutWaitingForTheDatabase() throws InterruptedException {
+        VehiclePositionEvent event = event(SLOW_VEHICLE, "evt-1");
+        
+        pipeline.submit(List.of(event), result -> completed.add("batch"));
+        
+        // Pub/Sub follows Redis while the history insert is still running
+        verify(pubSubService, timeout(2000)).publishRouteUpdates(List.of(event));
+        InOrder inOrder = inOrder(redisService, pubSubService);
+        inOrder.verify(redisService).updateVehiclePositions(List.of(event), false);
+        inOrder.verify(pubSubService).publishRouteUpdates(List.of(event));
+        assertEquals(List.of(), completed);
+        assertEquals(1, pipeline.pendingBatches());
+        
+        releaseDatabase.countDown();
+        
+        await().atMost(Duration.ofSeconds(2)).until(() -> completed.size() == 1);
+        verify(historyStats).recordInserted(List.of(event));
+        assertEquals(0, pipeline.pendingBatches());
+    }
+    
+    @Test
+    void submit_shouldRetryAFailedCacheWriteAsARepair() throws InterruptedException {
+        VehiclePositionEvent event = event(FAST_VEHICLE, "evt-1");
+        when(redisService.updateVehiclePositions(anyList(), eq(false)))
+            .thenReturn(new RedisService.CacheUpdate(List.of(), List.of(event)));
+        
+        pipeline.submit(List.of(event), result -> completed.add("batch"));
+        
+        await().atMost(Duration.ofSeconds(2)).until(() -> completed.size() == 1);
+        InOrder inOrder = inOrder(redisService);
+        inOrder.verify(redisService).updateVehiclePositions(List.of(event), false);
+        inOrder.verify(redisService).updateVehiclePositions(List.of(event), true);
+        verify(pubSubService).publishRouteUpdates(List.of(event));
+    }
+    
+    @Test
+    void submit_shouldFeedHistoryStatsWithThePointsThinningKeptOutOfStorage() throws InterruptedException {
+        HistoryProperties historyProperties = new HistoryProperties();
+        historyProperties.getThinning().setEnabled(true);
+        SinkPipeline thinning = startPipeline(PipelineProperties.Routing.KEY, historyProperties);
+        // Parked vehicle: only the first point adds information
+        List<VehiclePositionEvent> parked = List.of(
+            event(FAST_VEHICLE, "evt-1", TS), event(FAST_VEHICLE, "evt-2", TS + 1_000), event(FAST_VEHICLE, "evt-3", TS + 2_000));
+        
+        thinning.submit(parked, result -> completed.add("batch"));
+        
+        await().atMost(Duration.ofSeconds(2)).until(() -> completed.size() == 1);
+        verify(databaseService).saveVehiclePositions(List.of(parked.get(0)));
+        verify(historyStats).recordInserted(parked);
+    }
+    
+    @Test
+    void submit_shouldCompleteBatchesInSubmissionOrderAcrossLanes() throws InterruptedException {
+        VehiclePositionEvent slow = event(SLOW_VEHICLE, "evt-1");
+        VehiclePositionEvent fast = event(FAST_VEHICLE, "evt-2");
+        
+        pipeline.submit(List.of(slow), result -> completed.add("first"));
+        pipeline.submit(List.of(fast), result -> completed.add("second"));
+        
+        // The second batch is fully written on its own lane, but must not be acknowledged first
+        verify(databaseService, timeout(2000)).saveVehiclePositions(List.of(fast));
+        verify(pubSubService, timeout(2000)).publishRouteUpdates(List.of(fast));
+        verify(historyStats, timeout(2000)).recordInserted(List.of(fast));
+        assertEquals(List.of(), completed);
+        
+        releaseDatabase.countDown();
+        
+        await().atMost(Duration.ofSeconds(2)).until(() -> completed.size() == 2);
+        assertEquals(List.of("first", "second"), completed);
+    }
+    
+    @Test
+    void submit_shouldHoldAnEmptyBatchBehindEarlierBatches() throws InterruptedException {
+        pipeline.submit(List.of(event(SLOW_VEHICLE, "evt-1")), result -> completed.add("first"));
+        pipeline.submit(List.of(), result -> completed.add("empty"));
+        
+        assertEquals(List.of(), completed);
+        
+        releaseDatabase.countDown();
+        
+        await().atMost(Duration.ofSeconds(2)).until(() -> completed.size() == 2);
+        assertEquals(List.of("first", "empty"), completed);
+    }
+    
+    @Test
+    void submit_shouldCompleteAnEmptyBatchImmediatelyWhenNothingIsPending() throws InterruptedException {
+        pipeline.submit(List.of(), result -> completed.add("empty"));
+        
+        assertEquals(List.of("empty"), completed);
+        verifyNoInteractions(redisService, databaseService, pubSubService);
+    }
+    
+    @Test
+    void keyRouting_shouldSplitABatchByVehicleAndCompleteItOnce() throws InterruptedException {
+        VehiclePositionEvent first = event(FAST_VEHICLE, "evt-1");
+        VehiclePositionEvent other = event(SLOW_VEHICLE, "evt-2");
+        VehiclePositionEvent second = event(FAST_VEHICLE, "evt-3", TS + 1_000);
+        releaseDatabase.countDown();
+        List<BatchResult> results = new CopyOnWriteArrayList<>();
+        
+        pipeline.submit(List.of(first, other, second), results::add);
+        
+        await().atMost(Duration.ofSeconds(2)).until(() -> results.size() == 1);
+        // One part per lane, each vehicle's events in batch order (Redis only gets the newest per vehicle)
+        verify(databaseService).saveVehiclePositions(List.of(first, second));
+        verify(databaseService).saveVehiclePositions(List.of(other));
+        assertEquals("pipeline-redis-0", redisWorkerByEvent.get(second.getEventId()));
+        assertEquals("pipeline-redis-1", redisWorkerByEvent.get(other.getEventId()));
+        assertEquals(List.of(first, other, second), results.get(0).events());
+        assertTrue(results.get(0).isSuccess());
+    }
+    
+    @Test
+    void keyRouting_shouldKeepAVehicleOnTheSameLaneAcrossBatches() throws InterruptedException {
+        releaseDatabase.countDown();
+        
+        for (int i = 0; i < 4; i++) {
+            pipeline.submit(List.of(event(SLOW_VEHICLE, "slow-" + i), event(FAST_VEHICLE, "fast-" + i)),
+                result -> completed.add("batch"));
+        }
+        
+        await().atMost(Duration.ofSeconds(2)).until(() -> completed.size() == 4);
+        for (int i = 0; i < 4; i++) {
+            assertEquals("pipeline-redis-1", redisWorkerByEvent.get("slow-" + i));
+            assertEquals("pipeline-redis-0", redisWorkerByEvent.get("fast-" + i));
+        }
+    }
+    
+    @Test
+    void keyRouting_shouldMergeEachSinksFailuresAcrossParts() throws InterruptedException {
+        releaseDatabase.countDown();
+        doThrow(new IllegalStateException("db down")).when(databaseService).saveVehiclePositions(anyList());
+        when(databaseService.saveVehiclePositionsIndividually(anyList())).thenAnswer(invocation ->
+            new DatabaseService.IndividualSave(List.of(), invocation.getArgument(0)));
+        VehiclePositionEvent slow = event(SLOW_VEHICLE, "evt-1");
+        VehiclePositionEvent fast = event(FAST_VEHICLE, "evt-2");
+        List<BatchResult> results = new CopyOnWriteArrayList<>();
+        
+        pipeline.submit(List.of(slow, fast), results::add);
+        
+        await().atMost(Duration.ofSeconds(10)).until(() -> results.size() == 1);
+        BatchResult result = results.get(0);
+        assertEquals(Set.of(Sink.DATABASE), result.failures().keySet());
+        assertEquals(2, result.failures().get(Sink.DATABASE).events().size());
+        assertTrue(result.failures().get(Sink.DATABASE).events().containsAll(List.of(slow, fast)));
+    }
+    
+    @Test
+    void listenerRouting_shouldKeepTheWholeBatchOnOneLane() throws InterruptedException {
+        releaseDatabase.countDown();
+        SinkPipeline listenerPipeline = startPipeline(PipelineProperties.Routing.LISTENER);
+        VehiclePositionEvent slow = event(SLOW_VEHICLE, "evt-1");
+        VehiclePositionEvent fast = event(FAST_VEHICLE, "evt-2");
+        
+        listenerPipeline.submit(List.of(slow, fast), result -> completed.add("batch"));
+        
+        await().atMost(Duration.ofSeconds(2)).until(() -> completed.size() == 1);
+        verify(databaseService).saveVehiclePositions(List.of(slow, fast));
+        assertEquals(redisWorkerByEvent.get(slow.getEventId()), redisWorkerByEvent.get(fast.getEventId()));
+    }
+    
+    @Test
+    void submit_shouldFailTheBatchWhenAStageThrowsOutsideTheSinkWrite() throws InterruptedException {
+        releaseDatabase.countDown();
+        IllegalStateException bug = new IllegalStateException("aggregate bug");
+        doThrow(bug).when(historyStats).recordInserted(anyList());
+        VehiclePositionEvent first = event(FAST_VEHICLE, "evt-1");
+        VehiclePositionEvent next = event(FAST_VEHICLE, "evt-2", TS + 1_000);
+        List<BatchResult> results = new CopyOnWriteArrayList<>();
+        
+        pipeline.submit(List.of(first), results::add);
+        pipeline.submit(List.of(next), results::add);
+        
+        // Both batches complete instead of stalling the listener's acks
+        await().atMost(Duration.ofSeconds(2)).until(() -> results.size() == 2);
+        SinkFailure failure = results.get(0).failures().get(Sink.DATABASE);
+        assertNotNull(failure);
+        assertEquals(List.of(first), failure.events());
+        assertSame(bug, failure.cause());
+        assertNull(results.get(0).failures().get(Sink.REDIS));
+        assertEquals(0, pipeline.pendingBatches());
+    }
+    
+    private SinkPipeline startPipeline(PipelineProperties.Routing routing) {
+        return startPipeline(routing, new HistoryProperties());
+    }
+    
+    private SinkPipeline startPipeline(PipelineProperties.Routing routing, HistoryProperties historyProperties) {
+        PipelineProperties properties = new PipelineProperties();
+        properties.setWorkersPerStage(2);
+        properties.setRouting(routing);
+        properties.setRetryInitialBackoffMs(1);
+        properties.setRetryMaxBackoffMs(2);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SinkHealthMonitor healthMonitor = new SinkHealthMonitor(
+            new BackpressureProperties(), new RetryProperties(), meterRegistry);
+        SinkPipeline sinkPipeline = new SinkPipeline(redisService, databaseService, pubSubService, historyStats,
+            properties, historyProperties, healthMonitor, meterRegistry);
+        sinkPipeline.start();
+        started.add(sinkPipeline);
+        return sinkPipeline;
+    }
+    
+    private static VehiclePositionEvent event(String vehicleId, String eventId) {
+        return event(vehicleId, eventId, TS);
+    }
+    
+    private static VehiclePositionEvent event(String vehicleId, String eventId, long ts) {
+        VehiclePositionEvent event = new VehiclePositionEvent();
+        event.setEventId(eventId);
+        event.setVehicleId(vehicleId);
+        event.setRouteId("R1");
+        event.setLat(40.75);
+        event.setLon(-73.98);
+        event.setTsEpochMs(ts);
+        return event;
+    }
+}
@@ -0,0 +1,115 @@
+package com.routeforge.processing.pipeline;
+
+import com.routeforge.common.dto.VehiclePositionEvent;
+import com.routeforge.processing.config.PipelineProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SinkRetrierTest {
+    
+    private SinkHealthMonitor healthMonitor;
+    private SimpleMeterRegistry meterRegistry;
+    private SinkRetrier retrier;
+    
+    @BeforeEach
+    void setUp() {
+        PipelineProperties properties = new PipelineProperties();
+        properties.setRetryMaxAttempts(3);
+        properties.setRetryInitialBackoffMs(1);
+        properties.setRetryMaxBackoffMs(2);
+        healthMonitor = mock(SinkHealthMonitor.class);
+        meterRegistry = new SimpleMeterRegistry();
+        retrier = new SinkRetrier(properties, healthMonitor, meterRegistry);
+    }
+    
+    @Test
+    void write_shouldReturnNullWhenTheFirstAttemptSucceeds() throws InterruptedException {
+        List<VehiclePositionEvent> events = List.of(event("e1"), event("e2"));
+        
+        assertNull(retrier.write(Sink.REDIS, events, batch -> List.of()));
+        assertEquals(0.0, retries(Sink.REDIS));
+        verify(healthMonitor).record(eq(Sink.REDIS), anyLong(), eq(true));
+    }
+    
+    @Test
+    void write_shouldResubmitOnlyTheEventsThatFailed() throws InterruptedException {
+        VehiclePositionEvent ok = event("e1");
+        VehiclePositionEvent flaky = event("e2");
+        List<List<VehiclePositionEvent>> attempts = new ArrayList<>();
+        
+        SinkFailure failure = retrier.write(Sink.REDIS, List.of(ok, flaky), batch -> {
+            attempts.add(batch);
+            return attempts.size() == 1 ? List.of(flaky) : List.of();
+        });
+        
+        assertNull(failure);
+        assertEquals(List.of(List.of(ok, flaky), List.of(flaky)), attempts);
+        assertEquals(1.0, retries(Sink.REDIS));
+    }
+    
+    @Test
+    void write_shouldReportTheLastErrorAfterExhaustingAttempts() throws InterruptedException {
+        List<VehiclePositionEvent> events = List.of(event("e1"));
+        int[] calls = {0};
+        
+        SinkFailure failure = retrier.write(Sink.DATABASE, events, batch -> {
+            calls[0]++;
+            throw new IllegalStateException("attempt " + calls[0]);
+        });
+        
+        assertNotNull(failure);
+        assertEquals(3, calls[0]);
+        assertEquals(Sink.DATABASE, failure.sink());
+        assertEquals(events, failure.events());
+        assertEquals("attempt 3", failure.cause().getMessage());
+        assertEquals(2.0, retries(Sink.DATABASE));
+        verify(healthMonitor, times(3)).record(eq(Sink.DATABASE), anyLong(), eq(false));
+    }
+    
+    @Test
+    void write_shouldReportRejectedEventsWithoutAnError() throws InterruptedException {
+        VehiclePositionEvent rejected = event("e2");
+        
+        SinkFailure failure = retrier.write(Sink.REDIS, List.of(event("e1"), rejected), batch -> List.of(rejected));
+        
+        assertNotNull(failure);
+        assertEquals(List.of(rejected), failure.events());
+        assertInstanceOf(IllegalStateException.class, failure.cause());
+        assertEquals(2.0, retries(Sink.REDIS));
+    }
+    
+    @Test
+    void write_shouldAttemptOnceWhenRetriesAreDisabled() throws InterruptedException {
+        PipelineProperties properties = new PipelineProperties();
+        properties.setRetryMaxAttempts(0);
+        SinkRetrier once = new SinkRetrier(properties, healthMonitor, meterRegistry);
+        int[] calls = {0};
+        
+        SinkFailure failure = once.write(Sink.PUBSUB, List.of(event("e1")), batch -> {
+            calls[0]++;
+            return batch;
+        });
+        
+        assertNotNull(failure);
+        assertEquals(1, calls[0]);
+    }
+    
+    private double retries(Sink sink) {
+        return meterRegistry.counter("routeforge.processing.sink.retries", "sink", sink.name().toLowerCase()).count();
+    }
+    
+    private static VehiclePositionEvent event(String eventId) {
+        VehiclePositionEvent event = new VehiclePositionEvent();
+        event.setEventId(eventId);
+        event.setVehicleId("V1");
+        return event;
+    }
+}
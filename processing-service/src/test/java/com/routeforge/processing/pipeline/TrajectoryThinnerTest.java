@@ -0,0 +1,127 @@
+package com.routeforge.processing.pipeline;
+
+import com.routeforge.common.dto.VehiclePositionEvent;
+import com.routeforge.common.util.GeoUtils;
+import com.routeforge.processing.config.HistoryProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrajectoryThinnerTest {
+    
+    private static final double LAT = 40.7128;
+    private static final double LON = -74.0060;
+    private static final long T0 = 1_700_000_000_000L;
+    
+    private HistoryProperties.Thinning properties;
+    private SimpleMeterRegistry meterRegistry;
+    private TrajectoryThinner thinner;
+    
+    @BeforeEach
+    void setUp() {
+        properties = new HistoryProperties.Thinning();
+        properties.setEnabled(true);
+        meterRegistry = new SimpleMeterRegistry();
+        thinner = new TrajectoryThinner(properties, meterRegistry);
+    }
+    
+    @Test
+    void thin_shouldPassEverythingWhenDisabled() {
+        properties.setEnabled(false);
+        List<VehiclePositionEvent> events = straightRun(5);
+        
+        assertSame(events, thinner.thin(events));
+    }
+    
+    @Test
+    void thin_shouldDropPointsOnTheDeadReckonedTrack() {
+        // 36 km/h due north, one fix every 5 s exactly where the last kept point predicts
+        List<VehiclePositionEvent> events = straightRun(6);
+        
+        List<VehiclePositionEvent> retained = thinner.thin(events);
+        
+        assertEquals(List.of(events.get(0)), retained);
+        assertEquals(1.0, meterRegistry.counter("routeforge.processing.history.thinning.points", "outcome", "kept").count());
+        assertEquals(5.0, meterRegistry.counter("routeforge.processing.history.thinning.points", "outcome", "dropped").count());
+    }
+    
+    @Test
+    void thin_shouldKeepPointsThatLeaveThePredictedTrack() {
+        List<VehiclePositionEvent> events = straightRun(3);
+        // 50 m east of where the vehicle should be, same heading
+        double[] onTrack = GeoUtils.project(LAT, LON, 0.0, 150.0);
+        double[] offTrack = GeoUtils.project(onTrack[0], onTrack[1], 90.0, 50.0);
+        VehiclePositionEvent drifted = event(offTrack[0], offTrack[1], T0 + 15_000, 36.0, 0.0);
+        List<VehiclePositionEvent> batch = new ArrayList<>(events);
+        batch.add(drifted);
+        
+        List<VehiclePositionEvent> retained = thinner.thin(batch);
+        
+        assertEquals(List.of(events.get(0), drifted), retained);
+    }
+    
+    @Test
+    void thin_shouldKeepAPointAtLeastEveryMaxInterval() {
+        properties.setMaxIntervalMs(10_000);
+        List<VehiclePositionEvent> events = straightRun(5); // 0, 5, 10, 15, 20 s
+        
+        List<VehiclePositionEvent> retained = thinner.thin(events);
+        
+        assertEquals(List.of(events.get(0), events.get(2), events.get(4)), retained);
+    }
+    
+    @Test
+    void thin_shouldKeepTurnsStopsAndRouteChanges() {
+        VehiclePositionEvent first = event(LAT, LON, T0, 36.0, 0.0);
+        double[] next = GeoUtils.project(LAT, LON, 0.0, 50.0);
+        VehiclePositionEvent turned = event(next[0], next[1], T0 + 5_000, 36.0, 45.0);
+        VehiclePositionEvent stopped = event(next[0], next[1], T0 + 10_000, 0.0, 45.0);
+        VehiclePositionEvent stillStopped = event(next[0], next[1], T0 + 15_000, 0.0, 45.0);
+        VehiclePositionEvent otherRoute = event(next[0], next[1], T0 + 20_000, 0.0, 45.0);
+        otherRoute.setRouteId("R2");
+        
+        List<VehiclePositionEvent> retained = thinner.thin(List.of(first, turned, stopped, stillStopped, otherRoute));
+        
+        assertEquals(List.of(first, turned, stopped, otherRoute), retained);
+    }
+    
+    @Test
+    void thin_shouldTrackVehiclesIndependentlyAndKeepIncompleteEvents() {
+        List<VehiclePositionEvent> events = straightRun(2);
+        VehiclePositionEvent otherVehicle = event(LAT, LON, T0 + 5_000, 36.0, 0.0);
+        otherVehicle.setVehicleId("V2");
+        VehiclePositionEvent noPosition = event(LAT, LON, T0 + 5_000, null, null);
+        noPosition.setLat(null);
+        
+        List<VehiclePositionEvent> retained = thinner.thin(List.of(events.get(0), otherVehicle, events.get(1), noPosition));
+        
+        assertEquals(List.of(events.get(0), otherVehicle, noPosition), retained);
+    }
+    
+    private static List<VehiclePositionEvent> straightRun(int count) {
+        List<VehiclePositionEvent> events = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            double[] position = GeoUtils.project(LAT, LON, 0.0, i * 50.0); // 10 m/s
+            events.add(event(position[0], position[1], T0 + i * 5_000L, 36.0, 0.0));
+        }
+        return events;
+    }
+    
+    private static VehiclePositionEvent event(double lat, double lon, long ts, Double speedKph, Double headingDeg) {
+        VehiclePositionEvent event = new VehiclePositionEvent();
+        event.setVehicleId("V1");
+        event.setRouteId("R1");
+        event.setLat(lat);
+        event.setLon(lon);
+        event.setSpeedKph(speedKph);
+        event.setHeadingDeg(headingDeg);
+        event.setTsEpochMs(ts);
+        event.setEventId("evt-" + ts);
+        return event;
+    }
+}
@@ -0,0 +1,56 @@
+package com.routeforge.processing.pipeline;
+
+import com.routeforge.common.dto.VehiclePositionEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VehicleCoalescerTest {
+    
+    @Test
+    void coalesce_shouldKeepNewestPerVehicleInBatchOrder() {
+        VehicleCoalescer coalescer = new VehicleCoalescer(true, new SimpleMeterRegistry());
+        VehiclePositionEvent v1Old = event("V1", 1_000L);
+        VehiclePositionEvent v2 = event("V2", 1_500L);
+        VehiclePositionEvent v1New = event("V1", 3_000L);
+        VehiclePositionEvent v1Late = event("V1", 2_000L);
+        
+        List<VehiclePositionEvent> latest = coalescer.coalesce(List.of(v1Old, v2, v1New, v1Late));
+        
+        assertEquals(List.of(v2, v1New), latest);
+        assertEquals(0.5, coalescer.coalescedRatio());
+    }
+    
+    @Test
+    void coalesce_shouldPreferLaterRecordOnEqualTimestamps() {
+        VehicleCoalescer coalescer = new VehicleCoalescer(true, new SimpleMeterRegistry());
+        VehiclePositionEvent first = event("V1", 1_000L);
+        VehiclePositionEvent second = event("V1", 1_000L);
+        
+        List<VehiclePositionEvent> latest = coalescer.coalesce(List.of(first, second));
+        
+        assertEquals(1, latest.size());
+        assertSame(second, latest.get(0));
+    }
+    
+    @Test
+    void coalesce_shouldPassThroughEventsWithoutKeyAndWhenDisabled() {
+        List<VehiclePositionEvent> events = List.of(event(null, 1_000L), event(null, 2_000L), event("V1", null));
+        
+        assertEquals(events, new VehicleCoalescer(true, new SimpleMeterRegistry()).coalesce(events));
+        
+        List<VehiclePositionEvent> duplicates = List.of(event("V1", 1_000L), event("V1", 2_000L));
+        assertSame(duplicates, new VehicleCoalescer(false, new SimpleMeterRegistry()).coalesce(duplicates));
+    }
+    
+    private static VehiclePositionEvent event(String vehicleId, Long ts) {
+        VehiclePositionEvent event = new VehiclePositionEvent();
+        event.setVehicleId(vehicleId);
+        event.setTsEpochMs(ts);
+        event.setEventId("evt-" + vehicleId + "-" + ts);
+        return event;
+    }
+}
@@ -0,0 +1,129 @@
+package com.routeforge.processing.service;
+
+import com.routeforge.common.dto.VehiclePositionEvent;
+import com.routeforge.processing.config.ProcessingProperties;
+import com.routeforge.processing.config.RetryProperties;
+import com.routeforge.processing.pipeline.Sink;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class DlqPublisherTest {
+    
+    private KafkaTemplate<String, VehiclePositionEvent> kafkaTemplate;
+    private RetryProperties retryProperties;
+    private SimpleMeterRegistry meterRegistry;
+    private DlqPublisher publisher;
+    
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        kafkaTemplate = mock(KafkaTemplate.class);
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(CompletableFuture.completedFuture(null));
+        retryProperties = new RetryProperties();
+        meterRegistry = new SimpleMeterRegistry();
+        publisher = new DlqPublisher(kafkaTemplate, new ProcessingProperties(), retryProperties, meterRegistry);
+    }
+    
+    @Test
+    void publish_shouldSendToTheFirstRetryTierWithSinkCauseAttemptAndDueTime() {
+        long before = System.currentTimeMillis();
+        
+        publisher.publish(Sink.DATABASE, List.of(event("V1")), new IllegalStateException("db down"));
+        
+        ProducerRecord<String, VehiclePositionEvent> record = sentRecord();
+        assertEquals("vehicle_positions.retry-0", record.topic());
+        assertEquals("V1", record.key());
+        assertEquals("DATABASE", header(record, DlqPublisher.FAILED_SINK_HEADER));
+        assertEquals("IllegalStateException: db down", header(record, DlqPublisher.FAILURE_CAUSE_HEADER));
+        assertEquals(1, DlqPublisher.attempt(record.headers().lastHeader(DlqPublisher.ATTEMPT_HEADER)));
+        long dueAt = DlqPublisher.dueAt(record.headers().lastHeader(DlqPublisher.DUE_AT_HEADER));
+        assertTrue(dueAt >= before + 1000 && dueAt <= System.currentTimeMillis() + 1000);
+        assertEquals(1.0, meterRegistry.counter("routeforge.processing.retry.events", "tier", "0").count());
+    }
+    
+    @Test
+    void publish_shouldSendToTheDlqWithoutDueTimeOnceEveryTierIsUsed() {
+        publisher.publish(Sink.REDIS, List.of(event("V1")), new RuntimeException("timeout"), 3);
+        
+        ProducerRecord<String, VehiclePositionEvent> record = sentRecord();
+        assertEquals("vehicle_positions.dlq", record.topic());
+        assertEquals("REDIS", header(record, DlqPublisher.FAILED_SINK_HEADER));
+        assertEquals("3", header(record, DlqPublisher.ATTEMPT_HEADER));
+        assertNull(record.headers().lastHeader(DlqPublisher.DUE_AT_HEADER));
+        assertEquals(1.0, meterRegistry.counter("routeforge.processing.dlq.events", "sink", "redis").count());
+    }
+    
+    @Test
+    void publishAllSinks_shouldOmitTheSinkHeader() {
+        retryProperties.setEnabled(false);
+        
+        publisher.publishAllSinks(List.of(event("V1")), new RuntimeException("bad batch"));
+        
+        ProducerRecord<String, VehiclePositionEvent> record = sentRecord();
+        assertEquals("vehicle_positions.dlq", record.topic());
+        assertNull(record.headers().lastHeader(DlqPublisher.FAILED_SINK_HEADER));
+        assertNull(DlqPublisher.failedSink(record.headers().lastHeader(DlqPublisher.FAILED_SINK_HEADER)));
+        assertEquals("0", header(record, DlqPublisher.ATTEMPT_HEADER));
+        assertEquals(1.0, meterRegistry.counter("routeforge.processing.dlq.events", "sink", "all").count());
+    }
+    
+    @Test
+    void publish_shouldTruncateLongCauses() {
+        publisher.publish(Sink.DATABASE, List.of(event("V1")), new RuntimeException("x".repeat(1000)));
+        
+        assertEquals(500, header(sentRecord(), DlqPublisher.FAILURE_CAUSE_HEADER).length());
+    }
+    
+    @Test
+    void publish_shouldCompleteExceptionallyWhenASendFails() {
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+            .thenReturn(CompletableFuture.failedFuture(new RuntimeException("broker unavailable")));
+        
+        CompletableFuture<Void> sent = publisher.publish(Sink.DATABASE, List.of(event("V1")), new RuntimeException("db down"), 0);
+        
+        assertTrue(sent.isCompletedExceptionally());
+    }
+    
+    @Test
+    void headerReaders_shouldTolerateMissingAndMalformedValues() {
+        ProducerRecord<String, VehiclePositionEvent> record = new ProducerRecord<>("topic", "V1", event("V1"));
+        record.headers().add(DlqPublisher.FAILED_SINK_HEADER, "BOGUS".getBytes(StandardCharsets.UTF_8));
+        record.headers().add(DlqPublisher.DUE_AT_HEADER, "soon".getBytes(StandardCharsets.UTF_8));
+        
+        assertNull(DlqPublisher.failedSink(record.headers().lastHeader(DlqPublisher.FAILED_SINK_HEADER)));
+        assertEquals(0, DlqPublisher.dueAt(record.headers().lastHeader(DlqPublisher.DUE_AT_HEADER)));
+        assertEquals(0, DlqPublisher.attempt(null));
+    }
+    
+    @SuppressWarnings("unchecked")
+    private ProducerRecord<String, VehiclePositionEvent> sentRecord() {
+        ArgumentCaptor<ProducerRecord<String, VehiclePositionEvent>> record = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(kafkaTemplate).send(record.capture());
+        return record.getValue();
+    }
+    
+    private static String header(ProducerRecord<?, ?> record, String name) {
+        Header header = record.headers().lastHeader(name);
+        return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+    
+    private static VehiclePositionEvent event(String vehicleId) {
+        VehiclePositionEvent event = new VehiclePositionEvent();
+        event.setEventId("evt-" + vehicleId);
+        event.setVehicleId(vehicleId);
+        return event;
+    }
+}
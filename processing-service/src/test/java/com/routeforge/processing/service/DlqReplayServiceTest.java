@@ -0,0 +1,199 @@
+package com.routeforge.processing.service;
+
+import com.routeforge.common.dto.VehiclePositionEvent;
+import com.routeforge.processing.config.DlqReplayProperties;
+import com.routeforge.processing.config.ProcessingProperties;
+import com.routeforge.processing.pipeline.Sink;
+import com.routeforge.processing.pipeline.SinkFailure;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class DlqReplayServiceTest {
+    
+    private static final TopicPartition TP = new TopicPartition("vehicle_positions_dlq", 0);
+    
+    private SinkRewriter sinkRewriter;
+    private SimpleMeterRegistry meterRegistry;
+    private DlqReplayService service;
+    private MockConsumer<String, VehiclePositionEvent> consumer;
+    
+    @BeforeEach
+    void setUp() {
+        sinkRewriter = mock(SinkRewriter.class);
+        when(sinkRewriter.rewrite(anyList(), anySet())).thenReturn(List.of());
+        DlqReplayProperties replayProperties = new DlqReplayProperties();
+        replayProperties.setBatchSize(4);
+        meterRegistry = new SimpleMeterRegistry();
+        service = new DlqReplayService(new ProcessingProperties(), replayProperties, sinkRewriter, meterRegistry);
+        
+        consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        consumer.assign(List.of(TP));
+        consumer.updateBeginningOffsets(Map.of(TP, 0L));
+        consumer.seek(TP, 0);
+    }
+    
+    @Test
+    void replayPartition_shouldCommitEveryBatchWhenAllSucceed() throws Exception {
+        DlqReplayJob job = job();
+        
+        DlqReplayService.PartitionOutcome outcome =
+            service.replayPartition(job, consumer, TP, records(0, 10), 10, new ReplayRateLimiter(0));
+        
+        assertEquals(DlqReplayService.PartitionOutcome.CONTINUE, outcome);
+        assertEquals(10L, committed());
+        assertEquals(10L, job.getReplayed());
+        verify(sinkRewriter, times(3)).rewrite(anyList(), anySet());
+    }
+    
+    @Test
+    void replayPartition_shouldCommitUpToFirstFailedRecordAndHalt() throws Exception {
+        when(sinkRewriter.rewrite(anyList(), anySet())).thenAnswer(invocation -> {
+            List<VehiclePositionEvent> events = invocation.getArgument(0);
+            List<VehiclePositionEvent> failed = events.stream()
+                .filter(e -> e.getEventId().equals("evt-5") || e.getEventId().equals("evt-7"))
+                .toList();
+            return failed.isEmpty() ? List.of() : List.of(new SinkFailure(Sink.DATABASE, failed, new RuntimeException("down")));
+        });
+        DlqReplayJob job = job();
+        
+        DlqReplayService.PartitionOutcome outcome =
+            service.replayPartition(job, consumer, TP, records(0, 12), 12, new ReplayRateLimiter(0));
+        
+        assertEquals(DlqReplayService.PartitionOutcome.HALTED, outcome);
+        // First batch (0-3) committed, second batch stops at the failed offset 5
+        assertEquals(5L, committed());
+        assertEquals(5L, consumer.position(TP));
+        assertEquals(6L, job.getReplayed());
+        assertEquals(2L, job.toStatus().get("failed"));
+        // Third batch is never rewritten
+        verify(sinkRewriter, times(2)).rewrite(anyList(), anySet());
+    }
+    
+    @Test
+    void replayPartition_shouldNotCommitPastRecordsAppendedAfterStart() throws Exception {
+        DlqReplayJob job = job();
+        
+        service.replayPartition(job, consumer, TP, records(0, 6), 3, new ReplayRateLimiter(0));
+        
+        assertEquals(3L, committed());
+        assertEquals(3L, job.getReplayed());
+    }
+    
+    @Test
+    void replayPartition_shouldKeepCommitWhenWokenUpDuringCommit() throws Exception {
+        AtomicBoolean wakeupPending = new AtomicBoolean(true);
+        MockConsumer<String, VehiclePositionEvent> wakingConsumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST) {
+            @Override
+            public synchronized void commitSync(Map<TopicPartition, OffsetAndMetadata> offsets) {
+                if (wakeupPending.getAndSet(false)) {
+                    throw new WakeupException();
+                }
+                super.commitSync(offsets);
+            }
+        };
+        wakingConsumer.assign(List.of(TP));
+        DlqReplayJob job = job();
+        
+        DlqReplayService.PartitionOutcome outcome =
+            service.replayPartition(job, wakingConsumer, TP, records(0, 8), 8, new ReplayRateLimiter(0));
+        
+        assertEquals(DlqReplayService.PartitionOutcome.STOP, outcome);
+        assertEquals(4L, wakingConsumer.committed(Set.of(TP)).get(TP).offset());
+        verify(sinkRewriter, times(1)).rewrite(anyList(), anySet());
+    }
+    
+    @Test
+    void replayPartition_shouldSkipAndCommitPastRecordsWithoutAValue() throws Exception {
+        List<ConsumerRecord<String, VehiclePositionEvent>> records = new ArrayList<>(records(0, 4));
+        // Tombstone, and what ErrorHandlingDeserializer hands over for an undecodable payload
+        records.set(1, new ConsumerRecord<>(TP.topic(), TP.partition(), 1, "V1", null));
+        records.set(2, new ConsumerRecord<>(TP.topic(), TP.partition(), 2, "V1", undecodable("{not json")));
+        DlqReplayJob job = job();
+        
+        DlqReplayService.PartitionOutcome outcome =
+            service.replayPartition(job, consumer, TP, records, 4, new ReplayRateLimiter(0));
+        
+        assertEquals(DlqReplayService.PartitionOutcome.CONTINUE, outcome);
+        assertEquals(4L, committed());
+        assertEquals(2L, job.getReplayed());
+        assertEquals(0L, job.toStatus().get("failed"));
+        assertEquals(2.0, meterRegistry.counter("routeforge.dlq.replay.skipped").count());
+        verify(sinkRewriter).rewrite(eq(List.of(records.get(0).value(), records.get(3).value())), anySet());
+    }
+    
+    @Test
+    void committableOffset_shouldNotStopAtRecordsWithoutAValue() {
+        List<ConsumerRecord<String, VehiclePositionEvent>> batch = new ArrayList<>(records(20, 3));
+        batch.set(1, new ConsumerRecord<>(TP.topic(), TP.partition(), 21, "V1", null));
+        
+        assertEquals(23L, DlqReplayService.committableOffset(batch, Set.of()));
+        assertEquals(22L, DlqReplayService.committableOffset(batch, Set.of("evt-22")));
+    }
+    
+    @Test
+    void committableOffset_shouldStopAtFirstFailure() {
+        List<ConsumerRecord<String, VehiclePositionEvent>> batch = records(20, 5);
+        
+        assertEquals(25L, DlqReplayService.committableOffset(batch, Set.of()));
+        assertEquals(22L, DlqReplayService.committableOffset(batch, Set.of("evt-24", "evt-22")));
+        assertEquals(20L, DlqReplayService.committableOffset(batch, Set.of("evt-20")));
+    }
+    
+    /**
+     * Decode a payload with the replay consumer's value deserializer
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private VehiclePositionEvent undecodable(String payload) {
+        try (ErrorHandlingDeserializer<VehiclePositionEvent> deserializer = new ErrorHandlingDeserializer<>()) {
+            deserializer.configure((Map) service.dlqConsumerProperties(), false);
+            VehiclePositionEvent event = deserializer.deserialize(TP.topic(), new RecordHeaders(),
+                payload.getBytes(StandardCharsets.UTF_8));
+            assertNull(event);
+            return event;
+        }
+    }
+    
+    private long committed() {
+        return consumer.committed(Set.of(TP)).get(TP).offset();
+    }
+    
+    private static DlqReplayJob job() {
+        return new DlqReplayJob("job-1", DlqReplayRequest.resume(0), 0);
+    }
+    
+    private static List<ConsumerRecord<String, VehiclePositionEvent>> records(long firstOffset, int count) {
+        List<ConsumerRecord<String, VehiclePositionEvent>> records = new ArrayList<>();
+        for (long offset = firstOffset; offset < firstOffset + count; offset++) {
+            VehiclePositionEvent event = VehiclePositionEvent.builder()
+                .eventId("evt-" + offset)
+                .vehicleId("V1")
+                .routeId("R1")
+                .lat(40.7)
+                .lon(-74.0)
+                .tsEpochMs(1_704_067_200_000L + offset * 1000)
+                .build();
+            records.add(new ConsumerRecord<>(TP.topic(), TP.partition(), offset, event.getVehicleId(), event));
+        }
+        return records;
+    }
+}
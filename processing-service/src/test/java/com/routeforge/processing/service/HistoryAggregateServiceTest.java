@@ -0,0 +1,123 @@
+package com.routeforge.processing.service;
+
+import com.routeforge.common.dto.VehiclePositionEvent;
+import com.routeforge.common.util.AggregateResolution;
+import com.routeforge.common.util.GeoUtils;
+import com.routeforge.processing.config.AggregateProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class HistoryAggregateServiceTest {
+    
+    private static final long MINUTE = 1_704_067_200_000L; // 2024-01-01T00:00Z
+    
+    private JdbcTemplate jdbcTemplate;
+    private HistoryAggregateService service;
+    
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        service = new HistoryAggregateService(jdbcTemplate, new AggregateProperties(), new SimpleMeterRegistry());
+    }
+    
+    @Test
+    void record_shouldAggregatePerRouteAndVehicleMinute() {
+        service.record(List.of(
+            event("V1", "R1", 40.7000, MINUTE + 5_000, 20.0, 30),
+            event("V2", "R1", 40.8000, MINUTE + 10_000, 40.0, null),
+            event("V1", "R1", 40.7010, MINUTE + 35_000, null, 90),
+            event("V1", "R1", 40.7020, MINUTE + 65_000, 10.0, 60)));
+        
+        AggregateBucketStats route = service.openBucket(HistoryAggregateService.Scope.ROUTE, "R1", MINUTE);
+        assertEquals(3, route.sampleCount());
+        assertEquals(2, route.speedSamples());
+        assertEquals(60.0, route.speedSumKph(), 1e-9);
+        assertEquals(40.0, route.maxSpeedKph());
+        assertEquals(2, route.delaySamples());
+        assertEquals(120, route.delaySumSec());
+        
+        AggregateBucketStats vehicle = service.openBucket(HistoryAggregateService.Scope.VEHICLE, "V1", MINUTE);
+        assertEquals(2, vehicle.sampleCount());
+        assertEquals(GeoUtils.distanceMeters(40.7000, -74.0, 40.7010, -74.0), vehicle.distanceM(), 1e-6);
+        assertEquals(1, service.openBucket(HistoryAggregateService.Scope.VEHICLE, "V1", MINUTE + 60_000).sampleCount());
+    }
+    
+    @Test
+    void record_shouldNotCountDistanceAcrossGapsOrReplays() {
+        service.record(List.of(event("V1", "R1", 40.70, MINUTE, 20.0, null)));
+        service.record(List.of(event("V1", "R1", 40.75, MINUTE + 600_000, 20.0, null)));
+        service.record(List.of(event("V1", "R1", 40.70, MINUTE, 20.0, null)));
+        
+        assertEquals(0.0, service.openBucket(HistoryAggregateService.Scope.VEHICLE, "V1", MINUTE + 600_000).distanceM());
+        assertEquals(0.0, service.openBucket(HistoryAggregateService.Scope.VEHICLE, "V1", MINUTE).distanceM());
+    }
+    
+    @Test
+    void refreshCoarse_shouldRollUpLateMinutesHoweverOld() {
+        // Flushed years after the fact, far behind any recent-window refresh
+        long lateMinute = MINUTE + 17 * 60_000;
+        service.record(List.of(event("V1", "R1", 40.70, lateMinute + 5_000, 20.0, null)));
+        service.flush();
+        
+        long quarter = MINUTE + 15 * 60_000;
+        assertTrue(service.isDirty(HistoryAggregateService.Scope.ROUTE, AggregateResolution.QUARTER_HOUR, quarter));
+        assertTrue(service.isDirty(HistoryAggregateService.Scope.VEHICLE, AggregateResolution.HOUR, MINUTE));
+        
+        service.refreshCoarse();
+        
+        verify(jdbcTemplate).update(contains("FROM route_history_aggregates"),
+            eq(900), eq(900), eq(60), eq(quarter), eq(quarter + 900_000));
+        verify(jdbcTemplate).update(contains("FROM vehicle_history_aggregates"),
+            eq(3600), eq(3600), eq(60), eq(MINUTE), eq(MINUTE + 3_600_000));
+        assertFalse(service.isDirty(HistoryAggregateService.Scope.ROUTE, AggregateResolution.QUARTER_HOUR, quarter));
+        
+        // Clean buckets are not recomputed again
+        service.refreshCoarse();
+        verify(jdbcTemplate, times(1)).update(contains("FROM route_history_aggregates"),
+            eq(900), eq(900), eq(60), eq(quarter), eq(quarter + 900_000));
+    }
+    
+    @Test
+    void refreshCoarse_shouldRetryBucketsThatFailed() {
+        service.record(List.of(event("V1", "R1", 40.70, MINUTE + 5_000, 20.0, null)));
+        service.flush();
+        when(jdbcTemplate.update(contains("FROM route_history_aggregates"), eq(900), eq(900), eq(60), eq(MINUTE), eq(MINUTE + 900_000)))
+            .thenThrow(new RuntimeException("db down"));
+        
+        service.refreshCoarse();
+        
+        assertTrue(service.isDirty(HistoryAggregateService.Scope.ROUTE, AggregateResolution.QUARTER_HOUR, MINUTE));
+        assertFalse(service.isDirty(HistoryAggregateService.Scope.ROUTE, AggregateResolution.HOUR, MINUTE));
+    }
+    
+    @Test
+    void flush_shouldNotMarkBucketsWhoseWriteFailed() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenThrow(new RuntimeException("db down"));
+        service.record(List.of(event("V1", "R1", 40.70, MINUTE + 5_000, 20.0, null)));
+        
+        service.flush();
+        
+        assertFalse(service.isDirty(HistoryAggregateService.Scope.ROUTE, AggregateResolution.QUARTER_HOUR, MINUTE));
+    }
+    
+    private static VehiclePositionEvent event(String vehicleId, String routeId, double lat, long ts,
+                                              Double speedKph, Integer delaySec) {
+        VehiclePositionEvent event = new VehiclePositionEvent();
+        event.setVehicleId(vehicleId);
+        event.setRouteId(routeId);
+        event.setLat(lat);
+        event.setLon(-74.0);
+        event.setTsEpochMs(ts);
+        event.setSpeedKph(speedKph);
+        event.setDelaySec(delaySec);
+        return event;
+    }
+}
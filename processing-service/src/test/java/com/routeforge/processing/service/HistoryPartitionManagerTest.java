@@ -0,0 +1,135 @@
+package com.routeforge.processing.service;
+
+import com.routeforge.processing.config.HistoryProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class HistoryPartitionManagerTest {
+    
+    private static final LocalDate TODAY = LocalDate.of(2024, 1, 1);
+    private static final long TODAY_MS = 1_704_067_200_000L; // 2024-01-01T00:00Z
+    private static final long DAY_MS = 86_400_000L;
+    
+    private JdbcTemplate jdbcTemplate;
+    private PlatformTransactionManager transactionManager;
+    private HistoryProperties properties;
+    private HistoryPartitionManager manager;
+    
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        properties = new HistoryProperties();
+        properties.setPartitionPrecreateDays(1);
+        manager = new HistoryPartitionManager(jdbcTemplate, properties, transactionManager, new SimpleMeterRegistry());
+        when(jdbcTemplate.queryForObject(startsWith("SELECT to_regclass"), eq(Boolean.class), any())).thenReturn(false);
+        when(jdbcTemplate.queryForObject(contains("vehicle_positions_history_default"), eq(Boolean.class), anyLong(), anyLong()))
+            .thenReturn(false);
+    }
+    
+    @Test
+    void ensurePartitions_shouldCreateTodayAndDaysAhead() {
+        manager.ensurePartitions(TODAY);
+        
+        verify(jdbcTemplate).execute("CREATE TABLE IF NOT EXISTS vehicle_positions_history_p20240101 PARTITION OF "
+            + "vehicle_positions_history FOR VALUES FROM (" + TODAY_MS + ") TO (" + (TODAY_MS + DAY_MS) + ")");
+        verify(jdbcTemplate).execute("CREATE TABLE IF NOT EXISTS vehicle_positions_history_p20240102 PARTITION OF "
+            + "vehicle_positions_history FOR VALUES FROM (" + (TODAY_MS + DAY_MS) + ") TO (" + (TODAY_MS + 2 * DAY_MS) + ")");
+        verifyNoInteractions(transactionManager);
+    }
+    
+    @Test
+    void ensurePartitions_shouldSkipExistingPartitions() {
+        when(jdbcTemplate.queryForObject(startsWith("SELECT to_regclass"), eq(Boolean.class), any())).thenReturn(true);
+        
+        manager.ensurePartitions(TODAY);
+        
+        verify(jdbcTemplate, never()).execute(anyString());
+    }
+    
+    @Test
+    void ensurePartitions_shouldMoveRowsOutOfTheDefaultPartitionBeforeAttaching() {
+        when(jdbcTemplate.queryForObject(contains("vehicle_positions_history_default"), eq(Boolean.class), eq(TODAY_MS), eq(TODAY_MS + DAY_MS)))
+            .thenReturn(true);
+        when(jdbcTemplate.update(contains("DELETE FROM vehicle_positions_history_default"), eq(TODAY_MS), eq(TODAY_MS + DAY_MS)))
+            .thenReturn(12);
+        
+        manager.ensurePartitions(TODAY);
+        
+        InOrder inOrder = inOrder(transactionManager, jdbcTemplate);
+        inOrder.verify(transactionManager).getTransaction(any());
+        inOrder.verify(jdbcTemplate).execute("LOCK TABLE vehicle_positions_history_default IN SHARE ROW EXCLUSIVE MODE");
+        inOrder.verify(jdbcTemplate).execute(
+            "CREATE TABLE vehicle_positions_history_p20240101 (LIKE vehicle_positions_history INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+        inOrder.verify(jdbcTemplate).update(contains("INSERT INTO vehicle_positions_history_p20240101 SELECT * FROM moved"),
+            eq(TODAY_MS), eq(TODAY_MS + DAY_MS));
+        inOrder.verify(jdbcTemplate).execute("ALTER TABLE vehicle_positions_history ATTACH PARTITION "
+            + "vehicle_positions_history_p20240101 FOR VALUES FROM (" + TODAY_MS + ") TO (" + (TODAY_MS + DAY_MS) + ")");
+        inOrder.verify(transactionManager).commit(any());
+        // The next day had no stray rows and is created directly
+        verify(jdbcTemplate).execute(startsWith("CREATE TABLE IF NOT EXISTS vehicle_positions_history_p20240102 PARTITION OF"));
+    }
+    
+    @Test
+    void ensurePartitions_shouldRollBackWhenTheMoveFails() {
+        when(jdbcTemplate.queryForObject(contains("vehicle_positions_history_default"), eq(Boolean.class), eq(TODAY_MS), eq(TODAY_MS + DAY_MS)))
+            .thenReturn(true);
+        doThrow(new RuntimeException("lock timeout")).when(jdbcTemplate).execute(startsWith("ALTER TABLE"));
+        
+        manager.ensurePartitions(TODAY);
+        
+        verify(transactionManager).rollback(any());
+        verify(transactionManager, never()).commit(any());
+    }
+    
+    @Test
+    void dropExpiredPartitions_shouldDropOnlyDaysBeforeRetention() {
+        properties.setRetentionDays(30);
+        when(jdbcTemplate.queryForList(contains("pg_inherits"), eq(String.class), any())).thenReturn(List.of(
+            "vehicle_positions_history_default",
+            "vehicle_positions_history_p20231201",
+            "vehicle_positions_history_p20231202",
+            "vehicle_positions_history_p20240101"));
+        
+        manager.dropExpiredPartitions(TODAY);
+        
+        verify(jdbcTemplate).execute("DROP TABLE IF EXISTS vehicle_positions_history_p20231201");
+        verify(jdbcTemplate, never()).execute("DROP TABLE IF EXISTS vehicle_positions_history_p20231202");
+        verify(jdbcTemplate, never()).execute("DROP TABLE IF EXISTS vehicle_positions_history_p20240101");
+        verify(jdbcTemplate).update("DELETE FROM vehicle_positions_history_default WHERE ts_epoch_ms < ?",
+            TODAY_MS - 30 * DAY_MS);
+    }
+    
+    @Test
+    void listPartitions_shouldSortByDayAndIgnoreOtherTables() {
+        when(jdbcTemplate.queryForList(contains("pg_inherits"), eq(String.class), any())).thenReturn(List.of(
+            "vehicle_positions_history_p20240102",
+            "vehicle_positions_history_default",
+            "vehicle_positions_history_pbogus",
+            "vehicle_positions_history_p20240101"));
+        
+        List<HistoryPartitionManager.HistoryPartition> partitions = manager.listPartitions();
+        
+        assertEquals(2, partitions.size());
+        assertEquals(TODAY, partitions.get(0).day());
+        assertEquals(TODAY_MS, partitions.get(0).fromEpochMs());
+        assertEquals(TODAY_MS + DAY_MS, partitions.get(0).toEpochMs());
+        assertEquals("vehicle_positions_history_p20240102", partitions.get(1).name());
+    }
+    
+    @Test
+    void partitionName_shouldUseUtcDaySuffix() {
+        assertEquals("vehicle_positions_history_p20240229", HistoryPartitionManager.partitionName(LocalDate.of(2024, 2, 29)));
+    }
+}
@@ -0,0 +1,61 @@
+package com.routeforge.processing.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.routeforge.common.dto.VehiclePositionEvent;
+import com.routeforge.processing.config.RedisProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import redis.clients.jedis.AbstractPipeline;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class RedisPubSubServiceTest {
+    
+    private UnifiedJedis redisClient;
+    private SimpleMeterRegistry meterRegistry;
+    private RedisPubSubService service;
+    
+    @BeforeEach
+    void setUp() {
+        redisClient = mock(UnifiedJedis.class);
+        when(redisClient.pipelined()).thenReturn(mock(AbstractPipeline.class));
+        RedisProperties properties = new RedisProperties();
+        properties.setMode(RedisProperties.Mode.CLUSTER);
+        properties.setUpdateFanout(RedisProperties.UpdateFanout.PUBSUB);
+        meterRegistry = new SimpleMeterRegistry();
+        service = new RedisPubSubService(redisClient, new ObjectMapper().findAndRegisterModules(),
+            properties, meterRegistry);
+    }
+    
+    @Test
+    void publishRouteUpdates_shouldFailOnlyTheRouteWhosePublishFailedInClusterMode() {
+        when(redisClient.publish(anyString(), anyString())).thenReturn(1L);
+        when(redisClient.publish(eq("route:R2:updates"), anyString()))
+            .thenThrow(new JedisConnectionException("node down"));
+        VehiclePositionEvent r2 = event("V2", "R2");
+        
+        List<VehiclePositionEvent> failed = service.publishRouteUpdates(List.of(event("V1", "R1"), r2, event("V3", "R3")));
+        
+        assertEquals(List.of(r2), failed);
+        verify(redisClient, times(3)).publish(anyString(), anyString());
+        assertEquals(2.0, meterRegistry.counter("routeforge.processing.pubsub.published").count());
+    }
+    
+    private static VehiclePositionEvent event(String vehicleId, String routeId) {
+        return VehiclePositionEvent.builder()
+            .eventId("evt-" + vehicleId)
+            .vehicleId(vehicleId)
+            .routeId(routeId)
+            .lat(40.7)
+            .lon(-74.0)
+            .tsEpochMs(1_704_067_200_000L)
+            .build();
+    }
+}
@@ -0,0 +1,120 @@
+package com.routeforge.processing.service;
+
+import com.routeforge.common.dto.VehiclePositionEvent;
+import com.routeforge.processing.config.RollupProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class RouteSpeedRollupServiceTest {
+    
+    // Window-aligned and long before the wall clock, like a replay or a lagging consumer
+    private static final long T0 = 1_699_999_980_000L;
+    
+    private JdbcTemplate jdbcTemplate;
+    private RollupProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private RouteSpeedRollupService service;
+    
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        properties = new RollupProperties();
+        meterRegistry = new SimpleMeterRegistry();
+        service = new RouteSpeedRollupService(jdbcTemplate, properties, mock(PlatformTransactionManager.class), meterRegistry);
+    }
+    
+    @Test
+    void flush_shouldCloseWindowsOnTheRouteWatermarkNotTheWallClock() {
+        service.record(List.of(sample("R1", T0, 30.0), sample("R1", T0 + 45_000, 40.0)));
+        
+        service.flush();
+        
+        // Watermark T0+45s minus 30s lateness has not passed the window end at T0+60s
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+        assertEquals(2, service.openWindow("R1", T0).count());
+        
+        service.record(List.of(sample("R1", T0 + 95_000, 50.0)));
+        service.flush();
+        
+        List<Object[]> rows = flushedRows();
+        assertEquals(1, rows.size());
+        assertEquals("R1", rows.get(0)[0]);
+        assertEquals(T0, rows.get(0)[1]);
+        assertEquals(2L, rows.get(0)[3]);
+        assertNull(service.openWindow("R1", T0));
+        assertNotNull(service.openWindow("R1", T0 + 60_000));
+    }
+    
+    @Test
+    void record_shouldDropSamplesForFlushedWindowsOfTheSameRouteOnly() {
+        service.record(List.of(sample("R1", T0, 30.0), sample("R1", T0 + 95_000, 40.0)));
+        service.flush();
+        
+        service.record(List.of(sample("R1", T0 + 10_000, 35.0), sample("R2", T0 + 10_000, 35.0)));
+        
+        assertNull(service.openWindow("R1", T0));
+        assertEquals(1, service.openWindow("R2", T0).count());
+        assertEquals(1.0, meterRegistry.counter("routeforge.processing.rollup.samples.late").count());
+    }
+    
+    @Test
+    void flush_shouldCloseEveryWindowOfAnIdleRoute() {
+        properties.setIdleFlushMs(0);
+        service.record(List.of(sample("R1", T0 + 5_000, 30.0)));
+        
+        service.flush();
+        
+        assertEquals(1, flushedRows().size());
+        assertNull(service.openWindow("R1", T0));
+    }
+    
+    @Test
+    void flush_shouldKeepWindowsWhenTheWriteFails() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenThrow(new RuntimeException("db down"));
+        service.record(List.of(sample("R1", T0, 30.0), sample("R1", T0 + 20_000, 50.0), sample("R1", T0 + 95_000, 40.0)));
+        
+        service.flush();
+        
+        SpeedWindowStats kept = service.openWindow("R1", T0);
+        assertNotNull(kept);
+        assertEquals(2, kept.count());
+        assertEquals(40.0, kept.mean(), 1e-9);
+        assertEquals(0.0, meterRegistry.counter("routeforge.processing.rollup.windows.flushed").count());
+    }
+    
+    @Test
+    void record_shouldIgnoreStationarySamples() {
+        service.record(List.of(sample("R1", T0, 0.0), sample("R1", T0, null)));
+        
+        assertNull(service.openWindow("R1", T0));
+    }
+    
+    @SuppressWarnings("unchecked")
+    private List<Object[]> flushedRows() {
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(anyString(), rows.capture());
+        return rows.getValue();
+    }
+    
+    private static VehiclePositionEvent sample(String routeId, long tsEpochMs, Double speedKph) {
+        return VehiclePositionEvent.builder()
+            .eventId(routeId + "-" + tsEpochMs)
+            .vehicleId("V1")
+            .routeId(routeId)
+            .lat(40.7)
+            .lon(-74.0)
+            .speedKph(speedKph)
+            .tsEpochMs(tsEpochMs)
+            .build();
+    }
+}
@@ -0,0 +1,63 @@
+package com.routeforge.processing.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpeedWindowStatsTest {
+    
+    @Test
+    void add_shouldTrackCountMeanVarianceAndRange() {
+        SpeedWindowStats stats = new SpeedWindowStats();
+        for (double speed : new double[] {10, 20, 30, 40}) {
+            stats.add(speed);
+        }
+        
+        assertEquals(4, stats.count());
+        assertEquals(25.0, stats.mean(), 1e-9);
+        assertEquals(125.0, stats.variance(), 1e-9);
+        assertEquals(10.0, stats.min());
+        assertEquals(40.0, stats.max());
+    }
+    
+    @Test
+    void merge_shouldMatchSingleWindow() {
+        SpeedWindowStats all = new SpeedWindowStats();
+        SpeedWindowStats left = new SpeedWindowStats();
+        SpeedWindowStats right = new SpeedWindowStats();
+        for (int i = 1; i <= 50; i++) {
+            all.add(i);
+            (i % 3 == 0 ? left : right).add(i);
+        }
+        
+        left.merge(right);
+        
+        assertEquals(all.count(), left.count());
+        assertEquals(all.mean(), left.mean(), 1e-9);
+        assertEquals(all.variance(), left.variance(), 1e-9);
+        assertEquals(all.min(), left.min());
+        assertEquals(all.max(), left.max());
+        assertEquals(all.quantile(0.9), left.quantile(0.9), 1e-9);
+    }
+    
+    @Test
+    void quantile_shouldBeWithinOneBinOfExact() {
+        SpeedWindowStats stats = new SpeedWindowStats();
+        for (int i = 1; i <= 100; i++) {
+            stats.add(i);
+        }
+        
+        assertEquals(50.0, stats.quantile(0.5), SpeedWindowStats.BIN_KPH);
+        assertEquals(90.0, stats.quantile(0.9), SpeedWindowStats.BIN_KPH);
+    }
+    
+    @Test
+    void emptyWindow_shouldReportZeros() {
+        SpeedWindowStats stats = new SpeedWindowStats();
+        
+        assertEquals(0, stats.count());
+        assertEquals(0.0, stats.variance());
+        assertEquals(0.0, stats.quantile(0.5));
+        assertEquals(0.0, stats.min());
+    }
+}
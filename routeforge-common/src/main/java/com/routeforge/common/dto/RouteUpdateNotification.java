@@ -0,0 +1,33 @@
+package com.routeforge.common.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Update notification published on route:{routeId}:updates
+ * Carries the latest state of every vehicle of the route updated in one processed batch,
+ * so subscribers do not need to read the vehicles back from the cache.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RouteUpdateNotification {
+    
+    @JsonProperty("routeId")
+    private String routeId;
+    
+    /**
+     * Publish time in epoch milliseconds
+     */
+    @JsonProperty("updatedAt")
+    private Long updatedAt;
+    
+    @JsonProperty("vehicles")
+    private List<VehicleResponse> vehicles;
+}
@@ -69,6 +69,18 @@ public class VehiclePositionEvent implements Serializable {
     @JsonProperty("headingDeg")
     private Double headingDeg;
     
+    /**
+     * True when speedKph was derived by processing from consecutive positions (optional)
+     */
+    @JsonProperty("speedDerived")
+    private Boolean speedDerived;
+    
+    /**
+     * True when headingDeg was derived by processing from consecutive positions (optional)
+     */
+    @JsonProperty("headingDerived")
+    private Boolean headingDerived;
+    
     /**
      * Timestamp of the position in epoch milliseconds
      */
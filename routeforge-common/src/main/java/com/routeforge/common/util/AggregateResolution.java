@@ -0,0 +1,60 @@
+package com.routeforge.common.util;
+
+/**
+ * Bucket sizes of the route and vehicle history aggregates
+ * Processing writes the finest resolution from the stream and rolls it up into the coarser
+ * ones; readers pick the coarsest resolution a time range can be answered from exactly.
+ */
+public enum AggregateResolution {
+    
+    MINUTE(60),
+    QUARTER_HOUR(900),
+    HOUR(3600);
+    
+    private final int seconds;
+    
+    AggregateResolution(int seconds) {
+        this.seconds = seconds;
+    }
+    
+    public int seconds() {
+        return seconds;
+    }
+    
+    public long millis() {
+        return seconds * 1000L;
+    }
+    
+    /**
+     * Start of the bucket containing {@code epochMs}
+     */
+    public long bucketStart(long epochMs) {
+        return epochMs - Math.floorMod(epochMs, millis());
+    }
+    
+    /**
+     * Coarsest resolution whose buckets tile [fromMs, toMs) in steps of {@code stepMs}
+     * Ranges not aligned to any resolution fall back to the finest, which callers widen to
+     * whole minutes.
+     */
+    public static AggregateResolution coarsestFor(long fromMs, long toMs, long stepMs) {
+        AggregateResolution[] resolutions = values();
+        for (int i = resolutions.length - 1; i > 0; i--) {
+            long millis = resolutions[i].millis();
+            if (Math.floorMod(fromMs, millis) == 0 && Math.floorMod(toMs, millis) == 0
+                    && stepMs % millis == 0) {
+                return resolutions[i];
+            }
+        }
+        return MINUTE;
+    }
+    
+    public static AggregateResolution ofSeconds(int seconds) {
+        for (AggregateResolution resolution : values()) {
+            if (resolution.seconds == seconds) {
+                return resolution;
+            }
+        }
+        throw new IllegalArgumentException("No aggregate resolution of " + seconds + "s");
+    }
+}
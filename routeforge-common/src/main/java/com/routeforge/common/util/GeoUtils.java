@@ -0,0 +1,57 @@
+package com.routeforge.common.util;
+
+/**
+ * Spherical-earth geometry helpers for vehicle positions
+ */
+public class GeoUtils {
+    
+    public static final double EARTH_RADIUS_M = 6_371_000.0;
+    
+    private GeoUtils() {
+        throw new IllegalStateException("Utility class");
+    }
+    
+    /**
+     * Haversine distance between two points in meters
+     */
+    public static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+            + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+            * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_M * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+    
+    /**
+     * Initial great-circle bearing, 0-360 degrees clockwise from north
+     */
+    public static double bearingDegrees(double lat1, double lon1, double lat2, double lon2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double y = Math.sin(dLon) * Math.cos(phi2);
+        double x = Math.cos(phi1) * Math.sin(phi2) - Math.sin(phi1) * Math.cos(phi2) * Math.cos(dLon);
+        return (Math.toDegrees(Math.atan2(y, x)) + 360.0) % 360.0;
+    }
+    
+    /**
+     * Point reached by moving {@code distanceM} along {@code bearingDeg}
+     * Flat-earth approximation, accurate for the short hops between consecutive fixes.
+     * @return {lat, lon}
+     */
+    public static double[] project(double lat, double lon, double bearingDeg, double distanceM) {
+        double bearing = Math.toRadians(bearingDeg);
+        double dLat = distanceM * Math.cos(bearing) / EARTH_RADIUS_M;
+        double dLon = distanceM * Math.sin(bearing) / (EARTH_RADIUS_M * Math.cos(Math.toRadians(lat)));
+        return new double[] {lat + Math.toDegrees(dLat), lon + Math.toDegrees(dLon)};
+    }
+    
+    /**
+     * Smallest absolute difference between two headings, 0-180 degrees
+     */
+    public static double headingDelta(double a, double b) {
+        double delta = Math.abs(a - b) % 360.0;
+        return delta > 180.0 ? 360.0 - delta : delta;
+    }
+}
@@ -0,0 +1,87 @@
+package com.routeforge.common.util;
+
+/**
+ * Redis key names of the hot vehicle cache, shared by processing-service (writer) and
+ * api-gateway-service (reader)
+ *
+ * On a single node the plain names are used. With hash tags (Redis Cluster) the id in
+ * braces decides the slot, so:
+ * - veh:{vehicleId} lives alone in its vehicle's slot
+ * - route:{routeId}:vehicles and geo:route:{routeId}:vehicles share their route's slot
+ * - the global GEO index and its bookkeeping (geo:{vehicles}*) share one slot, so the
+ *   eviction script can touch all three
+ */
+public final class RedisKeys {
+    
+    private static final String ROUTE_PREFIX = "route:";
+    private static final String ROUTE_SUFFIX = ":vehicles";
+    
+    private final boolean hashTags;
+    
+    private RedisKeys(boolean hashTags) {
+        this.hashTags = hashTags;
+    }
+    
+    public static RedisKeys standalone() {
+        return new RedisKeys(false);
+    }
+    
+    public static RedisKeys cluster() {
+        return new RedisKeys(true);
+    }
+    
+    public boolean isHashTagged() {
+        return hashTags;
+    }
+    
+    /** veh:{vehicleId} -> hash of the latest position */
+    public String vehicle(String vehicleId) {
+        return "veh:" + tag(vehicleId);
+    }
+    
+    /** route:{routeId}:vehicles -> sorted set, score = tsEpochMs */
+    public String routeVehicles(String routeId) {
+        return ROUTE_PREFIX + tag(routeId) + ROUTE_SUFFIX;
+    }
+    
+    /** geo:route:{routeId}:vehicles -> GEO set of the route's live vehicles */
+    public String routeGeo(String routeId) {
+        return "geo:route:" + tag(routeId) + ROUTE_SUFFIX;
+    }
+    
+    /** GEO set of all live vehicles */
+    public String geoVehicles() {
+        return hashTags ? "geo:{vehicles}" : "geo:vehicles";
+    }
+    
+    /** Sorted set vehicleId -> wall clock (epoch ms) of the last write, drives GEO eviction */
+    public String geoSeen() {
+        return geoVehicles() + ":seen";
+    }
+    
+    /** Hash vehicleId -> routeId of the vehicle's GEO entry */
+    public String geoRoute() {
+        return geoVehicles() + ":route";
+    }
+    
+    /** SCAN pattern matching every route set, in either naming */
+    public String routeVehiclesPattern() {
+        return ROUTE_PREFIX + "*" + ROUTE_SUFFIX;
+    }
+    
+    /**
+     * routeId of a key returned by {@link #routeVehiclesPattern()}
+     */
+    public String routeIdOf(String routeVehiclesKey) {
+        String routeId = routeVehiclesKey.substring(
+            ROUTE_PREFIX.length(), routeVehiclesKey.length() - ROUTE_SUFFIX.length());
+        if (hashTags && routeId.startsWith("{") && routeId.endsWith("}")) {
+            return routeId.substring(1, routeId.length() - 1);
+        }
+        return routeId;
+    }
+    
+    private String tag(String id) {
+        return hashTags ? "{" + id + "}" : id;
+    }
+}
@@ -0,0 +1,42 @@
+package com.routeforge.common.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AggregateResolutionTest {
+    
+    private static final long HOUR_MS = 3_600_000L;
+    private static final long DAY_START = 1_704_067_200_000L; // 2024-01-01T00:00Z
+    
+    @Test
+    void coarsestFor_shouldUseHoursForHourAlignedRanges() {
+        assertEquals(AggregateResolution.HOUR,
+            AggregateResolution.coarsestFor(DAY_START, DAY_START + 24 * HOUR_MS, HOUR_MS));
+        assertEquals(AggregateResolution.HOUR,
+            AggregateResolution.coarsestFor(DAY_START, DAY_START + 24 * HOUR_MS, 6 * HOUR_MS));
+    }
+    
+    @Test
+    void coarsestFor_shouldFallBackWhenRangeOrStepIsFiner() {
+        assertEquals(AggregateResolution.QUARTER_HOUR,
+            AggregateResolution.coarsestFor(DAY_START + 15 * 60_000L, DAY_START + HOUR_MS, 15 * 60_000L));
+        assertEquals(AggregateResolution.QUARTER_HOUR,
+            AggregateResolution.coarsestFor(DAY_START, DAY_START + 24 * HOUR_MS, 45 * 60_000L));
+        assertEquals(AggregateResolution.MINUTE,
+            AggregateResolution.coarsestFor(DAY_START + 60_000L, DAY_START + HOUR_MS, HOUR_MS - 60_000L));
+        assertEquals(AggregateResolution.MINUTE,
+            AggregateResolution.coarsestFor(DAY_START + 1_234L, DAY_START + HOUR_MS, HOUR_MS));
+    }
+    
+    @Test
+    void bucketStart_shouldAlignToResolution() {
+        long ts = DAY_START + 17 * 60_000L + 42_000L;
+        
+        assertEquals(DAY_START + 17 * 60_000L, AggregateResolution.MINUTE.bucketStart(ts));
+        assertEquals(DAY_START + 15 * 60_000L, AggregateResolution.QUARTER_HOUR.bucketStart(ts));
+        assertEquals(DAY_START, AggregateResolution.HOUR.bucketStart(ts));
+        assertEquals(AggregateResolution.QUARTER_HOUR, AggregateResolution.ofSeconds(900));
+        assertThrows(IllegalArgumentException.class, () -> AggregateResolution.ofSeconds(30));
+    }
+}